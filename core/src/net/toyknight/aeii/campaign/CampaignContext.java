@@ -1,5 +1,6 @@
 package net.toyknight.aeii.campaign;
 
+import com.badlogic.gdx.utils.IntArray;
 import com.badlogic.gdx.utils.ObjectMap;
 import com.badlogic.gdx.utils.ObjectSet;
 import net.toyknight.aeii.GameContext;
@@ -164,7 +165,7 @@ public class CampaignContext {
                 message_json.put("message", message.getMessage());
                 message_list.put(message_json);
             }
-            getContext().getGameManager().getGameEventExecutor().submitGameEvent(GameEvent.CAMPAIGN_MESSAGE, message_list);
+            getContext().getGameManager().getGameEventExecutor().submitGameEvent(GameEvent.campaignMessage(message_list));
         }
 
         public void reinforce(int team, Reinforcement... reinforcements) {
@@ -182,7 +183,7 @@ public class CampaignContext {
                 json_reinforcements.put(json_reinforcement);
             }
             getContext().getGameManager().getGameEventExecutor().submitGameEvent(
-                    GameEvent.CAMPAIGN_REINFORCE, team, from_x, from_y, json_reinforcements);
+                    GameEvent.campaignReinforce(team, from_x, from_y, json_reinforcements));
         }
 
         public int count_unit(int team) {
@@ -371,14 +372,10 @@ public class CampaignContext {
         public void hp_change(int x, int y, int change) {
             Unit target = getContext().getGame().getMap().getUnit(x, y);
             if (target != null) {
-                JSONArray hp_changes = new JSONArray();
-                JSONObject hp_change = new JSONObject();
+                IntArray hp_changes = new IntArray();
                 change = UnitToolkit.validateHpChange(target, change);
-                hp_change.put("x", x);
-                hp_change.put("y", y);
-                hp_change.put("change", change);
-                hp_changes.put(hp_change);
-                getContext().getGameManager().getGameEventExecutor().submitGameEvent(GameEvent.HP_CHANGE, hp_changes);
+                hp_changes.addAll(x, y, change);
+                getContext().getGameManager().getGameEventExecutor().submitGameEvent(GameEvent.hpChange(hp_changes));
             }
         }
 
@@ -1,13 +1,26 @@
 package net.toyknight.aeii.manager;
 
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.IntArray;
+import com.esotericsoftware.kryo.KryoException;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import net.toyknight.aeii.entity.Position;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
 /**
+ * An immutable, already parsed game event. The scalar parameters of every event type are kept in
+ * an int array (booleans as 0 or 1), the move path and the hp changes as flat int data, and the
+ * campaign messages and reinforcements, which never leave the local game, as a JSON string.
+ * <p>
+ * JSON is only used at the edges: the network protocol and the record files still carry events as
+ * {"type": type, "parameters": [...]}, see {@link #toJson()} and {@link #fromJson(JSONObject, boolean)}.
+ *
  * @author toyknight 4/3/2015.
  */
-public class GameEvent {
+public final class GameEvent {
 
     public static final int STANDBY_FINISH = -1;
 
@@ -45,15 +58,374 @@ public class GameEvent {
     public static final int CAMPAIGN_HAVENS_FURY = 0x30;
     public static final int CAMPAIGN_TILE_DESTROY = 0x31;
 
-    public static JSONObject create(int type, Object... params) throws JSONException {
-        JSONObject event = new JSONObject();
-        event.put("type", type);
+    private static final int MAX_DATA_LENGTH = 0xFFFF;
+
+    private static final int[] EMPTY = new int[0];
+
+    private final int type;
+
+    private final int[] parameters;
+
+    private final int[] data;
+
+    private final String content;
+
+    private final boolean remote;
+
+    private GameEvent(int type, int[] parameters, int[] data, String content, boolean remote) {
+        this.type = type;
+        this.parameters = parameters;
+        this.data = data;
+        this.content = content;
+        this.remote = remote;
+    }
+
+    public static GameEvent create(int type, int... parameters) {
+        return new GameEvent(type, parameters.clone(), EMPTY, null, false);
+    }
+
+    public static GameEvent attack(
+            int attacker_x, int attacker_y, int target_x, int target_y, int attack_damage, boolean counter) {
+        int[] parameters = new int[]{attacker_x, attacker_y, target_x, target_y, attack_damage, counter ? 1 : 0};
+        return new GameEvent(ATTACK, parameters, EMPTY, null, false);
+    }
+
+    public static GameEvent move(
+            int unit_x, int unit_y, int target_x, int target_y, int movement_point, Array<Position> move_path) {
+        int[] path = new int[move_path.size * 2];
+        for (int i = 0; i < move_path.size; i++) {
+            path[i * 2] = move_path.get(i).x;
+            path[i * 2 + 1] = move_path.get(i).y;
+        }
+        int[] parameters = new int[]{unit_x, unit_y, target_x, target_y, movement_point};
+        return new GameEvent(MOVE, parameters, path, null, false);
+    }
+
+    /**
+     * @param changes the x, y and hp change of every unit, one after another
+     */
+    public static GameEvent hpChange(IntArray changes) {
+        return new GameEvent(HP_CHANGE, EMPTY, changes.toArray(), null, false);
+    }
+
+    public static GameEvent campaignReinforce(int team, int from_x, int from_y, JSONArray reinforcements) {
+        return new GameEvent(CAMPAIGN_REINFORCE, new int[]{team, from_x, from_y}, EMPTY, reinforcements.toString(), false);
+    }
+
+    public static GameEvent campaignMessage(JSONArray messages) {
+        return new GameEvent(CAMPAIGN_MESSAGE, EMPTY, EMPTY, messages.toString(), false);
+    }
+
+    public int getType() {
+        return type;
+    }
+
+    public int getParameterCount() {
+        return parameters.length;
+    }
+
+    public int getInt(int index) {
+        return parameters[index];
+    }
+
+    public boolean getBoolean(int index) {
+        return parameters[index] != 0;
+    }
+
+    /**
+     * @return the number of ints in the move path (x, y pairs) or the hp changes (x, y, change triples)
+     */
+    public int getDataLength() {
+        return data.length;
+    }
+
+    public int getData(int index) {
+        return data[index];
+    }
+
+    public JSONArray getContent() throws JSONException {
+        return content == null ? new JSONArray() : new JSONArray(content);
+    }
+
+    public boolean isRemote() {
+        return remote;
+    }
+
+    /**
+     * @return the least number of scalar parameters an event of the type must carry
+     */
+    public static int getRequiredParameterCount(int type) {
+        switch (type) {
+            case MANAGER_STATE_SYNC:
+                return 1;
+            case STANDBY_FINISH:
+            case REPAIR:
+            case SELECT:
+            case STANDBY:
+            case TILE_DESTROY:
+            case CAMPAIGN_FOCUS:
+            case CAMPAIGN_REMOVE_UNIT:
+            case CAMPAIGN_HAVENS_FURY:
+                return 2;
+            case OCCUPY:
+            case UNIT_DESTROY:
+            case GAIN_EXPERIENCE:
+            case CAMPAIGN_REINFORCE:
+            case CAMPAIGN_ATTACK:
+            case CAMPAIGN_CHANGE_TEAM:
+            case CAMPAIGN_TILE_DESTROY:
+                return 3;
+            case BUY:
+            case SUMMON:
+            case REVERSE:
+            case CAMPAIGN_CRYSTAL_STEAL:
+            case CAMPAIGN_CREATE_UNIT:
+            case CAMPAIGN_MOVE_UNIT:
+                return 4;
+            case MOVE:
+            case HEAL:
+                return 5;
+            case ATTACK:
+            case CAMPAIGN_FLY_OVER:
+            case CAMPAIGN_CARRY_UNIT:
+                return 6;
+            default:
+                return 0;
+        }
+    }
+
+    public JSONObject toJson() throws JSONException {
+        JSONObject json = new JSONObject();
+        json.put("type", type);
         JSONArray parameters = new JSONArray();
-        for (Object param : params) {
-            parameters.put(param);
+        switch (type) {
+            case ATTACK:
+                for (int i = 0; i < 5; i++) {
+                    parameters.put(getInt(i));
+                }
+                parameters.put(getBoolean(5));
+                break;
+            case MOVE:
+                for (int i = 0; i < 5; i++) {
+                    parameters.put(getInt(i));
+                }
+                JSONArray move_path = new JSONArray();
+                for (int i = 0; i < data.length; i += 2) {
+                    JSONObject step = new JSONObject();
+                    step.put("x", data[i]);
+                    step.put("y", data[i + 1]);
+                    move_path.put(step);
+                }
+                parameters.put(move_path);
+                break;
+            case HP_CHANGE:
+                JSONArray changes = new JSONArray();
+                for (int i = 0; i < data.length; i += 3) {
+                    JSONObject change = new JSONObject();
+                    change.put("x", data[i]);
+                    change.put("y", data[i + 1]);
+                    change.put("change", data[i + 2]);
+                    changes.put(change);
+                }
+                parameters.put(changes);
+                break;
+            case CAMPAIGN_REINFORCE:
+                for (int i = 0; i < 3; i++) {
+                    parameters.put(getInt(i));
+                }
+                parameters.put(getContent());
+                break;
+            case CAMPAIGN_MESSAGE:
+                parameters.put(getContent());
+                break;
+            default:
+                for (int parameter : this.parameters) {
+                    parameters.put(parameter);
+                }
+        }
+        json.put("parameters", parameters);
+        return json;
+    }
+
+    /**
+     * Parses an event received from the network or read from a record file.
+     *
+     * @throws JSONException if the event is malformed or misses any parameter of its type
+     */
+    public static GameEvent fromJson(JSONObject json, boolean remote) throws JSONException {
+        int type = json.getInt("type");
+        JSONArray parameters = json.getJSONArray("parameters");
+        int required = getRequiredParameterCount(type);
+        switch (type) {
+            case ATTACK:
+                int[] attack = readInts(parameters, 5, 6);
+                attack[5] = parameters.getBoolean(5) ? 1 : 0;
+                return new GameEvent(type, attack, EMPTY, null, remote);
+            case MOVE:
+                JSONArray move_path = parameters.getJSONArray(5);
+                int[] path = new int[move_path.length() * 2];
+                for (int i = 0; i < move_path.length(); i++) {
+                    JSONObject step = move_path.getJSONObject(i);
+                    path[i * 2] = step.getInt("x");
+                    path[i * 2 + 1] = step.getInt("y");
+                }
+                return new GameEvent(type, readInts(parameters, 5, 5), path, null, remote);
+            case HP_CHANGE:
+                JSONArray changes = parameters.getJSONArray(0);
+                int[] hp_changes = new int[changes.length() * 3];
+                for (int i = 0; i < changes.length(); i++) {
+                    JSONObject change = changes.getJSONObject(i);
+                    hp_changes[i * 3] = change.getInt("x");
+                    hp_changes[i * 3 + 1] = change.getInt("y");
+                    hp_changes[i * 3 + 2] = change.getInt("change");
+                }
+                return new GameEvent(type, EMPTY, hp_changes, null, remote);
+            case CAMPAIGN_REINFORCE:
+                String reinforcements = parameters.getJSONArray(3).toString();
+                return new GameEvent(type, readInts(parameters, 3, 3), EMPTY, reinforcements, remote);
+            case CAMPAIGN_MESSAGE:
+                return new GameEvent(type, EMPTY, EMPTY, parameters.getJSONArray(0).toString(), remote);
+            default:
+                if (parameters.length() < required) {
+                    throw new JSONException("Missing parameters of game event " + type);
+                }
+                int count = required > 0 ? parameters.length() : 0;
+                return new GameEvent(type, readInts(parameters, count, count), EMPTY, null, remote);
+        }
+    }
+
+    private static int[] readInts(JSONArray json, int count, int length) throws JSONException {
+        if (count == 0) {
+            return EMPTY;
+        }
+        int[] values = new int[length];
+        for (int i = 0; i < count; i++) {
+            values[i] = json.getInt(i);
+        }
+        return values;
+    }
+
+    /**
+     * Writes the event in the compact binary form: varint type, parameters and data, then the content.
+     */
+    public void write(Output output) {
+        output.writeVarInt(type, false);
+        writeInts(output, parameters);
+        writeInts(output, data);
+        output.writeString(content);
+    }
+
+    public static GameEvent read(Input input, boolean remote) throws JSONException {
+        try {
+            int type = input.readVarInt(false);
+            int[] parameters = readInts(input);
+            int[] data = readInts(input);
+            String content = input.readString();
+            checkLengths(type, parameters, data);
+            return new GameEvent(type, parameters, data, content, remote);
+        } catch (KryoException ex) {
+            throw new JSONException(ex);
+        }
+    }
+
+    /**
+     * Writes the event like {@link #write(Output)}, but with each parameter as its difference from the same
+     * parameter of the previous event. The parameters are mostly map positions near the previous ones, so in
+     * a stream of events most of them take a single byte.
+     *
+     * @param previous the event written before this one, or null for the first event of the stream
+     */
+    public void write(Output output, GameEvent previous) {
+        output.writeVarInt(type, false);
+        output.writeVarInt(parameters.length, true);
+        for (int i = 0; i < parameters.length; i++) {
+            output.writeVarInt(parameters[i] - getParameter(previous, i), false);
+        }
+        writeInts(output, data);
+        output.writeString(content);
+    }
+
+    /**
+     * Reads an event written by {@link #write(Output, GameEvent)}.
+     *
+     * @param previous the event read before this one, or null for the first event of the stream
+     */
+    public static GameEvent read(Input input, GameEvent previous, boolean remote) throws JSONException {
+        try {
+            int type = input.readVarInt(false);
+            int length = input.readVarInt(true);
+            if (length > MAX_DATA_LENGTH) {
+                throw new KryoException("Illegal length: " + length);
+            }
+            int[] parameters = length == 0 ? EMPTY : new int[length];
+            for (int i = 0; i < length; i++) {
+                parameters[i] = input.readVarInt(false) + getParameter(previous, i);
+            }
+            int[] data = readInts(input);
+            String content = input.readString();
+            checkLengths(type, parameters, data);
+            return new GameEvent(type, parameters, data, content, remote);
+        } catch (KryoException ex) {
+            throw new JSONException(ex);
         }
-        event.put("parameters", parameters);
-        return event;
+    }
+
+    /**
+     * Rejects events whose data would not split into whole path steps or hp changes, or that miss parameters.
+     */
+    private static void checkLengths(int type, int[] parameters, int[] data) throws JSONException {
+        if (parameters.length < getRequiredParameterCount(type)) {
+            throw new JSONException("Missing parameters of game event " + type);
+        }
+        int stride = getDataStride(type);
+        if (stride == 0 ? data.length > 0 : data.length % stride != 0) {
+            throw new JSONException("Malformed data of game event " + type + ": " + data.length + " ints");
+        }
+    }
+
+    /**
+     * @return the number of ints each path step or hp change takes, 0 for the types without data
+     */
+    private static int getDataStride(int type) {
+        switch (type) {
+            case MOVE:
+                return 2;
+            case HP_CHANGE:
+                return 3;
+            default:
+                return 0;
+        }
+    }
+
+    private static int getParameter(GameEvent event, int index) {
+        return event == null || index >= event.parameters.length ? 0 : event.parameters[index];
+    }
+
+    private static void writeInts(Output output, int[] values) {
+        output.writeVarInt(values.length, true);
+        for (int value : values) {
+            output.writeVarInt(value, false);
+        }
+    }
+
+    private static int[] readInts(Input input) {
+        int length = input.readVarInt(true);
+        if (length == 0) {
+            return EMPTY;
+        }
+        if (length > MAX_DATA_LENGTH) {
+            throw new KryoException("Illegal length: " + length);
+        }
+        int[] values = new int[length];
+        for (int i = 0; i < length; i++) {
+            values[i] = input.readVarInt(false);
+        }
+        return values;
+    }
+
+    @Override
+    public String toString() {
+        return toJson().toString();
     }
 
 }
@@ -24,13 +24,13 @@ public class GameEventExecutor {
 
     private final GameManager manager;
 
-    private final Queue<JSONObject> event_queue;
+    private final Queue<GameEvent> event_queue;
 
     private boolean check_event_value = false;
 
     public GameEventExecutor(GameManager manager) {
         this.manager = manager;
-        this.event_queue = new LinkedList<JSONObject>();
+        this.event_queue = new LinkedList<GameEvent>();
     }
 
     public GameManager getManager() {
@@ -57,13 +57,12 @@ public class GameEventExecutor {
         return event_queue.size() > 0;
     }
 
-    public void submitGameEvent(JSONObject event) {
+    public void submitGameEvent(GameEvent event) {
         event_queue.add(event);
     }
 
-    public void submitGameEvent(int type, Object... params) {
-        JSONObject event = GameEvent.create(type, params);
-        submitGameEvent(event);
+    public void submitGameEvent(int type, int... params) {
+        submitGameEvent(GameEvent.create(type, params));
     }
 
     public void dispatchGameEvents() throws CheatingException {
@@ -72,8 +71,8 @@ public class GameEventExecutor {
         } else {
             if (event_queue.size() > 0) {
                 try {
-                    JSONObject event = event_queue.poll();
-                    if (event.getInt("type") >= 0x16 && getGame().getType() != GameCore.CAMPAIGN) {
+                    GameEvent event = event_queue.poll();
+                    if (event.getType() >= 0x16 && getGame().getType() != GameCore.CAMPAIGN) {
                         throw new CheatingException("Invalid game event!", getGame().getCurrentTeam());
                     } else {
                         executeGameEvent(event);
@@ -89,130 +88,128 @@ public class GameEventExecutor {
         }
     }
 
-    public void executeGameEvent(JSONObject event) throws JSONException, CheatingException {
-        switch (event.getInt("type")) {
+    public void executeGameEvent(GameEvent event) throws JSONException, CheatingException {
+        switch (event.getType()) {
             case GameEvent.STANDBY_FINISH:
-                int target_x = event.getJSONArray("parameters").getInt(0);
-                int target_y = event.getJSONArray("parameters").getInt(1);
+                int target_x = event.getInt(0);
+                int target_y = event.getInt(1);
                 getManager().fireUnitStandbyEvent(target_x, target_y);
                 getManager().fireStateChangeEvent();
                 break;
             case GameEvent.MANAGER_STATE_SYNC:
-                int manager_state = event.getJSONArray("parameters").getInt(0);
+                int manager_state = event.getInt(0);
                 getManager().syncState(manager_state, -1, -1);
                 break;
             case GameEvent.ATTACK:
-                int attacker_x = event.getJSONArray("parameters").getInt(0);
-                int attacker_y = event.getJSONArray("parameters").getInt(1);
-                target_x = event.getJSONArray("parameters").getInt(2);
-                target_y = event.getJSONArray("parameters").getInt(3);
-                int attack_damage = event.getJSONArray("parameters").getInt(4);
-                boolean counter = event.getJSONArray("parameters").getBoolean(5);
+                int attacker_x = event.getInt(0);
+                int attacker_y = event.getInt(1);
+                target_x = event.getInt(2);
+                target_y = event.getInt(3);
+                int attack_damage = event.getInt(4);
+                boolean counter = event.getBoolean(5);
                 onAttack(attacker_x, attacker_y, target_x, target_y, attack_damage, counter);
                 break;
             case GameEvent.BUY:
-                int index = event.getJSONArray("parameters").getInt(0);
-                int team = event.getJSONArray("parameters").getInt(1);
-                target_x = event.getJSONArray("parameters").getInt(2);
-                target_y = event.getJSONArray("parameters").getInt(3);
+                int index = event.getInt(0);
+                int team = event.getInt(1);
+                target_x = event.getInt(2);
+                target_y = event.getInt(3);
                 onBuy(index, team, target_x, target_y);
                 break;
             case GameEvent.NEXT_TURN:
                 onNextTurn();
                 break;
             case GameEvent.HEAL:
-                int healer_x = event.getJSONArray("parameters").getInt(0);
-                int healer_y = event.getJSONArray("parameters").getInt(1);
-                target_x = event.getJSONArray("parameters").getInt(2);
-                target_y = event.getJSONArray("parameters").getInt(3);
-                int heal = event.getJSONArray("parameters").getInt(4);
+                int healer_x = event.getInt(0);
+                int healer_y = event.getInt(1);
+                target_x = event.getInt(2);
+                target_y = event.getInt(3);
+                int heal = event.getInt(4);
                 onHeal(healer_x, healer_y, target_x, target_y, heal);
                 break;
             case GameEvent.MOVE:
-                int unit_x = event.getJSONArray("parameters").getInt(0);
-                int unit_y = event.getJSONArray("parameters").getInt(1);
-                target_x = event.getJSONArray("parameters").getInt(2);
-                target_y = event.getJSONArray("parameters").getInt(3);
-                int movement_point = event.getJSONArray("parameters").getInt(4);
-                JSONArray move_path = event.getJSONArray("parameters").getJSONArray(5);
-                onMove(unit_x, unit_y, target_x, target_y, movement_point, move_path);
+                int unit_x = event.getInt(0);
+                int unit_y = event.getInt(1);
+                target_x = event.getInt(2);
+                target_y = event.getInt(3);
+                int movement_point = event.getInt(4);
+                onMove(unit_x, unit_y, target_x, target_y, movement_point, event);
                 break;
             case GameEvent.OCCUPY:
-                target_x = event.getJSONArray("parameters").getInt(0);
-                target_y = event.getJSONArray("parameters").getInt(1);
-                team = event.getJSONArray("parameters").getInt(2);
+                target_x = event.getInt(0);
+                target_y = event.getInt(1);
+                team = event.getInt(2);
                 onOccupy(target_x, target_y, team);
                 break;
             case GameEvent.REPAIR:
-                target_x = event.getJSONArray("parameters").getInt(0);
-                target_y = event.getJSONArray("parameters").getInt(1);
+                target_x = event.getInt(0);
+                target_y = event.getInt(1);
                 onRepair(target_x, target_y);
                 break;
             case GameEvent.REVERSE:
-                unit_x = event.getJSONArray("parameters").getInt(0);
-                unit_y = event.getJSONArray("parameters").getInt(1);
-                target_x = event.getJSONArray("parameters").getInt(2);
-                target_y = event.getJSONArray("parameters").getInt(3);
+                unit_x = event.getInt(0);
+                unit_y = event.getInt(1);
+                target_x = event.getInt(2);
+                target_y = event.getInt(3);
                 onReverse(unit_x, unit_y, target_x, target_y);
                 break;
             case GameEvent.SELECT:
-                target_x = event.getJSONArray("parameters").getInt(0);
-                target_y = event.getJSONArray("parameters").getInt(1);
+                target_x = event.getInt(0);
+                target_y = event.getInt(1);
                 onSelect(target_x, target_y);
                 break;
             case GameEvent.STANDBY:
-                target_x = event.getJSONArray("parameters").getInt(0);
-                target_y = event.getJSONArray("parameters").getInt(1);
+                target_x = event.getInt(0);
+                target_y = event.getInt(1);
                 onStandby(target_x, target_y);
                 break;
             case GameEvent.SUMMON:
-                int summoner_x = event.getJSONArray("parameters").getInt(0);
-                int summoner_y = event.getJSONArray("parameters").getInt(1);
-                target_x = event.getJSONArray("parameters").getInt(2);
-                target_y = event.getJSONArray("parameters").getInt(3);
+                int summoner_x = event.getInt(0);
+                int summoner_y = event.getInt(1);
+                target_x = event.getInt(2);
+                target_y = event.getInt(3);
                 onSummon(summoner_x, summoner_y, target_x, target_y);
                 break;
             case GameEvent.HP_CHANGE:
-                JSONArray changes = event.getJSONArray("parameters").getJSONArray(0);
-                onHpChange(changes);
+                onHpChange(event);
                 break;
             case GameEvent.TILE_DESTROY:
-                target_x = event.getJSONArray("parameters").getInt(0);
-                target_y = event.getJSONArray("parameters").getInt(1);
+                target_x = event.getInt(0);
+                target_y = event.getInt(1);
                 onTileDestroy(target_x, target_y);
                 break;
             case GameEvent.UNIT_DESTROY:
-                target_x = event.getJSONArray("parameters").getInt(0);
-                target_y = event.getJSONArray("parameters").getInt(1);
-                int destroyer_team = event.getJSONArray("parameters").getInt(2);
+                target_x = event.getInt(0);
+                target_y = event.getInt(1);
+                int destroyer_team = event.getInt(2);
                 onUnitDestroy(target_x, target_y, destroyer_team);
                 break;
             case GameEvent.GAIN_EXPERIENCE:
-                target_x = event.getJSONArray("parameters").getInt(0);
-                target_y = event.getJSONArray("parameters").getInt(1);
-                int experience = event.getJSONArray("parameters").getInt(2);
+                target_x = event.getInt(0);
+                target_y = event.getInt(1);
+                int experience = event.getInt(2);
                 onUnitGainExperience(target_x, target_y, experience);
                 break;
             case GameEvent.CAMPAIGN_REINFORCE:
-                team = event.getJSONArray("parameters").getInt(0);
-                int from_x = event.getJSONArray("parameters").getInt(1);
-                int from_y = event.getJSONArray("parameters").getInt(2);
-                JSONArray reinforcements = event.getJSONArray("parameters").getJSONArray(3);
+                team = event.getInt(0);
+                int from_x = event.getInt(1);
+                int from_y = event.getInt(2);
+                JSONArray reinforcements = event.getContent();
                 onCampaignReinforce(team, from_x, from_y, reinforcements);
                 break;
             case GameEvent.CAMPAIGN_MESSAGE:
-                JSONArray messages = event.getJSONArray("parameters").getJSONArray(0);
+                JSONArray messages = event.getContent();
                 onCampaignMessage(messages);
                 break;
             case GameEvent.CAMPAIGN_ATTACK:
-                target_x = event.getJSONArray("parameters").getInt(0);
-                target_y = event.getJSONArray("parameters").getInt(1);
-                attack_damage = event.getJSONArray("parameters").getInt(2);
+                target_x = event.getInt(0);
+                target_y = event.getInt(1);
+                attack_damage = event.getInt(2);
                 onCampaignAttack(target_x, target_y, attack_damage);
                 break;
             case GameEvent.CAMPAIGN_FOCUS:
-                target_x = event.getJSONArray("parameters").getInt(0);
-                target_y = event.getJSONArray("parameters").getInt(1);
+                target_x = event.getInt(0);
+                target_y = event.getInt(1);
                 getManager().fireMapFocusEvent(target_x, target_y, true);
                 break;
             case GameEvent.CAMPAIGN_CLEAR:
@@ -225,67 +222,67 @@ public class GameEventExecutor {
                 getManager().getAnimationDispatcher().submitMessageAnimation(Language.getText("LB_STAGE_FAIL"), 1.0f);
                 break;
             case GameEvent.CAMPAIGN_CRYSTAL_STEAL:
-                int map_x = event.getJSONArray("parameters").getInt(0);
-                int map_y = event.getJSONArray("parameters").getInt(1);
-                target_x = event.getJSONArray("parameters").getInt(2);
-                target_y = event.getJSONArray("parameters").getInt(3);
+                int map_x = event.getInt(0);
+                int map_y = event.getInt(1);
+                target_x = event.getInt(2);
+                target_y = event.getInt(3);
                 onCampaignCrystalSteal(map_x, map_y, target_x, target_y);
                 break;
             case GameEvent.CAMPAIGN_CREATE_UNIT:
-                index = event.getJSONArray("parameters").getInt(0);
-                team = event.getJSONArray("parameters").getInt(1);
-                map_x = event.getJSONArray("parameters").getInt(2);
-                map_y = event.getJSONArray("parameters").getInt(3);
+                index = event.getInt(0);
+                team = event.getInt(1);
+                map_x = event.getInt(2);
+                map_y = event.getInt(3);
                 onCampaignCreateUnit(index, team, map_x, map_y);
                 break;
             case GameEvent.CAMPAIGN_MOVE_UNIT:
-                unit_x = event.getJSONArray("parameters").getInt(0);
-                unit_y = event.getJSONArray("parameters").getInt(1);
-                target_x = event.getJSONArray("parameters").getInt(2);
-                target_y = event.getJSONArray("parameters").getInt(3);
+                unit_x = event.getInt(0);
+                unit_y = event.getInt(1);
+                target_x = event.getInt(2);
+                target_y = event.getInt(3);
                 onCampaignMoveUnit(unit_x, unit_y, target_x, target_y);
                 break;
             case GameEvent.CAMPAIGN_REMOVE_UNIT:
-                unit_x = event.getJSONArray("parameters").getInt(0);
-                unit_y = event.getJSONArray("parameters").getInt(1);
+                unit_x = event.getInt(0);
+                unit_y = event.getInt(1);
                 onCampaignRemoveUnit(unit_x, unit_y);
                 break;
             case GameEvent.CAMPAIGN_CHANGE_TEAM:
-                unit_x = event.getJSONArray("parameters").getInt(0);
-                unit_y = event.getJSONArray("parameters").getInt(1);
-                team = event.getJSONArray("parameters").getInt(2);
+                unit_x = event.getInt(0);
+                unit_y = event.getInt(1);
+                team = event.getInt(2);
                 onCampaignChangeTeam(unit_x, unit_y, team);
                 break;
             case GameEvent.CAMPAIGN_FLY_OVER:
-                index = event.getJSONArray("parameters").getInt(0);
-                team = event.getJSONArray("parameters").getInt(1);
-                int start_x = event.getJSONArray("parameters").getInt(2);
-                int start_y = event.getJSONArray("parameters").getInt(3);
-                target_x = event.getJSONArray("parameters").getInt(4);
-                target_y = event.getJSONArray("parameters").getInt(5);
+                index = event.getInt(0);
+                team = event.getInt(1);
+                int start_x = event.getInt(2);
+                int start_y = event.getInt(3);
+                target_x = event.getInt(4);
+                target_y = event.getInt(5);
                 onCampaignFlyOver(index, team, start_x, start_y, target_x, target_y);
                 break;
             case GameEvent.CAMPAIGN_CARRY_UNIT:
-                int carrier_x = event.getJSONArray("parameters").getInt(0);
-                int carrier_y = event.getJSONArray("parameters").getInt(1);
-                int target_index = event.getJSONArray("parameters").getInt(2);
-                int target_team = event.getJSONArray("parameters").getInt(3);
-                int dest_x = event.getJSONArray("parameters").getInt(4);
-                int dest_y = event.getJSONArray("parameters").getInt(5);
+                int carrier_x = event.getInt(0);
+                int carrier_y = event.getInt(1);
+                int target_index = event.getInt(2);
+                int target_team = event.getInt(3);
+                int dest_x = event.getInt(4);
+                int dest_y = event.getInt(5);
                 onCampaignCarryUnit(carrier_x, carrier_y, target_index, target_team, dest_x, dest_y);
                 break;
             case GameEvent.CAMPAIGN_SHOW_OBJECTIVES:
                 getManager().fireCampaignObjectiveRequestEvent();
                 break;
             case GameEvent.CAMPAIGN_HAVENS_FURY:
-                target_x = event.getJSONArray("parameters").getInt(0);
-                target_y = event.getJSONArray("parameters").getInt(1);
+                target_x = event.getInt(0);
+                target_y = event.getInt(1);
                 onCampaignHavensFury(target_x, target_y);
                 break;
             case GameEvent.CAMPAIGN_TILE_DESTROY:
-                target_x = event.getJSONArray("parameters").getInt(0);
-                target_y = event.getJSONArray("parameters").getInt(1);
-                short destroyed_index = (short) event.getJSONArray("parameters").getInt(2);
+                target_x = event.getInt(0);
+                target_y = event.getInt(1);
+                short destroyed_index = (short) event.getInt(2);
                 onCampaignTileDestroy(target_x, target_y, destroyed_index);
                 break;
             default:
@@ -394,15 +391,14 @@ public class GameEventExecutor {
         return getGame().canHeal(healer, target_x, target_y);
     }
 
-    private void onMove(int unit_x, int unit_y, int target_x, int target_y, int movement_point, JSONArray move_path)
-            throws JSONException, CheatingException {
+    private void onMove(int unit_x, int unit_y, int target_x, int target_y, int movement_point, GameEvent event)
+            throws CheatingException {
         if (canMove(unit_x, unit_y, target_x, target_y)) {
             getManager().fireMapFocusEvent(target_x, target_y, false);
 
             Array<Position> path = new Array<Position>();
-            for (int i = 0; i < move_path.length(); i++) {
-                JSONObject step = move_path.getJSONObject(i);
-                path.add(getGame().getMap().getPosition(step.getInt("x"), step.getInt("y")));
+            for (int i = 0; i < event.getDataLength(); i += 2) {
+                path.add(getGame().getMap().getPosition(event.getData(i), event.getData(i + 1)));
             }
 
             Unit unit = getGame().getMap().getUnit(unit_x, unit_y);
@@ -802,19 +798,19 @@ public class GameEventExecutor {
         }
     }
 
-    private void onHpChange(JSONArray changes) throws JSONException {
-        if (changes.length() > 0) {
+    private void onHpChange(GameEvent event) {
+        if (event.getDataLength() > 0) {
             ObjectMap<Position, Integer> change_map = new ObjectMap<Position, Integer>();
             ObjectSet<Unit> units = new ObjectSet<Unit>();
-            for (int i = 0; i < changes.length(); i++) {
-                JSONObject change = changes.getJSONObject(i);
-                int x = change.getInt("x");
-                int y = change.getInt("y");
+            for (int i = 0; i < event.getDataLength(); i += 3) {
+                int x = event.getData(i);
+                int y = event.getData(i + 1);
+                int change = event.getData(i + 2);
                 Position position = getGame().getMap().getPosition(x, y);
                 Unit target = getGame().getMap().getUnit(position);
                 if (target != null) {
-                    target.changeCurrentHp(change.getInt("change"));
-                    change_map.put(position, change.getInt("change"));
+                    target.changeCurrentHp(change);
+                    change_map.put(position, change);
                     units.add(target);
                 }
             }
@@ -0,0 +1,17 @@
+package net.toyknight.aeii.manager;
+
+/**
+ * Receives the game events executed by a manager that is not attached to the {@link net.toyknight.aeii.network.NetworkManager}.
+ *
+ * @author toyknight 10/17/2026.
+ */
+public interface GameEventListener {
+
+    void onGameEventExecuted(GameEvent event);
+
+    /**
+     * Called once the manager stops processing, which is when a network client submits its pending events.
+     */
+    void onGameEventSync(int manager_state);
+
+}
@@ -13,7 +13,6 @@ import net.toyknight.aeii.record.GameRecorder;
 import net.toyknight.aeii.robot.Robot;
 import net.toyknight.aeii.utils.UnitFactory;
 import net.toyknight.aeii.utils.UnitToolkit;
-import org.json.JSONObject;
 
 import java.util.LinkedList;
 
@@ -45,6 +44,7 @@ public class GameManager implements AnimationListener {
     private GameCore game;
     private UnitToolkit unit_toolkit;
     private GameManagerListener manager_listener;
+    private GameEventListener event_listener;
 
     private int state;
     protected Unit selected_unit;
@@ -91,6 +91,21 @@ public class GameManager implements AnimationListener {
         this.unit_toolkit = new UnitToolkit(game);
     }
 
+    /**
+     * Replaces the game with a newer copy of the same match, keeping what the robot planned for the turn. The
+     * manager state has to be synchronized afterwards.
+     */
+    public void updateGame(GameCore game) {
+        this.game = game;
+        this.state = STATE_SELECT;
+        this.selected_unit = null;
+        this.last_position = null;
+        getGameEventExecutor().reset();
+        getOperationExecutor().reset();
+        getPositionGenerator().reset();
+        this.unit_toolkit = new UnitToolkit(game);
+    }
+
     public GameCore getGame() {
         return game;
     }
@@ -135,6 +150,10 @@ public class GameManager implements AnimationListener {
         return manager_listener;
     }
 
+    public void setGameEventListener(GameEventListener listener) {
+        this.event_listener = listener;
+    }
+
     public void setState(int state) {
         if (state != this.state) {
             this.state = state;
@@ -166,10 +185,13 @@ public class GameManager implements AnimationListener {
         }
     }
 
-    public void onGameEventExecuted(JSONObject event) {
+    public void onGameEventExecuted(GameEvent event) {
         if (NetworkManager.isConnected()) {
             NetworkManager.submitGameEvent(event);
         }
+        if (event_listener != null) {
+            event_listener.onGameEventExecuted(event);
+        }
         getGameRecorder().submitGameEvent(event);
     }
 
@@ -529,6 +551,9 @@ public class GameManager implements AnimationListener {
     }
 
     public void syncGameEvent() {
+        if (event_listener != null) {
+            event_listener.onGameEventSync(getState());
+        }
         if (getContext() != null && NetworkManager.isConnected()) {
             getContext().submitAsyncTask(new GameEventSyncTask(getState()) {
                 @Override
@@ -2,11 +2,11 @@ package net.toyknight.aeii.manager;
 
 import static net.toyknight.aeii.entity.Rule.Entry.*;
 
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.IntArray;
 import com.badlogic.gdx.utils.ObjectSet;
 import net.toyknight.aeii.entity.*;
 import net.toyknight.aeii.utils.UnitToolkit;
-import org.json.JSONArray;
-import org.json.JSONObject;
 
 import java.util.LinkedList;
 import java.util.Queue;
@@ -66,10 +66,26 @@ public class OperationExecutor {
         }
     }
 
-    private void submitGameEvent(int type, Object... params) {
+    /**
+     * Moves the operations waiting here to the end of the queue of another executor.
+     */
+    public void transferOperations(OperationExecutor target) {
+        synchronized (OPERATION_LOCK) {
+            synchronized (target.OPERATION_LOCK) {
+                target.operation_queue.addAll(operation_queue);
+            }
+            operation_queue.clear();
+        }
+    }
+
+    private void submitGameEvent(int type, int... params) {
         getManager().getGameEventExecutor().submitGameEvent(type, params);
     }
 
+    private void submitGameEvent(GameEvent event) {
+        getManager().getGameEventExecutor().submitGameEvent(event);
+    }
+
     private void executeOperation(Operation operation) throws CheatingException {
         switch (operation.getType()) {
             case Operation.ACTION_FINISH:
@@ -199,7 +215,7 @@ public class OperationExecutor {
         Unit defender = getGame().getMap().getUnit(target_x, target_y);
         if (getGame().canAttack(attacker, target_x, target_y)) {
             if (defender == null) {
-                submitGameEvent(GameEvent.ATTACK, attacker_x, attacker_y, target_x, target_y, -1, false);
+                submitGameEvent(GameEvent.attack(attacker_x, attacker_y, target_x, target_y, -1, false));
                 submitGameEvent(GameEvent.TILE_DESTROY, target_x, target_y);
                 submitGameEvent(
                         GameEvent.GAIN_EXPERIENCE,
@@ -207,7 +223,7 @@ public class OperationExecutor {
                         getGame().getRule().getInteger(ATTACK_EXPERIENCE));
             } else {
                 int attack_damage = getManager().getUnitToolkit().getDamage(attacker, defender, true);
-                submitGameEvent(GameEvent.ATTACK, attacker_x, attacker_y, target_x, target_y, attack_damage, false);
+                submitGameEvent(GameEvent.attack(attacker_x, attacker_y, target_x, target_y, attack_damage, false));
                 if (attack_damage < defender.getCurrentHp()) {
                     submitGameEvent(
                             GameEvent.GAIN_EXPERIENCE,
@@ -233,7 +249,7 @@ public class OperationExecutor {
         Unit defender = getGame().getMap().getUnit(target_x, target_y);
         if (getGame().canCounter(attacker, defender)) {
             int counter_damage = getManager().getUnitToolkit().getDamage(defender, attacker, true);
-            submitGameEvent(GameEvent.ATTACK, target_x, target_y, attacker_x, attacker_y, counter_damage, true);
+            submitGameEvent(GameEvent.attack(target_x, target_y, attacker_x, attacker_y, counter_damage, true));
             if (counter_damage < attacker.getCurrentHp()) {
                 submitGameEvent(
                         GameEvent.GAIN_EXPERIENCE,
@@ -251,11 +267,22 @@ public class OperationExecutor {
 
     private void onNextTurn() {
         getManager().setState(GameManager.STATE_SELECT);
-        submitGameEvent(GameEvent.NEXT_TURN);
+        for (GameEvent event : createNextTurnEvents()) {
+            submitGameEvent(event);
+        }
+    }
+
+    /**
+     * @return the events ending the current turn: the next turn itself, the hp changes at the start of the
+     * next team's turn and the units they destroy
+     */
+    public Array<GameEvent> createNextTurnEvents() {
+        Array<GameEvent> events = new Array<GameEvent>();
+        events.add(GameEvent.create(GameEvent.NEXT_TURN));
         //calculate hp change at turn start
         int next_team = getGame().getNextTeam();
 
-        JSONArray hp_changes = new JSONArray();
+        IntArray hp_changes = new IntArray();
         ObjectSet<Unit> destroyed_units = new ObjectSet<Unit>();
 
         for (Unit unit : getGame().getMap().getUnits()) {
@@ -288,20 +315,17 @@ public class OperationExecutor {
                 }
             }
             if (change != 0) {
-                JSONObject hp_change = new JSONObject();
-                hp_change.put("x", unit.getX());
-                hp_change.put("y", unit.getY());
-                hp_change.put("change", change);
-                hp_changes.put(hp_change);
+                hp_changes.addAll(unit.getX(), unit.getY(), change);
                 if (unit.getCurrentHp() + change <= 0) {
                     destroyed_units.add(unit);
                 }
             }
         }
-        submitGameEvent(GameEvent.HP_CHANGE, hp_changes);
+        events.add(GameEvent.hpChange(hp_changes));
         for (Unit unit : destroyed_units) {
-            submitGameEvent(GameEvent.UNIT_DESTROY, unit.getX(), unit.getY(), -1);
+            events.add(GameEvent.create(GameEvent.UNIT_DESTROY, unit.getX(), unit.getY(), -1));
         }
+        return events;
     }
 
     private void onHeal(int healer_x, int healer_y, int target_x, int target_y) {
@@ -329,14 +353,8 @@ public class OperationExecutor {
         int movement_point = getManager().getPositionGenerator().getMovementPointRemains(unit, target_x, target_y);
 
         if (getGame().canUnitMove(unit, target_x, target_y) && movement_point >= 0) {
-            JSONArray move_path = new JSONArray();
-            for (Position position : getManager().getPositionGenerator().createMovePath(unit, target_x, target_y)) {
-                JSONObject step = new JSONObject();
-                step.put("x", position.x);
-                step.put("y", position.y);
-                move_path.put(step);
-            }
-            submitGameEvent(GameEvent.MOVE, unit_x, unit_y, target_x, target_y, movement_point, move_path);
+            Array<Position> move_path = getManager().getPositionGenerator().createMovePath(unit, target_x, target_y);
+            submitGameEvent(GameEvent.move(unit_x, unit_y, target_x, target_y, movement_point, move_path));
         }
     }
 
@@ -424,16 +442,12 @@ public class OperationExecutor {
             ObjectSet<Position> aura_positions =
                     getManager().getPositionGenerator().createPositionsWithinRange(unit_x, unit_y, 0, 2);
 
-            JSONArray hp_changes = new JSONArray();
+            IntArray hp_changes = new IntArray();
             ObjectSet<Unit> destroyed_units = new ObjectSet<Unit>();
 
             if (unit.getCurrentHp() > unit.getMaxHp()) {
                 int change = unit.getMaxHp() - unit.getCurrentHp();
-                JSONObject hp_change = new JSONObject();
-                hp_change.put("x", unit.getX());
-                hp_change.put("y", unit.getY());
-                hp_change.put("change", change);
-                hp_changes.put(hp_change);
+                hp_changes.addAll(unit.getX(), unit.getY(), change);
             }
 
             for (Position target_position : aura_positions) {
@@ -442,18 +456,14 @@ public class OperationExecutor {
                     int heal = UnitToolkit.getRefresherHeal(unit, target);
                     int change = UnitToolkit.validateHpChange(target, heal);
                     if (change != 0) {
-                        JSONObject hp_change = new JSONObject();
-                        hp_change.put("x", target.getX());
-                        hp_change.put("y", target.getY());
-                        hp_change.put("change", change);
-                        hp_changes.put(hp_change);
+                        hp_changes.addAll(target.getX(), target.getY(), change);
                         if (target.getCurrentHp() + change <= 0) {
                             destroyed_units.add(target);
                         }
                     }
                 }
             }
-            submitGameEvent(GameEvent.HP_CHANGE, hp_changes);
+            submitGameEvent(GameEvent.hpChange(hp_changes));
             for (Unit destroyed_unit : destroyed_units) {
                 submitGameEvent(GameEvent.UNIT_DESTROY, destroyed_unit.getX(), destroyed_unit.getY(), unit.getTeam());
             }
@@ -4,6 +4,7 @@ import com.badlogic.gdx.utils.Array;
 import net.toyknight.aeii.entity.GameCore;
 import net.toyknight.aeii.entity.Player;
 import net.toyknight.aeii.entity.Rule;
+import net.toyknight.aeii.network.NetworkConstants;
 import net.toyknight.aeii.network.NetworkManager;
 import net.toyknight.aeii.network.entity.PlayerSnapshot;
 import net.toyknight.aeii.network.entity.RoomSetting;
@@ -135,7 +136,7 @@ public class RoomManager {
                     }
                     break;
                 case Player.ROBOT:
-                    allocation[team] = NetworkManager.getServiceID();
+                    allocation[team] = NetworkConstants.SERVER_ROBOT;
                     break;
                 default:
                     //do nothing
@@ -182,6 +183,11 @@ public class RoomManager {
     }
 
     public void onPlayerJoin(int id, String username) {
+        for (PlayerSnapshot player : getPlayers()) {
+            if (player.id == id) {
+                return;
+            }
+        }
         PlayerSnapshot snapshot = new PlayerSnapshot(id, username, false);
         getPlayers().add(snapshot);
     }
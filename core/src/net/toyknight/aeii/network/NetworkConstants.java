@@ -21,6 +21,11 @@ public class NetworkConstants {
     public static final int UPLOAD_MAP = 0x92;
     public static final int DOWNLOAD_MAP = 0x93;
     public static final int LIST_IDLE_PLAYERS = 0x94;
+    public static final int LOBBY_SUBSCRIBE = 0x95;
+    public static final int RESUME_SESSION = 0x96;
+    public static final int SPECTATE_ROOM = 0x97;
+    public static final int LIST_RECORDS = 0x98;
+    public static final int DOWNLOAD_RECORD = 0x99;
 
     //Notifications
     public static final int PLAYER_JOINING = 0x10;
@@ -29,16 +34,33 @@ public class NetworkConstants {
     public static final int GAME_STARTING = 0x13;
     public static final int GAME_EVENT = 0x14;
     public static final int MESSAGE = 0x15;
+    public static final int LOBBY_UPDATE = 0x16;
+    public static final int GAME_SNAPSHOT = 0x17;
+    public static final int ROOM_CLOSED = 0x18;
 
     //Admin operations
     public static final int GLOBAL_MESSAGE = 0x100;
     public static final int DELETE_MAP = 0x101;
     public static final int UPDATE_MAP = 0x102;
+    public static final int METRICS = 0x103;
+
+    //Protocols
+    public static final int PROTOCOL_JSON = 0x0;
+    public static final int PROTOCOL_BINARY = 0x1;
+
+    //Compressions
+    public static final int COMPRESSION_NONE = 0x0;
+    public static final int COMPRESSION_DEFLATE = 0x1;
 
     //Response codes
     public static final int CODE_NETWORK_ERROR = -1;
     public static final int CODE_SERVER_ERROR = 0x0;
     public static final int CODE_OK = 0x1;
+    public static final int CODE_SERVER_BUSY = 0x2;
+    public static final int CODE_REDIRECT = 0x3;
     public static final int CODE_MAP_EXISTING = 0x10;
 
+    //Allocation of a team played by a robot on the server
+    public static final int SERVER_ROBOT = -10;
+
 }
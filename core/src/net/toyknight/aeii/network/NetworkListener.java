@@ -1,6 +1,8 @@
 package net.toyknight.aeii.network;
 
-import org.json.JSONObject;
+import net.toyknight.aeii.manager.GameEvent;
+import net.toyknight.aeii.network.entity.LobbyUpdate;
+import net.toyknight.aeii.network.entity.RoomSetting;
 
 /**
  * @author toyknight 8/25/2015.
@@ -17,8 +19,20 @@ public interface NetworkListener {
 
     void onGameStart();
 
-    void onReceiveGameEvent(JSONObject event);
+    void onReceiveGameEvent(GameEvent event);
+
+    /**
+     * Called after reconnecting when the missed events are no longer available and the whole game was sent.
+     */
+    void onGameResync(RoomSetting setting);
 
     void onReceiveMessage(String username, String message);
 
+    /**
+     * Called when the server closes the room the player is in, the player is back in the lobby.
+     */
+    void onRoomClosed();
+
+    void onLobbyUpdate(LobbyUpdate update);
+
 }
@@ -2,6 +2,7 @@ package net.toyknight.aeii.network;
 
 import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.Base64Coder;
 import com.esotericsoftware.kryonet.Client;
 import com.esotericsoftware.kryonet.Connection;
 import com.esotericsoftware.kryonet.Listener;
@@ -10,15 +11,31 @@ import net.toyknight.aeii.GameContext;
 import net.toyknight.aeii.entity.GameCore;
 import net.toyknight.aeii.entity.Map;
 import net.toyknight.aeii.manager.GameEvent;
+import net.toyknight.aeii.network.entity.LobbyUpdate;
 import net.toyknight.aeii.network.entity.MapSnapshot;
 import net.toyknight.aeii.network.entity.PlayerSnapshot;
+import net.toyknight.aeii.network.entity.RecordSnapshot;
+import net.toyknight.aeii.network.entity.RoomListUpdate;
 import net.toyknight.aeii.network.entity.RoomSetting;
 import net.toyknight.aeii.network.entity.RoomSnapshot;
+import net.toyknight.aeii.network.protocol.BinaryPacket;
+import net.toyknight.aeii.network.protocol.ChunkAssembler;
+import net.toyknight.aeii.network.protocol.CompressedPacket;
+import net.toyknight.aeii.network.protocol.EncodedObject;
+import net.toyknight.aeii.network.protocol.PacketBundle;
+import net.toyknight.aeii.network.protocol.PacketChunk;
+import net.toyknight.aeii.network.protocol.PacketCompressor;
+import net.toyknight.aeii.network.protocol.PacketEntities;
+import net.toyknight.aeii.network.protocol.PacketRegistry;
+import net.toyknight.aeii.record.GameRecord;
+import net.toyknight.aeii.record.GameRecordCodec;
+import net.toyknight.aeii.record.GameRecordPlayer;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.io.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * @author toyknight 8/25/2015.
@@ -27,6 +44,14 @@ public class NetworkManager {
 
     public static final String TAG = "Network";
 
+    public static final long RESUME_TIMEOUT = 60 * 1000;
+
+    public static final long RESUME_RETRY_DELAY = 3 * 1000;
+
+    public static final int BUFFER_SIZE = 90 * 1024;
+
+    private static final long CHUNK_PACING_INTERVAL = 10;
+
     private static NetworkListener listener;
 
     private static Client client;
@@ -39,6 +64,36 @@ public class NetworkManager {
 
     private static int service_id;
 
+    private static int protocol = NetworkConstants.PROTOCOL_JSON;
+
+    private static PacketCompressor compressor;
+
+    //whether the server takes compressed packets
+    private static boolean compression;
+
+    private static final AtomicInteger next_transfer_id = new AtomicInteger(0);
+
+    //the server takes one transfer at a time, so the chunks of two transfers are never interleaved
+    private static final Object TRANSFER_LOCK = new Object();
+
+    private static ServerConfiguration server;
+
+    private static ServerConfiguration lobby_server;
+
+    private static String handoff_ticket;
+
+    private static String username;
+
+    private static String v_string;
+
+    private static String session_token;
+
+    private static volatile long last_sequence;
+
+    private static volatile boolean in_game;
+
+    private static volatile boolean resuming;
+
     private NetworkManager() {
     }
 
@@ -56,11 +111,36 @@ public class NetworkManager {
 
     public static boolean connect(ServerConfiguration server, String username, String v_string)
             throws AEIIException, IOException, JSONException {
-        client = new Client(90 * 1024, 90 * 1024);
+        NetworkManager.server = server;
+        NetworkManager.lobby_server = server;
+        NetworkManager.handoff_ticket = null;
+        return open(server, username, v_string);
+    }
+
+    private static boolean open(ServerConfiguration server, String username, String v_string)
+            throws AEIIException, IOException, JSONException {
+        if (username != null && v_string != null) {
+            NetworkManager.username = username;
+            NetworkManager.v_string = v_string;
+        }
+        client = new Client(BUFFER_SIZE, BUFFER_SIZE);
+        PacketRegistry.register(client.getKryo());
+        protocol = NetworkConstants.PROTOCOL_JSON;
+        compression = false;
+        final PacketCompressor connection_compressor = new PacketCompressor();
+        final ChunkAssembler connection_assembler = new ChunkAssembler();
+        compressor = connection_compressor;
         client.addListener(new Listener() {
             @Override
             public void disconnected(Connection connection) {
-                if (listener != null) {
+                connection_compressor.dispose();
+                //connections replaced while resuming the session are not reported
+                if (connection != client || resuming) {
+                    return;
+                }
+                if (in_game && session_token != null) {
+                    resumeSession();
+                } else if (listener != null) {
                     synchronized (GameContext.RENDER_LOCK) {
                         listener.onDisconnect();
                     }
@@ -69,6 +149,20 @@ public class NetworkManager {
 
             @Override
             public void received(Connection connection, Object object) {
+                try {
+                    if (object instanceof PacketChunk) {
+                        object = connection_assembler.receive((PacketChunk) object);
+                        if (object == null) {
+                            return;
+                        }
+                    }
+                    if (object instanceof CompressedPacket) {
+                        object = connection_compressor.decompress((CompressedPacket) object);
+                    }
+                } catch (JSONException ex) {
+                    Gdx.app.log(TAG, "While receiving packet [" + ex.toString() + "]");
+                    return;
+                }
                 onReceive(object);
             }
         });
@@ -82,6 +176,8 @@ public class NetworkManager {
     }
 
     public static void disconnect() {
+        in_game = false;
+        lobby_server = null;
         if (isConnected()) {
             client.close();
         }
@@ -96,20 +192,101 @@ public class NetworkManager {
         return client != null && client.isConnected();
     }
 
+    /**
+     * Connects again in the background after the connection was lost during a game and takes the slot back
+     * with the session token. The server sends the events executed after {@link #last_sequence}, or the
+     * whole game if it no longer has all of them. The listener is told about the disconnection only if the
+     * session cannot be resumed in time.
+     */
+    private static void resumeSession() {
+        resuming = true;
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                long deadline = System.currentTimeMillis() + RESUME_TIMEOUT;
+                boolean resumed = false;
+                while (!resumed && in_game && System.currentTimeMillis() < deadline) {
+                    //stop the lost or the rejected connection before trying a new one
+                    client.stop();
+                    try {
+                        Thread.sleep(RESUME_RETRY_DELAY);
+                        resumed = tryResumeSession();
+                    } catch (InterruptedException ex) {
+                        break;
+                    } catch (Exception ex) {
+                        Gdx.app.log(TAG, "While resuming session [" + ex.toString() + "]");
+                    }
+                }
+                if (!resumed) {
+                    client.stop();
+                }
+                resuming = false;
+                if (!resumed && in_game) {
+                    in_game = false;
+                    if (listener != null) {
+                        synchronized (GameContext.RENDER_LOCK) {
+                            listener.onDisconnect();
+                        }
+                    }
+                }
+            }
+        }, "session-resume");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private static boolean tryResumeSession() throws AEIIException, IOException, JSONException {
+        String previous_token = session_token;
+        if (open(server, username, v_string)) {
+            JSONObject request = createRequest(NetworkConstants.RESUME_SESSION);
+            request.put("session_token", previous_token);
+            request.put("sequence", last_sequence);
+            JSONObject response = sendRequest(request);
+            if (response != null && response.getBoolean("approved")) {
+                return true;
+            }
+        }
+        //the slot is still reserved for the token of the lost connection
+        session_token = previous_token;
+        return false;
+    }
+
+    /**
+     * Applies what was missed while the connection was lost. It runs on the receiving thread, before any
+     * notification that came after the response.
+     */
+    private static void onSessionResumed(JSONObject response) throws JSONException {
+        if (response.has("events")) {
+            JSONArray events = response.getJSONArray("events");
+            for (int i = 0; i < events.length(); i++) {
+                GameEvent event = PacketEntities.getGameEvent(events, i);
+                last_sequence++;
+                if (listener != null) {
+                    synchronized (GameContext.RENDER_LOCK) {
+                        listener.onReceiveGameEvent(event);
+                    }
+                }
+            }
+        } else {
+            RoomSetting setting = new RoomSetting(response.getJSONObject("room_setting"));
+            last_sequence = setting.sequence;
+            if (listener != null) {
+                synchronized (GameContext.RENDER_LOCK) {
+                    listener.onGameResync(setting);
+                }
+            }
+        }
+    }
+
     public static void onReceive(Object object) {
         try {
             if (object instanceof String) {
-                JSONObject packet = new JSONObject((String) object);
-                switch (packet.getInt("type")) {
-                    case NetworkConstants.RESPONSE:
-                        synchronized (RESPONSE_LOCK) {
-                            response = packet;
-                            RESPONSE_LOCK.notifyAll();
-                        }
-                        break;
-                    case NetworkConstants.NOTIFICATION:
-                        onReceiveNotification(packet);
-                        break;
+                onReceivePacket(new JSONObject((String) object));
+            } else if (object instanceof BinaryPacket) {
+                onReceivePacket(((BinaryPacket) object).toJson());
+            } else if (object instanceof PacketBundle) {
+                for (BinaryPacket packet : ((PacketBundle) object).getPackets()) {
+                    onReceivePacket(packet.toJson());
                 }
             }
         } catch (JSONException ex) {
@@ -117,6 +294,23 @@ public class NetworkManager {
         }
     }
 
+    private static void onReceivePacket(JSONObject packet) throws JSONException {
+        switch (packet.getInt("type")) {
+            case NetworkConstants.RESPONSE:
+                if (packet.optInt("operation", -1) == NetworkConstants.RESUME_SESSION && packet.getBoolean("approved")) {
+                    onSessionResumed(packet);
+                }
+                synchronized (RESPONSE_LOCK) {
+                    response = packet;
+                    RESPONSE_LOCK.notifyAll();
+                }
+                break;
+            case NetworkConstants.NOTIFICATION:
+                onReceiveNotification(packet);
+                break;
+        }
+    }
+
     public static void onReceiveNotification(JSONObject notification) throws JSONException {
         switch (notification.getInt("operation")) {
             case NetworkConstants.PLAYER_JOINING:
@@ -154,6 +348,7 @@ public class NetworkManager {
                 }
                 break;
             case NetworkConstants.GAME_STARTING:
+                in_game = true;
                 if (listener != null) {
                     synchronized (GameContext.RENDER_LOCK) {
                         listener.onGameStart();
@@ -161,14 +356,23 @@ public class NetworkManager {
                 }
                 break;
             case NetworkConstants.GAME_EVENT:
-                JSONObject event = notification.getJSONObject("game_event");
-                event.put("remote", true);
+                GameEvent event = PacketEntities.getGameEvent(notification, "game_event");
+                last_sequence = notification.optLong("sequence", last_sequence);
                 if (listener != null) {
                     synchronized (GameContext.RENDER_LOCK) {
                         listener.onReceiveGameEvent(event);
                     }
                 }
                 break;
+            case NetworkConstants.GAME_SNAPSHOT:
+                RoomSetting setting = new RoomSetting(notification.getJSONObject("room_setting"));
+                last_sequence = setting.sequence;
+                if (listener != null) {
+                    synchronized (GameContext.RENDER_LOCK) {
+                        listener.onGameResync(setting);
+                    }
+                }
+                break;
             case NetworkConstants.MESSAGE:
                 username = notification.getString("username");
                 String message = notification.getString("message");
@@ -178,14 +382,119 @@ public class NetworkManager {
                     }
                 }
                 break;
+            case NetworkConstants.ROOM_CLOSED:
+                in_game = false;
+                if (listener != null) {
+                    synchronized (GameContext.RENDER_LOCK) {
+                        listener.onRoomClosed();
+                    }
+                }
+                break;
+            case NetworkConstants.LOBBY_UPDATE:
+                LobbyUpdate update = new LobbyUpdate(notification);
+                if (listener != null) {
+                    synchronized (GameContext.RENDER_LOCK) {
+                        listener.onLobbyUpdate(update);
+                    }
+                }
+                break;
             default:
                 //do nothing
         }
     }
 
+    private static Object encode(JSONObject packet) throws JSONException {
+        if (protocol == NetworkConstants.PROTOCOL_BINARY) {
+            BinaryPacket binary_packet = BinaryPacket.create(packet);
+            if (compression && compressor.isCompressible(binary_packet.size())) {
+                CompressedPacket compressed = compressor.compress(binary_packet);
+                if (compressed != null) {
+                    return compressed;
+                }
+            }
+            return binary_packet;
+        } else {
+            String content = packet.toString();
+            if (compression && compressor.isCompressible(content.length())) {
+                CompressedPacket compressed = compressor.compress(content);
+                if (compressed != null) {
+                    return compressed;
+                }
+            }
+            return content;
+        }
+    }
+
     private static JSONObject sendRequest(JSONObject request) throws JSONException {
+        JSONObject response = doSendRequest(request);
+        if (response != null && response.optInt("code", NetworkConstants.CODE_OK) == NetworkConstants.CODE_REDIRECT) {
+            //the room is hosted by a shard of the server, the request is sent there again
+            return handOff(response) ? doSendRequest(request) : null;
+        }
+        return response;
+    }
+
+    /**
+     * Moves to the shard the server sent the player to, with the ticket that stands for the authentication.
+     * The lobby connection is closed quietly once it is replaced.
+     */
+    private static boolean handOff(JSONObject redirect) throws JSONException {
+        Client previous = client;
+        ServerConfiguration previous_server = server;
+        int previous_protocol = protocol;
+        server = new ServerConfiguration(redirect.getString("address"), redirect.getInt("port"), server.getName());
+        handoff_ticket = redirect.getString("ticket");
+        try {
+            if (open(server, username, v_string)) {
+                previous.close();
+                return true;
+            }
+        } catch (AEIIException ex) {
+            Gdx.app.log(TAG, "While handing off [" + ex.toString() + "]");
+        } catch (IOException ex) {
+            Gdx.app.log(TAG, "While handing off [" + ex.toString() + "]");
+        }
+        //stay in the lobby, the failed connection is closed quietly once it is replaced
+        Client failed = client;
+        client = previous;
+        server = previous_server;
+        protocol = previous_protocol;
+        handoff_ticket = null;
+        failed.stop();
+        return false;
+    }
+
+    /**
+     * Goes back to the lobby server after leaving a room hosted by one of its shards.
+     */
+    private static void returnToLobby() {
+        if (lobby_server != null && server != lobby_server) {
+            Client previous = client;
+            server = lobby_server;
+            handoff_ticket = null;
+            try {
+                if (open(lobby_server, username, v_string)) {
+                    previous.close();
+                    return;
+                }
+            } catch (Exception ex) {
+                Gdx.app.log(TAG, "While returning to lobby [" + ex.toString() + "]");
+            }
+            Client failed = client;
+            client = null;
+            failed.stop();
+            previous.close();
+            if (listener != null) {
+                synchronized (GameContext.RENDER_LOCK) {
+                    listener.onDisconnect();
+                }
+            }
+        }
+    }
+
+    private static JSONObject doSendRequest(JSONObject request) throws JSONException {
         response = null;
-        client.sendTCP(request.toString());
+        send(encode(request));
         synchronized (RESPONSE_LOCK) {
             if (response == null) {
                 try {
@@ -194,17 +503,50 @@ public class NetworkManager {
                 }
             }
         }
+        if (response != null && response.optInt("code", NetworkConstants.CODE_OK) == NetworkConstants.CODE_SERVER_BUSY) {
+            //the server is overloaded and turned the request down, same as a timeout for the caller
+            return null;
+        }
         return isConnected() ? response : null;
     }
 
     private static void sendNotification(JSONObject notification) throws JSONException {
-        client.sendTCP(notification.toString());
+        send(encode(notification));
+    }
+
+    /**
+     * Sends the packet, in chunks paced by the write buffer if it is too large to be sent at once.
+     */
+    private static void send(Object packet) {
+        Client client = NetworkManager.client;
+        if (PacketChunk.isOversized(packet)) {
+            synchronized (TRANSFER_LOCK) {
+                for (PacketChunk chunk : PacketChunk.split(packet, next_transfer_id.getAndIncrement())) {
+                    while (client.isConnected() && client.getTcpWriteBufferSize() > BUFFER_SIZE / 2) {
+                        try {
+                            Thread.sleep(CHUNK_PACING_INTERVAL);
+                        } catch (InterruptedException ex) {
+                            Thread.currentThread().interrupt();
+                            return;
+                        }
+                    }
+                    client.sendTCP(chunk);
+                }
+            }
+        } else {
+            client.sendTCP(packet);
+        }
     }
 
     public static boolean requestAuthentication(String username, String v_string) throws JSONException, AEIIException {
         JSONObject request = createRequest(NetworkConstants.AUTHENTICATION);
         request.put("username", username);
         request.put("v_string", v_string);
+        request.put("protocol", NetworkConstants.PROTOCOL_BINARY);
+        request.put("compression", NetworkConstants.COMPRESSION_DEFLATE);
+        if (handoff_ticket != null) {
+            request.put("ticket", handoff_ticket);
+        }
         JSONObject response = sendRequest(request);
         if (response == null) {
             throw new AEIIException("Connection timeout");
@@ -212,6 +554,10 @@ public class NetworkManager {
             boolean approved = response.getBoolean("approved");
             if (approved) {
                 service_id = response.getInt("service_id");
+                session_token = response.optString("session_token", null);
+                protocol = response.has("protocol") ? response.getInt("protocol") : NetworkConstants.PROTOCOL_JSON;
+                compression = response.optInt("compression", NetworkConstants.COMPRESSION_NONE)
+                        == NetworkConstants.COMPRESSION_DEFLATE;
             }
             return approved;
         }
@@ -231,6 +577,27 @@ public class NetworkManager {
         }
     }
 
+    public static RoomListUpdate requestRoomListUpdate(long since) throws JSONException, AEIIException {
+        JSONObject request = createRequest(NetworkConstants.LIST_ROOMS);
+        request.put("since", since);
+        JSONObject response = sendRequest(request);
+        if (response == null) {
+            throw new AEIIException("Connection timeout");
+        } else {
+            return new RoomListUpdate(response);
+        }
+    }
+
+    public static RoomListUpdate requestLobbySubscription() throws JSONException, AEIIException {
+        JSONObject request = createRequest(NetworkConstants.LOBBY_SUBSCRIBE);
+        JSONObject response = sendRequest(request);
+        if (response == null) {
+            throw new AEIIException("Connection timeout");
+        } else {
+            return new RoomListUpdate(response);
+        }
+    }
+
     public static Array<PlayerSnapshot> requestIdlePlayerList() throws JSONException, AEIIException {
         JSONObject request = createRequest(NetworkConstants.LIST_IDLE_PLAYERS);
         JSONObject response = sendRequest(request);
@@ -251,7 +618,7 @@ public class NetworkManager {
         JSONObject request = createRequest(NetworkConstants.CREATE_ROOM);
         request.put("new_game", true);
         request.put("map_name", map_name);
-        request.put("map", map.toJson());
+        request.put("map", new EncodedObject(map));
         request.put("player_capacity", player_capacity);
         request.put("unit_capacity", unit_capacity);
         request.put("start_gold", start_gold);
@@ -263,7 +630,7 @@ public class NetworkManager {
             return null;
         } else {
             if (response.getBoolean("approved")) {
-                return new RoomSetting(response.getJSONObject("room_setting"));
+                return onRoomEntered(new RoomSetting(response.getJSONObject("room_setting")));
             } else {
                 return null;
             }
@@ -276,7 +643,7 @@ public class NetworkManager {
         int player_count = game.getMap().getPlayerCount();
         String save_name = String.format("(%d) saved game", player_count);
         request.put("new_game", false);
-        request.put("game", game.toJson());
+        request.put("game", new EncodedObject(game));
         request.put("save_name", save_name);
         request.put("player_capacity", player_capacity);
         if (password.length() > 0) {
@@ -287,7 +654,7 @@ public class NetworkManager {
             return null;
         } else {
             if (response.getBoolean("approved")) {
-                return new RoomSetting(response.getJSONObject("room_setting"));
+                return onRoomEntered(new RoomSetting(response.getJSONObject("room_setting")));
             } else {
                 return null;
             }
@@ -303,17 +670,40 @@ public class NetworkManager {
             return null;
         } else {
             if (response.getBoolean("approved")) {
-                return new RoomSetting(response.getJSONObject("room_setting"));
+                return onRoomEntered(new RoomSetting(response.getJSONObject("room_setting")));
             } else {
                 return null;
             }
         }
     }
 
+    /**
+     * Asks to watch the room. The game arrives afterwards through {@link NetworkListener#onGameResync(RoomSetting)}.
+     */
+    public static boolean requestSpectateRoom(long room_number, String password) throws JSONException {
+        JSONObject request = createRequest(NetworkConstants.SPECTATE_ROOM);
+        request.put("room_id", room_number);
+        if (password.length() > 0) {
+            request.put("password", password);
+        }
+        JSONObject response = sendRequest(request);
+        return response != null && response.getBoolean("approved");
+    }
+
+    private static RoomSetting onRoomEntered(RoomSetting setting) {
+        in_game = setting.started;
+        last_sequence = setting.sequence;
+        return setting;
+    }
+
     public static boolean requestStartGame() throws JSONException {
         JSONObject request = createRequest(NetworkConstants.START_GAME);
         JSONObject response = sendRequest(request);
-        return response != null && response.getBoolean("approved");
+        boolean approved = response != null && response.getBoolean("approved");
+        if (approved) {
+            in_game = true;
+        }
+        return approved;
     }
 
     public static Array<MapSnapshot> requestMapList(String author, boolean symmetric) throws JSONException {
@@ -344,7 +734,50 @@ public class NetworkManager {
             return null;
         } else {
             if (response.getBoolean("approved")) {
-                return new Map(response.getJSONObject("map"));
+                return PacketEntities.getMap(response, "map");
+            } else {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * @param username the player whose matches are listed, or null to list the latest matches
+     */
+    public static Array<RecordSnapshot> requestRecordList(String username) throws JSONException {
+        JSONObject request = createRequest(NetworkConstants.LIST_RECORDS);
+        if (username != null) {
+            request.put("username", username);
+        }
+        JSONObject response = sendRequest(request);
+        if (response == null) {
+            return null;
+        } else {
+            JSONArray json_list = response.getJSONArray("records");
+            Array<RecordSnapshot> record_list = new Array<RecordSnapshot>();
+            for (int i = 0; i < json_list.length(); i++) {
+                record_list.add(new RecordSnapshot(json_list.getJSONObject(i)));
+            }
+            return record_list;
+        }
+    }
+
+    /**
+     * Downloads the record of a finished match, which is played back with a {@link GameRecordPlayer}.
+     */
+    public static GameRecord requestDownloadRecord(long room_id) throws JSONException {
+        JSONObject request = createRequest(NetworkConstants.DOWNLOAD_RECORD);
+        request.put("room_id", room_id);
+        JSONObject response = sendRequest(request);
+        if (!in_game) {
+            //the record may be kept by a shard the request was handed off to
+            returnToLobby();
+        }
+        if (response == null) {
+            return null;
+        } else {
+            if (response.getBoolean("approved")) {
+                return GameRecordCodec.decode(Base64Coder.decode(response.getString("record")));
             } else {
                 return null;
             }
@@ -353,15 +786,17 @@ public class NetworkManager {
 
     public static int requestUploadMap(Map map, String map_name) throws JSONException {
         JSONObject request = createRequest(NetworkConstants.UPLOAD_MAP);
-        request.put("map", map.toJson());
+        request.put("map", new EncodedObject(map));
         request.put("map_name", map_name);
         JSONObject response = sendRequest(request);
         return response == null ? NetworkConstants.CODE_NETWORK_ERROR : response.getInt("code");
     }
 
     public static void notifyLeaveRoom() throws JSONException {
+        in_game = false;
         JSONObject notification = createNotification(NetworkConstants.PLAYER_LEAVING);
         sendNotification(notification);
+        returnToLobby();
     }
 
     public static void notifyAllocationUpdate(int[] alliance, int[] allocation, int[] types) throws JSONException {
@@ -384,20 +819,23 @@ public class NetworkManager {
         event_queue = new JSONArray();
     }
 
-    public static void submitGameEvent(JSONObject event) {
-        boolean remote = event.has("remote") && event.getBoolean("remote");
-        if (!remote) {
-            event_queue.put(event);
+    public static void submitGameEvent(GameEvent event) {
+        if (!event.isRemote()) {
+            event_queue.put(new EncodedObject(event));
         }
     }
 
+    /**
+     * While the session is being resumed the events stay queued and are sent with the next sync.
+     */
     public static void syncGameEvent(int manager_state) {
-        if (event_queue.length() > 0) {
-            JSONObject state_sync_event = GameEvent.create(GameEvent.MANAGER_STATE_SYNC, manager_state);
-            event_queue.put(state_sync_event);
+        if (event_queue.length() > 0 && isConnected() && !resuming) {
+            event_queue.put(new EncodedObject(GameEvent.create(GameEvent.MANAGER_STATE_SYNC, manager_state)));
             JSONObject notification = createNotification(NetworkConstants.GAME_EVENT);
             notification.put("events", event_queue);
             sendNotification(notification);
+            //the server numbers the events of the current player right after the ones already received
+            last_sequence += event_queue.length();
             event_queue = new JSONArray();
         }
     }
@@ -0,0 +1,56 @@
+package net.toyknight.aeii.network.entity;
+
+import com.badlogic.gdx.utils.Array;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * @author toyknight 10/17/2026.
+ */
+public class LobbyUpdate extends RoomListUpdate {
+
+    public long since;
+
+    public Array<PlayerSnapshot> joined_players;
+
+    public Array<Integer> left_players;
+
+    public LobbyUpdate(JSONObject json) throws JSONException {
+        super(json);
+        since = json.getLong("since");
+        joined_players = new Array<PlayerSnapshot>();
+        JSONArray joined = json.getJSONArray("players_joined");
+        for (int i = 0; i < joined.length(); i++) {
+            joined_players.add(new PlayerSnapshot(joined.getJSONObject(i)));
+        }
+        left_players = new Array<Integer>();
+        JSONArray left = json.getJSONArray("players_left");
+        for (int i = 0; i < left.length(); i++) {
+            left_players.add(left.getInt(i));
+        }
+    }
+
+    /**
+     * Applies the players who entered or left the lobby to a player list received earlier.
+     */
+    public void applyPlayers(Array<PlayerSnapshot> players) {
+        for (int i = players.size - 1; i >= 0; i--) {
+            int id = players.get(i).id;
+            if (left_players.contains(id, false) || contains(joined_players, id)) {
+                players.removeIndex(i);
+            }
+        }
+        players.addAll(joined_players);
+    }
+
+    private boolean contains(Array<PlayerSnapshot> players, int id) {
+        for (PlayerSnapshot player : players) {
+            if (player.id == id) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+}
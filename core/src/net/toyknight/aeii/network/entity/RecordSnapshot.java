@@ -0,0 +1,93 @@
+package net.toyknight.aeii.network.entity;
+
+import net.toyknight.aeii.Serializable;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * A match archived by the server, as listed by LIST_RECORDS.
+ *
+ * @author toyknight 10/17/2026.
+ */
+public class RecordSnapshot implements Serializable {
+
+    private final long room_id;
+    private final String room_name;
+    private final String map_name;
+    private final String[] players;
+    private final long start_time;
+    private final long end_time;
+    private final boolean complete;
+
+    public RecordSnapshot(JSONObject json) throws JSONException {
+        this.room_id = json.getLong("room_id");
+        this.room_name = json.getString("room_name");
+        this.map_name = json.optString("map_name", "");
+        JSONArray players = json.getJSONArray("players");
+        this.players = new String[players.length()];
+        for (int team = 0; team < players.length(); team++) {
+            this.players[team] = players.getString(team);
+        }
+        this.start_time = json.getLong("start_time");
+        this.end_time = json.getLong("end_time");
+        this.complete = json.getBoolean("complete");
+    }
+
+    public long getRoomID() {
+        return room_id;
+    }
+
+    public String getRoomName() {
+        return room_name;
+    }
+
+    public String getMapName() {
+        return map_name;
+    }
+
+    /**
+     * @return the username of the team's player, empty if nobody played the team
+     */
+    public String getPlayer(int team) {
+        return players[team];
+    }
+
+    public long getStartTime() {
+        return start_time;
+    }
+
+    public long getEndTime() {
+        return end_time;
+    }
+
+    /**
+     * @return whether the match was played to the end
+     */
+    public boolean isComplete() {
+        return complete;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("[%d] %s (%s)", getRoomID(), getRoomName(), getMapName());
+    }
+
+    @Override
+    public JSONObject toJson() throws JSONException {
+        JSONObject json = new JSONObject();
+        json.put("room_id", room_id);
+        json.put("room_name", room_name);
+        json.put("map_name", map_name);
+        JSONArray players = new JSONArray();
+        for (String player : this.players) {
+            players.put(player);
+        }
+        json.put("players", players);
+        json.put("start_time", start_time);
+        json.put("end_time", end_time);
+        json.put("complete", complete);
+        return json;
+    }
+
+}
@@ -0,0 +1,63 @@
+package net.toyknight.aeii.network.entity;
+
+import com.badlogic.gdx.utils.Array;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * @author toyknight 10/17/2026.
+ */
+public class RoomListUpdate {
+
+    public long version;
+
+    public boolean delta;
+
+    public Array<RoomSnapshot> rooms;
+
+    public Array<Long> removed;
+
+    public RoomListUpdate(JSONObject json) throws JSONException {
+        version = json.has("version") ? json.getLong("version") : -1;
+        delta = json.has("delta") && json.getBoolean("delta");
+        rooms = new Array<RoomSnapshot>();
+        JSONArray rooms = json.getJSONArray("rooms");
+        for (int i = 0; i < rooms.length(); i++) {
+            this.rooms.add(new RoomSnapshot(rooms.getJSONObject(i)));
+        }
+        removed = new Array<Long>();
+        if (json.has("removed")) {
+            JSONArray removed = json.getJSONArray("removed");
+            for (int i = 0; i < removed.length(); i++) {
+                this.removed.add(removed.getLong(i));
+            }
+        }
+    }
+
+    /**
+     * Applies this update to a room list received earlier.
+     */
+    public void apply(Array<RoomSnapshot> snapshots) {
+        if (!delta) {
+            snapshots.clear();
+        }
+        for (int i = snapshots.size - 1; i >= 0; i--) {
+            long room_number = snapshots.get(i).room_number;
+            if (removed.contains(room_number, false) || contains(rooms, room_number)) {
+                snapshots.removeIndex(i);
+            }
+        }
+        snapshots.addAll(rooms);
+    }
+
+    private boolean contains(Array<RoomSnapshot> snapshots, long room_number) {
+        for (RoomSnapshot snapshot : snapshots) {
+            if (snapshot.room_number == room_number) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+}
@@ -3,6 +3,8 @@ package net.toyknight.aeii.network.entity;
 import com.badlogic.gdx.utils.Array;
 import net.toyknight.aeii.Serializable;
 import net.toyknight.aeii.entity.GameCore;
+import net.toyknight.aeii.network.protocol.EncodedObject;
+import net.toyknight.aeii.network.protocol.PacketEntities;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -22,6 +24,11 @@ public class RoomSetting implements Serializable {
 
     public GameCore game;
 
+    /**
+     * The already encoded game, sent instead of encoding {@link #game} again when present.
+     */
+    public EncodedObject encoded_game;
+
     public int manager_state;
 
     public int selected_unit_x;
@@ -34,6 +41,11 @@ public class RoomSetting implements Serializable {
 
     public int max_population;
 
+    /**
+     * The sequence number of the last game event included in {@link #game}.
+     */
+    public long sequence;
+
     public RoomSetting() {
     }
 
@@ -45,7 +57,7 @@ public class RoomSetting implements Serializable {
         for (int i = 0; i < json.getJSONArray("players").length(); i++) {
             players.add(new PlayerSnapshot(json.getJSONArray("players").getJSONObject(i)));
         }
-        game = new GameCore(json.getJSONObject("game"));
+        game = PacketEntities.getGame(json, "game");
         manager_state = json.getInt("manager_state");
         selected_unit_x = json.getInt("selected_unit_x");
         selected_unit_y = json.getInt("selected_unit_y");
@@ -55,6 +67,7 @@ public class RoomSetting implements Serializable {
         }
         start_gold = json.getInt("start_gold");
         max_population = json.getInt("max_population");
+        sequence = json.optLong("sequence", 0);
     }
 
     @Override
@@ -68,7 +81,11 @@ public class RoomSetting implements Serializable {
             players.put(player.toJson());
         }
         json.put("players", players);
-        json.put("game", game.toJson());
+        if (encoded_game == null) {
+            json.put("game", game.toJson());
+        } else {
+            json.put("game", encoded_game);
+        }
         json.put("manager_state", manager_state);
         json.put("selected_unit_x", selected_unit_x);
         json.put("selected_unit_y", selected_unit_y);
@@ -79,6 +96,7 @@ public class RoomSetting implements Serializable {
         json.put("allocation", allocation);
         json.put("start_gold", start_gold);
         json.put("max_population", max_population);
+        json.put("sequence", sequence);
         return json;
     }
 
@@ -0,0 +1,69 @@
+package net.toyknight.aeii.network.protocol;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.Serializer;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import net.toyknight.aeii.Serializable;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * An immutable, already encoded packet of the binary protocol.
+ * The same instance can be sent to any number of connections without being encoded again.
+ *
+ * @author toyknight 10/17/2026.
+ */
+public final class BinaryPacket implements Serializable {
+
+    private final byte[] data;
+
+    public BinaryPacket(byte[] data) {
+        this.data = data;
+    }
+
+    public static BinaryPacket create(JSONObject packet) throws JSONException {
+        return new BinaryPacket(PacketCodec.encode(packet));
+    }
+
+    public int size() {
+        return data.length;
+    }
+
+    byte[] getData() {
+        return data;
+    }
+
+    /**
+     * @see PacketCodec#peekInt(byte[], String, int)
+     */
+    public int peekInt(String key, int default_value) throws JSONException {
+        return PacketCodec.peekInt(data, key, default_value);
+    }
+
+    @Override
+    public JSONObject toJson() throws JSONException {
+        return PacketCodec.decode(data);
+    }
+
+    public static class PacketSerializer extends Serializer<BinaryPacket> {
+
+        public PacketSerializer() {
+            setImmutable(true);
+        }
+
+        @Override
+        public void write(Kryo kryo, Output output, BinaryPacket packet) {
+            output.writeVarInt(packet.data.length, true);
+            output.writeBytes(packet.data);
+        }
+
+        @Override
+        public BinaryPacket read(Kryo kryo, Input input, Class<BinaryPacket> type) {
+            int length = input.readVarInt(true);
+            return new BinaryPacket(input.readBytes(length));
+        }
+
+    }
+
+}
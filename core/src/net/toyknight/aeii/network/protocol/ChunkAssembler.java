@@ -0,0 +1,173 @@
+package net.toyknight.aeii.network.protocol;
+
+import com.badlogic.gdx.utils.IntMap;
+import com.esotericsoftware.kryo.KryoException;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import org.json.JSONException;
+
+/**
+ * Puts the chunked packets received over one connection back together, see {@link PacketChunk}. The chunks
+ * of the transfers in progress may not add up to more than the byte budget of the connection.
+ *
+ * @author toyknight 10/17/2026.
+ */
+public class ChunkAssembler {
+
+    /**
+     * A connection may not have more transfers in progress than this, unless another limit is given.
+     */
+    public static final int MAX_TRANSFERS = 4;
+
+    private final int max_transfers;
+
+    private final int max_bytes;
+
+    private final IntMap<Transfer> transfers = new IntMap<Transfer>();
+
+    private int in_flight_bytes;
+
+    //the transfer whose remaining chunks are dropped, see abort(int)
+    private int aborted_transfer_id;
+
+    private boolean aborted;
+
+    public ChunkAssembler() {
+        this(MAX_TRANSFERS, MAX_TRANSFERS * PacketChunk.MAX_TRANSFER_SIZE);
+    }
+
+    /**
+     * @param max_transfers the most transfers in progress at once
+     * @param max_bytes     the most bytes the chunks of the transfers in progress may add up to
+     */
+    public ChunkAssembler(int max_transfers, int max_bytes) {
+        this.max_transfers = max_transfers;
+        this.max_bytes = max_bytes;
+    }
+
+    /**
+     * @return the packet once its last chunk is received, a json string, a {@link BinaryPacket} or a
+     * {@link CompressedPacket}, otherwise null
+     */
+    public Object receive(PacketChunk chunk) throws JSONException {
+        Input content = assemble(chunk);
+        return content == null ? null : decode(content);
+    }
+
+    /**
+     * Adds the chunk to its transfer without decoding anything, so the receiving thread only copies the chunk.
+     *
+     * @return the content of the transfer once its last chunk is received, to be decoded with
+     * {@link #decode(Input)}, otherwise null
+     */
+    public synchronized Input assemble(PacketChunk chunk) throws JSONException {
+        if (aborted && chunk.getTransferID() == aborted_transfer_id) {
+            if (chunk.getSequence() >= chunk.getCount() - 1) {
+                aborted = false;
+            }
+            return null;
+        }
+        Transfer transfer = transfers.get(chunk.getTransferID());
+        if (transfer == null) {
+            if (chunk.getSequence() != 0 || chunk.getCount() < 1 || chunk.getCount() > getMaxChunks()) {
+                throw new JSONException("Illegal chunk " + chunk.getSequence() + " of " + chunk.getCount());
+            }
+            if (transfers.size >= max_transfers) {
+                throw new JSONException("Too many transfers in progress");
+            }
+            transfer = new Transfer(chunk.getCount());
+            transfers.put(chunk.getTransferID(), transfer);
+        }
+        //the chunks of a transfer are sent over tcp in order, anything else is broken
+        if (chunk.getSequence() != transfer.received || chunk.getCount() != transfer.count
+                || chunk.size() > PacketChunk.MAX_CHUNK_SIZE) {
+            remove(chunk.getTransferID());
+            throw new JSONException("Illegal chunk " + chunk.getSequence() + " of transfer " + chunk.getTransferID());
+        }
+        if (in_flight_bytes + chunk.size() > max_bytes) {
+            remove(chunk.getTransferID());
+            throw new JSONException("Transfer " + chunk.getTransferID() + " is over the byte budget");
+        }
+        transfer.content.writeBytes(chunk.getData());
+        transfer.received++;
+        in_flight_bytes += chunk.size();
+        if (transfer.received < transfer.count) {
+            return null;
+        }
+        remove(chunk.getTransferID());
+        return new Input(transfer.content.getBuffer(), 0, transfer.content.position());
+    }
+
+    /**
+     * Drops the transfer, along with its chunks still to be received.
+     */
+    public synchronized void abort(int transfer_id) {
+        remove(transfer_id);
+        aborted_transfer_id = transfer_id;
+        aborted = true;
+    }
+
+    private int getMaxChunks() {
+        int max_transfer_size = Math.min(max_bytes, PacketChunk.MAX_TRANSFER_SIZE);
+        return (max_transfer_size + PacketChunk.MAX_CHUNK_SIZE - 1) / PacketChunk.MAX_CHUNK_SIZE;
+    }
+
+    private void remove(int transfer_id) {
+        Transfer transfer = transfers.remove(transfer_id);
+        if (transfer != null) {
+            in_flight_bytes -= transfer.content.position();
+        }
+    }
+
+    /**
+     * @return the number of transfers in progress
+     */
+    public synchronized int getTransferCount() {
+        return transfers.size;
+    }
+
+    /**
+     * @return the number of bytes received for the transfers in progress
+     */
+    public synchronized int getInFlightBytes() {
+        return in_flight_bytes;
+    }
+
+    /**
+     * @param content the content of a transfer as given by {@link #assemble(PacketChunk)}
+     * @return a json string, a {@link BinaryPacket} or a {@link CompressedPacket}
+     */
+    public static Object decode(Input content) throws JSONException {
+        try {
+            switch (content.readByte()) {
+                case PacketChunk.TYPE_JSON:
+                    return content.readString();
+                case PacketChunk.TYPE_BINARY:
+                    return new BinaryPacket(content.readBytes(content.limit() - content.position()));
+                case PacketChunk.TYPE_COMPRESSED:
+                    int format = content.readByte();
+                    int length = content.readVarInt(true);
+                    return new CompressedPacket(format, length, content.readBytes(content.limit() - content.position()));
+                default:
+                    throw new JSONException("Unknown chunked packet type");
+            }
+        } catch (KryoException ex) {
+            throw new JSONException(ex);
+        }
+    }
+
+    private static class Transfer {
+
+        private final int count;
+
+        private final Output content = new Output(PacketChunk.MAX_CHUNK_SIZE, -1);
+
+        private int received;
+
+        public Transfer(int count) {
+            this.count = count;
+        }
+
+    }
+
+}
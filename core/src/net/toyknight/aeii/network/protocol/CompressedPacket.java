@@ -0,0 +1,84 @@
+package net.toyknight.aeii.network.protocol;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.Serializer;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+
+/**
+ * A packet deflated by the {@link PacketCompressor} of the sending connection. Only sent to connections that
+ * negotiated compression during the authentication.
+ *
+ * @author toyknight 10/17/2026.
+ */
+public final class CompressedPacket {
+
+    /**
+     * The packet is a json string.
+     */
+    public static final int FORMAT_JSON = 0x0;
+
+    /**
+     * The packet is a {@link BinaryPacket}.
+     */
+    public static final int FORMAT_BINARY = 0x1;
+
+    private final int format;
+
+    private final int length;
+
+    private final byte[] data;
+
+    public CompressedPacket(int format, int length, byte[] data) {
+        this.format = format;
+        this.length = length;
+        this.data = data;
+    }
+
+    public int getFormat() {
+        return format;
+    }
+
+    /**
+     * @return the size of the packet before compression
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * @return the size of the packet as sent
+     */
+    public int size() {
+        return data.length;
+    }
+
+    byte[] getData() {
+        return data;
+    }
+
+    public static class CompressedSerializer extends Serializer<CompressedPacket> {
+
+        public CompressedSerializer() {
+            setImmutable(true);
+        }
+
+        @Override
+        public void write(Kryo kryo, Output output, CompressedPacket packet) {
+            output.writeByte(packet.format);
+            output.writeVarInt(packet.length, true);
+            output.writeVarInt(packet.data.length, true);
+            output.writeBytes(packet.data);
+        }
+
+        @Override
+        public CompressedPacket read(Kryo kryo, Input input, Class<CompressedPacket> type) {
+            int format = input.readByte();
+            int length = input.readVarInt(true);
+            int size = input.readVarInt(true);
+            return new CompressedPacket(format, length, input.readBytes(size));
+        }
+
+    }
+
+}
@@ -0,0 +1,57 @@
+package net.toyknight.aeii.network.protocol;
+
+import net.toyknight.aeii.entity.GameCore;
+import net.toyknight.aeii.entity.Map;
+import net.toyknight.aeii.manager.GameEvent;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONString;
+
+/**
+ * A JSON object or an entity that can be embedded in any number of packets and is encoded at most once for each
+ * protocol. Packets containing it are written out with the cached encoding, the wire format does not change.
+ * An entity is only turned into a json tree if a json packet is written, see {@link PacketEntities}.
+ * The object must not be changed after creation.
+ *
+ * @author toyknight 10/17/2026.
+ */
+public final class EncodedObject implements JSONString {
+
+    private final Object object;
+
+    private String json_string;
+
+    private byte[] binary;
+
+    public EncodedObject(JSONObject object) {
+        this.object = object;
+    }
+
+    public EncodedObject(GameCore game) {
+        this.object = game;
+    }
+
+    public EncodedObject(Map map) {
+        this.object = map;
+    }
+
+    public EncodedObject(GameEvent event) {
+        this.object = event;
+    }
+
+    @Override
+    public synchronized String toJSONString() {
+        if (json_string == null) {
+            json_string = PacketEntities.toJson(object).toString();
+        }
+        return json_string;
+    }
+
+    public synchronized byte[] toBinary() throws JSONException {
+        if (binary == null) {
+            binary = PacketCodec.encodeValue(object);
+        }
+        return binary;
+    }
+
+}
@@ -0,0 +1,53 @@
+package net.toyknight.aeii.network.protocol;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.Serializer;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+
+/**
+ * Several binary packets sent to the same connection in one frame.
+ * The receiver handles the packets in order as if they had arrived one by one.
+ *
+ * @author toyknight 10/17/2026.
+ */
+public final class PacketBundle {
+
+    private final BinaryPacket[] packets;
+
+    public PacketBundle(BinaryPacket[] packets) {
+        this.packets = packets;
+    }
+
+    public BinaryPacket[] getPackets() {
+        return packets;
+    }
+
+    public static class BundleSerializer extends Serializer<PacketBundle> {
+
+        private final BinaryPacket.PacketSerializer packet_serializer = new BinaryPacket.PacketSerializer();
+
+        public BundleSerializer() {
+            setImmutable(true);
+        }
+
+        @Override
+        public void write(Kryo kryo, Output output, PacketBundle bundle) {
+            output.writeVarInt(bundle.packets.length, true);
+            for (BinaryPacket packet : bundle.packets) {
+                packet_serializer.write(kryo, output, packet);
+            }
+        }
+
+        @Override
+        public PacketBundle read(Kryo kryo, Input input, Class<PacketBundle> type) {
+            BinaryPacket[] packets = new BinaryPacket[input.readVarInt(true)];
+            for (int i = 0; i < packets.length; i++) {
+                packets[i] = packet_serializer.read(kryo, input, BinaryPacket.class);
+            }
+            return new PacketBundle(packets);
+        }
+
+    }
+
+}
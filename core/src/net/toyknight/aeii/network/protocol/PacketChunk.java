@@ -0,0 +1,152 @@
+package net.toyknight.aeii.network.protocol;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.Serializer;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+
+/**
+ * One frame of a packet too large to be sent at once. The frames of a transfer are sent in order and one
+ * at a time, as the write buffer of the connection has room, and put back together by the receiving
+ * {@link ChunkAssembler}. So a large game or map neither overflows the buffers of the connection nor holds
+ * them up for the packets sent after it.
+ *
+ * @author toyknight 10/17/2026.
+ */
+public final class PacketChunk {
+
+    /**
+     * Packets larger than this many bytes are sent in chunks of at most this size.
+     */
+    public static final int MAX_CHUNK_SIZE = 16 * 1024;
+
+    /**
+     * Transfers larger than this are refused by the receiver.
+     */
+    public static final int MAX_TRANSFER_SIZE = 8 * 1024 * 1024;
+
+    static final int TYPE_JSON = 0x0;
+    static final int TYPE_BINARY = 0x1;
+    static final int TYPE_COMPRESSED = 0x2;
+
+    private final int transfer_id;
+
+    private final int sequence;
+
+    private final int count;
+
+    private final byte[] data;
+
+    public PacketChunk(int transfer_id, int sequence, int count, byte[] data) {
+        this.transfer_id = transfer_id;
+        this.sequence = sequence;
+        this.count = count;
+        this.data = data;
+    }
+
+    public int getTransferID() {
+        return transfer_id;
+    }
+
+    public int getSequence() {
+        return sequence;
+    }
+
+    /**
+     * @return the number of chunks of the transfer
+     */
+    public int getCount() {
+        return count;
+    }
+
+    public int size() {
+        return data.length;
+    }
+
+    byte[] getData() {
+        return data;
+    }
+
+    /**
+     * @param packet a json string, a {@link BinaryPacket} or a {@link CompressedPacket}
+     * @return whether the packet has to be sent in chunks
+     */
+    public static boolean isOversized(Object packet) {
+        if (packet instanceof String) {
+            return ((String) packet).length() > MAX_CHUNK_SIZE;
+        }
+        if (packet instanceof BinaryPacket) {
+            return ((BinaryPacket) packet).size() > MAX_CHUNK_SIZE;
+        }
+        if (packet instanceof CompressedPacket) {
+            return ((CompressedPacket) packet).size() > MAX_CHUNK_SIZE;
+        }
+        return false;
+    }
+
+    /**
+     * Splits the packet into the chunks of a transfer.
+     *
+     * @param packet      a json string, a {@link BinaryPacket} or a {@link CompressedPacket}
+     * @param transfer_id the id of the transfer, unique among the transfers of the connection in progress
+     */
+    public static PacketChunk[] split(Object packet, int transfer_id) {
+        byte[] content = encode(packet);
+        int count = (content.length + MAX_CHUNK_SIZE - 1) / MAX_CHUNK_SIZE;
+        PacketChunk[] chunks = new PacketChunk[count];
+        for (int sequence = 0; sequence < count; sequence++) {
+            int offset = sequence * MAX_CHUNK_SIZE;
+            byte[] data = new byte[Math.min(MAX_CHUNK_SIZE, content.length - offset)];
+            System.arraycopy(content, offset, data, 0, data.length);
+            chunks[sequence] = new PacketChunk(transfer_id, sequence, count, data);
+        }
+        return chunks;
+    }
+
+    private static byte[] encode(Object packet) {
+        Output output = new Output(MAX_CHUNK_SIZE, -1);
+        if (packet instanceof String) {
+            output.writeByte(TYPE_JSON);
+            output.writeString((String) packet);
+        } else if (packet instanceof BinaryPacket) {
+            output.writeByte(TYPE_BINARY);
+            output.writeBytes(((BinaryPacket) packet).getData());
+        } else if (packet instanceof CompressedPacket) {
+            CompressedPacket compressed = (CompressedPacket) packet;
+            output.writeByte(TYPE_COMPRESSED);
+            output.writeByte(compressed.getFormat());
+            output.writeVarInt(compressed.getLength(), true);
+            output.writeBytes(compressed.getData());
+        } else {
+            throw new IllegalArgumentException("Cannot send in chunks: " + packet.getClass().getName());
+        }
+        return output.toBytes();
+    }
+
+    public static class ChunkSerializer extends Serializer<PacketChunk> {
+
+        public ChunkSerializer() {
+            setImmutable(true);
+        }
+
+        @Override
+        public void write(Kryo kryo, Output output, PacketChunk chunk) {
+            output.writeVarInt(chunk.transfer_id, true);
+            output.writeVarInt(chunk.sequence, true);
+            output.writeVarInt(chunk.count, true);
+            output.writeVarInt(chunk.data.length, true);
+            output.writeBytes(chunk.data);
+        }
+
+        @Override
+        public PacketChunk read(Kryo kryo, Input input, Class<PacketChunk> type) {
+            int transfer_id = input.readVarInt(true);
+            int sequence = input.readVarInt(true);
+            int count = input.readVarInt(true);
+            int size = input.readVarInt(true);
+            return new PacketChunk(transfer_id, sequence, count, input.readBytes(size));
+        }
+
+    }
+
+}
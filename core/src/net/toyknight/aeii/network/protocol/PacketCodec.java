@@ -0,0 +1,319 @@
+package net.toyknight.aeii.network.protocol;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.KryoException;
+import com.esotericsoftware.kryo.Registration;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Iterator;
+
+/**
+ * Encodes packet trees into the binary protocol and back.
+ * Field names are looked up in {@link PacketSchema}, numbers are varint-encoded and
+ * integer arrays are packed as varints without a type tag for each element.
+ * <p>
+ * The large entities, games, maps and game events, are written by their registered serializers instead of
+ * as json trees, see {@link PacketEntities}. A decoded packet holds the entities themselves.
+ *
+ * @author toyknight 10/17/2026.
+ */
+public class PacketCodec {
+
+    private static final int NULL = 0x0;
+    private static final int TRUE = 0x1;
+    private static final int FALSE = 0x2;
+    private static final int INT = 0x3;
+    private static final int LONG = 0x4;
+    private static final int DOUBLE = 0x5;
+    private static final int STRING = 0x6;
+    private static final int OBJECT = 0x7;
+    private static final int ARRAY = 0x8;
+    private static final int INT_ARRAY = 0xA;
+    private static final int ENTITY = 0xB;
+
+    private static final int INLINE_KEY = 0;
+
+    //kryo instances are not thread safe, the entities are written and read with one of each thread
+    private static final ThreadLocal<Kryo> KRYO = new ThreadLocal<Kryo>() {
+        @Override
+        protected Kryo initialValue() {
+            Kryo kryo = new Kryo();
+            kryo.setReferences(false);
+            kryo.setRegistrationRequired(true);
+            PacketRegistry.register(kryo);
+            return kryo;
+        }
+    };
+
+    private PacketCodec() {
+    }
+
+    public static byte[] encode(JSONObject packet) throws JSONException {
+        Output output = new Output(256, -1);
+        writeObject(output, packet);
+        return output.toBytes();
+    }
+
+    /**
+     * @return a single value in the form it takes inside a packet, see {@link EncodedObject}
+     */
+    static byte[] encodeValue(Object value) throws JSONException {
+        Output output = new Output(256, -1);
+        writeValue(output, value);
+        return output.toBytes();
+    }
+
+    public static JSONObject decode(byte[] data) throws JSONException {
+        try {
+            return readObject(new Input(data));
+        } catch (KryoException ex) {
+            throw new JSONException(ex);
+        } catch (IndexOutOfBoundsException ex) {
+            throw new JSONException(ex);
+        }
+    }
+
+    /**
+     * Reads one top-level int of an encoded packet without decoding the rest, e.g. to check the operation of
+     * a request before paying for the whole packet.
+     *
+     * @return the value, or the default value if the packet has no such int
+     */
+    public static int peekInt(byte[] data, String key, int default_value) throws JSONException {
+        int key_index = PacketSchema.getKeyIndex(key) + 1;
+        try {
+            Input input = new Input(data);
+            int length = input.readVarInt(true);
+            for (int i = 0; i < length; i++) {
+                int index = input.readVarInt(true);
+                boolean matches = index == INLINE_KEY ? key.equals(input.readString()) : index == key_index;
+                if (matches) {
+                    return input.readByte() == INT ? input.readVarInt(false) : default_value;
+                } else {
+                    skipValue(input);
+                }
+            }
+            return default_value;
+        } catch (KryoException ex) {
+            throw new JSONException(ex);
+        }
+    }
+
+    private static void skipValue(Input input) throws JSONException {
+        int type = input.readByte();
+        switch (type) {
+            case NULL:
+            case TRUE:
+            case FALSE:
+                break;
+            case INT:
+                input.readVarInt(false);
+                break;
+            case LONG:
+                input.readVarLong(false);
+                break;
+            case DOUBLE:
+                input.skip(8);
+                break;
+            case STRING:
+                input.readString();
+                break;
+            case OBJECT:
+                int length = input.readVarInt(true);
+                for (int i = 0; i < length; i++) {
+                    if (input.readVarInt(true) == INLINE_KEY) {
+                        input.readString();
+                    }
+                    skipValue(input);
+                }
+                break;
+            case INT_ARRAY:
+                int count = input.readVarInt(true);
+                for (int i = 0; i < count; i++) {
+                    input.readVarInt(false);
+                }
+                break;
+            case ENTITY:
+                input.skip(input.readVarInt(true));
+                break;
+            case ARRAY:
+                int size = input.readVarInt(true);
+                for (int i = 0; i < size; i++) {
+                    skipValue(input);
+                }
+                break;
+            default:
+                throw new JSONException("Unknown value type " + type);
+        }
+    }
+
+    private static void writeObject(Output output, JSONObject object) throws JSONException {
+        output.writeVarInt(object.length(), true);
+        Iterator<String> keys = object.keys();
+        while (keys.hasNext()) {
+            String key = keys.next();
+            int index = PacketSchema.getKeyIndex(key);
+            if (index >= 0) {
+                output.writeVarInt(index + 1, true);
+            } else {
+                output.writeVarInt(INLINE_KEY, true);
+                output.writeString(key);
+            }
+            writeValue(output, object.get(key));
+        }
+    }
+
+    private static void writeArray(Output output, JSONArray array) throws JSONException {
+        int length = array.length();
+        int type = getPackedType(array);
+        output.writeByte(type);
+        output.writeVarInt(length, true);
+        for (int i = 0; i < length; i++) {
+            switch (type) {
+                case INT_ARRAY:
+                    output.writeVarInt(((Number) array.get(i)).intValue(), false);
+                    break;
+                default:
+                    writeValue(output, array.get(i));
+            }
+        }
+    }
+
+    private static int getPackedType(JSONArray array) {
+        int length = array.length();
+        if (length == 0) {
+            return ARRAY;
+        }
+        for (int i = 0; i < length; i++) {
+            Object value = array.opt(i);
+            if (!(value instanceof Integer || value instanceof Short || value instanceof Byte)) {
+                return ARRAY;
+            }
+        }
+        return INT_ARRAY;
+    }
+
+    private static void writeValue(Output output, Object value) throws JSONException {
+        if (value == null || value == JSONObject.NULL) {
+            output.writeByte(NULL);
+        } else if (value instanceof Boolean) {
+            output.writeByte((Boolean) value ? TRUE : FALSE);
+        } else if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            output.writeByte(INT);
+            output.writeVarInt(((Number) value).intValue(), false);
+        } else if (value instanceof Long) {
+            output.writeByte(LONG);
+            output.writeVarLong((Long) value, false);
+        } else if (value instanceof Number) {
+            output.writeByte(DOUBLE);
+            output.writeDouble(((Number) value).doubleValue());
+        } else if (value instanceof JSONObject) {
+            output.writeByte(OBJECT);
+            writeObject(output, (JSONObject) value);
+        } else if (value instanceof JSONArray) {
+            writeArray(output, (JSONArray) value);
+        } else if (value instanceof EncodedObject) {
+            output.writeBytes(((EncodedObject) value).toBinary());
+        } else if (PacketEntities.isEntity(value.getClass())) {
+            writeEntity(output, value);
+        } else {
+            output.writeByte(STRING);
+            output.writeString(value.toString());
+        }
+    }
+
+    /**
+     * Writes the entity with its length in front, so that it can be skipped without being read.
+     */
+    private static void writeEntity(Output output, Object entity) {
+        Kryo kryo = KRYO.get();
+        Output content = new Output(256, -1);
+        kryo.writeClass(content, entity.getClass());
+        kryo.writeObject(content, entity);
+        output.writeByte(ENTITY);
+        output.writeVarInt(content.position(), true);
+        output.writeBytes(content.getBuffer(), 0, content.position());
+    }
+
+    private static Object readEntity(Input input) throws JSONException {
+        int length = input.readVarInt(true);
+        if (length < 0 || length > input.limit() - input.position()) {
+            throw new JSONException("Illegal entity length " + length);
+        }
+        Input content = new Input(input.getBuffer(), input.position(), length);
+        input.skip(length);
+        Kryo kryo = KRYO.get();
+        Registration registration = kryo.readClass(content);
+        if (registration == null || !PacketEntities.isEntity(registration.getType())) {
+            throw new JSONException("Illegal entity type");
+        }
+        try {
+            return kryo.readObject(content, registration.getType());
+        } catch (JSONException ex) {
+            throw ex;
+        } catch (RuntimeException ex) {
+            //the entities trust what they are built from, anything they fail on is a malformed packet
+            throw new JSONException(ex);
+        }
+    }
+
+    private static JSONObject readObject(Input input) throws JSONException {
+        JSONObject object = new JSONObject();
+        int length = input.readVarInt(true);
+        for (int i = 0; i < length; i++) {
+            int index = input.readVarInt(true);
+            String key = index == INLINE_KEY ? input.readString() : PacketSchema.getKey(index - 1);
+            object.put(key, readValue(input));
+        }
+        return object;
+    }
+
+    private static JSONArray readArray(Input input, int type) throws JSONException {
+        JSONArray array = new JSONArray();
+        int length = input.readVarInt(true);
+        for (int i = 0; i < length; i++) {
+            switch (type) {
+                case INT_ARRAY:
+                    array.put(input.readVarInt(false));
+                    break;
+                default:
+                    array.put(readValue(input));
+            }
+        }
+        return array;
+    }
+
+    private static Object readValue(Input input) throws JSONException {
+        int type = input.readByte();
+        switch (type) {
+            case NULL:
+                return JSONObject.NULL;
+            case TRUE:
+                return Boolean.TRUE;
+            case FALSE:
+                return Boolean.FALSE;
+            case INT:
+                return input.readVarInt(false);
+            case LONG:
+                return input.readVarLong(false);
+            case DOUBLE:
+                return input.readDouble();
+            case STRING:
+                return input.readString();
+            case OBJECT:
+                return readObject(input);
+            case ARRAY:
+            case INT_ARRAY:
+                return readArray(input, type);
+            case ENTITY:
+                return readEntity(input);
+            default:
+                throw new JSONException("Unknown value type " + type);
+        }
+    }
+
+}
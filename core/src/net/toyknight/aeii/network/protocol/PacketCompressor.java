@@ -0,0 +1,169 @@
+package net.toyknight.aeii.network.protocol;
+
+import org.json.JSONException;
+
+import java.io.UnsupportedEncodingException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Deflates the large packets sent over one connection and inflates the compressed packets it receives.
+ * The deflater and the inflater are created on first use and reset for every packet, so each packet stands
+ * on its own and the connection only pays for them if it ever sends or receives a large packet.
+ *
+ * @author toyknight 10/17/2026.
+ */
+public class PacketCompressor {
+
+    /**
+     * Packets smaller than this many bytes are sent as they are, deflating them gains little.
+     */
+    public static final int DEFAULT_THRESHOLD = 1024;
+
+    /**
+     * Compressed packets claiming to inflate to more than this are refused, unless another limit is given.
+     */
+    public static final int MAX_LENGTH = 8 * 1024 * 1024;
+
+    private final int threshold;
+
+    private final int max_length;
+
+    private Deflater deflater;
+
+    private Inflater inflater;
+
+    private boolean disposed;
+
+    public PacketCompressor() {
+        this(DEFAULT_THRESHOLD);
+    }
+
+    public PacketCompressor(int threshold) {
+        this(threshold, MAX_LENGTH);
+    }
+
+    /**
+     * @param max_length the most bytes a received packet may inflate to
+     */
+    public PacketCompressor(int threshold, int max_length) {
+        this.threshold = threshold;
+        this.max_length = max_length;
+    }
+
+    public int getThreshold() {
+        return threshold;
+    }
+
+    public int getMaxLength() {
+        return max_length;
+    }
+
+    /**
+     * @param size the size of the packet in bytes or chars
+     */
+    public boolean isCompressible(int size) {
+        return size >= threshold;
+    }
+
+    /**
+     * @return the compressed packet, or null if it would not be smaller
+     */
+    public CompressedPacket compress(String packet) {
+        try {
+            return compress(CompressedPacket.FORMAT_JSON, packet.getBytes("UTF-8"));
+        } catch (UnsupportedEncodingException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * @return the compressed packet, or null if it would not be smaller
+     */
+    public CompressedPacket compress(BinaryPacket packet) {
+        return compress(CompressedPacket.FORMAT_BINARY, packet.getData());
+    }
+
+    private synchronized CompressedPacket compress(int format, byte[] data) {
+        if (disposed) {
+            return null;
+        }
+        if (deflater == null) {
+            deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        }
+        deflater.reset();
+        deflater.setInput(data);
+        deflater.finish();
+        byte[] compressed = new byte[data.length];
+        int length = 0;
+        while (!deflater.finished() && length < compressed.length) {
+            length += deflater.deflate(compressed, length, compressed.length - length);
+        }
+        if (!deflater.finished()) {
+            return null;
+        }
+        byte[] result = new byte[length];
+        System.arraycopy(compressed, 0, result, 0, length);
+        return new CompressedPacket(format, data.length, result);
+    }
+
+    /**
+     * @return the packet as it was before compression, a json string or a {@link BinaryPacket}
+     */
+    public synchronized Object decompress(CompressedPacket packet) throws JSONException {
+        if (disposed) {
+            throw new JSONException("Compressor is disposed");
+        }
+        if (packet.getLength() < 0 || packet.getLength() > max_length) {
+            throw new JSONException("Illegal compressed packet length " + packet.getLength());
+        }
+        if (inflater == null) {
+            inflater = new Inflater();
+        }
+        inflater.reset();
+        inflater.setInput(packet.getData());
+        byte[] data = new byte[packet.getLength()];
+        try {
+            int length = 0;
+            while (length < data.length && !inflater.finished()) {
+                int inflated = inflater.inflate(data, length, data.length - length);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                length += inflated;
+            }
+            if (length != data.length || !inflater.finished()) {
+                throw new JSONException("Truncated compressed packet");
+            }
+        } catch (DataFormatException ex) {
+            throw new JSONException(ex);
+        }
+        switch (packet.getFormat()) {
+            case CompressedPacket.FORMAT_JSON:
+                try {
+                    return new String(data, "UTF-8");
+                } catch (UnsupportedEncodingException ex) {
+                    throw new JSONException(ex);
+                }
+            case CompressedPacket.FORMAT_BINARY:
+                return new BinaryPacket(data);
+            default:
+                throw new JSONException("Unknown compressed packet format " + packet.getFormat());
+        }
+    }
+
+    /**
+     * Releases the deflater and the inflater once the connection is closed.
+     */
+    public synchronized void dispose() {
+        disposed = true;
+        if (deflater != null) {
+            deflater.end();
+        }
+        if (inflater != null) {
+            inflater.end();
+        }
+    }
+
+}
@@ -0,0 +1,299 @@
+package net.toyknight.aeii.network.protocol;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.KryoException;
+import com.esotericsoftware.kryo.Serializer;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import net.toyknight.aeii.entity.GameCore;
+import net.toyknight.aeii.entity.Map;
+import net.toyknight.aeii.entity.Rule;
+import net.toyknight.aeii.entity.Status;
+import net.toyknight.aeii.entity.Tomb;
+import net.toyknight.aeii.entity.Unit;
+import net.toyknight.aeii.manager.GameEvent;
+import net.toyknight.aeii.utils.UnitFactory;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import static net.toyknight.aeii.entity.Rule.Entry.*;
+
+/**
+ * The entities the binary protocol carries with serializers of their own instead of as json trees: games, maps
+ * with their tiles packed as a short array, and game events. Neither end builds a json tree for them, a binary
+ * packet holds the entity itself where a json packet holds its json object.
+ * <p>
+ * The serializers read the entities exactly like their json constructors do.
+ *
+ * @author toyknight 10/17/2026.
+ */
+public class PacketEntities {
+
+    private static final String[] RULE_INTEGERS = {CASTLE_INCOME, VILLAGE_INCOME, COMMANDER_INCOME,
+            KILL_EXPERIENCE, ATTACK_EXPERIENCE, COUNTER_EXPERIENCE, COMMANDER_PRICE_STEP, UNIT_CAPACITY};
+
+    private static final String[] RULE_BOOLEANS = {ENEMY_CLEAR, CASTLE_CLEAR};
+
+    private PacketEntities() {
+    }
+
+    static void register(Kryo kryo) {
+        kryo.register(Map.class, new MapSerializer());
+        kryo.register(GameCore.class, new GameSerializer());
+        kryo.register(GameEvent.class, new GameEventSerializer());
+    }
+
+    static boolean isEntity(Class type) {
+        return type == Map.class || type == GameCore.class || type == GameEvent.class;
+    }
+
+    /**
+     * @return the json object of an entity, or the json object itself
+     */
+    static JSONObject toJson(Object object) throws JSONException {
+        if (object instanceof GameCore) {
+            return ((GameCore) object).toJson();
+        } else if (object instanceof Map) {
+            return ((Map) object).toJson();
+        } else if (object instanceof GameEvent) {
+            return ((GameEvent) object).toJson();
+        } else {
+            return (JSONObject) object;
+        }
+    }
+
+    public static GameCore getGame(JSONObject packet, String key) throws JSONException {
+        Object value = packet.get(key);
+        return value instanceof GameCore ? (GameCore) value : new GameCore(packet.getJSONObject(key));
+    }
+
+    public static Map getMap(JSONObject packet, String key) throws JSONException {
+        Object value = packet.get(key);
+        return value instanceof Map ? (Map) value : new Map(packet.getJSONObject(key));
+    }
+
+    /**
+     * @return the event, which is always remote
+     */
+    public static GameEvent getGameEvent(JSONObject packet, String key) throws JSONException {
+        Object value = packet.get(key);
+        return value instanceof GameEvent ? (GameEvent) value : GameEvent.fromJson(packet.getJSONObject(key), true);
+    }
+
+    /**
+     * @return the event, which is always remote
+     */
+    public static GameEvent getGameEvent(JSONArray events, int index) throws JSONException {
+        Object value = events.get(index);
+        return value instanceof GameEvent ? (GameEvent) value : GameEvent.fromJson(events.getJSONObject(index), true);
+    }
+
+    private static void writeUnit(Output output, Unit unit) {
+        output.writeVarInt(unit.getIndex(), true);
+        output.writeVarInt(unit.getTeam(), false);
+        output.writeString(unit.getUnitCode());
+        output.writeVarInt(unit.getPrice(), false);
+        output.writeVarInt(unit.getTotalExperience(), false);
+        output.writeVarInt(unit.getCurrentHp(), false);
+        output.writeVarInt(unit.getCurrentMovementPoint(), false);
+        output.writeVarInt(unit.getX(), false);
+        output.writeVarInt(unit.getY(), false);
+        output.writeBoolean(unit.isStandby());
+        output.writeBoolean(unit.isStatic());
+        output.writeVarInt(unit.getHead(), false);
+        Status status = unit.getStatus();
+        output.writeBoolean(status != null);
+        if (status != null) {
+            output.writeVarInt(status.getType(), false);
+            output.writeVarInt(status.getRemainingTurn(), false);
+        }
+    }
+
+    private static Unit readUnit(Input input) {
+        int index = input.readVarInt(true);
+        int team = input.readVarInt(false);
+        Unit unit = UnitFactory.createUnit(index, team, input.readString());
+        unit.setPrice(input.readVarInt(false));
+        unit.gainExperience(input.readVarInt(false));
+        unit.setCurrentHp(input.readVarInt(false));
+        unit.setCurrentMovementPoint(input.readVarInt(false));
+        unit.setX(input.readVarInt(false));
+        unit.setY(input.readVarInt(false));
+        unit.setStandby(input.readBoolean());
+        unit.setStatic(input.readBoolean());
+        unit.setHead(input.readVarInt(false));
+        if (input.readBoolean()) {
+            int type = input.readVarInt(false);
+            unit.setStatus(new Status(type, input.readVarInt(false)));
+        }
+        return unit;
+    }
+
+    private static void writeRule(Output output, Rule rule) {
+        for (String entry : RULE_INTEGERS) {
+            output.writeVarInt(rule.getInteger(entry), false);
+        }
+        for (String entry : RULE_BOOLEANS) {
+            output.writeBoolean(rule.getBoolean(entry));
+        }
+        output.writeVarInt(rule.getAvailableUnits().size, true);
+        for (Integer index : rule.getAvailableUnits()) {
+            output.writeVarInt(index, false);
+        }
+    }
+
+    private static Rule readRule(Input input) {
+        Rule rule = new Rule();
+        for (String entry : RULE_INTEGERS) {
+            rule.setValue(entry, input.readVarInt(false));
+        }
+        for (String entry : RULE_BOOLEANS) {
+            rule.setValue(entry, input.readBoolean());
+        }
+        int count = input.readVarInt(true);
+        for (int i = 0; i < count; i++) {
+            rule.addAvailableUnit(input.readVarInt(false));
+        }
+        return rule;
+    }
+
+    public static class MapSerializer extends Serializer<Map> {
+
+        @Override
+        public void write(Kryo kryo, Output output, Map map) {
+            output.writeString(map.getAuthor());
+            output.writeVarInt(map.getWidth(), true);
+            output.writeVarInt(map.getHeight(), true);
+            for (int x = 0; x < map.getWidth(); x++) {
+                for (int y = 0; y < map.getHeight(); y++) {
+                    output.writeShort(map.getTileIndex(x, y));
+                }
+            }
+            int unit_count = 0;
+            for (Unit ignored : map.getUnits()) {
+                unit_count++;
+            }
+            output.writeVarInt(unit_count, true);
+            for (Unit unit : map.getUnits()) {
+                writeUnit(output, unit);
+            }
+            output.writeVarInt(map.getTombs().size, true);
+            for (Tomb tomb : map.getTombs()) {
+                output.writeVarInt(tomb.x, false);
+                output.writeVarInt(tomb.y, false);
+                output.writeVarInt(tomb.getRemains(), false);
+            }
+            for (int team = 0; team < 4; team++) {
+                output.writeBoolean(map.hasTeamAccess(team));
+            }
+        }
+
+        @Override
+        public Map read(Kryo kryo, Input input, Class<Map> type) {
+            String author = input.readString();
+            int width = input.readVarInt(true);
+            int height = input.readVarInt(true);
+            //the tiles must be there before the map is allocated
+            if (width < 0 || height < 0 || (long) width * height * 2 > input.limit() - input.position()) {
+                throw new KryoException("Illegal map size " + width + "x" + height);
+            }
+            Map map = new Map(width, height);
+            map.setAuthor(author);
+            for (int x = 0; x < width; x++) {
+                for (int y = 0; y < height; y++) {
+                    map.setTile(input.readShort(), x, y);
+                }
+            }
+            int unit_count = input.readVarInt(true);
+            for (int i = 0; i < unit_count; i++) {
+                map.addUnit(readUnit(input));
+            }
+            int tomb_count = input.readVarInt(true);
+            for (int i = 0; i < tomb_count; i++) {
+                int x = input.readVarInt(false);
+                int y = input.readVarInt(false);
+                Tomb tomb = new Tomb(x, y);
+                tomb.setRemains(input.readVarInt(false));
+                map.addTomb(tomb);
+            }
+            for (int team = 0; team < 4; team++) {
+                map.setTeamAccess(team, input.readBoolean());
+            }
+            return map;
+        }
+
+    }
+
+    public static class GameSerializer extends Serializer<GameCore> {
+
+        @Override
+        public void write(Kryo kryo, Output output, GameCore game) {
+            output.writeVarInt(game.getType(), false);
+            kryo.writeObject(output, game.getMap());
+            writeRule(output, game.getRule());
+            for (int team = 0; team < 4; team++) {
+                output.writeVarInt(game.getPlayer(team).getType(), false);
+                output.writeVarInt(game.getPlayer(team).getGold(), false);
+                output.writeVarInt(game.getPlayer(team).getAlliance(), false);
+                output.writeVarInt(game.getPlayer(team).getPopulation(), false);
+                output.writeBoolean(game.isTeamDestroyed(team));
+                output.writeVarInt(game.getStatistics().getIncome(team), false);
+                output.writeVarInt(game.getStatistics().getDestroy(team), false);
+                output.writeVarInt(game.getStatistics().getLost(team), false);
+                writeUnit(output, game.getCommander(team));
+            }
+            output.writeVarInt(game.getCurrentTurn(), false);
+            output.writeVarInt(game.getCurrentTeam(), false);
+            output.writeBoolean(game.isGameOver());
+            output.writeBoolean(game.initialized());
+        }
+
+        @Override
+        public GameCore read(Kryo kryo, Input input, Class<GameCore> type) {
+            int game_type = input.readVarInt(false);
+            Map map = kryo.readObject(input, Map.class);
+            GameCore game = new GameCore(map, readRule(input), 0, game_type);
+            for (int team = 0; team < 4; team++) {
+                game.getPlayer(team).setType(input.readVarInt(false));
+                game.getPlayer(team).setGold(input.readVarInt(false));
+                game.getPlayer(team).setAlliance(input.readVarInt(false));
+                game.getPlayer(team).setPopulation(input.readVarInt(false));
+                game.setTeamDestroyed(team, input.readBoolean());
+                game.getStatistics().addIncome(team, input.readVarInt(false));
+                game.getStatistics().addDestroy(team, input.readVarInt(false));
+                game.getStatistics().addLose(team, input.readVarInt(false));
+                game.setCommander(team, readUnit(input));
+            }
+            game.setCurrentTurn(input.readVarInt(false));
+            game.setCurrentTeam(input.readVarInt(false));
+            game.setGameOver(input.readBoolean());
+            game.setInitialized(input.readBoolean());
+            return game;
+        }
+
+    }
+
+    /**
+     * Writes the events in their compact binary form, see {@link GameEvent#write(Output)}. Events are only read
+     * from the network, so they are always remote.
+     */
+    public static class GameEventSerializer extends Serializer<GameEvent> {
+
+        @Override
+        public void write(Kryo kryo, Output output, GameEvent event) {
+            event.write(output);
+        }
+
+        @Override
+        public GameEvent read(Kryo kryo, Input input, Class<GameEvent> type) {
+            try {
+                return GameEvent.read(input, true);
+            } catch (JSONException ex) {
+                throw new KryoException(ex);
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,24 @@
+package net.toyknight.aeii.network.protocol;
+
+import com.esotericsoftware.kryo.Kryo;
+
+/**
+ * Registers the classes of the binary protocol. The client and the server must register
+ * the same classes in the same order so that both ends agree on the class ids.
+ *
+ * @author toyknight 10/17/2026.
+ */
+public class PacketRegistry {
+
+    private PacketRegistry() {
+    }
+
+    public static void register(Kryo kryo) {
+        kryo.register(BinaryPacket.class, new BinaryPacket.PacketSerializer());
+        kryo.register(PacketBundle.class, new PacketBundle.BundleSerializer());
+        kryo.register(CompressedPacket.class, new CompressedPacket.CompressedSerializer());
+        kryo.register(PacketChunk.class, new PacketChunk.ChunkSerializer());
+        PacketEntities.register(kryo);
+    }
+
+}
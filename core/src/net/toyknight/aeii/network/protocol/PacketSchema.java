@@ -0,0 +1,68 @@
+package net.toyknight.aeii.network.protocol;
+
+import com.badlogic.gdx.utils.ObjectIntMap;
+
+/**
+ * The field dictionary shared by the client and the server for the binary protocol.
+ * Known field names are sent as their index in this table instead of as strings.
+ * The table is append-only: changing the order breaks every deployed client.
+ *
+ * @author toyknight 10/17/2026.
+ */
+public class PacketSchema {
+
+    private static final String[] KEYS = {
+            //packet header
+            "type", "operation", "approved", "code", "success", "token", "protocol",
+            //authentication and lobby
+            "username", "v_string", "service_id", "message", "players", "id", "is_host", "player_id", "host_id",
+            //rooms
+            "rooms", "room_id", "open", "requires_password", "room_name", "map_name", "capacity", "remaining",
+            "room_setting", "host", "started", "manager_state", "selected_unit_x", "selected_unit_y",
+            "allocation", "alliance", "types", "start_gold", "max_population", "password", "player_capacity",
+            "unit_capacity", "new_game", "save_name",
+            //game events
+            "game_event", "events", "parameters", "remote",
+            //maps
+            "maps", "map", "map_id", "filename", "author", "symmetric", "directory", "width", "height",
+            "map_data", "units", "tombs", "team_access",
+            //game state
+            "game", "rule", "commanders", "statistics", "current_team", "current_turn", "initialized", "game_over",
+            "team", "gold", "population", "income", "destroy", "lose", "available_units", "index", "unit_code",
+            "x", "y", "x_position", "y_position", "current_hp", "current_movement_point", "experience", "head",
+            "price", "remaining_turn", "remains", "standby", "static", "status", "team_destroy",
+            //rule entries
+            "CASTLE_INCOME", "VILLAGE_INCOME", "COMMANDER_INCOME", "KILL_EXPERIENCE", "ATTACK_EXPERIENCE",
+            "COUNTER_EXPERIENCE", "COMMANDER_PRICE_STEP", "UNIT_CAPACITY", "ENEMY_CLEAR", "CASTLE_CLEAR",
+            //room directory
+            "version", "delta", "removed", "since",
+            //lobby subscription
+            "players_joined", "players_left",
+            //session resuming
+            "session_token", "sequence",
+    };
+
+    private static final ObjectIntMap<String> KEY_INDICES = new ObjectIntMap<String>();
+
+    static {
+        for (int i = 0; i < KEYS.length; i++) {
+            KEY_INDICES.put(KEYS[i], i);
+        }
+    }
+
+    private PacketSchema() {
+    }
+
+    public static int getKeyIndex(String key) {
+        return KEY_INDICES.get(key, -1);
+    }
+
+    public static String getKey(int index) {
+        return KEYS[index];
+    }
+
+    public static int getKeyCount() {
+        return KEYS.length;
+    }
+
+}
@@ -2,6 +2,7 @@ package net.toyknight.aeii.record;
 
 import net.toyknight.aeii.Serializable;
 import net.toyknight.aeii.entity.GameCore;
+import net.toyknight.aeii.manager.GameEvent;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -17,15 +18,15 @@ public class GameRecord implements Serializable {
     private final String V_STRING;
 
     private GameCore game;
-    private Queue<JSONObject> event_queue;
+    private Queue<GameEvent> event_queue;
 
     public GameRecord(JSONObject json) throws JSONException {
         this(json.getString("v_string"));
         setGame(new GameCore(json.getJSONObject("game")));
         JSONArray events = json.getJSONArray("events");
-        event_queue = new LinkedList<JSONObject>();
+        event_queue = new LinkedList<GameEvent>();
         for (int i = 0; i < events.length(); i++) {
-            event_queue.add(events.getJSONObject(i));
+            event_queue.add(GameEvent.fromJson(events.getJSONObject(i), false));
         }
     }
 
@@ -45,11 +46,11 @@ public class GameRecord implements Serializable {
         return game;
     }
 
-    public void setEvents(Queue<JSONObject> events) {
+    public void setEvents(Queue<GameEvent> events) {
         this.event_queue = events;
     }
 
-    public Queue<JSONObject> getEvents() {
+    public Queue<GameEvent> getEvents() {
         return event_queue;
     }
 
@@ -59,9 +60,8 @@ public class GameRecord implements Serializable {
         json.put("v_string", V_STRING);
         json.put("game", getGame().toJson());
         JSONArray events = new JSONArray();
-        Queue<JSONObject> temp_queue = new LinkedList<JSONObject>(getEvents());
-        while (temp_queue.size() > 0) {
-            events.put(temp_queue.poll());
+        for (GameEvent event : getEvents()) {
+            events.put(event.toJson());
         }
         json.put("events", events);
         return json;
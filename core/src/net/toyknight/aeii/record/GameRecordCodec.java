@@ -0,0 +1,138 @@
+package net.toyknight.aeii.record;
+
+import com.esotericsoftware.kryo.KryoException;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import net.toyknight.aeii.entity.GameCore;
+import net.toyknight.aeii.manager.GameEvent;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.LinkedList;
+import java.util.Queue;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * The compact binary form of a game record, in which the server archives the online matches:
+ * <p>
+ * [magic][varint version][header json][varint event count][varint body length][varint deflated length][deflated body]
+ * <p>
+ * The header describes the match and is readable without inflating the body. The body is the verification
+ * string, the game at the start and then every event, each written against the previous one with
+ * {@link GameEvent#write(Output, GameEvent)}.
+ *
+ * @author toyknight 10/17/2026.
+ */
+public class GameRecordCodec {
+
+    private static final int MAGIC = 0x41455231;
+
+    private static final int VERSION = 1;
+
+    private static final int MAX_BODY_LENGTH = 64 * 1024 * 1024;
+
+    /**
+     * Starts the body of a record, to which the events are then written one after another.
+     */
+    public static Output createBody(String v_string, GameCore game) {
+        return createBody(v_string, game.toJson().toString());
+    }
+
+    /**
+     * @param game the json string of the game at the start
+     */
+    public static Output createBody(String v_string, String game) {
+        Output body = new Output(4096, -1);
+        body.writeString(v_string);
+        body.writeString(game);
+        return body;
+    }
+
+    /**
+     * @param body the body started by {@link #createBody(String, GameCore)} with the events written to it
+     */
+    public static byte[] encode(JSONObject header, int event_count, byte[] body, int body_length) {
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        Output deflated = new Output(Math.max(256, body_length / 4), -1);
+        try {
+            deflater.setInput(body, 0, body_length);
+            deflater.finish();
+            byte[] buffer = new byte[4096];
+            while (!deflater.finished()) {
+                int length = deflater.deflate(buffer);
+                deflated.writeBytes(buffer, 0, length);
+            }
+        } finally {
+            deflater.end();
+        }
+        Output output = new Output(deflated.position() + 256, -1);
+        output.writeInt(MAGIC);
+        output.writeVarInt(VERSION, true);
+        output.writeString(header.toString());
+        output.writeVarInt(event_count, true);
+        output.writeVarInt(body_length, true);
+        output.writeVarInt(deflated.position(), true);
+        output.writeBytes(deflated.getBuffer(), 0, deflated.position());
+        return output.toBytes();
+    }
+
+    /**
+     * Reads only the header of a record, leaving the input at the event count.
+     */
+    public static JSONObject readHeader(Input input) throws JSONException {
+        try {
+            if (input.readInt() != MAGIC) {
+                throw new JSONException("Not a game record");
+            }
+            int version = input.readVarInt(true);
+            if (version != VERSION) {
+                throw new JSONException("Unsupported game record version " + version);
+            }
+            return new JSONObject(input.readString());
+        } catch (KryoException ex) {
+            throw new JSONException(ex);
+        }
+    }
+
+    public static GameRecord decode(byte[] data) throws JSONException {
+        Input input = new Input(data);
+        readHeader(input);
+        Inflater inflater = new Inflater();
+        try {
+            int event_count = input.readVarInt(true);
+            int body_length = input.readVarInt(true);
+            int deflated_length = input.readVarInt(true);
+            if (body_length < 0 || body_length > MAX_BODY_LENGTH) {
+                throw new JSONException("Illegal game record length " + body_length);
+            }
+            if (deflated_length < 0) {
+                throw new JSONException("Illegal game record length " + deflated_length);
+            }
+            byte[] body = new byte[body_length];
+            inflater.setInput(input.readBytes(deflated_length));
+            if (inflater.inflate(body) != body_length) {
+                throw new JSONException("Truncated game record");
+            }
+            Input body_input = new Input(body);
+            GameRecord record = new GameRecord(body_input.readString());
+            record.setGame(new GameCore(new JSONObject(body_input.readString())));
+            Queue<GameEvent> events = new LinkedList<GameEvent>();
+            GameEvent previous = null;
+            for (int i = 0; i < event_count; i++) {
+                previous = GameEvent.read(body_input, previous, false);
+                events.add(previous);
+            }
+            record.setEvents(events);
+            return record;
+        } catch (KryoException ex) {
+            throw new JSONException(ex);
+        } catch (DataFormatException ex) {
+            throw new JSONException(ex);
+        } finally {
+            inflater.end();
+        }
+    }
+
+}
@@ -5,7 +5,6 @@ import net.toyknight.aeii.GameContext;
 import net.toyknight.aeii.manager.GameManager;
 import net.toyknight.aeii.manager.GameEvent;
 import org.json.JSONException;
-import org.json.JSONObject;
 
 /**
  * @author toyknight 10/30/2015.
@@ -61,17 +60,16 @@ public class GameRecordPlayer {
                         fireRecordFinishEvent();
                     }
                 } else {
-                    JSONObject preview = getRecord().getEvents().peek();
-                    int type = preview.getInt("type");
+                    int type = getRecord().getEvents().peek().getType();
                     if (type == GameEvent.TILE_DESTROY || type == GameEvent.ATTACK) {
-                        JSONObject event = getRecord().getEvents().poll();
+                        GameEvent event = getRecord().getEvents().poll();
                         getManager().getGameEventExecutor().submitGameEvent(event);
                     } else {
                         if (playback_delay < 1.0f) {
                             playback_delay += delta;
                         } else {
                             playback_delay = 0f;
-                            JSONObject event = getRecord().getEvents().poll();
+                            GameEvent event = getRecord().getEvents().poll();
                             getManager().getGameEventExecutor().submitGameEvent(event);
                         }
                     }
@@ -3,7 +3,7 @@ package net.toyknight.aeii.record;
 import net.toyknight.aeii.GameContext;
 import net.toyknight.aeii.concurrent.RecordSaveTask;
 import net.toyknight.aeii.entity.GameCore;
-import org.json.JSONObject;
+import net.toyknight.aeii.manager.GameEvent;
 
 import java.util.LinkedList;
 import java.util.Queue;
@@ -15,7 +15,7 @@ public class GameRecorder {
 
     private final GameContext context;
 
-    private Queue<JSONObject> event_queue = new LinkedList<JSONObject>();
+    private Queue<GameEvent> event_queue = new LinkedList<GameEvent>();
 
     private boolean enabled = false;
 
@@ -43,7 +43,7 @@ public class GameRecorder {
         }
     }
 
-    public void submitGameEvent(JSONObject event) {
+    public void submitGameEvent(GameEvent event) {
         if (enabled) {
             event_queue.add(event);
         }
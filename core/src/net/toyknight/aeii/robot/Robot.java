@@ -30,8 +30,11 @@ public class Robot {
 
     private Action action;
 
+    private Object lock;
+
     public Robot(GameManager manager) {
         this.manager = manager;
+        this.lock = GameContext.RENDER_LOCK;
         this.assigned_positions = new ObjectSet<Position>();
         this.tile_threat_status = new ObjectMap<Position, Boolean>();
         this.ability_map = new ObjectMap<Integer, ObjectSet<Integer>>();
@@ -54,6 +57,13 @@ public class Robot {
         }
     }
 
+    /**
+     * Sets the lock the robot holds while it reads the game. Defaults to the render lock.
+     */
+    public void setLock(Object lock) {
+        this.lock = lock;
+    }
+
     public GameManager getManager() {
         return manager;
     }
@@ -80,6 +90,14 @@ public class Robot {
         }
     }
 
+    /**
+     * Makes the next decision on the calling thread. The operations decided on are submitted to the manager
+     * but not executed.
+     */
+    public void step() {
+        doCalculate();
+    }
+
     private void doCalculate() {
         if (!prepared) {
             prepare();
@@ -113,7 +131,7 @@ public class Robot {
     //select a unit for actions, or if there's no unit available do some recruiting then end turn
     private void select() {
         action = null;
-        synchronized (GameContext.RENDER_LOCK) {
+        synchronized (lock) {
             ObjectSet<Unit> units = getGame().getMap().getUnits(team);
 
             Unit refresher = getFirstAvailableUnitWithAbility(units, Ability.REFRESH_AURA);
@@ -150,7 +168,7 @@ public class Robot {
 
     //recruit a new unit, returns false if no unit can be recruited
     private boolean recruit() {
-        synchronized (GameContext.RENDER_LOCK) {
+        synchronized (lock) {
             Position recruit_position = getPreferredRecruitPosition();
             if (recruit_position == null) {
                 return false;
@@ -194,7 +212,7 @@ public class Robot {
     }
 
     private void act() {
-        synchronized (GameContext.RENDER_LOCK) {
+        synchronized (lock) {
             if (!getAction().isActed()) {
                 Position target = getAction().getTarget();
                 switch (getAction().getType()) {
@@ -223,7 +241,7 @@ public class Robot {
     }
 
     private void remove() {
-        synchronized (GameContext.RENDER_LOCK) {
+        synchronized (lock) {
             Unit selected_unit = getManager().getSelectedUnit();
             ObjectSet<Position> movable_positions =
                     getManager().getPositionGenerator().createMovablePositions(selected_unit);
@@ -240,12 +258,12 @@ public class Robot {
     private void createTileThreatStatus() {
         tile_threat_status.clear();
         ObjectSet<Unit> enemy_units;
-        synchronized (GameContext.RENDER_LOCK) {
+        synchronized (lock) {
             enemy_units = getGame().getEnemyUnits(team);
         }
         for (Unit enemy : enemy_units) {
             if (enemy.hasAbility(Ability.COMMANDER) || enemy.hasAbility(Ability.CONQUEROR)) {
-                synchronized (GameContext.RENDER_LOCK) {
+                synchronized (lock) {
                     ObjectSet<Position> movable_positions =
                             getManager().getPositionGenerator().createMovablePositions(enemy, true);
                     for (Position position : movable_positions) {
@@ -264,7 +282,7 @@ public class Robot {
 
     private void calculateAction() {
         Unit selected_unit = getManager().getSelectedUnit();
-        synchronized (GameContext.RENDER_LOCK) {
+        synchronized (lock) {
             if (selected_unit.isStatic()) {
                 Position standby_position = getGame().getMap().getPosition(selected_unit);
                 if (getManager().hasEnemyWithinRange(selected_unit)) {
@@ -290,7 +308,7 @@ public class Robot {
 
         Position current_position = getGame().getMap().getPosition(selected_unit);
         ObjectSet<Position> movable_positions;
-        synchronized (GameContext.RENDER_LOCK) {
+        synchronized (lock) {
             movable_positions = getManager().getPositionGenerator().createMovablePositions(selected_unit);
         }
 
@@ -322,7 +340,7 @@ public class Robot {
                             }
                         }
                     }
-                    synchronized (GameContext.RENDER_LOCK) {
+                    synchronized (lock) {
                         if (getGame().getMap().isTomb(target_position)
                                 && (selected_unit.hasAbility(Ability.NECROMANCER))) {
                             actions.add(new Action(position, target_position, Operation.SUMMON));
@@ -341,7 +359,7 @@ public class Robot {
         if (actions.size > 0) {
             Action preferred_action;
             if ((preferred_action = getPreferredAction(actions)) == null) {
-                synchronized (GameContext.RENDER_LOCK) {
+                synchronized (lock) {
                     Position standby_position = getPreferredStandbyPosition(selected_unit, movable_positions);
                     submitAction(new Action(standby_position, standby_position, Operation.STANDBY));
                 }
@@ -349,7 +367,7 @@ public class Robot {
                 submitAction(preferred_action);
             }
         } else {
-            synchronized (GameContext.RENDER_LOCK) {
+            synchronized (lock) {
                 if (isThreatened(current_position) && movable_positions.contains(current_position)) {
                     submitAction(new Action(current_position, current_position, Operation.STANDBY));
                     return;
@@ -401,29 +419,6 @@ public class Robot {
         if (action.getType() == Operation.REPAIR) {
             assigned_positions.add(action.getPosition());
         }
-        System.out.println("go to " + "[" + action.getPosition().x + ", " + action.getPosition().y + "]");
-        switch (action.getType()) {
-            case Operation.ATTACK:
-                System.out.print("attack");
-                break;
-            case Operation.HEAL:
-                System.out.print("heal");
-                break;
-            case Operation.SUMMON:
-                System.out.print("summon");
-                break;
-            case Operation.OCCUPY:
-                System.out.print("occupy");
-                break;
-            case Operation.REPAIR:
-                System.out.print("repair");
-                break;
-            case Operation.STANDBY:
-                System.out.print("standby");
-                break;
-        }
-        System.out.print(" ");
-        System.out.println(action.getTarget() == null ? "null" : String.format("[%d, %d]", action.getTarget().x, action.getTarget().y));
     }
 
     private boolean canRepair(Position position, Unit unit) {
@@ -443,7 +438,7 @@ public class Robot {
     }
 
     private int getActionScore(Action action) {
-        synchronized (GameContext.RENDER_LOCK) {
+        synchronized (lock) {
             Unit selected_unit = UnitFactory.cloneUnit(getManager().getSelectedUnit());
             selected_unit.setX(action.getPosition().x);
             selected_unit.setY(action.getPosition().y);
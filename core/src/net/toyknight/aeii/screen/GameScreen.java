@@ -13,6 +13,7 @@ import net.toyknight.aeii.Callable;
 import net.toyknight.aeii.animation.*;
 import net.toyknight.aeii.entity.*;
 import net.toyknight.aeii.manager.CheatingException;
+import net.toyknight.aeii.manager.GameEvent;
 import net.toyknight.aeii.manager.GameManager;
 import net.toyknight.aeii.network.NetworkManager;
 import net.toyknight.aeii.record.GameRecordPlayerListener;
@@ -22,9 +23,9 @@ import net.toyknight.aeii.screen.widgets.ActionButtonBar;
 import net.toyknight.aeii.screen.widgets.CircleButton;
 import net.toyknight.aeii.screen.widgets.MessageBoard;
 import net.toyknight.aeii.network.entity.PlayerSnapshot;
+import net.toyknight.aeii.network.entity.RoomSetting;
 import net.toyknight.aeii.utils.Language;
 import net.toyknight.aeii.utils.TileFactory;
-import org.json.JSONObject;
 
 /**
  * @author toyknight 4/4/2015.
@@ -355,10 +356,17 @@ public class GameScreen extends StageScreen implements MapCanvas, GameRecordPlay
     }
 
     @Override
-    public void onReceiveGameEvent(JSONObject event) {
+    public void onReceiveGameEvent(GameEvent event) {
         getGameManager().getGameEventExecutor().submitGameEvent(event);
     }
 
+    @Override
+    public void onGameResync(RoomSetting setting) {
+        getContext().getRoomManager().initialize(setting);
+        getContext().gotoGameScreen(getContext().getRoomManager().getArrangedGame());
+        getGameManager().syncState(setting.manager_state, setting.selected_unit_x, setting.selected_unit_y);
+    }
+
     @Override
     public void onReceiveMessage(String username, String message) {
         if (message.startsWith("/")) {
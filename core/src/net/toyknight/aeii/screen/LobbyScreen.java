@@ -23,6 +23,8 @@ import net.toyknight.aeii.screen.dialog.BasicDialog;
 import net.toyknight.aeii.screen.dialog.ChatRoomDialog;
 import net.toyknight.aeii.screen.dialog.MiniMapDialog;
 import net.toyknight.aeii.screen.dialog.RoomCreateDialog;
+import net.toyknight.aeii.network.entity.LobbyUpdate;
+import net.toyknight.aeii.network.entity.RoomListUpdate;
 import net.toyknight.aeii.network.entity.RoomSetting;
 import net.toyknight.aeii.network.entity.RoomSnapshot;
 import net.toyknight.aeii.screen.widgets.StringList;
@@ -36,6 +38,7 @@ public class LobbyScreen extends StageScreen implements NetworkListener {
 
     private StringList<RoomSnapshot> room_list;
     private Array<RoomSnapshot> all_rooms;
+    private long room_version = -1;
 
     private ChatRoomDialog chat_room_dialog;
     private RoomCreateDialog room_create_dialog;
@@ -191,21 +194,24 @@ public class LobbyScreen extends StageScreen implements NetworkListener {
 
     public void refreshGameList() {
         room_list.clearItems();
+        room_version = -1;
         Gdx.input.setInputProcessor(null);
         btn_refresh.setText(Language.getText("LB_REFRESHING"));
-        getContext().submitAsyncTask(new AsyncTask<Array<RoomSnapshot>>() {
+        getContext().submitAsyncTask(new AsyncTask<RoomListUpdate>() {
             @Override
-            public Array<RoomSnapshot> doTask() throws Exception {
-                return NetworkManager.requestRoomList();
+            public RoomListUpdate doTask() throws Exception {
+                return NetworkManager.requestLobbySubscription();
             }
 
             @Override
-            public void onFinish(Array<RoomSnapshot> result) {
+            public void onFinish(RoomListUpdate result) {
                 if (result == null) {
                     showNotification(Language.getText("MSG_ERR_AEA"), null);
                 } else {
                     Gdx.input.setInputProcessor(LobbyScreen.this);
-                    all_rooms = result;
+                    all_rooms = new Array<RoomSnapshot>();
+                    result.apply(all_rooms);
+                    room_version = result.version;
                     applySearch();
                 }
                 btn_refresh.setText(Language.getText("LB_REFRESH"));
@@ -240,7 +246,11 @@ public class LobbyScreen extends StageScreen implements NetworkListener {
                 showInput(Language.getText("MSG_INFO_PIP"), 8, true, new Input.TextInputListener() {
                     @Override
                     public void input(String password) {
-                        tryJoinRoom(room.room_number, password);
+                        if (isWatchOnly(room)) {
+                            trySpectateRoom(room.room_number, password);
+                        } else {
+                            tryJoinRoom(room.room_number, password);
+                        }
                     }
 
                     @Override
@@ -248,11 +258,55 @@ public class LobbyScreen extends StageScreen implements NetworkListener {
                     }
                 });
             } else {
-                tryJoinRoom(room.room_number, "");
+                if (isWatchOnly(room)) {
+                    trySpectateRoom(room.room_number, "");
+                } else {
+                    tryJoinRoom(room.room_number, "");
+                }
             }
         }
     }
 
+    /**
+     * @return whether the room is running and full, so it can only be watched
+     */
+    private boolean isWatchOnly(RoomSnapshot room) {
+        return !room.open && room.remaining <= 0;
+    }
+
+    private void trySpectateRoom(final long room_number, final String password) {
+        Gdx.input.setInputProcessor(null);
+        btn_join.setText(Language.getText("LB_JOINING"));
+        getContext().submitAsyncTask(new AsyncTask<Boolean>() {
+            @Override
+            public Boolean doTask() {
+                return NetworkManager.requestSpectateRoom(room_number, password);
+            }
+
+            @Override
+            public void onFinish(Boolean approved) {
+                btn_join.setText(Language.getText("LB_JOIN"));
+                if (!approved) {
+                    showNotification(Language.getText("MSG_ERR_CNJR"), null);
+                }
+            }
+
+            @Override
+            public void onFail(String message) {
+                btn_join.setText(Language.getText("LB_JOIN"));
+                showNotification(message, null);
+            }
+        });
+    }
+
+    @Override
+    public void onGameResync(RoomSetting setting) {
+        //the game of the room being watched
+        getContext().getRoomManager().initialize(setting);
+        getContext().gotoGameScreen(getContext().getRoomManager().getArrangedGame());
+        getContext().getGameManager().syncState(setting.manager_state, setting.selected_unit_x, setting.selected_unit_y);
+    }
+
     private void tryJoinRoom(final long room_number, final String password) {
         if (getSelectedRoom() != null) {
             Gdx.input.setInputProcessor(null);
@@ -324,6 +378,30 @@ public class LobbyScreen extends StageScreen implements NetworkListener {
         chat_room_dialog.appendMessage(username, message);
     }
 
+    @Override
+    public void onLobbyUpdate(LobbyUpdate update) {
+        if (all_rooms == null || room_version < 0) {
+            return;
+        }
+        if (update.since <= room_version) {
+            //the subscription list may already contain part of this update, applying it again is harmless
+            update.apply(all_rooms);
+            room_version = Math.max(room_version, update.version);
+            applySearch();
+            chat_room_dialog.updateIdlePlayerList(update);
+        } else {
+            //an update was missed, start over from the full list on the render thread
+            room_version = -1;
+            chat_room_dialog.resetIdlePlayerList();
+            Gdx.app.postRunnable(new Runnable() {
+                @Override
+                public void run() {
+                    refreshGameList();
+                }
+            });
+        }
+    }
+
     private class ModeSelectDialog extends BasicDialog {
 
         private final TextButton btn_new_game;
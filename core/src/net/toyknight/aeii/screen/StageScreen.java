@@ -9,11 +9,13 @@ import com.badlogic.gdx.scenes.scene2d.ui.TextField;
 import net.toyknight.aeii.GameContext;
 import net.toyknight.aeii.Callable;
 import net.toyknight.aeii.ResourceManager;
+import net.toyknight.aeii.manager.GameEvent;
 import net.toyknight.aeii.network.NetworkListener;
 import net.toyknight.aeii.network.NetworkManager;
+import net.toyknight.aeii.network.entity.LobbyUpdate;
+import net.toyknight.aeii.network.entity.RoomSetting;
 import net.toyknight.aeii.screen.dialog.*;
 import net.toyknight.aeii.utils.Language;
-import org.json.JSONObject;
 
 import java.util.HashMap;
 import java.util.LinkedList;
@@ -284,11 +286,29 @@ public class StageScreen extends Stage implements Screen, NetworkListener {
     }
 
     @Override
-    public void onReceiveGameEvent(JSONObject event) {
+    public void onReceiveGameEvent(GameEvent event) {
+    }
+
+    @Override
+    public void onGameResync(RoomSetting setting) {
     }
 
     @Override
     public void onReceiveMessage(String username, String message) {
     }
 
-}
\ No newline at end of file
+    @Override
+    public void onRoomClosed() {
+        showNotification(Language.getText("MSG_INFO_RC"), new Callable() {
+            @Override
+            public void call() {
+                getContext().gotoLobbyScreen();
+            }
+        });
+    }
+
+    @Override
+    public void onLobbyUpdate(LobbyUpdate update) {
+    }
+
+}
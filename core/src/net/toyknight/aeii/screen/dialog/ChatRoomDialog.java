@@ -16,6 +16,7 @@ import net.toyknight.aeii.ResourceManager;
 import net.toyknight.aeii.concurrent.AsyncTask;
 import net.toyknight.aeii.concurrent.MessageSendingTask;
 import net.toyknight.aeii.network.NetworkManager;
+import net.toyknight.aeii.network.entity.LobbyUpdate;
 import net.toyknight.aeii.network.entity.PlayerSnapshot;
 import net.toyknight.aeii.screen.StageScreen;
 import net.toyknight.aeii.utils.Language;
@@ -33,6 +34,8 @@ public class ChatRoomDialog extends BasicDialog {
     private final Table player_pane;
     private final ScrollPane sp_player;
 
+    private Array<PlayerSnapshot> idle_players;
+
     public ChatRoomDialog(StageScreen owner) {
         super(owner);
         int width = ts * 14 + ts / 2;
@@ -157,7 +160,26 @@ public class ChatRoomDialog extends BasicDialog {
         }
     }
 
+    /**
+     * Applies the players who entered or left the lobby, if the idle player list has been received.
+     */
+    public void updateIdlePlayerList(LobbyUpdate update) {
+        if (idle_players != null && (update.joined_players.size > 0 || update.left_players.size > 0)) {
+            update.applyPlayers(idle_players);
+            updateIdlePlayerList(idle_players);
+        }
+    }
+
+    /**
+     * Stops applying lobby updates to the idle player list after an update was missed.
+     * The list is requested again the next time the dialog is displayed.
+     */
+    public void resetIdlePlayerList() {
+        idle_players = null;
+    }
+
     private void updateIdlePlayerList(Array<PlayerSnapshot> list) {
+        idle_players = list;
         player_pane.clearChildren();
         for (PlayerSnapshot snapshot : list) {
             Label label_player = new Label(snapshot.username, getContext().getSkin());
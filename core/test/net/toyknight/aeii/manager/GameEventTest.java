@@ -0,0 +1,86 @@
+package net.toyknight.aeii.manager;
+
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.IntArray;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import net.toyknight.aeii.entity.Position;
+import org.json.JSONException;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author toyknight 10/17/2026.
+ */
+public class GameEventTest {
+
+    private static Input toInput(Output output) {
+        return new Input(output.toBytes());
+    }
+
+    private static Output writeRaw(int type, int[] parameters, int[] data) {
+        Output output = new Output(64, -1);
+        output.writeVarInt(type, false);
+        output.writeVarInt(parameters.length, true);
+        for (int parameter : parameters) {
+            output.writeVarInt(parameter, false);
+        }
+        output.writeVarInt(data.length, true);
+        for (int value : data) {
+            output.writeVarInt(value, false);
+        }
+        output.writeString(null);
+        return output;
+    }
+
+    @Test
+    public void testCreateCopiesParameters() {
+        int[] parameters = {1, 2};
+        GameEvent event = GameEvent.create(GameEvent.SELECT, parameters);
+        parameters[0] = 9;
+        assertEquals(1, event.getInt(0));
+    }
+
+    @Test
+    public void testRoundTrip() throws JSONException {
+        Array<Position> path = new Array<Position>();
+        path.add(new Position(1, 2));
+        path.add(new Position(1, 3));
+        GameEvent move = GameEvent.move(1, 2, 1, 3, 4, path);
+        IntArray changes = new IntArray(new int[]{1, 3, -20, 2, 3, 5});
+        GameEvent hp_change = GameEvent.hpChange(changes);
+
+        Output output = new Output(64, -1);
+        move.write(output);
+        hp_change.write(output, move);
+        Input input = toInput(output);
+        GameEvent read_move = GameEvent.read(input, true);
+        GameEvent read_hp_change = GameEvent.read(input, read_move, true);
+
+        assertEquals(move.toJson().toString(), read_move.toJson().toString());
+        assertEquals(hp_change.toJson().toString(), read_hp_change.toJson().toString());
+        assertTrue(read_move.isRemote());
+    }
+
+    @Test(expected = JSONException.class)
+    public void testOddMovePathIsRejected() throws JSONException {
+        GameEvent.read(toInput(writeRaw(GameEvent.MOVE, new int[]{1, 2, 1, 3, 4}, new int[]{1, 2, 1})), true);
+    }
+
+    @Test(expected = JSONException.class)
+    public void testPartialHpChangeIsRejected() throws JSONException {
+        GameEvent.read(toInput(writeRaw(GameEvent.HP_CHANGE, new int[0], new int[]{1, 3, -20, 2})), true);
+    }
+
+    @Test(expected = JSONException.class)
+    public void testDataOnPlainEventIsRejected() throws JSONException {
+        GameEvent.read(toInput(writeRaw(GameEvent.SELECT, new int[]{1, 2}, new int[]{7})), true);
+    }
+
+    @Test(expected = JSONException.class)
+    public void testMissingParametersAreRejected() throws JSONException {
+        GameEvent.read(toInput(writeRaw(GameEvent.ATTACK, new int[]{1, 2, 3}, new int[0])), true);
+    }
+
+}
@@ -0,0 +1,157 @@
+package net.toyknight.aeii.network.protocol;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author toyknight 10/17/2026.
+ */
+public class ChunkAssemblerTest {
+
+    private static String createPacket(int size) {
+        StringBuilder builder = new StringBuilder("{\"type\":1,\"operation\":3,\"map_data\":[");
+        while (builder.length() < size) {
+            builder.append(builder.length() % 7).append(',');
+        }
+        return builder.append("0]}").toString();
+    }
+
+    private static Object receiveAll(ChunkAssembler assembler, PacketChunk[] chunks) throws JSONException {
+        Object packet = null;
+        for (PacketChunk chunk : chunks) {
+            assertNull(packet);
+            packet = assembler.receive(chunk);
+        }
+        return packet;
+    }
+
+    @Test
+    public void testJsonRoundTrip() throws JSONException {
+        String packet = createPacket(100 * 1024);
+        PacketChunk[] chunks = PacketChunk.split(packet, 0);
+        assertTrue(chunks.length > 1);
+        ChunkAssembler assembler = new ChunkAssembler();
+        assertEquals(packet, receiveAll(assembler, chunks));
+        assertEquals(0, assembler.getTransferCount());
+        assertEquals(0, assembler.getInFlightBytes());
+    }
+
+    @Test
+    public void testBinaryRoundTrip() throws JSONException {
+        BinaryPacket packet = BinaryPacket.create(new JSONObject(createPacket(100 * 1024)));
+        Object received = receiveAll(new ChunkAssembler(), PacketChunk.split(packet, 0));
+        assertTrue(received instanceof BinaryPacket);
+        assertArrayEquals(packet.getData(), ((BinaryPacket) received).getData());
+    }
+
+    @Test
+    public void testCompressedRoundTrip() throws JSONException {
+        byte[] data = new byte[40 * 1024];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+        CompressedPacket packet = new CompressedPacket(CompressedPacket.FORMAT_BINARY, 123456, data);
+        Object received = receiveAll(new ChunkAssembler(), PacketChunk.split(packet, 0));
+        assertTrue(received instanceof CompressedPacket);
+        CompressedPacket compressed = (CompressedPacket) received;
+        assertEquals(CompressedPacket.FORMAT_BINARY, compressed.getFormat());
+        assertEquals(123456, compressed.getLength());
+        assertArrayEquals(data, compressed.getData());
+    }
+
+    @Test
+    public void testTransfersOneAfterAnother() throws JSONException {
+        ChunkAssembler assembler = new ChunkAssembler(1, 256 * 1024);
+        for (int transfer_id = 0; transfer_id < 3; transfer_id++) {
+            String packet = createPacket(100 * 1024);
+            assertEquals(packet, receiveAll(assembler, PacketChunk.split(packet, transfer_id)));
+        }
+    }
+
+    @Test(expected = JSONException.class)
+    public void testSecondTransferInProgressIsRejected() throws JSONException {
+        ChunkAssembler assembler = new ChunkAssembler(1, 256 * 1024);
+        PacketChunk[] first = PacketChunk.split(createPacket(100 * 1024), 0);
+        PacketChunk[] second = PacketChunk.split(createPacket(100 * 1024), 1);
+        assembler.receive(first[0]);
+        assembler.receive(second[0]);
+    }
+
+    @Test(expected = JSONException.class)
+    public void testTransferOverTheBudgetIsRejected() throws JSONException {
+        //declares few enough chunks to start, but carries more than the budget
+        ChunkAssembler assembler = new ChunkAssembler(1, 40 * 1024);
+        receiveAll(assembler, PacketChunk.split(createPacket(100 * 1024), 0));
+    }
+
+    @Test
+    public void testBudgetIsSharedByTheTransfersInProgress() throws JSONException {
+        ChunkAssembler assembler = new ChunkAssembler(2, 48 * 1024);
+        PacketChunk[] first = PacketChunk.split(createPacket(40 * 1024), 0);
+        PacketChunk[] second = PacketChunk.split(createPacket(40 * 1024), 1);
+        assembler.receive(first[0]);
+        assembler.receive(first[1]);
+        assembler.receive(second[0]);
+        assertEquals(3 * PacketChunk.MAX_CHUNK_SIZE, assembler.getInFlightBytes());
+        try {
+            assembler.receive(second[1]);
+            fail();
+        } catch (JSONException ignored) {
+        }
+        //the rejected transfer gives its bytes back
+        assertEquals(1, assembler.getTransferCount());
+        assertEquals(2 * PacketChunk.MAX_CHUNK_SIZE, assembler.getInFlightBytes());
+    }
+
+    @Test(expected = JSONException.class)
+    public void testTooManyChunksAreRejected() throws JSONException {
+        ChunkAssembler assembler = new ChunkAssembler(1, 64 * 1024);
+        assembler.receive(new PacketChunk(0, 0, 5, new byte[16]));
+    }
+
+    @Test(expected = JSONException.class)
+    public void testTransferNotStartingAtTheFirstChunkIsRejected() throws JSONException {
+        PacketChunk[] chunks = PacketChunk.split(createPacket(100 * 1024), 0);
+        new ChunkAssembler().receive(chunks[1]);
+    }
+
+    @Test
+    public void testChunkOutOfOrderBreaksTheTransfer() throws JSONException {
+        ChunkAssembler assembler = new ChunkAssembler();
+        PacketChunk[] chunks = PacketChunk.split(createPacket(100 * 1024), 0);
+        assembler.receive(chunks[0]);
+        try {
+            assembler.receive(chunks[2]);
+            fail();
+        } catch (JSONException ignored) {
+        }
+        assertEquals(0, assembler.getTransferCount());
+        assertEquals(0, assembler.getInFlightBytes());
+    }
+
+    @Test
+    public void testRemainingChunksOfAnAbortedTransferAreDropped() throws JSONException {
+        ChunkAssembler assembler = new ChunkAssembler(1, 256 * 1024);
+        PacketChunk[] chunks = PacketChunk.split(createPacket(100 * 1024), 0);
+        assembler.receive(chunks[0]);
+        assembler.receive(chunks[1]);
+        assembler.abort(0);
+        assertEquals(0, assembler.getTransferCount());
+        assertEquals(0, assembler.getInFlightBytes());
+        for (int sequence = 2; sequence < chunks.length; sequence++) {
+            assertNull(assembler.receive(chunks[sequence]));
+        }
+        //the next transfer is received as usual
+        String packet = createPacket(100 * 1024);
+        assertEquals(packet, receiveAll(assembler, PacketChunk.split(packet, 1)));
+    }
+
+    @Test(expected = JSONException.class)
+    public void testUnknownContentIsRejected() throws JSONException {
+        new ChunkAssembler().receive(new PacketChunk(0, 0, 1, new byte[]{9, 1, 2}));
+    }
+
+}
@@ -0,0 +1,93 @@
+package net.toyknight.aeii.network.protocol;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author toyknight 10/17/2026.
+ */
+public class PacketCodecTest {
+
+    private static JSONObject createPacket() {
+        JSONObject packet = new JSONObject();
+        packet.put("type", 1);
+        packet.put("operation", 0x10);
+        packet.put("approved", true);
+        packet.put("success", false);
+        packet.put("room_id", 1L << 40);
+        packet.put("message", "hello 世界");
+        packet.put("not_in_schema", -123456);
+        packet.put("ratio", 0.25);
+        packet.put("password", JSONObject.NULL);
+        JSONArray tiles = new JSONArray();
+        for (int i = 0; i < 100; i++) {
+            tiles.put(i % 2 == 0 ? i : -i * 1000);
+        }
+        tiles.put(Integer.MAX_VALUE);
+        tiles.put(Integer.MIN_VALUE);
+        packet.put("map_data", tiles);
+        JSONArray mixed = new JSONArray();
+        mixed.put(1);
+        mixed.put("two");
+        mixed.put(new JSONObject().put("x", 3));
+        mixed.put(new JSONArray());
+        packet.put("units", mixed);
+        packet.put("game", new JSONObject().put("current_turn", 7).put("nested", new JSONObject().put("deep", true)));
+        return packet;
+    }
+
+    @Test
+    public void testRoundTrip() {
+        JSONObject packet = createPacket();
+        JSONObject decoded = PacketCodec.decode(PacketCodec.encode(packet));
+        assertEquals(packet.toString(), decoded.toString());
+    }
+
+    @Test
+    public void testEmbeddedObjectIsEncodedLikeItsContent() {
+        JSONObject game = new JSONObject().put("current_turn", 3).put("map_data", new JSONArray().put(1).put(2));
+        JSONObject plain = new JSONObject().put("type", 2).put("game", game);
+        JSONObject embedded = new JSONObject().put("type", 2).put("game", new EncodedObject(game));
+        assertArrayEquals(PacketCodec.encode(plain), PacketCodec.encode(embedded));
+    }
+
+    @Test
+    public void testPeekInt() {
+        byte[] data = PacketCodec.encode(createPacket());
+        assertEquals(0x10, PacketCodec.peekInt(data, "operation", -1));
+        assertEquals(-123456, PacketCodec.peekInt(data, "not_in_schema", -1));
+        assertEquals(-1, PacketCodec.peekInt(data, "missing", -1));
+        //not an int
+        assertEquals(-1, PacketCodec.peekInt(data, "message", -1));
+    }
+
+    @Test
+    public void testIntegerArrayTakesOneByteForSmallValues() {
+        JSONArray tiles = new JSONArray();
+        for (int i = 0; i < 1000; i++) {
+            tiles.put(i % 60);
+        }
+        byte[] data = PacketCodec.encode(new JSONObject().put("map_data", tiles));
+        //one byte for each tile, plus the key, the type and the length
+        assertTrue(data.length < 1010);
+    }
+
+    @Test(expected = JSONException.class)
+    public void testTruncatedPacket() {
+        byte[] data = PacketCodec.encode(createPacket());
+        byte[] truncated = new byte[data.length / 2];
+        System.arraycopy(data, 0, truncated, 0, truncated.length);
+        PacketCodec.decode(truncated);
+    }
+
+    @Test(expected = JSONException.class)
+    public void testUnknownValueType() {
+        //one field with a known key and an undefined value type
+        PacketCodec.decode(new byte[]{1, 1, 0x7f});
+    }
+
+}
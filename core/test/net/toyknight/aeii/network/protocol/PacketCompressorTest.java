@@ -0,0 +1,118 @@
+package net.toyknight.aeii.network.protocol;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author toyknight 10/17/2026.
+ */
+public class PacketCompressorTest {
+
+    private static String createPacket(int size) {
+        StringBuilder builder = new StringBuilder("{\"type\":1,\"operation\":3,\"map_data\":[");
+        while (builder.length() < size) {
+            builder.append(builder.length() % 7).append(',');
+        }
+        return builder.append("0]}").toString();
+    }
+
+    @Test
+    public void testJsonRoundTrip() throws JSONException {
+        PacketCompressor compressor = new PacketCompressor();
+        String packet = createPacket(4096);
+        CompressedPacket compressed = compressor.compress(packet);
+        assertNotNull(compressed);
+        assertTrue(compressed.size() < packet.length());
+        assertEquals(packet, compressor.decompress(compressed));
+    }
+
+    @Test
+    public void testBinaryRoundTrip() throws JSONException {
+        PacketCompressor compressor = new PacketCompressor();
+        BinaryPacket packet = BinaryPacket.create(new JSONObject(createPacket(4096)));
+        CompressedPacket compressed = compressor.compress(packet);
+        assertNotNull(compressed);
+        Object decompressed = compressor.decompress(compressed);
+        assertTrue(decompressed instanceof BinaryPacket);
+        assertArrayEquals(packet.getData(), ((BinaryPacket) decompressed).getData());
+    }
+
+    @Test
+    public void testIncompressiblePacketIsNotCompressed() {
+        byte[] data = new byte[4096];
+        new Random(1).nextBytes(data);
+        assertNull(new PacketCompressor().compress(new BinaryPacket(data)));
+    }
+
+    @Test
+    public void testThreshold() {
+        PacketCompressor compressor = new PacketCompressor(1024);
+        assertFalse(compressor.isCompressible(1023));
+        assertTrue(compressor.isCompressible(1024));
+    }
+
+    @Test(expected = JSONException.class)
+    public void testLengthOverTheLimitIsRejected() throws JSONException {
+        CompressedPacket compressed = new PacketCompressor().compress(createPacket(4096));
+        new PacketCompressor(PacketCompressor.DEFAULT_THRESHOLD, 1024).decompress(compressed);
+    }
+
+    @Test(expected = JSONException.class)
+    public void testNegativeLengthIsRejected() throws JSONException {
+        CompressedPacket compressed = new PacketCompressor().compress(createPacket(4096));
+        new PacketCompressor().decompress(new CompressedPacket(compressed.getFormat(), -1, compressed.getData()));
+    }
+
+    @Test(expected = JSONException.class)
+    public void testPacketInflatingBeyondItsLengthIsRejected() throws JSONException {
+        //a small claimed length must not let more than that be inflated
+        CompressedPacket compressed = new PacketCompressor().compress(createPacket(64 * 1024));
+        new PacketCompressor().decompress(new CompressedPacket(compressed.getFormat(), 1024, compressed.getData()));
+    }
+
+    @Test(expected = JSONException.class)
+    public void testTruncatedPacketIsRejected() throws JSONException {
+        CompressedPacket compressed = new PacketCompressor().compress(createPacket(4096));
+        byte[] data = Arrays.copyOf(compressed.getData(), compressed.size() / 2);
+        new PacketCompressor().decompress(new CompressedPacket(compressed.getFormat(), compressed.getLength(), data));
+    }
+
+    @Test(expected = JSONException.class)
+    public void testMalformedDataIsRejected() throws JSONException {
+        new PacketCompressor().decompress(new CompressedPacket(CompressedPacket.FORMAT_JSON, 16, new byte[]{1, 2, 3}));
+    }
+
+    @Test(expected = JSONException.class)
+    public void testUnknownFormatIsRejected() throws JSONException {
+        CompressedPacket compressed = new PacketCompressor().compress(createPacket(4096));
+        new PacketCompressor().decompress(new CompressedPacket(7, compressed.getLength(), compressed.getData()));
+    }
+
+    @Test(expected = JSONException.class)
+    public void testDisposedCompressorRejectsPackets() throws JSONException {
+        PacketCompressor compressor = new PacketCompressor();
+        CompressedPacket compressed = compressor.compress(createPacket(4096));
+        compressor.dispose();
+        compressor.decompress(compressed);
+    }
+
+    @Test
+    public void testCompressorIsReusedAfterARejectedPacket() throws JSONException {
+        PacketCompressor compressor = new PacketCompressor();
+        String packet = createPacket(4096);
+        CompressedPacket compressed = compressor.compress(packet);
+        try {
+            compressor.decompress(new CompressedPacket(CompressedPacket.FORMAT_JSON, 16, new byte[]{1, 2, 3}));
+            fail();
+        } catch (JSONException ignored) {
+        }
+        assertEquals(packet, compressor.decompress(compressed));
+    }
+
+}
@@ -0,0 +1,167 @@
+package net.toyknight.aeii.network.protocol;
+
+import com.badlogic.gdx.utils.Array;
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Output;
+import net.toyknight.aeii.AEIIException;
+import net.toyknight.aeii.entity.GameCore;
+import net.toyknight.aeii.entity.Map;
+import net.toyknight.aeii.entity.Position;
+import net.toyknight.aeii.entity.Rule;
+import net.toyknight.aeii.entity.Status;
+import net.toyknight.aeii.entity.Tomb;
+import net.toyknight.aeii.entity.Unit;
+import net.toyknight.aeii.manager.GameEvent;
+import net.toyknight.aeii.utils.TileFactory;
+import net.toyknight.aeii.utils.UnitFactory;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author toyknight 10/17/2026.
+ */
+public class PacketEntitiesTest {
+
+    @BeforeClass
+    public static void loadData() throws AEIIException {
+        UnitFactory.loadUnitData();
+        TileFactory.loadTileData();
+    }
+
+    private static Map createMap(int width, int height) {
+        Map map = new Map(width, height);
+        map.setAuthor("test");
+        for (int x = 0; x < width; x++) {
+            for (int y = 0; y < height; y++) {
+                map.setTile((short) ((x + y) % 30), x, y);
+            }
+        }
+        Unit unit = UnitFactory.createUnit(0, 1);
+        unit.setX(2);
+        unit.setY(3);
+        unit.setStandby(true);
+        unit.gainExperience(40);
+        unit.setStatus(new Status(Status.POISONED, 2));
+        map.addUnit(unit);
+        Tomb tomb = new Tomb(4, 1);
+        tomb.setRemains(2);
+        map.addTomb(tomb);
+        map.setTeamAccess(0, true);
+        map.setTeamAccess(1, true);
+        return map;
+    }
+
+    private static GameCore createGame() {
+        GameCore game = new GameCore(createMap(10, 8), Rule.createDefault(), 500, GameCore.SKIRMISH);
+        game.getPlayer(1).setAlliance(2);
+        game.getStatistics().addIncome(0, 300);
+        game.setCurrentTurn(4);
+        game.setCurrentTeam(1);
+        return game;
+    }
+
+    private static GameEvent createEvent() {
+        Array<Position> path = new Array<Position>();
+        path.add(new Position(2, 3));
+        path.add(new Position(2, 4));
+        return GameEvent.move(2, 3, 2, 4, 0, path);
+    }
+
+    //a packet with a single entity field, written by hand
+    private static byte[] createPacket(Class type, byte[] content) {
+        Kryo kryo = new Kryo();
+        PacketRegistry.register(kryo);
+        Output entity = new Output(64, -1);
+        kryo.writeClass(entity, type);
+        entity.writeBytes(content);
+        Output output = new Output(64, -1);
+        output.writeVarInt(1, true);
+        output.writeVarInt(0, true);
+        output.writeString("entity");
+        output.writeByte(0xB);
+        output.writeVarInt(entity.position(), true);
+        output.writeBytes(entity.getBuffer(), 0, entity.position());
+        return output.toBytes();
+    }
+
+    @Test
+    public void testMapRoundTrip() {
+        Map map = createMap(10, 8);
+        JSONObject packet = new JSONObject().put("map", new EncodedObject(map));
+        JSONObject decoded = PacketCodec.decode(PacketCodec.encode(packet));
+        assertTrue(decoded.get("map") instanceof Map);
+        assertTrue(map.toJson().similar(PacketEntities.getMap(decoded, "map").toJson()));
+    }
+
+    @Test
+    public void testGameRoundTrip() {
+        GameCore game = createGame();
+        JSONObject packet = new JSONObject().put("game", new EncodedObject(game));
+        GameCore decoded = PacketEntities.getGame(PacketCodec.decode(PacketCodec.encode(packet)), "game");
+        assertTrue(game.toJson().similar(decoded.toJson()));
+    }
+
+    @Test
+    public void testGameEventRoundTrip() {
+        GameEvent event = createEvent();
+        JSONObject packet = new JSONObject().put("events", new JSONArray().put(new EncodedObject(event)));
+        JSONArray events = PacketCodec.decode(PacketCodec.encode(packet)).getJSONArray("events");
+        GameEvent decoded = PacketEntities.getGameEvent(events, 0);
+        assertTrue(decoded.isRemote());
+        assertTrue(event.toJson().similar(decoded.toJson()));
+    }
+
+    @Test
+    public void testJsonPacketCarriesTheJsonObject() {
+        GameCore game = createGame();
+        JSONObject packet = new JSONObject().put("game", new EncodedObject(game));
+        assertEquals(new JSONObject().put("game", game.toJson()).toString(), packet.toString());
+        //a json packet is read the same way as a binary one
+        GameCore decoded = PacketEntities.getGame(new JSONObject(packet.toString()), "game");
+        assertTrue(game.toJson().similar(decoded.toJson()));
+    }
+
+    @Test
+    public void testTilesArePackedAsShorts() {
+        Map map = createMap(100, 100);
+        byte[] data = PacketCodec.encode(new JSONObject().put("map", new EncodedObject(map)));
+        //two bytes for each tile, plus a few for the units, the tombs and the team access
+        assertTrue(data.length > 100 * 100 * 2);
+        assertTrue(data.length < 100 * 100 * 2 + 100);
+    }
+
+    @Test
+    public void testPeekIntSkipsEntities() {
+        JSONObject packet = new JSONObject().put("game", new EncodedObject(createGame())).put("operation", 0x10);
+        assertEquals(0x10, PacketCodec.peekInt(PacketCodec.encode(packet), "operation", -1));
+    }
+
+    @Test(expected = JSONException.class)
+    public void testEntityLongerThanThePacket() {
+        byte[] data = PacketCodec.encode(new JSONObject().put("map", new EncodedObject(createMap(10, 8))));
+        byte[] truncated = new byte[data.length - 10];
+        System.arraycopy(data, 0, truncated, 0, truncated.length);
+        PacketCodec.decode(truncated);
+    }
+
+    @Test(expected = JSONException.class)
+    public void testOversizedMapIsRejected() {
+        //declares a huge map with no tiles behind it
+        Output content = new Output(32, -1);
+        content.writeString("test");
+        content.writeVarInt(50000, true);
+        content.writeVarInt(50000, true);
+        PacketCodec.decode(createPacket(Map.class, content.toBytes()));
+    }
+
+    @Test(expected = JSONException.class)
+    public void testRegisteredClassOtherThanAnEntityIsRejected() {
+        PacketCodec.decode(createPacket(PacketChunk.class, new byte[16]));
+    }
+
+}
@@ -0,0 +1,156 @@
+package net.toyknight.aeii.record;
+
+import com.badlogic.gdx.utils.Array;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import net.toyknight.aeii.AEIIException;
+import net.toyknight.aeii.entity.GameCore;
+import net.toyknight.aeii.entity.Map;
+import net.toyknight.aeii.entity.Position;
+import net.toyknight.aeii.entity.Rule;
+import net.toyknight.aeii.manager.GameEvent;
+import net.toyknight.aeii.utils.TileFactory;
+import net.toyknight.aeii.utils.UnitFactory;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author toyknight 10/17/2026.
+ */
+public class GameRecordCodecTest {
+
+    private static final String V_STRING = "verification";
+
+    @BeforeClass
+    public static void loadData() throws AEIIException {
+        UnitFactory.loadUnitData();
+        TileFactory.loadTileData();
+    }
+
+    private static GameCore createGame() {
+        Map map = new Map(8, 6);
+        map.setAuthor("test");
+        return new GameCore(map, Rule.createDefault(), 500, GameCore.SKIRMISH);
+    }
+
+    private static Array<GameEvent> createEvents() {
+        Array<GameEvent> events = new Array<GameEvent>();
+        for (int i = 0; i < 50; i++) {
+            Array<Position> path = new Array<Position>();
+            path.add(new Position(i % 8, 1));
+            path.add(new Position(i % 8, 2));
+            events.add(GameEvent.move(i % 8, 1, i % 8, 2, 0, path));
+            events.add(GameEvent.create(GameEvent.SELECT, i % 8, 2));
+        }
+        return events;
+    }
+
+    private static Output createBody(GameCore game, Array<GameEvent> events) {
+        Output body = GameRecordCodec.createBody(V_STRING, game);
+        GameEvent previous = null;
+        for (GameEvent event : events) {
+            event.write(body, previous);
+            previous = event;
+        }
+        return body;
+    }
+
+    private static byte[] encode(JSONObject header, GameCore game, Array<GameEvent> events) {
+        Output body = createBody(game, events);
+        return GameRecordCodec.encode(header, events.size, body.getBuffer(), body.position());
+    }
+
+    //a record with the given header fields after the header, and an arbitrary body
+    private static byte[] writeRaw(int version, int event_count, int body_length, int deflated_length, byte[] body) {
+        Output output = new Output(64, -1);
+        output.writeInt(0x41455231);
+        output.writeVarInt(version, true);
+        output.writeString("{}");
+        output.writeVarInt(event_count, true);
+        output.writeVarInt(body_length, true);
+        output.writeVarInt(deflated_length, true);
+        output.writeBytes(body);
+        return output.toBytes();
+    }
+
+    @Test
+    public void testRoundTrip() throws JSONException {
+        GameCore game = createGame();
+        Array<GameEvent> events = createEvents();
+        GameRecord record = GameRecordCodec.decode(encode(new JSONObject().put("room_id", 7), game, events));
+
+        assertEquals(V_STRING, record.getVerificationString());
+        assertEquals(game.toJson().toString(), record.getGame().toJson().toString());
+        assertEquals(events.size, record.getEvents().size());
+        for (GameEvent event : events) {
+            assertEquals(event.toJson().toString(), record.getEvents().poll().toJson().toString());
+        }
+    }
+
+    @Test
+    public void testHeaderIsReadWithoutTheBody() throws JSONException {
+        byte[] data = encode(new JSONObject().put("room_id", 7).put("map_name", "test"), createGame(), createEvents());
+        JSONObject header = GameRecordCodec.readHeader(new Input(data));
+        assertEquals(7, header.getInt("room_id"));
+        assertEquals("test", header.getString("map_name"));
+    }
+
+    @Test
+    public void testBodyIsCompressed() {
+        GameCore game = createGame();
+        Array<GameEvent> events = createEvents();
+        assertTrue(encode(new JSONObject(), game, events).length < createBody(game, events).position());
+    }
+
+    @Test(expected = JSONException.class)
+    public void testOtherDataIsRejected() throws JSONException {
+        GameRecordCodec.decode(new byte[]{1, 2, 3, 4, 5, 6, 7, 8});
+    }
+
+    @Test(expected = JSONException.class)
+    public void testUnknownVersionIsRejected() throws JSONException {
+        GameRecordCodec.decode(writeRaw(2, 0, 0, 0, new byte[0]));
+    }
+
+    @Test(expected = JSONException.class)
+    public void testOversizedBodyIsRejected() throws JSONException {
+        GameRecordCodec.decode(writeRaw(1, 0, 64 * 1024 * 1024 + 1, 0, new byte[0]));
+    }
+
+    @Test(expected = JSONException.class)
+    public void testNegativeBodyLengthIsRejected() throws JSONException {
+        GameRecordCodec.decode(writeRaw(1, 0, -1, 0, new byte[0]));
+    }
+
+    @Test(expected = JSONException.class)
+    public void testNegativeDeflatedLengthIsRejected() throws JSONException {
+        GameRecordCodec.decode(writeRaw(1, 0, 16, -1, new byte[0]));
+    }
+
+    @Test(expected = JSONException.class)
+    public void testTruncatedRecordIsRejected() throws JSONException {
+        byte[] data = encode(new JSONObject(), createGame(), createEvents());
+        GameRecordCodec.decode(Arrays.copyOf(data, data.length - 10));
+    }
+
+    @Test(expected = JSONException.class)
+    public void testMissingEventsAreRejected() throws JSONException {
+        byte[] data = encode(new JSONObject(), createGame(), createEvents());
+        //claims one more event than the body holds
+        Input input = new Input(data);
+        GameRecordCodec.readHeader(input);
+        int header_length = input.position();
+        Output output = new Output(data.length + 8, -1);
+        output.writeBytes(data, 0, header_length);
+        output.writeVarInt(input.readVarInt(true) + 1, true);
+        output.writeBytes(data, input.position(), data.length - input.position());
+        GameRecordCodec.decode(output.toBytes());
+    }
+
+}
@@ -0,0 +1,208 @@
+package net.toyknight.aeii.server;
+
+import com.badlogic.gdx.utils.IntMap;
+import net.toyknight.aeii.network.NetworkConstants;
+import net.toyknight.aeii.network.protocol.PacketChunk;
+import net.toyknight.aeii.server.entities.Player;
+import net.toyknight.aeii.server.metrics.Counter;
+import net.toyknight.aeii.server.utils.TokenBucket;
+
+/**
+ * Decides whether a request is worth handling before it is parsed, from its type, operation and size.
+ * <p>
+ * Every player has a token bucket for all its requests and one for each operation that is cheap to send
+ * but expensive to serve, so a single client cannot flood the server. When the request queues grow past
+ * their limits the server is overloaded, and the requests that can wait are shed so that the running
+ * games keep going. The requests keeping the running games going are never shed nor charged to the bucket
+ * of all requests, dropping one would leave the game out of sync.
+ *
+ * @author toyknight 10/17/2026.
+ */
+public class AdmissionController {
+
+    public static final int ADMITTED = 0;
+    public static final int REJECTED = 1;
+    public static final int THROTTLED = 2;
+    public static final int SHED = 3;
+
+    /**
+     * Requests of operations that carry no maps, games or event batches are never larger than this.
+     */
+    public static final int MAX_SMALL_REQUEST_SIZE = 4096;
+
+    /**
+     * No request is larger than this, the largest maps and saved games are far smaller.
+     */
+    public static final int MAX_BULK_REQUEST_SIZE = 1024 * 1024;
+
+    private static final int ALL_REQUESTS = -1;
+
+    private static final int ALL_PACKETS = -2;
+
+    private final ServerContext context;
+
+    private final double[] request_limit;
+
+    private final double[] packet_limit;
+
+    private final IntMap<double[]> operation_limits = new IntMap<double[]>();
+
+    private final Counter rejected;
+
+    private final Counter throttled;
+
+    private final Counter shed;
+
+    public AdmissionController(ServerContext context) {
+        this.context = context;
+        ServerConfiguration configuration = context.getConfiguration();
+        request_limit = configuration.getRateLimit("REQUESTS", 100, 200);
+        //enough for the chunks of two of the largest requests at once
+        packet_limit = configuration.getRateLimit("PACKETS", 50, 2 * MAX_BULK_REQUEST_SIZE / PacketChunk.MAX_CHUNK_SIZE);
+        setOperationLimit(NetworkConstants.AUTHENTICATION, 1, 5);
+        setOperationLimit(NetworkConstants.RESUME_SESSION, 1, 5);
+        setOperationLimit(NetworkConstants.LIST_ROOMS, 2, 10);
+        setOperationLimit(NetworkConstants.LIST_IDLE_PLAYERS, 1, 5);
+        setOperationLimit(NetworkConstants.LIST_MAPS, 2, 10);
+        setOperationLimit(NetworkConstants.CREATE_ROOM, 1, 5);
+        setOperationLimit(NetworkConstants.CREATE_ROOM_SAVED, 1, 5);
+        setOperationLimit(NetworkConstants.JOIN_ROOM, 2, 10);
+        setOperationLimit(NetworkConstants.SPECTATE_ROOM, 2, 10);
+        setOperationLimit(NetworkConstants.MESSAGE, 2, 10);
+        setOperationLimit(NetworkConstants.UPLOAD_MAP, 0.1, 3);
+        setOperationLimit(NetworkConstants.DOWNLOAD_MAP, 1, 5);
+        setOperationLimit(NetworkConstants.LIST_RECORDS, 1, 5);
+        setOperationLimit(NetworkConstants.DOWNLOAD_RECORD, 1, 5);
+        rejected = context.getMetrics().getCounter("requests.rejected");
+        throttled = context.getMetrics().getCounter("requests.throttled");
+        shed = context.getMetrics().getCounter("requests.shed");
+    }
+
+    private void setOperationLimit(int operation, double default_rate, double default_burst) {
+        String name = RequestHandler.getOperationName(operation);
+        operation_limits.put(operation, context.getConfiguration().getRateLimit(name, default_rate, default_burst));
+    }
+
+    public ServerContext getContext() {
+        return context;
+    }
+
+    /**
+     * @param size the size of the request as received, in bytes or chars
+     * @return {@link #ADMITTED}, or why the request is dropped
+     */
+    public int admit(Player player, int type, int operation, int size) {
+        if ((type != NetworkConstants.REQUEST && type != NetworkConstants.NOTIFICATION)
+                || "UNDEFINED".equals(RequestHandler.getOperationName(operation))
+                || (size > MAX_SMALL_REQUEST_SIZE && !isBulkOperation(operation))
+                || size > MAX_BULK_REQUEST_SIZE) {
+            rejected.increment();
+            return REJECTED;
+        }
+        if (isSheddable(operation) && isOverloaded(operation)) {
+            shed.increment();
+            getContext().getMetrics().getCounter("requests.shed." + RequestHandler.getOperationName(operation)).increment();
+            return SHED;
+        }
+        double[] operation_limit = operation_limits.get(operation);
+        if ((isSheddable(operation) && !player.getRateLimit(ALL_REQUESTS, request_limit[0], request_limit[1]).tryAcquire())
+                || (operation_limit != null
+                && !player.getRateLimit(operation, operation_limit[0], operation_limit[1]).tryAcquire())) {
+            throttled.increment();
+            getContext().getMetrics().getCounter("requests.throttled." + RequestHandler.getOperationName(operation)).increment();
+            return THROTTLED;
+        }
+        return ADMITTED;
+    }
+
+    /**
+     * Charges the player for a packet that has to be inflated or put together before the request in it can be
+     * admitted, so that a flood of such packets is throttled before the server does any work for it. Such packets
+     * have a bucket of their own, the request in the packet is admitted like any other once it is opened.
+     *
+     * @param length the size the packet claims to have once inflated or put together
+     * @return {@link #ADMITTED}, {@link #REJECTED} or {@link #THROTTLED}
+     */
+    public int admitPacket(Player player, int length) {
+        if (length < 0 || length > MAX_BULK_REQUEST_SIZE) {
+            rejected.increment();
+            return REJECTED;
+        }
+        if (!player.getRateLimit(ALL_PACKETS, packet_limit[0], packet_limit[1]).tryAcquire()) {
+            throttled.increment();
+            return THROTTLED;
+        }
+        return ADMITTED;
+    }
+
+    private boolean isOverloaded(int operation) {
+        RequestHandler handler = getContext().getRequestHandler();
+        if (handler.isIOOperation(operation)) {
+            return handler.getIOQueueDepth() >= getContext().getConfiguration().getAdmissionIOQueueLimit();
+        } else {
+            return handler.getQueueDepth() >= getContext().getConfiguration().getAdmissionQueueLimit();
+        }
+    }
+
+    /**
+     * @return whether the operation can carry a map, a game or a batch of game events
+     */
+    public boolean isBulkOperation(int operation) {
+        switch (operation) {
+            case NetworkConstants.CREATE_ROOM:
+            case NetworkConstants.CREATE_ROOM_SAVED:
+            case NetworkConstants.GAME_EVENT:
+            case NetworkConstants.UPLOAD_MAP:
+            case NetworkConstants.UPDATE_MAP:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * @return whether the operation can be refused under load, the ones keeping running games going cannot
+     */
+    public boolean isSheddable(int operation) {
+        switch (operation) {
+            case NetworkConstants.GAME_EVENT:
+            case NetworkConstants.PLAYER_LEAVING:
+            case NetworkConstants.ALLOCATION_UPDATING:
+            case NetworkConstants.START_GAME:
+            case NetworkConstants.RESUME_SESSION:
+                return false;
+            default:
+                return true;
+        }
+    }
+
+    /**
+     * Reads one top-level int of a JSON request without parsing it. A key nested deeper may be found
+     * instead, so the value must be checked again once the request is parsed.
+     *
+     * @return the value, or the default value if the request has no such int
+     */
+    public static int peekInt(String json, String key, int default_value) {
+        int index = json.indexOf("\"" + key + "\"");
+        if (index < 0) {
+            return default_value;
+        }
+        index += key.length() + 2;
+        while (index < json.length() && (json.charAt(index) == ':' || Character.isWhitespace(json.charAt(index)))) {
+            index++;
+        }
+        int start = index;
+        if (index < json.length() && json.charAt(index) == '-') {
+            index++;
+        }
+        while (index < json.length() && Character.isDigit(json.charAt(index)) && index - start < 10) {
+            index++;
+        }
+        try {
+            return Integer.parseInt(json.substring(start, index));
+        } catch (NumberFormatException ex) {
+            return default_value;
+        }
+    }
+
+}
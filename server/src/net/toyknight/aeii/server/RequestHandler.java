@@ -1,24 +1,38 @@
 package net.toyknight.aeii.server;
 
+import com.badlogic.gdx.utils.Base64Coder;
+import com.esotericsoftware.kryo.io.Input;
 import com.esotericsoftware.minlog.Log;
 import net.toyknight.aeii.AEIIException;
 import net.toyknight.aeii.entity.GameCore;
 import net.toyknight.aeii.entity.Map;
 import net.toyknight.aeii.network.NetworkConstants;
 import net.toyknight.aeii.network.entity.RoomSetting;
-import net.toyknight.aeii.network.entity.RoomSnapshot;
+import net.toyknight.aeii.network.protocol.BinaryPacket;
+import net.toyknight.aeii.network.protocol.ChunkAssembler;
+import net.toyknight.aeii.network.protocol.CompressedPacket;
+import net.toyknight.aeii.network.protocol.PacketChunk;
+import net.toyknight.aeii.network.protocol.PacketCompressor;
+import net.toyknight.aeii.network.protocol.PacketEntities;
+import net.toyknight.aeii.server.cluster.HandoffTicket;
+import net.toyknight.aeii.server.concurrent.SerialExecutor;
 import net.toyknight.aeii.server.entities.Player;
 import net.toyknight.aeii.server.entities.Room;
 import net.toyknight.aeii.server.managers.MapManager;
+import net.toyknight.aeii.server.managers.RoomDirectory;
+import net.toyknight.aeii.server.metrics.Counter;
 import net.toyknight.aeii.server.utils.PacketBuilder;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.io.IOException;
+import java.security.SecureRandom;
 import java.sql.SQLException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * @author toyknight 8/16/2016.
@@ -27,27 +41,148 @@ public class RequestHandler {
 
     private static final String TAG = "REQUEST HANDLER";
 
+    private static final int IO_THREADS = 4;
+
     private final ExecutorService executor;
 
+    private final ExecutorService io_executor;
+
     private final ServerContext context;
 
+    private final AtomicInteger queue_depth = new AtomicInteger(0);
+
+    private final AtomicInteger io_queue_depth = new AtomicInteger(0);
+
+    private final SecureRandom random = new SecureRandom();
+
+    private final AdmissionController admission_controller;
+
+    private final Counter compressed_packets_received;
+
+    private final Counter compressed_bytes_received;
+
+    private final Counter uncompressed_bytes_received;
+
+    private final Counter chunks_received;
+
+    private final Counter chunked_transfers_received;
+
     public RequestHandler(ServerContext context) {
         this.context = context;
-        this.executor = Executors.newSingleThreadExecutor();
+        this.admission_controller = new AdmissionController(context);
+        this.compressed_packets_received = context.getMetrics().getCounter("network.compressed.packets_received");
+        this.compressed_bytes_received = context.getMetrics().getCounter("network.compressed.bytes_received");
+        this.uncompressed_bytes_received = context.getMetrics().getCounter("network.compressed.raw_bytes_received");
+        this.chunks_received = context.getMetrics().getCounter("network.chunked.chunks_received");
+        this.chunked_transfers_received = context.getMetrics().getCounter("network.chunked.transfers_received");
+        this.executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        this.io_executor = Executors.newFixedThreadPool(IO_THREADS);
     }
 
     public ServerContext getContext() {
         return context;
     }
 
-    public void doHandleRequest(Player player, JSONObject request) {
+    public AdmissionController getAdmissionController() {
+        return admission_controller;
+    }
+
+    public ExecutorService getRequestExecutor() {
+        return executor;
+    }
+
+    public ExecutorService getIORequestExecutor() {
+        return io_executor;
+    }
+
+    public int getQueueDepth() {
+        return queue_depth.get();
+    }
+
+    public int getIOQueueDepth() {
+        return io_queue_depth.get();
+    }
+
+    public static String getOperationName(int operation) {
+        switch (operation) {
+            case NetworkConstants.AUTHENTICATION:
+                return "AUTHENTICATION";
+            case NetworkConstants.LIST_ROOMS:
+                return "LIST_ROOMS";
+            case NetworkConstants.JOIN_ROOM:
+                return "JOIN_ROOM";
+            case NetworkConstants.START_GAME:
+                return "START_GAME";
+            case NetworkConstants.CREATE_ROOM:
+                return "CREATE_ROOM";
+            case NetworkConstants.CREATE_ROOM_SAVED:
+                return "CREATE_ROOM_SAVED";
+            case NetworkConstants.PLAYER_LEAVING:
+                return "PLAYER_LEAVING";
+            case NetworkConstants.ALLOCATION_UPDATING:
+                return "ALLOCATION_UPDATING";
+            case NetworkConstants.GAME_EVENT:
+                return "GAME_EVENT";
+            case NetworkConstants.MESSAGE:
+                return "MESSAGE";
+            case NetworkConstants.LIST_MAPS:
+                return "LIST_MAPS";
+            case NetworkConstants.UPLOAD_MAP:
+                return "UPLOAD_MAP";
+            case NetworkConstants.DOWNLOAD_MAP:
+                return "DOWNLOAD_MAP";
+            case NetworkConstants.LIST_IDLE_PLAYERS:
+                return "LIST_IDLE_PLAYERS";
+            case NetworkConstants.LOBBY_SUBSCRIBE:
+                return "LOBBY_SUBSCRIBE";
+            case NetworkConstants.RESUME_SESSION:
+                return "RESUME_SESSION";
+            case NetworkConstants.SPECTATE_ROOM:
+                return "SPECTATE_ROOM";
+            case NetworkConstants.LIST_RECORDS:
+                return "LIST_RECORDS";
+            case NetworkConstants.DOWNLOAD_RECORD:
+                return "DOWNLOAD_RECORD";
+            case NetworkConstants.GLOBAL_MESSAGE:
+                return "GLOBAL_MESSAGE";
+            case NetworkConstants.DELETE_MAP:
+                return "DELETE_MAP";
+            case NetworkConstants.UPDATE_MAP:
+                return "UPDATE_MAP";
+            case NetworkConstants.METRICS:
+                return "METRICS";
+            default:
+                return "UNDEFINED";
+        }
+    }
+
+    public boolean isIOOperation(int operation) {
+        switch (operation) {
+            case NetworkConstants.UPLOAD_MAP:
+            case NetworkConstants.DOWNLOAD_MAP:
+            case NetworkConstants.DELETE_MAP:
+            case NetworkConstants.UPDATE_MAP:
+            case NetworkConstants.DOWNLOAD_RECORD:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    public void doHandleRequest(Player player, JSONObject request, int operation) {
         try {
-            switch (request.getInt("operation")) {
+            //a router hosts no rooms, it sends the player to the shard hosting the room
+            if (getContext().getConfiguration().isRouter() && getContext().getShardManager().isRoutedOperation(operation)) {
+                getContext().getShardManager().onRoomRequestRouted(player, request, operation);
+                return;
+            }
+            getContext().getRoomManager().onMemberActivity(player);
+            switch (operation) {
                 case NetworkConstants.AUTHENTICATION:
                     onAuthenticationRequested(player, request);
                     break;
                 case NetworkConstants.LIST_ROOMS:
-                    onRoomListRequested(player);
+                    onRoomListRequested(player, request);
                     break;
                 case NetworkConstants.CREATE_ROOM:
                     onRoomCreationRequested(player, request);
@@ -82,6 +217,21 @@ public class RequestHandler {
                 case NetworkConstants.LIST_IDLE_PLAYERS:
                     onIdlePlayerListRequested(player);
                     break;
+                case NetworkConstants.LOBBY_SUBSCRIBE:
+                    onLobbySubscriptionRequested(player);
+                    break;
+                case NetworkConstants.RESUME_SESSION:
+                    onSessionResumeRequested(player, request);
+                    break;
+                case NetworkConstants.SPECTATE_ROOM:
+                    onSpectateRequested(player, request);
+                    break;
+                case NetworkConstants.LIST_RECORDS:
+                    onRecordListRequested(player, request);
+                    break;
+                case NetworkConstants.DOWNLOAD_RECORD:
+                    onRecordDownloadRequested(player, request);
+                    break;
                 case NetworkConstants.GLOBAL_MESSAGE:
                     onGlobalMessageSubmitted(request);
                     break;
@@ -91,6 +241,9 @@ public class RequestHandler {
                 case NetworkConstants.UPDATE_MAP:
                     onMapUpdateRequested(player, request);
                     break;
+                case NetworkConstants.METRICS:
+                    onMetricsRequested(player, request);
+                    break;
                 default:
                     Log.error(TAG, String.format("Illegal request from %s [undefined operation]", player.toString()));
             }
@@ -108,27 +261,74 @@ public class RequestHandler {
         player.setUsername(username);
 
         JSONObject response = PacketBuilder.create(NetworkConstants.RESPONSE);
-        if (getContext().getVerificationString().equals(v_string)) {
+        int protocol = NetworkConstants.PROTOCOL_JSON;
+        if (getContext().getVerificationString().equals(v_string) && verifyHandoffTicket(username, request)) {
             player.setAuthenticated(true);
+            if (request.has("protocol") && request.getInt("protocol") == NetworkConstants.PROTOCOL_BINARY) {
+                protocol = NetworkConstants.PROTOCOL_BINARY;
+                response.put("protocol", protocol);
+            }
+            if (isCompressionRequested(request) && player.getCompressor() == null) {
+                player.setCompressor(new PacketCompressor(
+                        getContext().getConfiguration().getCompressionThreshold(), AdmissionController.MAX_BULK_REQUEST_SIZE));
+            }
+            if (player.getCompressor() != null) {
+                response.put("compression", NetworkConstants.COMPRESSION_DEFLATE);
+            }
+            player.setSessionToken(createSessionToken());
             response.put("approved", true);
             response.put("service_id", player.getID());
+            response.put("session_token", player.getSessionToken());
+            getContext().getLobbyManager().onPlayerEnterLobby(player);
             Log.info(TAG, String.format("%s authenticated.", player.toString()));
         } else {
             response.put("approved", false);
             Log.info(TAG, String.format("%s authentication failed.", player.toString()));
         }
-        player.sendTCP(response.toString());
+        player.setProtocol(protocol);
+        player.sendPacket(response);
     }
 
-    public void onRoomListRequested(Player player) {
+    private boolean isCompressionRequested(JSONObject request) {
+        return getContext().getConfiguration().isCompressionEnabled()
+                && request.optInt("compression", NetworkConstants.COMPRESSION_NONE) == NetworkConstants.COMPRESSION_DEFLATE;
+    }
+
+    /**
+     * A shard only takes the players its router authenticated and handed off.
+     */
+    private boolean verifyHandoffTicket(String username, JSONObject request) {
+        ServerConfiguration configuration = getContext().getConfiguration();
+        return !configuration.isShard() || HandoffTicket.verify(configuration.getClusterSecret(),
+                request.optString("ticket", null), username, configuration.getShardID(), System.currentTimeMillis());
+    }
+
+    private String createSessionToken() {
+        byte[] bytes = new byte[16];
+        random.nextBytes(bytes);
+        StringBuilder token = new StringBuilder();
+        for (byte b : bytes) {
+            token.append(String.format("%02x", b & 0xff));
+        }
+        return token.toString();
+    }
+
+    public void onSessionResumeRequested(Player player, JSONObject request) {
         if (player.isAuthenticated()) {
-            JSONObject response = PacketBuilder.create(NetworkConstants.RESPONSE);
-            JSONArray rooms = new JSONArray();
-            for (RoomSnapshot snapshot : getContext().getRoomManager().getRoomSnapshots()) {
-                rooms.put(snapshot.toJson());
+            String session_token = request.getString("session_token");
+            long sequence = request.getLong("sequence");
+            getContext().getRoomManager().onSessionResume(player, session_token, sequence);
+        }
+    }
+
+    public void onRoomListRequested(Player player, JSONObject request) {
+        if (player.isAuthenticated()) {
+            RoomDirectory directory = getContext().getRoomManager().getDirectory();
+            if (request.has("since")) {
+                player.sendPacket(directory.getRoomListChanges(request.getLong("since")));
+            } else {
+                player.sendPacket(directory.getRoomList());
             }
-            response.put("rooms", rooms);
-            player.sendTCP(response.toString());
         }
     }
 
@@ -143,7 +343,7 @@ public class RequestHandler {
             RoomSetting room_setting;
             if (request.getBoolean("new_game")) {
                 //create a new game room
-                Map map = new Map(request.getJSONObject("map"));
+                Map map = PacketEntities.getMap(request, "map");
                 String map_name = request.getString("map_name");
                 int unit_capacity = request.getInt("unit_capacity");
                 int start_gold = request.getInt("start_gold");
@@ -151,7 +351,7 @@ public class RequestHandler {
                         map, username, map_name, password, player_capacity, unit_capacity, start_gold, player);
             } else {
                 //create a saved game room
-                GameCore game = new GameCore(request.getJSONObject("game"));
+                GameCore game = PacketEntities.getGame(request, "game");
                 String save_name = request.getString("save_name");
                 room_setting = getContext().getRoomManager().createRoom(
                         game, username, save_name, password, player_capacity, player);
@@ -159,11 +359,12 @@ public class RequestHandler {
             if (room_setting == null) {
                 response.put("approved", false);
             } else {
+                getContext().getLobbyManager().onPlayerLeaveLobby(player);
                 Log.info(TAG, String.format("%s creates game room [%d]", player.toString(), room_setting.room_id));
                 response.put("room_setting", room_setting.toJson());
                 response.put("approved", true);
             }
-            player.sendTCP(response.toString());
+            player.sendPacket(response);
         }
     }
 
@@ -180,7 +381,17 @@ public class RequestHandler {
                 response.put("room_setting", room_setting.toJson());
                 response.put("approved", true);
             }
-            player.sendTCP(response.toString());
+            player.sendPacket(response);
+        }
+    }
+
+    public void onSpectateRequested(Player player, JSONObject request) {
+        if (player.isAuthenticated()) {
+            JSONObject response = PacketBuilder.create(NetworkConstants.RESPONSE);
+            long room_id = request.getLong("room_id");
+            String password = request.has("password") ? request.getString("password") : null;
+            response.put("approved", getContext().getRoomManager().onSpectatorJoinRoom(player, room_id, password));
+            player.sendPacket(response);
         }
     }
 
@@ -201,7 +412,8 @@ public class RequestHandler {
     }
 
     public void onMessageSubmitted(Player player, JSONObject request) {
-        if (player.isAuthenticated()) {
+        //spectators only watch, they may not talk to the players
+        if (player.isAuthenticated() && !player.isSpectator()) {
             Room room = getContext().getRoomManager().getRoom(player.getRoomID());
             String message = request.getString("message");
             if (room == null) {
@@ -217,28 +429,26 @@ public class RequestHandler {
             JSONObject response = PacketBuilder.create(NetworkConstants.RESPONSE);
             boolean approved = getContext().getRoomManager().tryStartGame(player);
             response.put("approved", approved);
-            player.sendTCP(response.toString());
+            player.sendPacket(response);
         }
     }
 
     public void onMapListRequested(Player player, JSONObject request) {
         if (getContext().getConfiguration().isMapManagerEnabled()) {
-            JSONObject response = PacketBuilder.create(NetworkConstants.RESPONSE);
             boolean symmetric = request.has("symmetric") && request.getBoolean("symmetric");
             if (request.has("author")) {
                 String author = request.getString("author");
-                response.put("maps", getContext().getMapManager().getSerializedMapList(author, symmetric));
+                player.sendPacket(getContext().getMapManager().getMapList(author, symmetric));
             } else {
-                response.put("maps", getContext().getMapManager().getSerializedAuthorList(symmetric));
+                player.sendPacket(getContext().getMapManager().getAuthorList(symmetric));
             }
-            player.sendTCP(response.toString());
         }
     }
 
     public void onMapUploadRequest(Player player, JSONObject request) {
         if (getContext().getConfiguration().isMapManagerEnabled()) {
             JSONObject response = PacketBuilder.create(NetworkConstants.RESPONSE);
-            Map map = new Map(request.getJSONObject("map"));
+            Map map = PacketEntities.getMap(request, "map");
             String map_name = request.getString("map_name");
             try {
                 getContext().getMapManager().addMap(map, map_name);
@@ -248,7 +458,7 @@ public class RequestHandler {
             } catch (Exception ex) {
                 response.put("code", NetworkConstants.CODE_SERVER_ERROR);
             }
-            player.sendTCP(response.toString());
+            player.sendPacket(response);
         }
     }
 
@@ -256,32 +466,56 @@ public class RequestHandler {
         if (getContext().getConfiguration().isMapManagerEnabled()) {
             JSONObject response = PacketBuilder.create(NetworkConstants.RESPONSE);
             int map_id = request.getInt("id");
-            boolean approved;
             try {
-                Map map = getContext().getMapManager().getMap(map_id);
-                response.put("map", map.toJson());
-                approved = true;
+                player.sendPacket(getContext().getMapManager().getMapPayload(map_id));
             } catch (IOException ex) {
-                approved = false;
+                response.put("approved", false);
+                player.sendPacket(response);
             } catch (AEIIException ex) {
-                approved = false;
+                response.put("approved", false);
+                player.sendPacket(response);
             }
-            response.put("approved", approved);
-            player.sendTCP(response.toString());
         }
     }
 
-    public void onIdlePlayerListRequested(Player player) {
+    public void onRecordListRequested(Player player, JSONObject request) {
+        if (player.isAuthenticated()) {
+            JSONObject response = PacketBuilder.create(NetworkConstants.RESPONSE);
+            String username = request.has("username") ? request.getString("username") : null;
+            response.put("records", getContext().getRecordManager().listRecords(username));
+            player.sendPacket(response);
+        }
+    }
+
+    public void onRecordDownloadRequested(Player player, JSONObject request) {
         if (player.isAuthenticated()) {
             JSONObject response = PacketBuilder.create(NetworkConstants.RESPONSE);
-            JSONArray players = new JSONArray();
-            for (Player target : getContext().getPlayerManager().getPlayers()) {
-                if (target.isAuthenticated() && target.getRoomID() < 0) {
-                    players.put(target.createSnapshot().toJson());
+            long room_id = request.getLong("room_id");
+            try {
+                byte[] record = getContext().getRecordManager().readRecord(room_id);
+                if (record == null) {
+                    response.put("approved", false);
+                } else {
+                    response.put("approved", true);
+                    response.put("record", new String(Base64Coder.encode(record)));
                 }
+            } catch (IOException ex) {
+                Log.error(TAG, String.format("Exception occurred while reading record of room [%d]", room_id), ex);
+                response.put("approved", false);
             }
-            response.put("players", players);
-            player.sendTCP(response.toString());
+            player.sendPacket(response);
+        }
+    }
+
+    public void onIdlePlayerListRequested(Player player) {
+        if (player.isAuthenticated()) {
+            player.sendPacket(getContext().getLobbyManager().getIdlePlayerList());
+        }
+    }
+
+    public void onLobbySubscriptionRequested(Player player) {
+        if (player.isAuthenticated() && player.getRoomID() < 0) {
+            player.sendPacket(getContext().getLobbyManager().subscribe(player));
         }
     }
 
@@ -304,7 +538,7 @@ public class RequestHandler {
             } catch (SQLException e) {
                 response.put("success", false);
             }
-            player.sendTCP(response.toString());
+            player.sendPacket(response);
         }
     }
 
@@ -321,22 +555,221 @@ public class RequestHandler {
             } catch (Exception e) {
                 response.put("success", false);
             }
-            player.sendTCP(response.toString());
+            player.sendPacket(response);
+        }
+    }
+
+    public void onMetricsRequested(Player player, JSONObject request) {
+        String token = request.getString("token");
+        if (getContext().verifyAdminToken(token)) {
+            JSONObject response = PacketBuilder.create(NetworkConstants.RESPONSE);
+            response.put("metrics", getContext().getMetrics().createSnapshot());
+            player.sendPacket(response);
         }
     }
 
     public void submitRequest(Player player, String request_content) throws JSONException {
-        executor.submit(new RequestProcessingTask(player, new JSONObject(request_content)));
+        submitRequest(player, request_content, false);
     }
 
-    private class RequestProcessingTask implements Runnable {
+    public void submitRequest(Player player, BinaryPacket request_packet) throws JSONException {
+        submitRequest(player, request_packet, false);
+    }
+
+    /**
+     * @param opened whether the request was taken out of a packet opened in the player's request queue
+     */
+    private void submitRequest(Player player, String request_content, boolean opened) throws JSONException {
+        int type = AdmissionController.peekInt(request_content, "type", -1);
+        int operation = AdmissionController.peekInt(request_content, "operation", -1);
+        if (admit(player, type, operation, request_content.length())) {
+            submitRequest(player, new JSONObject(request_content), operation, opened);
+        }
+    }
+
+    /**
+     * @param opened whether the request was taken out of a packet opened in the player's request queue
+     */
+    private void submitRequest(Player player, BinaryPacket request_packet, boolean opened) throws JSONException {
+        int type = request_packet.peekInt("type", -1);
+        int operation = request_packet.peekInt("operation", -1);
+        if (admit(player, type, operation, request_packet.size())) {
+            submitRequest(player, request_packet.toJson(), operation, opened);
+        }
+    }
+
+    /**
+     * Charges the player for the packet and inflates it in the player's request queue, the network threads
+     * never inflate anything. It is then submitted like an uncompressed one, so its size is checked as inflated.
+     */
+    public void submitRequest(Player player, CompressedPacket request_packet) {
+        if (player.getCompressor() == null) {
+            Log.error(TAG, String.format("Illegal request from %s [compression not negotiated]", player.toString()));
+            return;
+        }
+        if (admitPacket(player, request_packet.getLength())) {
+            openPacket(player, request_packet);
+        }
+    }
+
+    /**
+     * Charges the player for every chunk, and hands the transfer to the player's request queue once its last
+     * chunk is received, where it is decoded and submitted. Only authenticated players send requests large
+     * enough to be chunked.
+     */
+    public void submitRequest(Player player, PacketChunk chunk) throws JSONException {
+        if (!player.isAuthenticated()) {
+            Log.error(TAG, String.format("Illegal request from %s [chunk before authentication]", player.toString()));
+            return;
+        }
+        chunks_received.increment();
+        if (!admitPacket(player, chunk.size())) {
+            player.getChunkAssembler().abort(chunk.getTransferID());
+            return;
+        }
+        Input content = player.getChunkAssembler().assemble(chunk);
+        if (content != null) {
+            chunked_transfers_received.increment();
+            openPacket(player, content);
+        }
+    }
+
+    private boolean admitPacket(Player player, int length) {
+        switch (getAdmissionController().admitPacket(player, length)) {
+            case AdmissionController.ADMITTED:
+                return true;
+            case AdmissionController.REJECTED:
+                Log.error(TAG, String.format("Illegal request from %s [packet length %d]", player.toString(), length));
+                return false;
+            default:
+                //the packet may hold a request that cannot be dropped, so the client resumes its session instead
+                Log.info(TAG, String.format("%s floods the server with packets, disconnecting", player.toString()));
+                player.getConnection().close();
+                return false;
+        }
+    }
+
+    private boolean admit(Player player, int type, int operation, int size) {
+        switch (getAdmissionController().admit(player, type, operation, size)) {
+            case AdmissionController.ADMITTED:
+                return true;
+            case AdmissionController.REJECTED:
+                Log.error(TAG, String.format("Illegal request from %s [request rejected]", player.toString()));
+                return false;
+            case AdmissionController.THROTTLED:
+            case AdmissionController.SHED:
+                //a request gets an answer at once, so that the client does not wait for the timeout
+                if (type == NetworkConstants.REQUEST) {
+                    JSONObject response = PacketBuilder.create(NetworkConstants.RESPONSE, operation);
+                    response.put("approved", false);
+                    response.put("code", NetworkConstants.CODE_SERVER_BUSY);
+                    player.sendPacket(response);
+                }
+                return false;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Opens the packet in the player's request queue, where the request in it is handled right away. The
+     * requests received after the packet wait for it like they wait for any request received before them.
+     *
+     * @param packet a {@link CompressedPacket}, or the content of a chunked transfer
+     */
+    private void openPacket(Player player, Object packet) {
+        queue_depth.incrementAndGet();
+        try {
+            player.getRequestQueue().execute(new PacketOpeningTask(player, packet, queue_depth));
+        } catch (RejectedExecutionException ex) {
+            Log.error(TAG, String.format("Request from %s dropped [request executor rejected]", player.toString()));
+        }
+    }
+
+    private void submitRequest(Player player, JSONObject request, int operation, boolean opened) throws JSONException {
+        if (request.getInt("operation") != operation) {
+            throw new JSONException("Operation mismatch");
+        }
+        try {
+            if (isIOOperation(operation)) {
+                io_queue_depth.incrementAndGet();
+                player.getIORequestQueue().execute(new RequestProcessingTask(player, request, operation, io_queue_depth));
+            } else if (opened) {
+                //already running in the request queue
+                queue_depth.incrementAndGet();
+                new RequestProcessingTask(player, request, operation, queue_depth).run();
+            } else {
+                queue_depth.incrementAndGet();
+                player.getRequestQueue().execute(new RequestProcessingTask(player, request, operation, queue_depth));
+            }
+        } catch (RejectedExecutionException ex) {
+            //the dropped tasks have given their queue depth back
+            Log.error(TAG, String.format("Request from %s dropped [request executor rejected]", player.toString()));
+        }
+    }
+
+    private class PacketOpeningTask implements SerialExecutor.DroppableTask {
+
+        private final Player player;
+        private final Object packet;
+        private final AtomicInteger depth;
+
+        public PacketOpeningTask(Player player, Object packet, AtomicInteger depth) {
+            this.player = player;
+            this.packet = packet;
+            this.depth = depth;
+        }
+
+        @Override
+        public void onDropped() {
+            depth.decrementAndGet();
+        }
+
+        @Override
+        public void run() {
+            depth.decrementAndGet();
+            try {
+                Object request = packet instanceof Input ? ChunkAssembler.decode((Input) packet) : packet;
+                if (request instanceof CompressedPacket) {
+                    CompressedPacket compressed = (CompressedPacket) request;
+                    PacketCompressor compressor = player.getCompressor();
+                    if (compressor == null) {
+                        Log.error(TAG, String.format(
+                                "Illegal request from %s [compression not negotiated]", player.toString()));
+                        return;
+                    }
+                    request = compressor.decompress(compressed);
+                    compressed_packets_received.increment();
+                    compressed_bytes_received.add(compressed.size());
+                    uncompressed_bytes_received.add(compressed.getLength());
+                }
+                if (request instanceof String) {
+                    submitRequest(player, (String) request, true);
+                } else {
+                    submitRequest(player, (BinaryPacket) request, true);
+                }
+            } catch (JSONException ex) {
+                Log.error(TAG, String.format("Illegal request from %s [request format error]", player.toString()), ex);
+            }
+        }
+
+    }
+
+    private class RequestProcessingTask implements SerialExecutor.DroppableTask {
 
         private final Player player;
         private final JSONObject request;
+        private final int operation;
+        private final AtomicInteger depth;
 
-        public RequestProcessingTask(Player player, JSONObject request) {
+        private final long submit_time;
+
+        public RequestProcessingTask(Player player, JSONObject request, int operation, AtomicInteger depth) {
             this.player = player;
             this.request = request;
+            this.operation = operation;
+            this.depth = depth;
+            this.submit_time = System.nanoTime();
         }
 
         public Player getPlayer() {
@@ -347,9 +780,22 @@ public class RequestHandler {
             return request;
         }
 
+        @Override
+        public void onDropped() {
+            depth.decrementAndGet();
+        }
+
         @Override
         public void run() {
-            doHandleRequest(getPlayer(), getRequest());
+            depth.decrementAndGet();
+            long start = System.nanoTime();
+            String name = "request." + getOperationName(operation);
+            getContext().getMetrics().getHistogram(name + ".wait").record(start - submit_time);
+            try {
+                doHandleRequest(getPlayer(), getRequest(), operation);
+            } finally {
+                getContext().getMetrics().getHistogram(name).record(System.nanoTime() - start);
+            }
         }
     }
 
@@ -1,15 +1,20 @@
 package net.toyknight.aeii.server;
 
+import net.toyknight.aeii.manager.GameEvent;
 import net.toyknight.aeii.server.entities.Room;
-import org.json.JSONObject;
 
 /**
  * @author toyknight 7/18/2016.
  */
 public interface RoomListener {
 
-    void onGameEventExecuted(Room room, JSONObject event, int submitter);
+    void onGameEventExecuted(Room room, GameEvent event, long sequence, int submitter);
 
     void onCheatingDetected(Room room, int player_id, Throwable cause);
 
+    /**
+     * Called in the room's mailbox after the server ended the turn of a team that ran out of time.
+     */
+    void onTurnForced(Room room, int team);
+
 }
@@ -2,6 +2,8 @@ package net.toyknight.aeii.server;
 
 import com.badlogic.gdx.utils.ObjectMap;
 import com.badlogic.gdx.utils.PropertiesUtils;
+import net.toyknight.aeii.network.protocol.PacketCompressor;
+import net.toyknight.aeii.server.cluster.ShardConstants;
 
 import java.io.File;
 import java.io.FileReader;
@@ -12,7 +14,11 @@ import java.io.IOException;
  */
 public class ServerConfiguration {
 
-    private final File configuration_file = new File("server.cfg");
+    public static final int ROLE_STANDALONE = 0;
+    public static final int ROLE_ROUTER = 1;
+    public static final int ROLE_SHARD = 2;
+
+    private final File configuration_file;
 
     private final ObjectMap<String, String> configuration = new ObjectMap<String, String>();
 
@@ -30,6 +36,82 @@ public class ServerConfiguration {
 
     private String database_password;
 
+    private String database_url;
+
+    private int database_pool_size;
+
+    private long map_cache_size;
+
+    private String metrics_file;
+
+    private long metrics_dump_interval;
+
+    private long reconnect_grace_period;
+
+    private int event_log_capacity;
+
+    private int max_spectators;
+
+    private long spectator_delay;
+
+    private boolean journal_enabled;
+
+    private String journal_directory;
+
+    private long journal_sync_interval;
+
+    private int journal_checkpoint_events;
+
+    private int admission_queue_limit;
+
+    private long turn_timeout;
+
+    private long authentication_timeout;
+
+    private int admission_io_queue_limit;
+
+    private int role;
+
+    private int cluster_port;
+
+    private String cluster_address;
+
+    private String router_address;
+
+    private int shard_id;
+
+    private String shard_address;
+
+    private String cluster_secret;
+
+    private long shard_heartbeat_interval;
+
+    private long shard_timeout;
+
+    private long handoff_ticket_lifetime;
+
+    private int robot_threads;
+
+    private long robot_move_budget;
+
+    private long robot_move_delay;
+
+    private boolean record_enabled;
+
+    private String record_directory;
+
+    private boolean compression_enabled;
+
+    private int compression_threshold;
+
+    public ServerConfiguration() {
+        this(new File("server.cfg"));
+    }
+
+    public ServerConfiguration(File configuration_file) {
+        this.configuration_file = configuration_file;
+    }
+
     public void initialize() throws IOException {
         FileReader configuration_reader = new FileReader(configuration_file);
         PropertiesUtils.load(configuration, configuration_reader);
@@ -41,6 +123,77 @@ public class ServerConfiguration {
         database_name = configuration.get("DATABASE_NAME", "aeii");
         database_username = configuration.get("DATABASE_USERNAME", "undefined");
         database_password = configuration.get("DATABASE_PASSWORD", "123456");
+        //an explicit JDBC url overrides the MySQL settings above, e.g. to use an embedded database
+        database_url = configuration.get("DATABASE_URL", null);
+        database_pool_size = Integer.parseInt(configuration.get("DATABASE_POOL_SIZE", "4"));
+        map_cache_size = Long.parseLong(configuration.get("MAP_CACHE_SIZE", "16")) * 1024 * 1024;
+        metrics_file = configuration.get("METRICS_FILE", "metrics.json");
+        metrics_dump_interval = Long.parseLong(configuration.get("METRICS_DUMP_INTERVAL", "60")) * 1000;
+        //how long the slot of a player who lost the connection during a game is kept, 0 to free it at once
+        reconnect_grace_period = Long.parseLong(configuration.get("RECONNECT_GRACE_PERIOD", "60")) * 1000;
+        event_log_capacity = Integer.parseInt(configuration.get("EVENT_LOG_CAPACITY", "4096"));
+        max_spectators = Integer.parseInt(configuration.get("MAX_SPECTATORS", "500"));
+        //spectators see everything this many seconds late, e.g. to keep tournament players from being helped
+        spectator_delay = Long.parseLong(configuration.get("SPECTATOR_DELAY", "0")) * 1000;
+        //running games are journaled to disk and recovered after a crash, losing at most one sync interval
+        journal_enabled = Boolean.parseBoolean(configuration.get("JOURNAL_ENABLED", "true"));
+        journal_directory = configuration.get("JOURNAL_DIRECTORY", "journal");
+        journal_sync_interval = Long.parseLong(configuration.get("JOURNAL_SYNC_INTERVAL", "50"));
+        journal_checkpoint_events = Integer.parseInt(configuration.get("JOURNAL_CHECKPOINT_EVENTS", "1000"));
+        //requests that can wait are shed once this many requests are queued
+        admission_queue_limit = Integer.parseInt(configuration.get("ADMISSION_QUEUE_LIMIT", "2000"));
+        admission_io_queue_limit = Integer.parseInt(configuration.get("ADMISSION_IO_QUEUE_LIMIT", "64"));
+        //a turn not ended within this many seconds is ended by the server, 0 to let players take their time
+        turn_timeout = Long.parseLong(configuration.get("TURN_TIMEOUT", "0")) * 1000;
+        //connections that do not authenticate within this many seconds are closed
+        authentication_timeout = Long.parseLong(configuration.get("AUTHENTICATION_TIMEOUT", "30")) * 1000;
+        //a router owns the lobby and the map catalog and hands players off to the shards hosting the rooms
+        role = parseRole(configuration.get("SERVER_ROLE", "STANDALONE"));
+        cluster_port = Integer.parseInt(configuration.get("CLUSTER_PORT", "5439"));
+        //the interface a router accepts shards on, shards on other machines need it set to a reachable address
+        cluster_address = configuration.get("CLUSTER_ADDRESS", "127.0.0.1");
+        router_address = configuration.get("ROUTER_ADDRESS", "127.0.0.1");
+        shard_id = Integer.parseInt(configuration.get("SHARD_ID", "1"));
+        //the address clients are sent to, the shard must be reachable there by the players
+        shard_address = configuration.get("SHARD_ADDRESS", "127.0.0.1");
+        //signs the tickets and reports within the cluster, so it must not be known to the administrators
+        cluster_secret = configuration.get("CLUSTER_SECRET", null);
+        shard_heartbeat_interval = Long.parseLong(configuration.get("SHARD_HEARTBEAT_INTERVAL", "1000"));
+        shard_timeout = Long.parseLong(configuration.get("SHARD_TIMEOUT", "5")) * 1000;
+        handoff_ticket_lifetime = Long.parseLong(configuration.get("HANDOFF_TICKET_LIFETIME", "86400")) * 1000;
+        //robots seated by the hosts think on their own threads, 0 to not offer server robots
+        robot_threads = Integer.parseInt(configuration.get("ROBOT_THREADS", "2"));
+        //a robot taking longer than this many milliseconds for a move has its turn ended
+        robot_move_budget = Long.parseLong(configuration.get("ROBOT_MOVE_BUDGET", "200"));
+        robot_move_delay = Long.parseLong(configuration.get("ROBOT_MOVE_DELAY", "150"));
+        //every online match is archived as a compact record that any client can download and replay
+        record_enabled = Boolean.parseBoolean(configuration.get("RECORD_ENABLED", "true"));
+        record_directory = configuration.get("RECORD_DIRECTORY", "records");
+        //packets of at least this many bytes are deflated for the clients that can inflate them
+        compression_enabled = Boolean.parseBoolean(configuration.get("COMPRESSION_ENABLED", "true"));
+        compression_threshold = Integer.parseInt(configuration.get("COMPRESSION_THRESHOLD",
+                Integer.toString(PacketCompressor.DEFAULT_THRESHOLD)));
+        if (role != ROLE_STANDALONE && (cluster_secret == null || cluster_secret.length() == 0)) {
+            throw new IOException("CLUSTER_SECRET must be set for a router or a shard");
+        }
+        if (role != ROLE_STANDALONE && cluster_secret.equals(admin_token)) {
+            throw new IOException("CLUSTER_SECRET must differ from ADMIN_TOKEN");
+        }
+        if (role == ROLE_SHARD && (shard_id < 1 || shard_id >= ShardConstants.MAX_SHARDS)) {
+            throw new IOException("SHARD_ID must be between 1 and " + (ShardConstants.MAX_SHARDS - 1));
+        }
+    }
+
+    private static int parseRole(String role) throws IOException {
+        if ("STANDALONE".equalsIgnoreCase(role)) {
+            return ROLE_STANDALONE;
+        } else if ("ROUTER".equalsIgnoreCase(role)) {
+            return ROLE_ROUTER;
+        } else if ("SHARD".equalsIgnoreCase(role)) {
+            return ROLE_SHARD;
+        } else {
+            throw new IOException("Unknown SERVER_ROLE " + role);
+        }
     }
 
     public int getPort() {
@@ -71,4 +224,169 @@ public class ServerConfiguration {
         return database_password;
     }
 
+    public String getDatabaseUrl() {
+        return database_url;
+    }
+
+    public int getDatabasePoolSize() {
+        return database_pool_size;
+    }
+
+    public long getMapCacheSize() {
+        return map_cache_size;
+    }
+
+    public String getMetricsFile() {
+        return metrics_file;
+    }
+
+    public long getMetricsDumpInterval() {
+        return metrics_dump_interval;
+    }
+
+    public long getReconnectGracePeriod() {
+        return reconnect_grace_period;
+    }
+
+    public int getEventLogCapacity() {
+        return event_log_capacity;
+    }
+
+    public int getMaxSpectators() {
+        return max_spectators;
+    }
+
+    public long getSpectatorDelay() {
+        return spectator_delay;
+    }
+
+    public boolean isJournalEnabled() {
+        return journal_enabled;
+    }
+
+    public String getJournalDirectory() {
+        return journal_directory;
+    }
+
+    public long getJournalSyncInterval() {
+        return journal_sync_interval;
+    }
+
+    public int getJournalCheckpointEvents() {
+        return journal_checkpoint_events;
+    }
+
+    public int getAdmissionQueueLimit() {
+        return admission_queue_limit;
+    }
+
+    public int getAdmissionIOQueueLimit() {
+        return admission_io_queue_limit;
+    }
+
+    public long getTurnTimeout() {
+        return turn_timeout;
+    }
+
+    public long getAuthenticationTimeout() {
+        return authentication_timeout;
+    }
+
+    public int getRole() {
+        return role;
+    }
+
+    public boolean isRouter() {
+        return role == ROLE_ROUTER;
+    }
+
+    public boolean isShard() {
+        return role == ROLE_SHARD;
+    }
+
+    public int getClusterPort() {
+        return cluster_port;
+    }
+
+    public String getClusterAddress() {
+        return cluster_address;
+    }
+
+    public String getRouterAddress() {
+        return router_address;
+    }
+
+    public int getShardID() {
+        return shard_id;
+    }
+
+    public String getShardAddress() {
+        return shard_address;
+    }
+
+    public String getClusterSecret() {
+        return cluster_secret;
+    }
+
+    public long getShardHeartbeatInterval() {
+        return shard_heartbeat_interval;
+    }
+
+    public long getShardTimeout() {
+        return shard_timeout;
+    }
+
+    public long getHandoffTicketLifetime() {
+        return handoff_ticket_lifetime;
+    }
+
+    /**
+     * Reads a rate limit given as "RATE_LIMIT_name=rate,burst", rate in requests per second.
+     *
+     * @return the rate and the burst
+     */
+    public double[] getRateLimit(String name, double default_rate, double default_burst) {
+        String value = configuration.get("RATE_LIMIT_" + name, null);
+        if (value == null) {
+            return new double[]{default_rate, default_burst};
+        } else {
+            String[] parts = value.split(",");
+            double rate = Double.parseDouble(parts[0].trim());
+            double burst = parts.length > 1 ? Double.parseDouble(parts[1].trim()) : Math.max(1, rate);
+            return new double[]{rate, burst};
+        }
+    }
+
+    public int getRobotThreads() {
+        return robot_threads;
+    }
+
+    public boolean isRobotEnabled() {
+        return robot_threads > 0;
+    }
+
+    public long getRobotMoveBudget() {
+        return robot_move_budget;
+    }
+
+    public long getRobotMoveDelay() {
+        return robot_move_delay;
+    }
+
+    public boolean isRecordEnabled() {
+        return record_enabled;
+    }
+
+    public String getRecordDirectory() {
+        return record_directory;
+    }
+
+    public boolean isCompressionEnabled() {
+        return compression_enabled;
+    }
+
+    public int getCompressionThreshold() {
+        return compression_threshold;
+    }
+
 }
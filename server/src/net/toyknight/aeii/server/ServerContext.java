@@ -6,13 +6,22 @@ import com.esotericsoftware.kryonet.Server;
 import com.esotericsoftware.minlog.Log;
 import net.toyknight.aeii.AEIIException;
 import net.toyknight.aeii.GameContext;
+import net.toyknight.aeii.network.protocol.BinaryPacket;
+import net.toyknight.aeii.network.protocol.CompressedPacket;
+import net.toyknight.aeii.network.protocol.PacketChunk;
+import net.toyknight.aeii.network.protocol.PacketRegistry;
+import net.toyknight.aeii.server.cluster.ShardLink;
+import net.toyknight.aeii.server.concurrent.HashedWheelTimer;
 import net.toyknight.aeii.server.entities.Player;
 import net.toyknight.aeii.server.managers.*;
+import net.toyknight.aeii.server.metrics.Gauge;
+import net.toyknight.aeii.server.metrics.MetricsRegistry;
 import net.toyknight.aeii.utils.MD5Converter;
 import net.toyknight.aeii.utils.TileFactory;
 import net.toyknight.aeii.utils.UnitFactory;
 import org.json.JSONException;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -24,10 +33,24 @@ public class ServerContext {
 
     private static final String TAG = "SERVER CONTEXT";
 
+    public static final int WRITE_BUFFER_SIZE = 90 * 1024;
+
+    public static final int OBJECT_BUFFER_SIZE = 90 * 1024;
+
+    public static final long TIMER_TICK = 100;
+
+    public static final int TIMER_WHEEL_SIZE = 512;
+
     private boolean running;
 
+    private final MetricsRegistry metrics = new MetricsRegistry();
+
     private ExecutorService executor;
 
+    private ExecutorService writer_executor;
+
+    private HashedWheelTimer timer;
+
     private ServerConfiguration configuration;
 
     private String verification_string;
@@ -42,10 +65,39 @@ public class ServerContext {
 
     private RoomManager room_manager;
 
+    private LobbyManager lobby_manager;
+
+    private JournalManager journal_manager;
+
+    private RobotManager robot_manager;
+
+    private RecordManager record_manager;
+
     private MapManager map_manager;
 
     private DatabaseManager database_manager;
 
+    private ShardManager shard_manager;
+
+    private ShardLink shard_link;
+
+    private final File configuration_file;
+
+    public ServerContext() {
+        this(new File("server.cfg"));
+    }
+
+    /**
+     * @param configuration_file lets several servers, like the router and shards of a cluster, run from one directory
+     */
+    public ServerContext(File configuration_file) {
+        this.configuration_file = configuration_file;
+    }
+
+    public MetricsRegistry getMetrics() {
+        return metrics;
+    }
+
     public NotificationSender getNotificationSender() {
         return notification_sender;
     }
@@ -62,6 +114,22 @@ public class ServerContext {
         return room_manager;
     }
 
+    public LobbyManager getLobbyManager() {
+        return lobby_manager;
+    }
+
+    public JournalManager getJournalManager() {
+        return journal_manager;
+    }
+
+    public RobotManager getRobotManager() {
+        return robot_manager;
+    }
+
+    public RecordManager getRecordManager() {
+        return record_manager;
+    }
+
     public MapManager getMapManager() {
         return map_manager;
     }
@@ -70,15 +138,56 @@ public class ServerContext {
         return database_manager;
     }
 
+    /**
+     * @return the shards of a router, or null for a standalone server or a shard
+     */
+    public ShardManager getShardManager() {
+        return shard_manager;
+    }
+
+    public ExecutorService getWriterExecutor() {
+        return writer_executor;
+    }
+
     public void submitTask(Runnable task) {
         executor.submit(task);
     }
 
+    /**
+     * Runs the task on the task executor after the delay, give or take one timer tick. Nothing waits meanwhile.
+     *
+     * @param delay the delay in milliseconds
+     * @return the timeout, which can be cancelled until the task runs
+     */
+    public HashedWheelTimer.Timeout schedule(Runnable task, long delay) {
+        return timer.schedule(task, delay);
+    }
+
+    /**
+     * Runs the task periodically, each run starting a period after the last one finished.
+     */
+    public void scheduleTask(Runnable task, long period) {
+        schedule(new ScheduledTask(task, period), period);
+    }
+
+    public int getPendingTimeoutCount() {
+        return timer.getPendingCount();
+    }
+
     public void onObjectReceived(Connection connection, Object object) {
         Player player = getPlayerManager().getPlayer(connection.getID());
-        if (player != null && object instanceof String) {
+        if (player != null && (object instanceof String || object instanceof BinaryPacket
+                || object instanceof CompressedPacket || object instanceof PacketChunk)) {
             try {
-                getRequestHandler().submitRequest(player, (String) object);
+                if (object instanceof String) {
+                    getRequestHandler().submitRequest(player, (String) object);
+                } else if (object instanceof BinaryPacket) {
+                    getRequestHandler().submitRequest(player, (BinaryPacket) object);
+                } else if (object instanceof CompressedPacket) {
+                    getRequestHandler().submitRequest(player, (CompressedPacket) object);
+                } else {
+                    getRequestHandler().submitRequest(player, (PacketChunk) object);
+                }
             } catch (JSONException ex) {
                 Log.error(TAG, String.format("Illegal request from %s [request format error]", player.toString()), ex);
             }
@@ -105,7 +214,7 @@ public class ServerContext {
     public void initialize() throws ServerException {
         //load server configuration
         try {
-            configuration = new ServerConfiguration();
+            configuration = new ServerConfiguration(configuration_file);
             configuration.initialize();
         } catch (Exception ex) {
             throw new ServerException(TAG, "Error initializing server [exception while loading configuration]", ex);
@@ -120,25 +229,93 @@ public class ServerContext {
         }
         //initialize managers
         executor = Executors.newFixedThreadPool(128);
+        writer_executor = Executors.newFixedThreadPool(Math.max(2, Runtime.getRuntime().availableProcessors() / 2));
+        timer = new HashedWheelTimer(executor, TIMER_TICK, TIMER_WHEEL_SIZE);
+        timer.start();
         notification_sender = new NotificationSender(this);
         request_handler = new RequestHandler(this);
         player_manager = new PlayerManager(this);
         room_manager = new RoomManager(this);
+        lobby_manager = new LobbyManager(this);
+        journal_manager = new JournalManager(this);
+        robot_manager = new RobotManager(this);
+        record_manager = new RecordManager(this);
+        if (getConfiguration().isRouter()) {
+            shard_manager = new ShardManager(this);
+        }
+        if (getConfiguration().isShard()) {
+            shard_link = new ShardLink(this);
+        }
+        try {
+            journal_manager.start();
+        } catch (IOException ex) {
+            throw new ServerException(TAG, "Error initializing server [exception while opening journal]", ex);
+        }
+        try {
+            record_manager.start();
+        } catch (IOException ex) {
+            throw new ServerException(TAG, "Error initializing server [exception while opening records]", ex);
+        }
+        scheduleTask(new Runnable() {
+            @Override
+            public void run() {
+                getLobbyManager().flush();
+            }
+        }, LobbyManager.FLUSH_INTERVAL);
+        scheduleTask(new Runnable() {
+            @Override
+            public void run() {
+                getRoomManager().reapRooms();
+            }
+        }, RoomManager.REAP_INTERVAL);
+        scheduleTask(new Runnable() {
+            @Override
+            public void run() {
+                getRoomManager().expireReservations();
+            }
+        }, RoomManager.RESERVATION_CHECK_INTERVAL);
+        if (getConfiguration().getSpectatorDelay() > 0) {
+            scheduleTask(new Runnable() {
+                @Override
+                public void run() {
+                    getRoomManager().tickSpectatorFeeds();
+                }
+            }, RoomManager.SPECTATOR_TICK_INTERVAL);
+        }
+        registerMetrics();
+        if (getConfiguration().getMetricsDumpInterval() > 0) {
+            scheduleTask(new Runnable() {
+                @Override
+                public void run() {
+                    dumpMetrics();
+                }
+            }, getConfiguration().getMetricsDumpInterval());
+        }
         if (getConfiguration().isMapManagerEnabled()) {
             try {
+                String database_url = getConfiguration().getDatabaseUrl();
+                if (database_url == null) {
+                    database_url = DatabaseManager.createMySQLUrl(
+                            getConfiguration().getDatabaseHost(),
+                            getConfiguration().getDatabaseName(),
+                            getConfiguration().getDatabaseUsername(),
+                            getConfiguration().getDatabasePassword());
+                }
                 database_manager = new DatabaseManager();
-                database_manager.connect(
-                        getConfiguration().getDatabaseHost(),
-                        getConfiguration().getDatabaseName(),
-                        getConfiguration().getDatabaseUsername(),
-                        getConfiguration().getDatabasePassword());
+                database_manager.connect(database_url, getConfiguration().getDatabasePoolSize());
             } catch (Exception ex) {
                 throw new ServerException(TAG, "Error initializing server [exception while connecting to DB]", ex);
             }
             map_manager = new MapManager(this);
+            try {
+                map_manager.loadCatalog();
+            } catch (Exception ex) {
+                throw new ServerException(TAG, "Error initializing server [exception while loading map catalog]", ex);
+            }
         }
         //initialize server object
-        server = new Server(90 * 1024, 90 * 1024);
+        server = new Server(WRITE_BUFFER_SIZE, OBJECT_BUFFER_SIZE);
+        PacketRegistry.register(server.getKryo());
         server.addListener(new Listener() {
             @Override
             public void connected(Connection connection) {
@@ -165,13 +342,201 @@ public class ServerContext {
 
     public void start() throws ServerException {
         initialize();
+        if (!getConfiguration().isRouter()) {
+            getRoomManager().recoverRooms();
+        }
         try {
+            if (getConfiguration().isRouter()) {
+                getShardManager().start();
+            }
             server.start();
             server.bind(getConfiguration().getPort());
             running = true;
         } catch (IOException ex) {
             throw new ServerException(TAG, "Error starting server [exception while binding port]", ex);
         }
+        if (getConfiguration().isShard()) {
+            //reported to the router only once it can take players
+            shard_link.start();
+        }
+    }
+
+    private void registerMetrics() {
+        getMetrics().registerExecutor("executor.tasks", executor);
+        getMetrics().registerExecutor("executor.writers", writer_executor);
+        getMetrics().registerExecutor("executor.requests", getRequestHandler().getRequestExecutor());
+        getMetrics().registerExecutor("executor.io_requests", getRequestHandler().getIORequestExecutor());
+        getMetrics().registerExecutor("executor.rooms", getRoomManager().getScheduler().getExecutor());
+        getMetrics().registerExecutor("executor.robots", getRobotManager().getExecutor());
+        getMetrics().registerGauge("timer.pending", new Gauge() {
+            @Override
+            public long getValue() {
+                return getPendingTimeoutCount();
+            }
+        });
+        getMetrics().registerGauge("requests.queued", new Gauge() {
+            @Override
+            public long getValue() {
+                return getRequestHandler().getQueueDepth();
+            }
+        });
+        getMetrics().registerGauge("requests.io_queued", new Gauge() {
+            @Override
+            public long getValue() {
+                return getRequestHandler().getIOQueueDepth();
+            }
+        });
+        getMetrics().registerGauge("players", new Gauge() {
+            @Override
+            public long getValue() {
+                return getPlayerManager().getPlayerCount();
+            }
+        });
+        getMetrics().registerGauge("lobby.subscribers", new Gauge() {
+            @Override
+            public long getValue() {
+                return getLobbyManager().getSubscriberCount();
+            }
+        });
+        getMetrics().registerGauge("lobby.players", new Gauge() {
+            @Override
+            public long getValue() {
+                return getLobbyManager().getLobbyPlayerCount();
+            }
+        });
+        getMetrics().registerGauge("records", new Gauge() {
+            @Override
+            public long getValue() {
+                return getRecordManager().getRecordCount();
+            }
+        });
+        getMetrics().registerGauge("rooms", new Gauge() {
+            @Override
+            public long getValue() {
+                return getRoomManager().getRoomCount();
+            }
+        });
+        getMetrics().registerGauge("rooms.active", new Gauge() {
+            @Override
+            public long getValue() {
+                return getRoomManager().getScheduler().getActiveRoomCount();
+            }
+        });
+        getMetrics().registerGauge("rooms.mailbox_depth", new Gauge() {
+            @Override
+            public long getValue() {
+                return getRoomManager().getScheduler().getMailboxDepth();
+            }
+        });
+        getMetrics().registerGauge("rooms.longest_running_task_ms", new Gauge() {
+            @Override
+            public long getValue() {
+                return getRoomManager().getScheduler().getLongestRunningNanos() / 1000000;
+            }
+        });
+        getMetrics().registerGauge("journals", new Gauge() {
+            @Override
+            public long getValue() {
+                return getJournalManager().getJournalCount();
+            }
+        });
+        getMetrics().registerGauge("broadcasts", new Gauge() {
+            @Override
+            public long getValue() {
+                return getNotificationSender().getBroadcastCount();
+            }
+        });
+        getMetrics().registerGauge("broadcasts.saved_bytes", new Gauge() {
+            @Override
+            public long getValue() {
+                return getNotificationSender().getSavedBytes();
+            }
+        });
+        if (getConfiguration().isRouter()) {
+            getMetrics().registerGauge("shards", new Gauge() {
+                @Override
+                public long getValue() {
+                    return getShardManager().getShardCount();
+                }
+            });
+            getMetrics().registerGauge("shards.healthy", new Gauge() {
+                @Override
+                public long getValue() {
+                    return getShardManager().getHealthyShardCount();
+                }
+            });
+        }
+        if (getConfiguration().isMapManagerEnabled()) {
+            getMetrics().registerGauge("database.connections", new Gauge() {
+                @Override
+                public long getValue() {
+                    return getDatabaseManager().getConnectionPool().getOpenConnectionCount();
+                }
+            });
+            getMetrics().registerGauge("database.idle_connections", new Gauge() {
+                @Override
+                public long getValue() {
+                    return getDatabaseManager().getConnectionPool().getIdleConnectionCount();
+                }
+            });
+            getMetrics().registerGauge("maps.cache.hits", new Gauge() {
+                @Override
+                public long getValue() {
+                    return getMapManager().getPayloadCache().getHitCount();
+                }
+            });
+            getMetrics().registerGauge("maps.cache.misses", new Gauge() {
+                @Override
+                public long getValue() {
+                    return getMapManager().getPayloadCache().getMissCount();
+                }
+            });
+            getMetrics().registerGauge("maps.cache.evictions", new Gauge() {
+                @Override
+                public long getValue() {
+                    return getMapManager().getPayloadCache().getEvictionCount();
+                }
+            });
+            getMetrics().registerGauge("maps.cache.bytes", new Gauge() {
+                @Override
+                public long getValue() {
+                    return getMapManager().getPayloadCache().getSize();
+                }
+            });
+        }
+    }
+
+    private void dumpMetrics() {
+        try {
+            getMetrics().dump(new File(getConfiguration().getMetricsFile()));
+        } catch (IOException ex) {
+            Log.error(TAG, "Exception occurred while dumping metrics", ex);
+        }
+    }
+
+    private class ScheduledTask implements Runnable {
+
+        private final Runnable task;
+
+        private final long period;
+
+        public ScheduledTask(Runnable task, long period) {
+            this.task = task;
+            this.period = period;
+        }
+
+        @Override
+        public void run() {
+            //an uncaught exception must not stop the later runs of a periodic task
+            try {
+                task.run();
+            } catch (Exception ex) {
+                Log.error(TAG, "Exception occurred in scheduled task", ex);
+            } finally {
+                schedule(this, period);
+            }
+        }
+
     }
 
 }
@@ -2,6 +2,8 @@ package net.toyknight.aeii.server;
 
 import com.esotericsoftware.minlog.Log;
 
+import java.io.File;
+
 /**
  * @author toyknight 8/12/2016.
  */
@@ -9,7 +11,11 @@ public class ServerLauncher {
 
     public static void main(String[] args) {
         try {
-            new ServerContext().start();
+            if (args.length > 0) {
+                new ServerContext(new File(args[0])).start();
+            } else {
+                new ServerContext().start();
+            }
         } catch (ServerException ex) {
             Log.error(ex.getTag(), "Failed launching the server", ex);
             System.exit(-1);
@@ -0,0 +1,70 @@
+package net.toyknight.aeii.server.cluster;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.UnsupportedEncodingException;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+
+/**
+ * The proof a router gives a player it authenticated, which a shard accepts instead of authenticating the
+ * player again. A ticket is "shard_id:expiry:mac", the mac being an HMAC of the username, the shard and the
+ * expiry under the secret the processes of the cluster share, so shards check tickets without asking the router.
+ *
+ * @author toyknight 10/17/2026.
+ */
+public class HandoffTicket {
+
+    private static final String ALGORITHM = "HmacSHA256";
+
+    private HandoffTicket() {
+    }
+
+    public static String create(String secret, String username, int shard_id, long expiry) {
+        return shard_id + ":" + expiry + ":" + sign(secret, username + "\n" + shard_id + "\n" + expiry);
+    }
+
+    /**
+     * @return whether the ticket was issued to the player for the shard and has not expired
+     */
+    public static boolean verify(String secret, String ticket, String username, int shard_id, long now) {
+        if (ticket == null || username == null) {
+            return false;
+        }
+        String[] parts = ticket.split(":");
+        if (parts.length != 3) {
+            return false;
+        }
+        try {
+            long expiry = Long.parseLong(parts[1]);
+            if (Integer.parseInt(parts[0]) != shard_id || expiry < now) {
+                return false;
+            }
+            String expected = sign(secret, username + "\n" + shard_id + "\n" + expiry);
+            //compared in constant time, so the mac cannot be guessed byte by byte
+            return MessageDigest.isEqual(expected.getBytes("UTF-8"), parts[2].getBytes("UTF-8"));
+        } catch (NumberFormatException ex) {
+            return false;
+        } catch (UnsupportedEncodingException ex) {
+            return false;
+        }
+    }
+
+    static String sign(String secret, String content) {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(new SecretKeySpec(secret.getBytes("UTF-8"), ALGORITHM));
+            byte[] bytes = mac.doFinal(content.getBytes("UTF-8"));
+            StringBuilder signature = new StringBuilder();
+            for (byte b : bytes) {
+                signature.append(String.format("%02x", b & 0xff));
+            }
+            return signature.toString();
+        } catch (GeneralSecurityException ex) {
+            throw new IllegalStateException(ex);
+        } catch (UnsupportedEncodingException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+}
@@ -0,0 +1,33 @@
+package net.toyknight.aeii.server.cluster;
+
+/**
+ * Room ids carry the shard hosting the room in their low bits, so any process can tell where a room lives
+ * from its id alone, and a room recovered from its journal comes back under the same id on the same shard.
+ *
+ * @author toyknight 10/17/2026.
+ */
+public class ShardConstants {
+
+    public static final int SHARD_BITS = 6;
+
+    public static final int MAX_SHARDS = 1 << SHARD_BITS;
+
+    //Cluster messages
+    public static final int SHARD_STATUS = 0x1;
+
+    private ShardConstants() {
+    }
+
+    public static long createRoomID(long sequence, int shard_id) {
+        return (sequence << SHARD_BITS) | shard_id;
+    }
+
+    public static long getSequence(long room_id) {
+        return room_id >> SHARD_BITS;
+    }
+
+    public static int getShardID(long room_id) {
+        return (int) (room_id & (MAX_SHARDS - 1));
+    }
+
+}
@@ -0,0 +1,104 @@
+package net.toyknight.aeii.server.cluster;
+
+import com.badlogic.gdx.utils.ObjectSet;
+
+/**
+ * What the router knows about a shard from its last report.
+ *
+ * @author toyknight 10/17/2026.
+ */
+public class ShardInfo {
+
+    /**
+     * The players a room sent to the shard is expected to bring before the shard reports them.
+     */
+    public static final int PLAYERS_PER_ROOM = 4;
+
+    private final int shard_id;
+
+    private final ObjectSet<Long> room_ids = new ObjectSet<Long>();
+
+    private int connection_id;
+
+    private String address;
+
+    private int port;
+
+    private int player_count;
+
+    private int room_count;
+
+    private int queue_depth;
+
+    private int pending_room_count;
+
+    private long last_report;
+
+    public ShardInfo(int shard_id) {
+        this.shard_id = shard_id;
+    }
+
+    public int getShardID() {
+        return shard_id;
+    }
+
+    public ObjectSet<Long> getRoomIDs() {
+        return room_ids;
+    }
+
+    public int getConnectionID() {
+        return connection_id;
+    }
+
+    public String getAddress() {
+        return address;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public int getPlayerCount() {
+        return player_count;
+    }
+
+    public int getRoomCount() {
+        return room_count;
+    }
+
+    public int getQueueDepth() {
+        return queue_depth;
+    }
+
+    public long getLastReport() {
+        return last_report;
+    }
+
+    public void update(int connection_id, String address, int port,
+                       int player_count, int room_count, int queue_depth, long time) {
+        this.connection_id = connection_id;
+        this.address = address;
+        this.port = port;
+        this.player_count = player_count;
+        this.room_count = room_count;
+        this.queue_depth = queue_depth;
+        this.pending_room_count = 0;
+        this.last_report = time;
+    }
+
+    public void onRoomAssigned() {
+        pending_room_count++;
+    }
+
+    /**
+     * @return the players on the shard, counting the rooms sent to it since its last report
+     */
+    public int getLoad() {
+        return player_count + queue_depth + pending_room_count * PLAYERS_PER_ROOM;
+    }
+
+    public boolean isHealthy(long now, long timeout) {
+        return now - last_report <= timeout;
+    }
+
+}
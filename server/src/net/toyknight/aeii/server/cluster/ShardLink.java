@@ -0,0 +1,93 @@
+package net.toyknight.aeii.server.cluster;
+
+import com.esotericsoftware.kryonet.Client;
+import com.esotericsoftware.kryonet.Connection;
+import com.esotericsoftware.kryonet.Listener;
+import com.esotericsoftware.minlog.Log;
+import net.toyknight.aeii.server.ServerConfiguration;
+import net.toyknight.aeii.server.ServerContext;
+import org.json.JSONObject;
+
+import java.io.IOException;
+
+/**
+ * The connection of a shard to its router. Every heartbeat reports the load of the shard together with
+ * the room directory changes since the last report, so the router lists the rooms of every shard and
+ * sends new rooms to the least loaded one. A lost router is connected again on the next heartbeat,
+ * starting over with the whole directory.
+ *
+ * @author toyknight 10/17/2026.
+ */
+public class ShardLink {
+
+    private static final String TAG = "SHARD LINK";
+
+    private static final int CONNECT_TIMEOUT = 3000;
+
+    /**
+     * A full report lists every room of the shard, so the links to the router get much larger buffers than players.
+     */
+    public static final int BUFFER_SIZE = 4 * 1024 * 1024;
+
+    private final ServerContext context;
+
+    private final Client client;
+
+    private long reported_version;
+
+    public ShardLink(ServerContext context) {
+        this.context = context;
+        this.client = new Client(BUFFER_SIZE, BUFFER_SIZE);
+        this.client.addListener(new Listener() {
+            @Override
+            public void disconnected(Connection connection) {
+                Log.info(TAG, "Lost the router");
+            }
+        });
+    }
+
+    public ServerContext getContext() {
+        return context;
+    }
+
+    public void start() {
+        client.start();
+        getContext().scheduleTask(new Runnable() {
+            @Override
+            public void run() {
+                report();
+            }
+        }, getContext().getConfiguration().getShardHeartbeatInterval());
+    }
+
+    public void stop() {
+        client.stop();
+    }
+
+    private void report() {
+        ServerConfiguration configuration = getContext().getConfiguration();
+        if (!client.isConnected()) {
+            try {
+                client.connect(CONNECT_TIMEOUT, configuration.getRouterAddress(), configuration.getClusterPort());
+                //the router dropped the rooms of this shard with the connection
+                reported_version = 0;
+                Log.info(TAG, String.format("Connected to the router at %s:%d",
+                        configuration.getRouterAddress(), configuration.getClusterPort()));
+            } catch (IOException ex) {
+                return;
+            }
+        }
+        JSONObject status = new JSONObject();
+        status.put("operation", ShardConstants.SHARD_STATUS);
+        status.put("shard_id", configuration.getShardID());
+        status.put("address", configuration.getShardAddress());
+        status.put("port", configuration.getPort());
+        status.put("player_count", getContext().getPlayerManager().getPlayerCount());
+        status.put("room_count", getContext().getRoomManager().getRoomCount());
+        status.put("queue_depth", getContext().getRequestHandler().getQueueDepth());
+        status.put("since", reported_version);
+        reported_version = getContext().getRoomManager().getDirectory().writeChanges(status, reported_version);
+        client.sendTCP(ShardReport.seal(configuration.getClusterSecret(), status));
+    }
+
+}
@@ -0,0 +1,46 @@
+package net.toyknight.aeii.server.cluster;
+
+import org.json.JSONObject;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+
+/**
+ * The envelope of the reports a shard sends its router: "mac\nreport", the mac being an HMAC of the report
+ * under the secret the processes of the cluster share, so that nobody else can pass itself off as a shard.
+ *
+ * @author toyknight 10/17/2026.
+ */
+public class ShardReport {
+
+    private ShardReport() {
+    }
+
+    public static String seal(String secret, JSONObject report) {
+        String content = report.toString();
+        return HandoffTicket.sign(secret, content) + "\n" + content;
+    }
+
+    /**
+     * @return the report, or null if it was not sealed with the secret
+     */
+    public static JSONObject open(String secret, String envelope) {
+        int separator = envelope.indexOf('\n');
+        if (separator < 0) {
+            return null;
+        }
+        String content = envelope.substring(separator + 1);
+        String expected = HandoffTicket.sign(secret, content);
+        try {
+            //compared in constant time, so the mac cannot be guessed byte by byte
+            if (MessageDigest.isEqual(expected.getBytes("UTF-8"), envelope.substring(0, separator).getBytes("UTF-8"))) {
+                return new JSONObject(content);
+            } else {
+                return null;
+            }
+        } catch (UnsupportedEncodingException ex) {
+            return null;
+        }
+    }
+
+}
@@ -0,0 +1,241 @@
+package net.toyknight.aeii.server.concurrent;
+
+import com.esotericsoftware.minlog.Log;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A timer for a large number of delayed tasks that rarely need to be exact, such as turn clocks and
+ * delayed disconnects. Timeouts are put into the bucket of a wheel that one worker thread advances one
+ * bucket per tick, so scheduling and cancelling cost O(1) however many timeouts are pending. Tasks fire
+ * up to one tick late and run on the executor, never on the worker, so a slow task cannot hold up the wheel.
+ *
+ * @author toyknight 10/17/2026.
+ */
+public class HashedWheelTimer {
+
+    private static final String TAG = "TIMER";
+
+    private static final int MAX_TRANSFERS_PER_TICK = 100000;
+
+    private final Executor executor;
+
+    private final long tick_duration;
+
+    private final Bucket[] wheel;
+
+    private final int mask;
+
+    private final ConcurrentLinkedQueue<Timeout> scheduled = new ConcurrentLinkedQueue<Timeout>();
+
+    private final AtomicInteger pending = new AtomicInteger(0);
+
+    private final Thread worker;
+
+    private final long start_time;
+
+    private volatile boolean running;
+
+    private long tick;
+
+    /**
+     * @param tick_duration the duration of a tick in milliseconds
+     * @param wheel_size    the number of buckets, rounded up to a power of two
+     */
+    public HashedWheelTimer(Executor executor, long tick_duration, int wheel_size) {
+        this.executor = executor;
+        this.tick_duration = Math.max(1, tick_duration) * 1000000;
+        int size = 1;
+        while (size < wheel_size) {
+            size <<= 1;
+        }
+        this.wheel = new Bucket[size];
+        for (int i = 0; i < size; i++) {
+            wheel[i] = new Bucket();
+        }
+        this.mask = size - 1;
+        this.worker = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                work();
+            }
+        }, "timer");
+        this.worker.setDaemon(true);
+        this.start_time = System.nanoTime();
+    }
+
+    public void start() {
+        running = true;
+        worker.start();
+    }
+
+    public void stop() {
+        running = false;
+        worker.interrupt();
+    }
+
+    /**
+     * @return the number of timeouts scheduled and neither fired nor cancelled yet
+     */
+    public int getPendingCount() {
+        return pending.get();
+    }
+
+    /**
+     * @param delay the delay in milliseconds
+     */
+    public Timeout schedule(Runnable task, long delay) {
+        Timeout timeout = new Timeout(task, System.nanoTime() - start_time + Math.max(0, delay) * 1000000);
+        pending.incrementAndGet();
+        scheduled.add(timeout);
+        return timeout;
+    }
+
+    private void work() {
+        while (running) {
+            long deadline = waitForNextTick();
+            if (deadline < 0) {
+                continue;
+            }
+            transferScheduled();
+            expire(wheel[(int) (tick & mask)], deadline);
+            tick++;
+        }
+    }
+
+    private long waitForNextTick() {
+        long deadline = tick_duration * (tick + 1);
+        long current_time = System.nanoTime() - start_time;
+        long sleep_time = (deadline - current_time + 999999) / 1000000;
+        if (sleep_time > 0) {
+            try {
+                Thread.sleep(sleep_time);
+            } catch (InterruptedException ignored) {
+            }
+            return -1;
+        }
+        return current_time;
+    }
+
+    private void transferScheduled() {
+        for (int i = 0; i < MAX_TRANSFERS_PER_TICK; i++) {
+            Timeout timeout = scheduled.poll();
+            if (timeout == null) {
+                return;
+            }
+            if (timeout.isCancelled()) {
+                continue;
+            }
+            long target_tick = timeout.deadline / tick_duration;
+            timeout.remaining_rounds = (target_tick - tick) / wheel.length;
+            wheel[(int) (Math.max(target_tick, tick) & mask)].add(timeout);
+        }
+    }
+
+    private void expire(Bucket bucket, long deadline) {
+        Timeout timeout = bucket.head;
+        while (timeout != null) {
+            Timeout next = timeout.next;
+            if (timeout.isCancelled()) {
+                bucket.remove(timeout);
+            } else if (timeout.remaining_rounds <= 0 && timeout.deadline <= deadline) {
+                bucket.remove(timeout);
+                timeout.fire();
+            } else {
+                timeout.remaining_rounds--;
+            }
+            timeout = next;
+        }
+    }
+
+    public class Timeout {
+
+        private static final int WAITING = 0;
+        private static final int CANCELLED = 1;
+        private static final int FIRED = 2;
+
+        private final Runnable task;
+
+        private final long deadline;
+
+        private final AtomicInteger state = new AtomicInteger(WAITING);
+
+        private long remaining_rounds;
+
+        private Timeout previous;
+
+        private Timeout next;
+
+        private Timeout(Runnable task, long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        /**
+         * @return whether the timeout was cancelled before it fired
+         */
+        public boolean cancel() {
+            if (state.compareAndSet(WAITING, CANCELLED)) {
+                //the worker unlinks it when it reaches its bucket
+                pending.decrementAndGet();
+                return true;
+            } else {
+                return false;
+            }
+        }
+
+        public boolean isCancelled() {
+            return state.get() == CANCELLED;
+        }
+
+        private void fire() {
+            if (state.compareAndSet(WAITING, FIRED)) {
+                pending.decrementAndGet();
+                try {
+                    executor.execute(task);
+                } catch (RejectedExecutionException ex) {
+                    Log.error(TAG, "Timeout task rejected", ex);
+                }
+            }
+        }
+
+    }
+
+    private static class Bucket {
+
+        private Timeout head;
+
+        private Timeout tail;
+
+        private void add(Timeout timeout) {
+            timeout.previous = tail;
+            timeout.next = null;
+            if (tail == null) {
+                head = timeout;
+            } else {
+                tail.next = timeout;
+            }
+            tail = timeout;
+        }
+
+        private void remove(Timeout timeout) {
+            if (timeout.previous == null) {
+                head = timeout.next;
+            } else {
+                timeout.previous.next = timeout.next;
+            }
+            if (timeout.next == null) {
+                tail = timeout.previous;
+            } else {
+                timeout.next.previous = timeout.previous;
+            }
+            timeout.previous = null;
+            timeout.next = null;
+        }
+
+    }
+
+}
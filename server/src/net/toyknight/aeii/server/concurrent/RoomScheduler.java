@@ -0,0 +1,208 @@
+package net.toyknight.aeii.server.concurrent;
+
+import com.badlogic.gdx.utils.ObjectSet;
+import com.esotericsoftware.minlog.Log;
+import net.toyknight.aeii.server.metrics.Counter;
+import net.toyknight.aeii.server.metrics.Histogram;
+import net.toyknight.aeii.server.metrics.MetricsRegistry;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the tasks of every room on one bounded pool. Each room gets a mailbox that executes
+ * at most one task at a time in submission order, and mailboxes take turns on the pool
+ * so one busy room cannot hold up the others.
+ *
+ * @author toyknight 10/17/2026.
+ */
+public class RoomScheduler {
+
+    private static final String TAG = "ROOM SCHEDULER";
+
+    private final Object MAILBOX_LOCK = new Object();
+
+    private final ObjectSet<Mailbox> mailboxes = new ObjectSet<Mailbox>();
+
+    private final ExecutorService executor;
+
+    private final AtomicInteger active_rooms = new AtomicInteger(0);
+
+    private final AtomicInteger mailbox_depth = new AtomicInteger(0);
+
+    private final MetricsRegistry metrics;
+
+    private final Histogram task_latency;
+
+    public RoomScheduler(int threads, MetricsRegistry metrics) {
+        this.executor = Executors.newFixedThreadPool(threads);
+        this.metrics = metrics;
+        this.task_latency = metrics.getHistogram("room.task");
+    }
+
+    public ExecutorService getExecutor() {
+        return executor;
+    }
+
+    public Mailbox createMailbox(long room_id) {
+        Mailbox mailbox = new Mailbox(room_id);
+        synchronized (MAILBOX_LOCK) {
+            mailboxes.add(mailbox);
+        }
+        return mailbox;
+    }
+
+    /**
+     * @return the number of rooms with a mailbox
+     */
+    public int getRoomCount() {
+        synchronized (MAILBOX_LOCK) {
+            return mailboxes.size;
+        }
+    }
+
+    /**
+     * @return the number of rooms with a task waiting or running
+     */
+    public int getActiveRoomCount() {
+        return active_rooms.get();
+    }
+
+    /**
+     * @return the number of tasks waiting in all mailboxes
+     */
+    public int getMailboxDepth() {
+        return mailbox_depth.get();
+    }
+
+    public Histogram getTaskLatency() {
+        return task_latency;
+    }
+
+    /**
+     * @return how long the longest running room task has been running in nanoseconds, or 0 if none is running
+     */
+    public long getLongestRunningNanos() {
+        long now = System.nanoTime();
+        long longest = 0;
+        synchronized (MAILBOX_LOCK) {
+            for (Mailbox mailbox : mailboxes) {
+                long started = mailbox.started;
+                if (started != 0) {
+                    longest = Math.max(longest, now - started);
+                }
+            }
+        }
+        return longest;
+    }
+
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    private void remove(Mailbox mailbox) {
+        synchronized (MAILBOX_LOCK) {
+            mailboxes.remove(mailbox);
+        }
+    }
+
+    public class Mailbox implements Executor {
+
+        private final Object STATE_LOCK = new Object();
+
+        private final SerialExecutor tasks = new SerialExecutor(executor);
+
+        private final long room_id;
+
+        private final Histogram room_task_latency;
+
+        private volatile long started;
+
+        private int pending;
+
+        private boolean closed;
+
+        private Mailbox(long room_id) {
+            this.room_id = room_id;
+            this.room_task_latency = metrics.getHistogram("room." + room_id + ".task");
+        }
+
+        @Override
+        public void execute(Runnable task) {
+            synchronized (STATE_LOCK) {
+                if (closed) {
+                    return;
+                }
+                if (pending++ == 0) {
+                    active_rooms.incrementAndGet();
+                }
+            }
+            mailbox_depth.incrementAndGet();
+            tasks.execute(new MailboxTask(task));
+        }
+
+        public int size() {
+            return tasks.size();
+        }
+
+        /**
+         * @return the counter of the room with the given name, which goes away with the mailbox
+         */
+        public Counter getCounter(String name) {
+            synchronized (STATE_LOCK) {
+                //a counter of a closed mailbox is not registered again
+                return closed ? new Counter() : metrics.getCounter("room." + room_id + "." + name);
+            }
+        }
+
+        /**
+         * Stops accepting tasks. Tasks already submitted still run.
+         */
+        public void close() {
+            synchronized (STATE_LOCK) {
+                closed = true;
+                metrics.remove("room." + room_id);
+            }
+            remove(this);
+        }
+
+        private void onTaskFinished() {
+            synchronized (STATE_LOCK) {
+                if (--pending == 0) {
+                    active_rooms.decrementAndGet();
+                }
+            }
+        }
+
+        private class MailboxTask implements Runnable {
+
+            private final Runnable task;
+
+            public MailboxTask(Runnable task) {
+                this.task = task;
+            }
+
+            @Override
+            public void run() {
+                mailbox_depth.decrementAndGet();
+                started = System.nanoTime();
+                try {
+                    task.run();
+                } catch (Exception ex) {
+                    Log.error(TAG, String.format("Exception occurred in room [%d]", room_id), ex);
+                } finally {
+                    long time = System.nanoTime() - started;
+                    task_latency.record(time);
+                    room_task_latency.record(time);
+                    started = 0;
+                    onTaskFinished();
+                }
+            }
+
+        }
+
+    }
+
+}
@@ -0,0 +1,110 @@
+package net.toyknight.aeii.server.concurrent;
+
+import java.util.LinkedList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * A mailbox that runs its tasks one at a time, in submission order, on a shared executor.
+ * After each task the mailbox gives its worker back to the executor, so a busy mailbox
+ * never starves the other mailboxes sharing the same pool.
+ *
+ * @author toyknight 10/17/2026.
+ */
+public class SerialExecutor implements Executor {
+
+    private final Object QUEUE_LOCK = new Object();
+
+    private final LinkedList<Runnable> tasks = new LinkedList<Runnable>();
+
+    private final Executor executor;
+
+    private final Runnable drainer = new Runnable() {
+        @Override
+        public void run() {
+            drain();
+        }
+    };
+
+    private boolean scheduled;
+
+    /**
+     * A task that has to know when it is dropped without being run, e.g. to release what was counted for it.
+     */
+    public interface DroppableTask extends Runnable {
+
+        void onDropped();
+
+    }
+
+    public SerialExecutor(Executor executor) {
+        this.executor = executor;
+        this.scheduled = false;
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        synchronized (QUEUE_LOCK) {
+            tasks.add(task);
+            if (!scheduled) {
+                schedule();
+            }
+        }
+    }
+
+    public int size() {
+        synchronized (QUEUE_LOCK) {
+            return tasks.size();
+        }
+    }
+
+    public boolean isIdle() {
+        synchronized (QUEUE_LOCK) {
+            return !scheduled && tasks.isEmpty();
+        }
+    }
+
+    private void schedule() {
+        scheduled = true;
+        try {
+            executor.execute(drainer);
+        } catch (RejectedExecutionException ex) {
+            scheduled = false;
+            drop();
+            throw ex;
+        }
+    }
+
+    private void drop() {
+        for (Runnable task : tasks) {
+            if (task instanceof DroppableTask) {
+                ((DroppableTask) task).onDropped();
+            }
+        }
+        tasks.clear();
+    }
+
+    private void drain() {
+        Runnable task;
+        synchronized (QUEUE_LOCK) {
+            task = tasks.poll();
+        }
+        try {
+            if (task != null) {
+                task.run();
+            }
+        } finally {
+            synchronized (QUEUE_LOCK) {
+                if (tasks.isEmpty()) {
+                    scheduled = false;
+                } else {
+                    try {
+                        schedule();
+                    } catch (RejectedExecutionException ignored) {
+                    }
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,160 @@
+package net.toyknight.aeii.server.database;
+
+import com.esotericsoftware.minlog.Log;
+
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.LinkedList;
+
+/**
+ * A small fixed-size JDBC connection pool. Connections are opened on demand up to the pool size,
+ * connections that sat idle are validated before they are handed out again and broken ones are
+ * replaced, so losing the database for a moment does not break the map manager for good.
+ *
+ * @author toyknight 10/17/2026.
+ */
+public class ConnectionPool {
+
+    private static final String TAG = "CONNECTION POOL";
+
+    public static final long ACQUIRE_TIMEOUT = 5000;
+
+    public static final long VALIDATION_INTERVAL = 30 * 1000;
+
+    public static final int VALIDATION_TIMEOUT = 2;
+
+    private final Object POOL_LOCK = new Object();
+
+    private final LinkedList<PooledConnection> idle_connections = new LinkedList<PooledConnection>();
+
+    private final String url;
+
+    private final int size;
+
+    private int open_connections;
+
+    private boolean closed;
+
+    public ConnectionPool(String url, int size) {
+        this.url = url;
+        this.size = size;
+        this.open_connections = 0;
+        this.closed = false;
+    }
+
+    /**
+     * Opens the first connection, so a wrong URL or credentials fail at startup instead of on first use.
+     */
+    public void initialize() throws SQLException {
+        release(acquire());
+    }
+
+    public PooledConnection acquire() throws SQLException {
+        long deadline = System.currentTimeMillis() + ACQUIRE_TIMEOUT;
+        while (true) {
+            PooledConnection connection = null;
+            synchronized (POOL_LOCK) {
+                while (!closed && idle_connections.isEmpty() && open_connections >= size) {
+                    long remaining = deadline - System.currentTimeMillis();
+                    if (remaining <= 0) {
+                        throw new SQLException("Timed out waiting for a database connection");
+                    }
+                    try {
+                        POOL_LOCK.wait(remaining);
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                        throw new SQLException("Interrupted while waiting for a database connection");
+                    }
+                }
+                if (closed) {
+                    throw new SQLException("Connection pool is closed");
+                }
+                if (idle_connections.isEmpty()) {
+                    open_connections++;
+                } else {
+                    connection = idle_connections.removeLast();
+                }
+            }
+            if (connection == null) {
+                return open();
+            }
+            if (isHealthy(connection)) {
+                connection.touch();
+                return connection;
+            }
+            Log.info(TAG, "Discarding a broken database connection");
+            discard(connection);
+        }
+    }
+
+    public void release(PooledConnection connection) {
+        if (connection.isBroken()) {
+            discard(connection);
+            return;
+        }
+        connection.touch();
+        synchronized (POOL_LOCK) {
+            if (!closed) {
+                idle_connections.addLast(connection);
+                POOL_LOCK.notify();
+                return;
+            }
+        }
+        discard(connection);
+    }
+
+    public int getOpenConnectionCount() {
+        synchronized (POOL_LOCK) {
+            return open_connections;
+        }
+    }
+
+    public int getIdleConnectionCount() {
+        synchronized (POOL_LOCK) {
+            return idle_connections.size();
+        }
+    }
+
+    public void close() {
+        LinkedList<PooledConnection> connections;
+        synchronized (POOL_LOCK) {
+            closed = true;
+            connections = new LinkedList<PooledConnection>(idle_connections);
+            idle_connections.clear();
+            POOL_LOCK.notifyAll();
+        }
+        for (PooledConnection connection : connections) {
+            discard(connection);
+        }
+    }
+
+    private PooledConnection open() throws SQLException {
+        try {
+            return new PooledConnection(DriverManager.getConnection(url));
+        } catch (SQLException ex) {
+            onConnectionClosed();
+            throw ex;
+        } catch (RuntimeException ex) {
+            onConnectionClosed();
+            throw ex;
+        }
+    }
+
+    private boolean isHealthy(PooledConnection connection) {
+        return System.currentTimeMillis() - connection.getLastUsedTime() < VALIDATION_INTERVAL
+                || connection.isValid(VALIDATION_TIMEOUT);
+    }
+
+    private void discard(PooledConnection connection) {
+        connection.close();
+        onConnectionClosed();
+    }
+
+    private void onConnectionClosed() {
+        synchronized (POOL_LOCK) {
+            open_connections--;
+            POOL_LOCK.notify();
+        }
+    }
+
+}
@@ -0,0 +1,112 @@
+package net.toyknight.aeii.server.database;
+
+import com.badlogic.gdx.utils.ObjectMap;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * A connection owned by a {@link ConnectionPool}. Prepared statements are cached per connection
+ * and reused by every operation that borrows it, so they must not be closed by the caller.
+ *
+ * @author toyknight 10/17/2026.
+ */
+public class PooledConnection {
+
+    private final Connection connection;
+
+    private final ObjectMap<String, PreparedStatement> statements = new ObjectMap<String, PreparedStatement>();
+
+    private final ObjectMap<String, PreparedStatement> key_statements = new ObjectMap<String, PreparedStatement>();
+
+    private long last_used;
+
+    private boolean broken;
+
+    public PooledConnection(Connection connection) {
+        this.connection = connection;
+        this.last_used = System.currentTimeMillis();
+        this.broken = false;
+    }
+
+    public Connection getConnection() {
+        return connection;
+    }
+
+    public PreparedStatement prepare(String sql) throws SQLException {
+        PreparedStatement statement = statements.get(sql);
+        if (statement == null) {
+            statement = connection.prepareStatement(sql);
+            statements.put(sql, statement);
+        } else {
+            statement.clearParameters();
+        }
+        return statement;
+    }
+
+    /**
+     * Prepares a statement whose generated keys can be read after execution.
+     */
+    public PreparedStatement prepareWithKeys(String sql) throws SQLException {
+        PreparedStatement statement = key_statements.get(sql);
+        if (statement == null) {
+            statement = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
+            key_statements.put(sql, statement);
+        } else {
+            statement.clearParameters();
+        }
+        return statement;
+    }
+
+    public long getLastUsedTime() {
+        return last_used;
+    }
+
+    public void touch() {
+        last_used = System.currentTimeMillis();
+    }
+
+    /**
+     * Marks the connection as unusable, the pool closes it instead of handing it out again.
+     */
+    public void invalidate() {
+        broken = true;
+    }
+
+    public boolean isBroken() {
+        return broken;
+    }
+
+    public boolean isValid(int timeout) {
+        try {
+            return !connection.isClosed() && connection.isValid(timeout);
+        } catch (SQLException ex) {
+            return false;
+        }
+    }
+
+    public void close() {
+        for (PreparedStatement statement : statements.values()) {
+            closeQuietly(statement);
+        }
+        for (PreparedStatement statement : key_statements.values()) {
+            closeQuietly(statement);
+        }
+        statements.clear();
+        key_statements.clear();
+        try {
+            connection.close();
+        } catch (SQLException ignored) {
+        }
+    }
+
+    private void closeQuietly(Statement statement) {
+        try {
+            statement.close();
+        } catch (SQLException ignored) {
+        }
+    }
+
+}
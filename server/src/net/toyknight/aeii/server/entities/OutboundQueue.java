@@ -0,0 +1,346 @@
+package net.toyknight.aeii.server.entities;
+
+import com.esotericsoftware.kryonet.Connection;
+import com.esotericsoftware.minlog.Log;
+import net.toyknight.aeii.network.NetworkConstants;
+import net.toyknight.aeii.network.protocol.BinaryPacket;
+import net.toyknight.aeii.network.protocol.CompressedPacket;
+import net.toyknight.aeii.network.protocol.PacketBundle;
+import net.toyknight.aeii.network.protocol.PacketChunk;
+import net.toyknight.aeii.network.protocol.PacketCompressor;
+import net.toyknight.aeii.server.ServerContext;
+import net.toyknight.aeii.server.metrics.Counter;
+import net.toyknight.aeii.server.metrics.MetricsRegistry;
+import net.toyknight.aeii.server.utils.OutboundPacket;
+
+import java.util.LinkedList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The bounded queue of packets waiting to be written to one player's connection.
+ * A writer thread drains the queue in order, and packets queued together are sent to
+ * binary protocol clients in a single frame. Large packets are deflated for the players who negotiated
+ * compression, and packets still too large for one frame are sent in chunks, one chunk per write.
+ * Draining pauses while the connection's write buffer is filling up and the connection is closed when
+ * the player falls too far behind.
+ *
+ * @author toyknight 10/17/2026.
+ */
+public class OutboundQueue {
+
+    private static final String TAG = "OUTBOUND QUEUE";
+
+    public static final int CAPACITY = 1024;
+
+    public static final int MAX_BUNDLE_SIZE = 32;
+
+    private final Object QUEUE_LOCK = new Object();
+
+    private final LinkedList<OutboundPacket> packets = new LinkedList<OutboundPacket>();
+
+    //the chunks of the transfer in progress, sent before any other packet
+    private final LinkedList<PacketChunk> chunks = new LinkedList<PacketChunk>();
+
+    private final Player owner;
+
+    private final Executor executor;
+
+    private final Runnable writer = new Runnable() {
+        @Override
+        public void run() {
+            write();
+        }
+    };
+
+    private boolean scheduled;
+
+    //read without the lock by the resume check that runs on every update of the connection
+    private volatile boolean paused;
+
+    private boolean closed;
+
+    private int next_transfer_id;
+
+    private final AtomicLong packets_sent = new AtomicLong(0);
+
+    private final AtomicLong bytes_sent = new AtomicLong(0);
+
+    private final Counter total_packets_sent;
+
+    private final Counter total_bytes_sent;
+
+    private final Counter compressed_packets_sent;
+
+    private final Counter compressed_bytes_sent;
+
+    private final Counter uncompressed_bytes_sent;
+
+    private final Counter chunked_transfers_sent;
+
+    private final Counter chunks_sent;
+
+    public OutboundQueue(Player owner, Executor executor, MetricsRegistry metrics) {
+        this.owner = owner;
+        this.executor = executor;
+        this.total_packets_sent = metrics.getCounter("network.packets_sent");
+        this.total_bytes_sent = metrics.getCounter("network.bytes_sent");
+        this.compressed_packets_sent = metrics.getCounter("network.compressed.packets_sent");
+        this.compressed_bytes_sent = metrics.getCounter("network.compressed.bytes_sent");
+        this.uncompressed_bytes_sent = metrics.getCounter("network.compressed.raw_bytes_sent");
+        this.chunked_transfers_sent = metrics.getCounter("network.chunked.transfers_sent");
+        this.chunks_sent = metrics.getCounter("network.chunked.chunks_sent");
+    }
+
+    public boolean offer(OutboundPacket packet) {
+        synchronized (QUEUE_LOCK) {
+            if (closed) {
+                return false;
+            }
+            if (packets.size() >= CAPACITY) {
+                close();
+            } else {
+                packets.add(packet);
+                if (scheduled || paused || schedule()) {
+                    return true;
+                }
+            }
+        }
+        disconnect();
+        return false;
+    }
+
+    public int size() {
+        synchronized (QUEUE_LOCK) {
+            return packets.size();
+        }
+    }
+
+    public long getPacketsSent() {
+        return packets_sent.get();
+    }
+
+    /**
+     * @return the encoded size of the packets written so far, after compression and before kryo framing
+     */
+    public long getBytesSent() {
+        return bytes_sent.get();
+    }
+
+    public boolean isPaused() {
+        return paused;
+    }
+
+    /**
+     * Resumes draining after the connection's write buffer has emptied.
+     */
+    public void resume() {
+        if (!paused) {
+            return;
+        }
+        synchronized (QUEUE_LOCK) {
+            if (!paused) {
+                return;
+            }
+            paused = false;
+            if (scheduled || (packets.isEmpty() && chunks.isEmpty()) || schedule()) {
+                return;
+            }
+        }
+        disconnect();
+    }
+
+    /**
+     * Schedules the writer. If the writer executor turns it down, nothing would ever send the queued packets,
+     * so the queue is closed and the caller has to disconnect the player once it leaves the lock.
+     *
+     * @return false if the writer executor rejected the writer
+     */
+    private boolean schedule() {
+        scheduled = true;
+        try {
+            executor.execute(writer);
+            return true;
+        } catch (RejectedExecutionException ex) {
+            scheduled = false;
+            close();
+            return false;
+        }
+    }
+
+    private void close() {
+        closed = true;
+        packets.clear();
+        chunks.clear();
+    }
+
+    private void disconnect() {
+        Log.info(TAG, String.format("%s falls behind, disconnecting", owner.toString()));
+        owner.getConnection().close();
+    }
+
+    private boolean isWriteBufferFull(Connection connection) {
+        return connection.getTcpWriteBufferSize() > ServerContext.WRITE_BUFFER_SIZE / 2;
+    }
+
+    private void write() {
+        Connection connection = owner.getConnection();
+        OutboundPacket[] batch = null;
+        PacketChunk chunk;
+        synchronized (QUEUE_LOCK) {
+            if (isWriteBufferFull(connection)) {
+                paused = true;
+                scheduled = false;
+                return;
+            }
+            chunk = chunks.poll();
+            if (chunk == null) {
+                batch = new OutboundPacket[Math.min(packets.size(), MAX_BUNDLE_SIZE)];
+                for (int i = 0; i < batch.length; i++) {
+                    batch[i] = packets.poll();
+                }
+            }
+        }
+        try {
+            if (connection.isConnected()) {
+                if (chunk == null) {
+                    send(connection, batch);
+                } else {
+                    send(connection, chunk);
+                }
+            }
+        } catch (Exception ex) {
+            Log.error(TAG, String.format("Exception occurred while writing to %s", owner.toString()), ex);
+        } finally {
+            boolean rejected;
+            synchronized (QUEUE_LOCK) {
+                scheduled = false;
+                rejected = (!packets.isEmpty() || !chunks.isEmpty()) && !paused && !schedule();
+            }
+            if (rejected) {
+                disconnect();
+            }
+        }
+    }
+
+    private void send(Connection connection, OutboundPacket[] batch) {
+        long bytes = 0;
+        int sent = 0;
+        PacketCompressor compressor = owner.getCompressor();
+        if (owner.getProtocol() == NetworkConstants.PROTOCOL_BINARY) {
+            BinaryPacket[] bundle = new BinaryPacket[batch.length];
+            int bundled = 0;
+            int bundle_size = 0;
+            for (OutboundPacket outbound_packet : batch) {
+                BinaryPacket packet = outbound_packet.toBinaryPacket();
+                CompressedPacket compressed = null;
+                if (compressor != null && compressor.isCompressible(packet.size())) {
+                    compressed = compressor.compress(packet);
+                }
+                Object wire_packet = compressed == null ? packet : compressed;
+                //a bundle never grows larger than a chunk, so that it fits in the buffers
+                if (compressed != null || PacketChunk.isOversized(wire_packet)
+                        || bundle_size + packet.size() > PacketChunk.MAX_CHUNK_SIZE) {
+                    send(connection, bundle, bundled);
+                    bundled = 0;
+                    bundle_size = 0;
+                }
+                sent++;
+                if (compressed != null) {
+                    onCompressed(compressed);
+                }
+                if (PacketChunk.isOversized(wire_packet)) {
+                    split(wire_packet, batch, sent);
+                    break;
+                } else if (compressed == null) {
+                    bundle[bundled++] = packet;
+                    bundle_size += packet.size();
+                    bytes += packet.size();
+                } else {
+                    connection.sendTCP(compressed);
+                    bytes += compressed.size();
+                }
+            }
+            send(connection, bundle, bundled);
+        } else {
+            for (OutboundPacket packet : batch) {
+                String content = packet.toJsonString();
+                CompressedPacket compressed = null;
+                if (compressor != null && compressor.isCompressible(content.length())) {
+                    compressed = compressor.compress(content);
+                }
+                Object wire_packet = compressed == null ? content : compressed;
+                sent++;
+                if (compressed != null) {
+                    onCompressed(compressed);
+                }
+                if (PacketChunk.isOversized(wire_packet)) {
+                    split(wire_packet, batch, sent);
+                    break;
+                } else if (compressed == null) {
+                    connection.sendTCP(content);
+                    bytes += content.length();
+                } else {
+                    connection.sendTCP(compressed);
+                    bytes += compressed.size();
+                }
+            }
+        }
+        onSent(sent, bytes);
+    }
+
+    private void send(Connection connection, BinaryPacket[] bundle, int count) {
+        if (count == 1) {
+            connection.sendTCP(bundle[0]);
+        } else if (count == bundle.length) {
+            connection.sendTCP(new PacketBundle(bundle));
+        } else if (count > 1) {
+            BinaryPacket[] packets = new BinaryPacket[count];
+            System.arraycopy(bundle, 0, packets, 0, count);
+            connection.sendTCP(new PacketBundle(packets));
+        }
+    }
+
+    private void send(Connection connection, PacketChunk chunk) {
+        connection.sendTCP(chunk);
+        chunks_sent.increment();
+        onSent(0, chunk.size());
+    }
+
+    /**
+     * Queues the chunks of the packet to be sent before anything else, and puts the packets of the batch
+     * after it back in front of the queue.
+     *
+     * @param next the index of the first packet of the batch after the split packet
+     */
+    private void split(Object packet, OutboundPacket[] batch, int next) {
+        PacketChunk[] transfer = PacketChunk.split(packet, next_transfer_id++);
+        synchronized (QUEUE_LOCK) {
+            if (closed) {
+                return;
+            }
+            for (PacketChunk chunk : transfer) {
+                chunks.add(chunk);
+            }
+            for (int i = batch.length - 1; i >= next; i--) {
+                packets.addFirst(batch[i]);
+            }
+        }
+        chunked_transfers_sent.increment();
+    }
+
+    private void onSent(int count, long bytes) {
+        packets_sent.addAndGet(count);
+        bytes_sent.addAndGet(bytes);
+        total_packets_sent.add(count);
+        total_bytes_sent.add(bytes);
+    }
+
+    private void onCompressed(CompressedPacket packet) {
+        compressed_packets_sent.increment();
+        compressed_bytes_sent.add(packet.size());
+        uncompressed_bytes_sent.add(packet.getLength());
+    }
+
+}
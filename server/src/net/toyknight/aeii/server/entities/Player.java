@@ -1,28 +1,68 @@
 package net.toyknight.aeii.server.entities;
 
+import com.badlogic.gdx.utils.IntMap;
 import com.esotericsoftware.kryonet.Connection;
+import net.toyknight.aeii.network.NetworkConstants;
 import net.toyknight.aeii.network.entity.PlayerSnapshot;
+import net.toyknight.aeii.network.protocol.ChunkAssembler;
+import net.toyknight.aeii.network.protocol.PacketCompressor;
+import net.toyknight.aeii.server.AdmissionController;
+import net.toyknight.aeii.server.concurrent.SerialExecutor;
+import net.toyknight.aeii.server.metrics.MetricsRegistry;
+import net.toyknight.aeii.server.utils.OutboundPacket;
+import net.toyknight.aeii.server.utils.TokenBucket;
+
+import org.json.JSONObject;
+
+import java.util.concurrent.Executor;
 
 /**
  * @author toyknight 10/27/2015.
  */
 public class Player {
 
-    private final Object SENDING_LOCK = new Object();
-
     private final Connection connection;
 
-    private boolean authenticated;
+    private final SerialExecutor request_queue;
+
+    private final SerialExecutor io_request_queue;
+
+    private final OutboundQueue outbound_queue;
+
+    //one request is received in chunks at a time, and none is larger than a bulk request
+    private final ChunkAssembler chunk_assembler =
+            new ChunkAssembler(1, AdmissionController.MAX_BULK_REQUEST_SIZE);
+
+    private volatile boolean authenticated;
 
     private String address;
-    private String username;
+    private volatile String username;
+
+    private volatile long room_number;
+
+    private volatile int protocol;
+
+    private volatile PacketCompressor compressor;
+
+    private volatile String session_token;
 
-    private long room_number;
+    private volatile boolean spectator;
 
-    public Player(Connection connection) {
+    private final IntMap<TokenBucket> rate_limits = new IntMap<TokenBucket>();
+
+    public Player(
+            Connection connection,
+            Executor request_executor,
+            Executor io_request_executor,
+            Executor writer_executor,
+            MetricsRegistry metrics) {
         this.connection = connection;
+        this.request_queue = new SerialExecutor(request_executor);
+        this.io_request_queue = new SerialExecutor(io_request_executor);
+        this.outbound_queue = new OutboundQueue(this, writer_executor, metrics);
         authenticated = false;
         room_number = -1;
+        protocol = NetworkConstants.PROTOCOL_JSON;
         address = connection.getRemoteAddressTCP().getAddress().toString();
     }
 
@@ -34,6 +74,22 @@ public class Player {
         return connection;
     }
 
+    public SerialExecutor getRequestQueue() {
+        return request_queue;
+    }
+
+    public SerialExecutor getIORequestQueue() {
+        return io_request_queue;
+    }
+
+    public OutboundQueue getOutboundQueue() {
+        return outbound_queue;
+    }
+
+    public ChunkAssembler getChunkAssembler() {
+        return chunk_assembler;
+    }
+
     public void setAuthenticated(boolean authenticated) {
         this.authenticated = authenticated;
     }
@@ -62,20 +118,74 @@ public class Player {
         return room_number;
     }
 
-    public PlayerSnapshot createSnapshot() {
-        return new PlayerSnapshot(getID(), getUsername());
+    public void setProtocol(int protocol) {
+        this.protocol = protocol;
     }
 
-    public int sendTCP(Object object) {
-        synchronized (SENDING_LOCK) {
-            if (getConnection().isConnected()) {
-                return getConnection().sendTCP(object);
-            } else {
-                return 0;
+    public int getProtocol() {
+        return protocol;
+    }
+
+    public void setCompressor(PacketCompressor compressor) {
+        this.compressor = compressor;
+    }
+
+    /**
+     * @return the compressor of the connection, or null if the player did not negotiate compression
+     */
+    public PacketCompressor getCompressor() {
+        return compressor;
+    }
+
+    /**
+     * @param session_token the secret that lets the player take its room slot back after losing the connection,
+     *                      or null if it may not
+     */
+    public void setSessionToken(String session_token) {
+        this.session_token = session_token;
+    }
+
+    public String getSessionToken() {
+        return session_token;
+    }
+
+    public void setSpectator(boolean spectator) {
+        this.spectator = spectator;
+    }
+
+    /**
+     * @return whether the player only watches the game of its room
+     */
+    public boolean isSpectator() {
+        return spectator;
+    }
+
+    /**
+     * @return the token bucket of the player for the given key, created full with the rate and burst if missing
+     */
+    public TokenBucket getRateLimit(int key, double rate, double burst) {
+        synchronized (rate_limits) {
+            TokenBucket bucket = rate_limits.get(key);
+            if (bucket == null) {
+                bucket = new TokenBucket(rate, burst);
+                rate_limits.put(key, bucket);
             }
+            return bucket;
         }
     }
 
+    public PlayerSnapshot createSnapshot() {
+        return new PlayerSnapshot(getID(), getUsername());
+    }
+
+    public boolean sendPacket(JSONObject packet) {
+        return sendPacket(new OutboundPacket(packet));
+    }
+
+    public boolean sendPacket(OutboundPacket packet) {
+        return getOutboundQueue().offer(packet);
+    }
+
     @Override
     public String toString() {
         return String.format("%s@%s", getUsername(), getAddress());
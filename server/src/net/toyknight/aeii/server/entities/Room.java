@@ -2,31 +2,70 @@ package net.toyknight.aeii.server.entities;
 
 import static net.toyknight.aeii.entity.Rule.Entry.*;
 
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.IntMap;
 import com.badlogic.gdx.utils.ObjectSet;
+import com.esotericsoftware.minlog.Log;
 import net.toyknight.aeii.entity.GameCore;
 import net.toyknight.aeii.entity.Map;
 import net.toyknight.aeii.entity.Player;
+import net.toyknight.aeii.entity.Position;
+import net.toyknight.aeii.entity.Unit;
+import net.toyknight.aeii.manager.CheatingException;
 import net.toyknight.aeii.manager.GameEvent;
+import net.toyknight.aeii.manager.GameEventListener;
 import net.toyknight.aeii.manager.GameManager;
+import net.toyknight.aeii.network.NetworkConstants;
 import net.toyknight.aeii.network.entity.RoomSnapshot;
 import net.toyknight.aeii.entity.Rule;
 import net.toyknight.aeii.server.RoomListener;
-import org.json.JSONObject;
+import net.toyknight.aeii.server.concurrent.HashedWheelTimer;
+import net.toyknight.aeii.server.concurrent.RoomScheduler;
+import net.toyknight.aeii.server.journal.RoomJournal;
+import net.toyknight.aeii.server.record.MatchRecorder;
 
 import java.util.Arrays;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 /**
  * @author toyknight
  */
 public class Room {
 
+    private static final String TAG = "ROOM";
+
     public final Object GAME_LOCK = new Object();
 
     public final Object PLAYER_LOCK = new Object();
 
-    private final ExecutorService event_executor = Executors.newSingleThreadExecutor();
+    private RoomScheduler.Mailbox mailbox;
+
+    private RoomEventLog event_log;
+
+    private SpectatorFeed spectator_feed;
+
+    private volatile RoomJournal journal;
+
+    private MatchRecorder recorder;
+
+    private HashedWheelTimer.Timeout turn_clock;
+
+    private Array<GameEvent> robot_events;
+
+    //the robot thinks on a copy of the game with a manager of its own, the game is only locked to copy it
+    private final GameManager robot_manager;
+
+    private final Object ROBOT_LOCK = new Object();
+
+    private int robot_turn = -1;
+
+    private int robot_team = -1;
+
+    //the sequence each player was last sent the whole game at, only used in the mailbox
+    private final IntMap<Long> resync_sequences = new IntMap<Long>();
+
+    private volatile long last_active;
+
+    private volatile boolean disposed;
 
     private final long room_id;
     private final String room_name;
@@ -44,6 +83,10 @@ public class Room {
 
     private GameManager manager;
 
+    private volatile long version = 0;
+
+    private volatile RoomState state;
+
     private String map_name;
 
 
@@ -77,6 +120,10 @@ public class Room {
         game_started = false;
         manager = new GameManager();
         manager.getGameEventExecutor().setCheckEventValue(false);
+        manager.setGameEventListener(new RobotEventCollector());
+        robot_manager = new GameManager();
+        robot_manager.getRobot().setLock(ROBOT_LOCK);
+        last_active = System.currentTimeMillis();
     }
 
     public void setListener(RoomListener listener) {
@@ -87,10 +134,99 @@ public class Room {
         return listener;
     }
 
+    public void setMailbox(RoomScheduler.Mailbox mailbox) {
+        this.mailbox = mailbox;
+    }
+
+    public RoomScheduler.Mailbox getMailbox() {
+        return mailbox;
+    }
+
+    public void setEventLog(RoomEventLog event_log) {
+        this.event_log = event_log;
+    }
+
+    public RoomEventLog getEventLog() {
+        return event_log;
+    }
+
+    public void setSpectatorFeed(SpectatorFeed spectator_feed) {
+        this.spectator_feed = spectator_feed;
+    }
+
+    public SpectatorFeed getSpectatorFeed() {
+        return spectator_feed;
+    }
+
+    public void setJournal(RoomJournal journal) {
+        this.journal = journal;
+    }
+
+    /**
+     * @return the journal of the running game, or null if the game is not journaled
+     */
+    public RoomJournal getJournal() {
+        return journal;
+    }
+
+    /**
+     * Must be called under {@link #GAME_LOCK}.
+     */
+    public void setRecorder(MatchRecorder recorder) {
+        this.recorder = recorder;
+    }
+
+    /**
+     * Must be called under {@link #GAME_LOCK}.
+     *
+     * @return the recorder of the running game, or null if the game is not recorded
+     */
+    public MatchRecorder getRecorder() {
+        return recorder;
+    }
+
+    /**
+     * Replaces the clock of the current turn, cancelling the previous one.
+     *
+     * @param turn_clock the new clock, or null to stop the clock
+     */
+    public void setTurnClock(HashedWheelTimer.Timeout turn_clock) {
+        HashedWheelTimer.Timeout previous;
+        synchronized (GAME_LOCK) {
+            previous = this.turn_clock;
+            this.turn_clock = turn_clock;
+        }
+        if (previous != null) {
+            previous.cancel();
+        }
+    }
+
+    /**
+     * @return the number of spectators, who do not count against the player capacity
+     */
+    public int getSpectatorCount() {
+        return getSpectatorFeed().size();
+    }
+
+    public long getLastActiveTime() {
+        return last_active;
+    }
+
+    /**
+     * Keeps the room from being reaped as idle.
+     */
+    public void touch() {
+        last_active = System.currentTimeMillis();
+    }
+
     public void setPassword(String password) {
         this.password = password;
     }
 
+    public String getPassword() {
+        return password;
+    }
+
     public boolean checkPassword(String password) {
         return this.password == null || this.password.equals(password);
     }
@@ -107,9 +243,33 @@ public class Room {
         return getManager().getGame();
     }
 
-    public GameCore getGameCopy() {
+    /**
+     * Every change to the game or the manager state must happen under {@link #GAME_LOCK} and call this.
+     */
+    private void onGameChanged() {
+        version++;
+    }
+
+    /**
+     * @return the snapshot of the current game, copied only when the game changed since the last snapshot
+     */
+    public RoomState getState() {
+        RoomState current = state;
+        if (current != null && current.getVersion() == version) {
+            return current;
+        }
         synchronized (GAME_LOCK) {
-            return new GameCore(getGame());
+            if (state == null || state.getVersion() != version) {
+                Unit selected_unit = getManager().getSelectedUnit();
+                state = new RoomState(
+                        version,
+                        getEventLog().getLastSequence(),
+                        new GameCore(getGame()),
+                        getManager().getState(),
+                        selected_unit == null ? -1 : selected_unit.getX(),
+                        selected_unit == null ? -1 : selected_unit.getY());
+            }
+            return state;
         }
     }
 
@@ -126,12 +286,14 @@ public class Room {
     public void addPlayer(int id) {
         synchronized (PLAYER_LOCK) {
             players.add(id);
+            last_active = System.currentTimeMillis();
         }
     }
 
     public void removePlayer(int id) {
         synchronized (PLAYER_LOCK) {
             players.remove(id);
+            last_active = System.currentTimeMillis();
             for (int team = 0; team < 4; team++) {
                 if (allocation[team] == id) {
                     setPlayerType(team, Player.NONE);
@@ -148,6 +310,47 @@ public class Room {
         }
     }
 
+    /**
+     * Hands everything the player had in the room, its teams and the host, to the player's new connection.
+     */
+    public void replacePlayer(int previous_id, int id) {
+        synchronized (PLAYER_LOCK) {
+            if (players.remove(previous_id)) {
+                players.add(id);
+                last_active = System.currentTimeMillis();
+                for (int team = 0; team < 4; team++) {
+                    if (allocation[team] == previous_id) {
+                        allocation[team] = id;
+                    }
+                }
+                if (host_player_id == previous_id) {
+                    host_player_id = id;
+                }
+            }
+        }
+    }
+
+    /**
+     * Leaves the team to nobody.
+     */
+    public void clearAllocation(int team) {
+        synchronized (PLAYER_LOCK) {
+            setPlayerType(team, Player.NONE);
+            allocation[team] = -1;
+        }
+    }
+
+    public boolean isAllocated(int id) {
+        synchronized (PLAYER_LOCK) {
+            for (int team = 0; team < 4; team++) {
+                if (allocation[team] == id) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
     public int getCurrentPlayerID() {
         synchronized (GAME_LOCK) {
             return allocation[getGame().getCurrentTeam()];
@@ -180,6 +383,7 @@ public class Room {
                 Player player = getGame().getPlayer(team);
                 if (getGame().getMap().hasTeamAccess(team)) {
                     player.setType(type);
+                    onGameChanged();
                 }
             }
         }
@@ -193,6 +397,7 @@ public class Room {
         synchronized (GAME_LOCK) {
             if (isOpen()) {
                 getGame().getPlayer(team).setAlliance(alliance);
+                onGameChanged();
             }
         }
     }
@@ -236,6 +441,7 @@ public class Room {
     public void setUnitCapacity(int capacity) {
         synchronized (GAME_LOCK) {
             getGame().getRule().setValue(UNIT_CAPACITY, capacity);
+            onGameChanged();
         }
     }
 
@@ -269,42 +475,269 @@ public class Room {
     }
 
     public void startGame() {
-        for (int team = 0; team < 4; team++) {
-            Player player = getGame().getPlayer(team);
-            if (player.getType() != Player.NONE) {
-                player.setType(Player.REMOTE);
+        synchronized (GAME_LOCK) {
+            for (int team = 0; team < 4; team++) {
+                Player player = getGame().getPlayer(team);
+                if (player.getType() != Player.NONE) {
+                    player.setType(Player.REMOTE);
+                }
             }
+            if (!getGame().initialized()) {
+                getGame().initialize();
+                getGame().gainIncome(getGame().getCurrentTeam());
+            }
+            game_started = true;
+            onGameChanged();
         }
-        if (!getGame().initialized()) {
-            getGame().initialize();
-            getGame().gainIncome(getGame().getCurrentTeam());
-        }
-        game_started = true;
+        last_active = System.currentTimeMillis();
     }
 
-    public void submitGameEvent(JSONObject event, int player_id) {
-        event_executor.submit(new GameEventExecutingTask(event, player_id));
+    public void submitGameEvent(GameEvent event, int player_id) {
+        last_active = System.currentTimeMillis();
+        mailbox.execute(new GameEventExecutingTask(event, player_id));
     }
 
-    private void executeGameEvent(JSONObject event, int player_id) {
+    private void executeGameEvent(GameEvent event, int player_id) {
+        Exception cheating = null;
+        long sequence = -1;
         synchronized (GAME_LOCK) {
             try {
-                if (event.getInt("type") == GameEvent.MANAGER_STATE_SYNC) {
-                    int state = event.getJSONArray("parameters").getInt(0);
-                    getManager().setState(state);
-                } else {
-                    getManager().getGameEventExecutor().submitGameEvent(event);
-                    getManager().getGameEventExecutor().dispatchGameEvents();
+                applyGameEvent(event);
+                sequence = getEventLog().append(event);
+                RoomJournal journal = getJournal();
+                if (journal != null) {
+                    journal.append(event);
+                }
+                if (recorder != null) {
+                    recorder.append(event);
                 }
-                getListener().onGameEventExecuted(this, event, player_id);
             } catch (Exception ex) {
-                getListener().onCheatingDetected(this, player_id, ex);
+                cheating = ex;
             }
+            onGameChanged();
+        }
+        //events of one room are executed one at a time by its mailbox, so broadcasting outside the lock keeps their order
+        if (cheating == null) {
+            getListener().onGameEventExecuted(this, event, sequence, player_id);
+        } else {
+            getListener().onCheatingDetected(this, player_id, cheating);
+        }
+    }
+
+    private void applyGameEvent(GameEvent event) throws CheatingException {
+        if (event.getType() == GameEvent.MANAGER_STATE_SYNC) {
+            getManager().setState(event.getInt(0));
+        } else {
+            getManager().getGameEventExecutor().submitGameEvent(event);
+            getManager().getGameEventExecutor().dispatchGameEvents();
         }
     }
 
+    /**
+     * Puts the game back to a journal checkpoint, numbering the following events after its sequence.
+     */
+    public void restoreState(int manager_state, int selected_unit_x, int selected_unit_y, long sequence) {
+        synchronized (GAME_LOCK) {
+            Unit selected_unit = getGame().getMap().getUnit(selected_unit_x, selected_unit_y);
+            if (selected_unit != null) {
+                getManager().setSelectedUnit(selected_unit);
+            }
+            getManager().setState(manager_state);
+            getEventLog().restart(sequence);
+            onGameChanged();
+        }
+    }
+
+    /**
+     * Executes an event recovered from the journal, which was checked when it was first submitted.
+     */
+    public void replayGameEvent(GameEvent event) throws CheatingException {
+        synchronized (GAME_LOCK) {
+            applyGameEvent(event);
+            getEventLog().append(event);
+            onGameChanged();
+        }
+    }
+
+    /**
+     * Ends the given turn for the team that ran out of time, unless the turn is already over.
+     */
+    public void submitTurnTimeout(int turn, int team) {
+        mailbox.execute(new TurnTimeoutTask(turn, team));
+    }
+
+    /**
+     * @return false if the turn was already over
+     */
+    private boolean endTurn(int turn, int team) {
+        Array<GameEvent> events;
+        synchronized (GAME_LOCK) {
+            if (isOpen() || isGameOver()
+                    || getGame().getCurrentTurn() != turn || getGame().getCurrentTeam() != team) {
+                return false;
+            }
+            events = getManager().getOperationExecutor().createNextTurnEvents();
+        }
+        //the same events the player's client would have sent, so every client and the journal take them as usual
+        executeGameEvent(GameEvent.create(GameEvent.MANAGER_STATE_SYNC, GameManager.STATE_SELECT), -1);
+        for (GameEvent event : events) {
+            executeGameEvent(event, -1);
+        }
+        return true;
+    }
+
+    /**
+     * Remembers that the player is sent the whole game, which must be done in the room's mailbox.
+     *
+     * @return false if the player was already sent the game at this sequence
+     */
+    public boolean markResync(int player_id, long sequence) {
+        Long previous = resync_sequences.put(player_id, sequence);
+        return previous == null || previous != sequence;
+    }
+
+    /**
+     * @return whether it is the given turn of the team and the team is played by a server robot
+     */
+    public boolean isRobotTurn(int turn, int team) {
+        synchronized (GAME_LOCK) {
+            return !isOpen() && !isGameOver() && !isDisposed()
+                    && getGame().getCurrentTurn() == turn && getGame().getCurrentTeam() == team
+                    && allocation[team] == NetworkConstants.SERVER_ROBOT;
+        }
+    }
+
+    /**
+     * Lets the robot make its next decision for the team on the calling thread. The robot thinks on a copy of
+     * the game, {@link #GAME_LOCK} is only held to take the copy and to hand over the operations decided on,
+     * which wait for {@link #executeRobotOperations(int, int)}.
+     *
+     * @return false if it's not the robot's turn anymore
+     */
+    public boolean thinkRobotMove(int turn, int team) {
+        synchronized (ROBOT_LOCK) {
+            GameCore snapshot;
+            int state;
+            int selected_x = -1;
+            int selected_y = -1;
+            Position last_position;
+            long snapshot_version;
+            synchronized (GAME_LOCK) {
+                if (!isRobotTurn(turn, team)) {
+                    return false;
+                }
+                snapshot = new GameCore(getGame());
+                state = getManager().getState();
+                Unit selected_unit = getManager().getSelectedUnit();
+                if (selected_unit != null) {
+                    selected_x = selected_unit.getX();
+                    selected_y = selected_unit.getY();
+                }
+                last_position = getManager().getLastPosition();
+                snapshot_version = version;
+            }
+            robot_manager.updateGame(snapshot);
+            robot_manager.syncState(state, selected_x, selected_y);
+            if (last_position != null) {
+                robot_manager.setLastPosition(snapshot.getMap().getPosition(last_position.x, last_position.y));
+            }
+            if (robot_turn != turn || robot_team != team) {
+                robot_turn = turn;
+                robot_team = team;
+                robot_manager.getRobot().initialize();
+            }
+            robot_manager.getRobot().step();
+            synchronized (GAME_LOCK) {
+                if (!isRobotTurn(turn, team)) {
+                    robot_manager.getOperationExecutor().reset();
+                    return false;
+                }
+                if (version != snapshot_version) {
+                    //the game changed while the robot was thinking, its plans for the turn are made over
+                    robot_manager.getOperationExecutor().reset();
+                    robot_turn = -1;
+                } else {
+                    robot_manager.getOperationExecutor().transferOperations(getManager().getOperationExecutor());
+                }
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Carries out the operations the robot decided on. Must be called in the room's mailbox, the events are
+     * logged, journaled and broadcast like the events of a player.
+     *
+     * @return the number of events executed, or -1 if the robot's turn is over
+     */
+    public int executeRobotOperations(int turn, int team) {
+        Array<GameEvent> events;
+        long[] sequences;
+        CheatingException failure = null;
+        synchronized (GAME_LOCK) {
+            if (!isRobotTurn(turn, team)) {
+                getManager().getOperationExecutor().reset();
+                return -1;
+            }
+            events = robot_events = new Array<GameEvent>();
+            //the operations take the path of a robot, while snapshots keep showing a remote player
+            Player player = getGame().getCurrentPlayer();
+            player.setType(Player.ROBOT);
+            try {
+                while (getManager().isProcessing() && !isGameOver()) {
+                    if (getManager().getGameEventExecutor().isProcessing()) {
+                        getManager().getGameEventExecutor().dispatchGameEvents();
+                    } else {
+                        getManager().getOperationExecutor().operate();
+                    }
+                }
+            } catch (CheatingException ex) {
+                failure = ex;
+            } finally {
+                player.setType(Player.REMOTE);
+                robot_events = null;
+            }
+            getManager().getOperationExecutor().reset();
+            getManager().getGameEventExecutor().reset();
+            sequences = new long[events.size];
+            RoomJournal journal = getJournal();
+            for (int i = 0; i < events.size; i++) {
+                sequences[i] = getEventLog().append(events.get(i));
+                if (journal != null) {
+                    journal.append(events.get(i));
+                }
+                if (recorder != null) {
+                    recorder.append(events.get(i));
+                }
+            }
+            onGameChanged();
+        }
+        for (int i = 0; i < events.size; i++) {
+            getListener().onGameEventExecuted(this, events.get(i), sequences[i], -1);
+        }
+        if (failure != null) {
+            Log.error(TAG, String.format("Robot of room [%d] made an illegal move", room_id), failure);
+            endTurn(turn, team);
+            return -1;
+        }
+        return events.size;
+    }
+
+    /**
+     * Ends the robot's turn, which must be done in the room's mailbox.
+     */
+    public void endRobotTurn(int turn, int team) {
+        endTurn(turn, team);
+    }
+
     public void dispose() {
-        event_executor.shutdown();
+        disposed = true;
+        //takes the metrics of the room along, the robot's cpu time among them
+        mailbox.close();
+    }
+
+    public boolean isDisposed() {
+        return disposed;
     }
 
     public boolean isOpen() {
@@ -323,12 +756,53 @@ public class Room {
         return snapshot;
     }
 
+    /**
+     * Collects the events the robot's operations produce. Events of the players are executed as remote events
+     * and are ignored.
+     */
+    private class RobotEventCollector implements GameEventListener {
+
+        @Override
+        public void onGameEventExecuted(GameEvent event) {
+            if (robot_events != null && !event.isRemote()) {
+                robot_events.add(event);
+            }
+        }
+
+        @Override
+        public void onGameEventSync(int manager_state) {
+            if (robot_events != null) {
+                robot_events.add(GameEvent.create(GameEvent.MANAGER_STATE_SYNC, manager_state));
+            }
+        }
+
+    }
+
+    private class TurnTimeoutTask implements Runnable {
+
+        private final int turn;
+        private final int team;
+
+        public TurnTimeoutTask(int turn, int team) {
+            this.turn = turn;
+            this.team = team;
+        }
+
+        @Override
+        public void run() {
+            if (endTurn(turn, team)) {
+                getListener().onTurnForced(Room.this, team);
+            }
+        }
+
+    }
+
     private class GameEventExecutingTask implements Runnable {
 
-        private final JSONObject event;
+        private final GameEvent event;
         private final int player_id;
 
-        public GameEventExecutingTask(JSONObject event, int player_id) {
+        public GameEventExecutingTask(GameEvent event, int player_id) {
             this.event = event;
             this.player_id = player_id;
         }
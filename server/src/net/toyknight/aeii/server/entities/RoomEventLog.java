@@ -0,0 +1,69 @@
+package net.toyknight.aeii.server.entities;
+
+import net.toyknight.aeii.manager.GameEvent;
+import net.toyknight.aeii.network.protocol.EncodedObject;
+import org.json.JSONArray;
+
+import java.util.Arrays;
+
+/**
+ * The most recent game events of a room, numbered from 1 in the order they were executed.
+ * Once the log is full every new event overwrites the oldest one, so a player coming back can
+ * be sent the events it missed only if it did not miss more than the capacity.
+ *
+ * @author toyknight 10/17/2026.
+ */
+public class RoomEventLog {
+
+    private final GameEvent[] events;
+
+    private long last_sequence = 0;
+
+    public RoomEventLog(int capacity) {
+        this.events = new GameEvent[Math.max(1, capacity)];
+    }
+
+    public int getCapacity() {
+        return events.length;
+    }
+
+    /**
+     * @return the sequence number given to the event
+     */
+    public synchronized long append(GameEvent event) {
+        last_sequence++;
+        events[(int) (last_sequence % events.length)] = event;
+        return last_sequence;
+    }
+
+    /**
+     * Empties the log and numbers the next event after the given sequence number.
+     */
+    public synchronized void restart(long sequence) {
+        Arrays.fill(events, null);
+        last_sequence = sequence;
+    }
+
+    /**
+     * @return the sequence number of the last event, or 0 if no event has been executed
+     */
+    public synchronized long getLastSequence() {
+        return last_sequence;
+    }
+
+    /**
+     * @return the events after the given sequence number, or null if some of them are no longer in the log
+     * or the sequence number was never given out
+     */
+    public synchronized JSONArray getEventsSince(long sequence) {
+        if (sequence < 0 || sequence > last_sequence || last_sequence - sequence > events.length) {
+            return null;
+        }
+        JSONArray missed = new JSONArray();
+        for (long current = sequence + 1; current <= last_sequence; current++) {
+            missed.put(new EncodedObject(events[(int) (current % events.length)]));
+        }
+        return missed;
+    }
+
+}
@@ -0,0 +1,75 @@
+package net.toyknight.aeii.server.entities;
+
+import net.toyknight.aeii.entity.GameCore;
+import net.toyknight.aeii.network.protocol.EncodedObject;
+
+/**
+ * An immutable snapshot of the game of a room at one version. The game is a private copy that is never
+ * changed, so it is encoded at most once and shared by every join and room setting until the room changes.
+ *
+ * @author toyknight 10/17/2026.
+ */
+public final class RoomState {
+
+    private final long version;
+
+    private final long sequence;
+
+    private final GameCore game;
+
+    private final int manager_state;
+
+    private final int selected_unit_x;
+
+    private final int selected_unit_y;
+
+    private EncodedObject encoded_game;
+
+    public RoomState(
+            long version, long sequence, GameCore game, int manager_state, int selected_unit_x, int selected_unit_y) {
+        this.version = version;
+        this.sequence = sequence;
+        this.game = game;
+        this.manager_state = manager_state;
+        this.selected_unit_x = selected_unit_x;
+        this.selected_unit_y = selected_unit_y;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return the sequence number of the last game event included in the snapshot
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * @return the game of the snapshot, which must not be changed
+     */
+    public GameCore getGame() {
+        return game;
+    }
+
+    public int getManagerState() {
+        return manager_state;
+    }
+
+    public int getSelectedUnitX() {
+        return selected_unit_x;
+    }
+
+    public int getSelectedUnitY() {
+        return selected_unit_y;
+    }
+
+    public synchronized EncodedObject getEncodedGame() {
+        if (encoded_game == null) {
+            encoded_game = new EncodedObject(game);
+        }
+        return encoded_game;
+    }
+
+}
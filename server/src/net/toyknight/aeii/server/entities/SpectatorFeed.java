@@ -0,0 +1,213 @@
+package net.toyknight.aeii.server.entities;
+
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.ObjectSet;
+import net.toyknight.aeii.server.utils.OutboundPacket;
+
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * The stream of room notifications watched by the spectators of a room, kept apart from the players.
+ * Publishing only appends the shared packet to the feed, so the room never waits for spectators; a
+ * drainer on the executor later hands the packet, encoded at most once per protocol, to every spectator's
+ * outbound queue, which disconnects the ones falling behind.
+ * <p>
+ * With a delay every packet, the snapshot a spectator joins with included, is held back for the delay,
+ * so delayed spectators still see the game snapshot first and then exactly the events after it.
+ *
+ * @author toyknight 10/17/2026.
+ */
+public class SpectatorFeed {
+
+    private static final int MAX_DRAIN_BATCH = 64;
+
+    private final Object FEED_LOCK = new Object();
+
+    private final Executor executor;
+
+    private final long delay;
+
+    private final ObjectSet<Player> spectators = new ObjectSet<Player>();
+
+    private final LinkedList<Entry> pending = new LinkedList<Entry>();
+
+    private final Runnable drainer = new Runnable() {
+        @Override
+        public void run() {
+            drain();
+        }
+    };
+
+    private Player[] recipients;
+
+    private int joining;
+
+    private boolean scheduled;
+
+    private boolean closed;
+
+    public SpectatorFeed(Executor executor, long delay) {
+        this.executor = executor;
+        this.delay = delay;
+    }
+
+    public long getDelay() {
+        return delay;
+    }
+
+    /**
+     * @return the spectators watching or about to watch
+     */
+    public int size() {
+        synchronized (FEED_LOCK) {
+            return spectators.size + joining;
+        }
+    }
+
+    /**
+     * Adds the spectator once the snapshot is delivered. The snapshot must be taken in the room's mailbox,
+     * so that the following packets of the feed are exactly the ones after it.
+     */
+    public void join(Player spectator, OutboundPacket snapshot) {
+        synchronized (FEED_LOCK) {
+            if (!closed) {
+                joining++;
+                pending.add(new Entry(System.currentTimeMillis() + delay, snapshot, spectator));
+                scheduleIfDue();
+            }
+        }
+    }
+
+    public void leave(Player spectator) {
+        synchronized (FEED_LOCK) {
+            if (spectators.remove(spectator)) {
+                recipients = null;
+            }
+            Iterator<Entry> iterator = pending.iterator();
+            while (iterator.hasNext()) {
+                if (iterator.next().joiner == spectator) {
+                    iterator.remove();
+                    joining--;
+                }
+            }
+        }
+    }
+
+    public void publish(OutboundPacket packet) {
+        synchronized (FEED_LOCK) {
+            if (!closed && spectators.size + joining > 0) {
+                pending.add(new Entry(System.currentTimeMillis() + delay, packet, null));
+                scheduleIfDue();
+            }
+        }
+    }
+
+    /**
+     * Starts draining the delayed packets that are due, called periodically when the feed has a delay.
+     */
+    public void tick() {
+        synchronized (FEED_LOCK) {
+            scheduleIfDue();
+        }
+    }
+
+    /**
+     * Stops the feed and drops the packets not delivered yet.
+     *
+     * @return the spectators of the feed, joined or still joining
+     */
+    public Array<Player> close() {
+        synchronized (FEED_LOCK) {
+            closed = true;
+            Array<Player> members = new Array<Player>();
+            for (Player spectator : spectators) {
+                members.add(spectator);
+            }
+            for (Entry entry : pending) {
+                if (entry.joiner != null) {
+                    members.add(entry.joiner);
+                }
+            }
+            spectators.clear();
+            pending.clear();
+            recipients = null;
+            joining = 0;
+            return members;
+        }
+    }
+
+    private void scheduleIfDue() {
+        if (!scheduled && !closed && isDue(System.currentTimeMillis())) {
+            scheduled = true;
+            try {
+                executor.execute(drainer);
+            } catch (RejectedExecutionException ex) {
+                scheduled = false;
+            }
+        }
+    }
+
+    private boolean isDue(long current_time) {
+        return !pending.isEmpty() && pending.getFirst().release_time <= current_time;
+    }
+
+    private void drain() {
+        for (int i = 0; i < MAX_DRAIN_BATCH; i++) {
+            Entry entry;
+            Player[] targets;
+            synchronized (FEED_LOCK) {
+                if (closed || !isDue(System.currentTimeMillis())) {
+                    scheduled = false;
+                    return;
+                }
+                entry = pending.removeFirst();
+                if (entry.joiner == null) {
+                    targets = getRecipients();
+                } else {
+                    joining--;
+                    spectators.add(entry.joiner);
+                    recipients = null;
+                    targets = new Player[]{entry.joiner};
+                }
+            }
+            for (Player spectator : targets) {
+                entry.packet.encode(spectator.getProtocol());
+                spectator.sendPacket(entry.packet);
+            }
+        }
+        //give other feeds a turn before draining the rest
+        synchronized (FEED_LOCK) {
+            scheduled = false;
+            scheduleIfDue();
+        }
+    }
+
+    private Player[] getRecipients() {
+        if (recipients == null) {
+            recipients = new Player[spectators.size];
+            int index = 0;
+            for (Player spectator : spectators) {
+                recipients[index++] = spectator;
+            }
+        }
+        return recipients;
+    }
+
+    private static class Entry {
+
+        private final long release_time;
+        private final OutboundPacket packet;
+        private final Player joiner;
+
+        public Entry(long release_time, OutboundPacket packet, Player joiner) {
+            this.release_time = release_time;
+            this.packet = packet;
+            this.joiner = joiner;
+        }
+
+    }
+
+}
@@ -0,0 +1,94 @@
+package net.toyknight.aeii.server.journal;
+
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import net.toyknight.aeii.entity.GameCore;
+import net.toyknight.aeii.server.entities.RoomState;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * The room and its game at one event sequence, the starting point every journal is replayed from.
+ *
+ * @author toyknight 10/17/2026.
+ */
+public final class JournalCheckpoint {
+
+    private final long room_id;
+
+    private final String room_name;
+
+    private final String map_name;
+
+    private final String password;
+
+    private final int player_capacity;
+
+    private final RoomState state;
+
+    public JournalCheckpoint(
+            long room_id, String room_name, String map_name, String password, int player_capacity, RoomState state) {
+        this.room_id = room_id;
+        this.room_name = room_name;
+        this.map_name = map_name;
+        this.password = password;
+        this.player_capacity = player_capacity;
+        this.state = state;
+    }
+
+    public long getRoomID() {
+        return room_id;
+    }
+
+    public String getRoomName() {
+        return room_name;
+    }
+
+    public String getMapName() {
+        return map_name;
+    }
+
+    public String getPassword() {
+        return password;
+    }
+
+    public int getPlayerCapacity() {
+        return player_capacity;
+    }
+
+    public RoomState getState() {
+        return state;
+    }
+
+    /**
+     * Writes the checkpoint. The game is taken from the state's cached encoding, so it is usually not encoded again.
+     */
+    public void write(Output output) {
+        output.writeLong(room_id);
+        output.writeString(room_name);
+        output.writeString(map_name);
+        output.writeString(password);
+        output.writeVarInt(player_capacity, true);
+        output.writeVarLong(state.getSequence(), true);
+        output.writeVarInt(state.getManagerState(), false);
+        output.writeVarInt(state.getSelectedUnitX(), false);
+        output.writeVarInt(state.getSelectedUnitY(), false);
+        output.writeString(state.getEncodedGame().toJSONString());
+    }
+
+    public static JournalCheckpoint read(Input input) throws JSONException {
+        long room_id = input.readLong();
+        String room_name = input.readString();
+        String map_name = input.readString();
+        String password = input.readString();
+        int player_capacity = input.readVarInt(true);
+        long sequence = input.readVarLong(true);
+        int manager_state = input.readVarInt(false);
+        int selected_unit_x = input.readVarInt(false);
+        int selected_unit_y = input.readVarInt(false);
+        GameCore game = new GameCore(new JSONObject(input.readString()));
+        RoomState state = new RoomState(0, sequence, game, manager_state, selected_unit_x, selected_unit_y);
+        return new JournalCheckpoint(room_id, room_name, map_name, password, player_capacity, state);
+    }
+
+}
@@ -0,0 +1,364 @@
+package net.toyknight.aeii.server.journal;
+
+import com.badlogic.gdx.utils.Array;
+import com.esotericsoftware.kryo.KryoException;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import net.toyknight.aeii.manager.GameEvent;
+import org.json.JSONException;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+/**
+ * The append-only journal of a running game: a checkpoint of the room, then every game event accepted after it.
+ * <p>
+ * Appending only encodes the record into a memory buffer, so the room never waits for the disk. The journal
+ * manager flushes the buffer periodically with one write and one fsync for all the events of the interval
+ * (group commit), so a crash loses at most the events of the last interval. A new checkpoint replaces the whole
+ * file through a temporary file and an atomic rename, which keeps the journal from growing with the game.
+ * <p>
+ * Every record is [type][varint length][crc32][payload]; reading stops at the first torn or corrupted record.
+ *
+ * @author toyknight 10/17/2026.
+ */
+public class RoomJournal {
+
+    private static final int MAGIC = 0x41454A31;
+
+    private static final byte CHECKPOINT = 1;
+    private static final byte EVENT = 2;
+    private static final byte SEATS = 3;
+
+    private final Object JOURNAL_LOCK = new Object();
+
+    private final Object IO_LOCK = new Object();
+
+    private final File file;
+
+    private final CRC32 crc = new CRC32();
+
+    private final Output payload = new Output(256, -1);
+
+    private Output pending = new Output(4096, -1);
+
+    private byte[] image;
+
+    private int events_since_checkpoint;
+
+    private SeatTable seats;
+
+    private int generation;
+
+    private FileChannel channel;
+
+    private volatile boolean detached;
+
+    private boolean deleted;
+
+    public RoomJournal(File file, JournalCheckpoint checkpoint, SeatTable seats) {
+        this.file = file;
+        checkpoint(checkpoint, seats);
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Called under the game lock of the room right after the event is executed, so the records are in event order.
+     */
+    public void append(GameEvent event) {
+        synchronized (JOURNAL_LOCK) {
+            payload.clear();
+            event.write(payload);
+            writeRecord(pending, EVENT, payload);
+            events_since_checkpoint++;
+        }
+    }
+
+    public void updateSeats(SeatTable seats) {
+        synchronized (JOURNAL_LOCK) {
+            this.seats = seats;
+            payload.clear();
+            seats.write(payload);
+            writeRecord(pending, SEATS, payload);
+        }
+    }
+
+    /**
+     * Starts the journal over from the checkpoint. Every event appended so far must be included in it.
+     */
+    public void checkpoint(JournalCheckpoint checkpoint) {
+        synchronized (JOURNAL_LOCK) {
+            checkpoint(checkpoint, seats);
+        }
+    }
+
+    private void checkpoint(JournalCheckpoint checkpoint, SeatTable seats) {
+        synchronized (JOURNAL_LOCK) {
+            this.seats = seats;
+            Output output = new Output(4096, -1);
+            output.writeInt(MAGIC);
+            payload.clear();
+            checkpoint.write(payload);
+            seats.write(payload);
+            writeRecord(output, CHECKPOINT, payload);
+            image = output.toBytes();
+            pending.clear();
+            generation++;
+            events_since_checkpoint = 0;
+            detached = false;
+        }
+    }
+
+    public int getEventsSinceCheckpoint() {
+        synchronized (JOURNAL_LOCK) {
+            return events_since_checkpoint;
+        }
+    }
+
+    /**
+     * Writes out and syncs everything appended since the last flush. Nothing is dropped from memory until it is
+     * on disk, so a failed flush is retried in full by the next one.
+     *
+     * @return the number of bytes written
+     */
+    public int flush() throws IOException {
+        synchronized (IO_LOCK) {
+            byte[] image;
+            byte[] records;
+            int generation;
+            synchronized (JOURNAL_LOCK) {
+                image = this.image;
+                records = pending.position() > 0 ? pending.toBytes() : null;
+                generation = this.generation;
+            }
+            if (deleted) {
+                return 0;
+            }
+            int bytes;
+            if (image != null) {
+                rewrite(image, records);
+                bytes = image.length;
+            } else if (records == null) {
+                return 0;
+            } else if (channel == null) {
+                //the file lost records it cannot get back, only a new checkpoint can make it whole again
+                detached = true;
+                return 0;
+            } else {
+                append(records);
+                bytes = 0;
+            }
+            synchronized (JOURNAL_LOCK) {
+                //a checkpoint taken meanwhile replaced both the image and the pending records, keep the new ones
+                if (this.generation == generation) {
+                    this.image = null;
+                    discardPending(records == null ? 0 : records.length);
+                }
+            }
+            return bytes + (records == null ? 0 : records.length);
+        }
+    }
+
+    /**
+     * @return whether the file can no longer be appended to and needs a new checkpoint
+     */
+    public boolean isDetached() {
+        return detached;
+    }
+
+    private void discardPending(int length) {
+        int remaining = pending.position() - length;
+        if (remaining == 0 && pending.getBuffer().length > 0x10000) {
+            //do not hold on to the buffer of a burst
+            pending = new Output(4096, -1);
+        } else {
+            byte[] buffer = pending.getBuffer();
+            System.arraycopy(buffer, length, buffer, 0, remaining);
+            pending.setPosition(remaining);
+        }
+    }
+
+    private void append(byte[] records) throws IOException {
+        long size = channel.size();
+        try {
+            writeFully(channel, records);
+            channel.force(false);
+        } catch (IOException ex) {
+            //cut off what was written, so that the retry does not write any record twice
+            try {
+                channel.truncate(size);
+            } catch (IOException truncate_ex) {
+                closeChannel();
+            }
+            throw ex;
+        }
+    }
+
+    private void rewrite(byte[] image, byte[] records) throws IOException {
+        File temp_file = new File(file.getPath() + ".tmp");
+        RandomAccessFile output = new RandomAccessFile(temp_file, "rw");
+        try {
+            output.setLength(0);
+            FileChannel output_channel = output.getChannel();
+            writeFully(output_channel, image);
+            if (records != null) {
+                writeFully(output_channel, records);
+            }
+            output_channel.force(false);
+        } finally {
+            output.close();
+        }
+        closeChannel();
+        try {
+            if (!temp_file.renameTo(file) && !(file.delete() && temp_file.renameTo(file))) {
+                throw new IOException("Failed replacing journal file: " + file.getName());
+            }
+        } finally {
+            //the old file is still whole if the rename failed, the next flush writes the image again
+            if (file.exists()) {
+                channel = openForAppend(file);
+            }
+        }
+    }
+
+    private static FileChannel openForAppend(File file) throws IOException {
+        FileChannel channel = new RandomAccessFile(file, "rw").getChannel();
+        channel.position(channel.size());
+        return channel;
+    }
+
+    /**
+     * Closes and removes the journal, the game is over or abandoned.
+     */
+    public void delete() {
+        synchronized (IO_LOCK) {
+            deleted = true;
+            closeChannel();
+            file.delete();
+            new File(file.getPath() + ".tmp").delete();
+        }
+    }
+
+    private void closeChannel() {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+            }
+            channel = null;
+        }
+    }
+
+    private void writeRecord(Output output, byte type, Output payload) {
+        crc.reset();
+        crc.update(payload.getBuffer(), 0, payload.position());
+        output.writeByte(type);
+        output.writeVarInt(payload.position(), true);
+        output.writeInt((int) crc.getValue());
+        output.writeBytes(payload.getBuffer(), 0, payload.position());
+    }
+
+    private static void writeFully(FileChannel channel, byte[] bytes) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * Reads the journal up to its last intact record.
+     *
+     * @return the recovered game, or null if the journal does not even have an intact checkpoint
+     */
+    public static Recovery read(File file) throws IOException {
+        byte[] bytes;
+        RandomAccessFile input_file = new RandomAccessFile(file, "r");
+        try {
+            bytes = new byte[(int) input_file.length()];
+            input_file.readFully(bytes);
+        } finally {
+            input_file.close();
+        }
+        Input input = new Input(bytes);
+        CRC32 crc = new CRC32();
+        if (bytes.length < 4 || input.readInt() != MAGIC) {
+            return null;
+        }
+        JournalCheckpoint checkpoint = null;
+        SeatTable seats = null;
+        Array<GameEvent> events = new Array<GameEvent>();
+        try {
+            while (input.position() < bytes.length) {
+                byte type = input.readByte();
+                int length = input.readVarInt(true);
+                int checksum = input.readInt();
+                if (length < 0 || length > bytes.length - input.position()) {
+                    break;
+                }
+                crc.reset();
+                crc.update(bytes, input.position(), length);
+                if ((int) crc.getValue() != checksum) {
+                    break;
+                }
+                Input record = new Input(bytes, input.position(), length);
+                input.skip(length);
+                switch (type) {
+                    case CHECKPOINT:
+                        checkpoint = JournalCheckpoint.read(record);
+                        seats = SeatTable.read(record);
+                        events.clear();
+                        break;
+                    case EVENT:
+                        events.add(GameEvent.read(record, true));
+                        break;
+                    case SEATS:
+                        seats = SeatTable.read(record);
+                        break;
+                    default:
+                        return null;
+                }
+                if (checkpoint == null) {
+                    return null;
+                }
+            }
+        } catch (KryoException ignored) {
+            //a torn record at the end of the journal
+        } catch (JSONException ignored) {
+        }
+        return checkpoint == null ? null : new Recovery(checkpoint, seats, events);
+    }
+
+    public static class Recovery {
+
+        private final JournalCheckpoint checkpoint;
+        private final SeatTable seats;
+        private final Array<GameEvent> events;
+
+        public Recovery(JournalCheckpoint checkpoint, SeatTable seats, Array<GameEvent> events) {
+            this.checkpoint = checkpoint;
+            this.seats = seats;
+            this.events = events;
+        }
+
+        public JournalCheckpoint getCheckpoint() {
+            return checkpoint;
+        }
+
+        public SeatTable getSeats() {
+            return seats;
+        }
+
+        public Array<GameEvent> getEvents() {
+            return events;
+        }
+
+    }
+
+}
@@ -0,0 +1,78 @@
+package net.toyknight.aeii.server.journal;
+
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+
+/**
+ * Who plays each team of a running game, by username and session token, so that after a restart the
+ * players can take their teams back by resuming their sessions.
+ *
+ * @author toyknight 10/17/2026.
+ */
+public final class SeatTable {
+
+    /**
+     * The username of the teams played by a server robot, which have no session token.
+     */
+    public static final String ROBOT = "@robot";
+
+    private final String[] usernames;
+
+    private final String[] session_tokens;
+
+    private final int host_team;
+
+    public SeatTable(String[] usernames, String[] session_tokens, int host_team) {
+        this.usernames = usernames;
+        this.session_tokens = session_tokens;
+        this.host_team = host_team;
+    }
+
+    /**
+     * @return the username of the team's player, or null if nobody plays the team
+     */
+    public String getUsername(int team) {
+        return usernames[team];
+    }
+
+    /**
+     * @return the usernames of the teams, null for the teams nobody plays
+     */
+    public String[] getUsernames() {
+        return usernames.clone();
+    }
+
+    public boolean isRobot(int team) {
+        return session_tokens[team] == null && ROBOT.equals(usernames[team]);
+    }
+
+    public String getSessionToken(int team) {
+        return session_tokens[team];
+    }
+
+    /**
+     * @return the team of the host, or -1 if the host plays no team
+     */
+    public int getHostTeam() {
+        return host_team;
+    }
+
+    public void write(Output output) {
+        for (int team = 0; team < 4; team++) {
+            output.writeString(usernames[team]);
+            output.writeString(session_tokens[team]);
+        }
+        output.writeVarInt(host_team, false);
+    }
+
+    public static SeatTable read(Input input) {
+        String[] usernames = new String[4];
+        String[] session_tokens = new String[4];
+        for (int team = 0; team < 4; team++) {
+            usernames[team] = input.readString();
+            session_tokens[team] = input.readString();
+        }
+        return new SeatTable(usernames, session_tokens, input.readVarInt(false));
+    }
+
+}
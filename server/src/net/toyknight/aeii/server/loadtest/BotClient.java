@@ -0,0 +1,594 @@
+package net.toyknight.aeii.server.loadtest;
+
+import com.esotericsoftware.kryonet.Client;
+import com.esotericsoftware.kryonet.Connection;
+import com.esotericsoftware.kryonet.Listener;
+import com.esotericsoftware.minlog.Log;
+import net.toyknight.aeii.GameContext;
+import net.toyknight.aeii.entity.GameCore;
+import net.toyknight.aeii.entity.Player;
+import net.toyknight.aeii.manager.CheatingException;
+import net.toyknight.aeii.manager.GameEvent;
+import net.toyknight.aeii.manager.GameEventListener;
+import net.toyknight.aeii.manager.GameManager;
+import net.toyknight.aeii.network.NetworkConstants;
+import net.toyknight.aeii.network.entity.RoomSetting;
+import net.toyknight.aeii.network.protocol.BinaryPacket;
+import net.toyknight.aeii.network.protocol.ChunkAssembler;
+import net.toyknight.aeii.network.protocol.CompressedPacket;
+import net.toyknight.aeii.network.protocol.EncodedObject;
+import net.toyknight.aeii.network.protocol.PacketBundle;
+import net.toyknight.aeii.network.protocol.PacketChunk;
+import net.toyknight.aeii.network.protocol.PacketCompressor;
+import net.toyknight.aeii.network.protocol.PacketEntities;
+import net.toyknight.aeii.network.protocol.PacketRegistry;
+import net.toyknight.aeii.server.ServerContext;
+import net.toyknight.aeii.server.utils.PacketBuilder;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A headless client that speaks the protocol of the NetworkManager over its own connection, so many of
+ * them can run in one process. The room and game notifications are queued for the bot's thread, the
+ * messages and lobby updates are only counted.
+ *
+ * @author toyknight 10/17/2026.
+ */
+public class BotClient implements GameEventListener {
+
+    private static final String TAG = "BOT CLIENT";
+
+    public static final int CONNECT_TIMEOUT = 5000;
+
+    public static final long RESPONSE_TIMEOUT = 10000;
+
+    public static final long STALL_TIMEOUT = 60000;
+
+    public static final long LEAVE_GRACE_PERIOD = 2000;
+
+    private static final long TICK = 20;
+
+    private final Object RESPONSE_LOCK = new Object();
+
+    private final String username;
+
+    private final LoadReport report;
+
+    private Client client;
+
+    private String lobby_host;
+
+    private int lobby_port;
+
+    private String v_string;
+
+    private String handoff_ticket;
+
+    private final LinkedBlockingQueue<JSONObject> notifications = new LinkedBlockingQueue<JSONObject>();
+
+    private JSONObject response;
+
+    private volatile int pending_operation;
+
+    private int protocol = NetworkConstants.PROTOCOL_JSON;
+
+    private boolean compression_requested = true;
+
+    private PacketCompressor compressor;
+
+    //whether the server takes compressed packets
+    private boolean compression;
+
+    private int next_transfer_id;
+
+    private int service_id = -1;
+
+    private volatile boolean connected;
+
+    private GameManager manager;
+
+    private JSONArray event_queue = new JSONArray();
+
+    private long last_progress;
+
+    public BotClient(String username, LoadReport report) {
+        this.username = username;
+        this.report = report;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public int getServiceID() {
+        return service_id;
+    }
+
+    public boolean isConnected() {
+        return connected;
+    }
+
+    /**
+     * @param compression whether to ask the server for compression, asked by default like the NetworkManager
+     */
+    public void setCompression(boolean compression) {
+        this.compression_requested = compression;
+    }
+
+    public boolean connect(String host, int port, String v_string) throws IOException {
+        this.lobby_host = host;
+        this.lobby_port = port;
+        this.v_string = v_string;
+        return open(host, port, null);
+    }
+
+    /**
+     * Replaces the connection with a new one to the server, a shard if a handoff ticket is given.
+     */
+    private boolean open(String host, int port, String ticket) throws IOException {
+        final Client previous = client;
+        final PacketCompressor connection_compressor = new PacketCompressor();
+        final ChunkAssembler connection_assembler = new ChunkAssembler();
+        client = new Client(ServerContext.WRITE_BUFFER_SIZE, ServerContext.OBJECT_BUFFER_SIZE);
+        PacketRegistry.register(client.getKryo());
+        client.addListener(new Listener() {
+            @Override
+            public void disconnected(Connection connection) {
+                connection_compressor.dispose();
+                //the replaced connection is closed quietly
+                if (connection == client) {
+                    connected = false;
+                    synchronized (RESPONSE_LOCK) {
+                        RESPONSE_LOCK.notifyAll();
+                    }
+                }
+            }
+
+            @Override
+            public void received(Connection connection, Object object) {
+                try {
+                    if (object instanceof PacketChunk) {
+                        object = connection_assembler.receive((PacketChunk) object);
+                        if (object == null) {
+                            return;
+                        }
+                        report.count("packets.chunked");
+                    }
+                    if (object instanceof CompressedPacket) {
+                        object = connection_compressor.decompress((CompressedPacket) object);
+                        report.count("packets.compressed");
+                    }
+                } catch (JSONException ex) {
+                    report.onError("packet_format");
+                    return;
+                }
+                onReceive(object);
+            }
+        });
+        if (previous != null) {
+            previous.stop();
+        }
+        handoff_ticket = ticket;
+        protocol = NetworkConstants.PROTOCOL_JSON;
+        compressor = connection_compressor;
+        compression = false;
+        client.start();
+        client.connect(CONNECT_TIMEOUT, host, port);
+        connected = true;
+        JSONObject request = PacketBuilder.create(NetworkConstants.REQUEST, NetworkConstants.AUTHENTICATION);
+        request.put("username", username);
+        request.put("v_string", v_string);
+        request.put("protocol", NetworkConstants.PROTOCOL_BINARY);
+        if (compression_requested) {
+            request.put("compression", NetworkConstants.COMPRESSION_DEFLATE);
+        }
+        if (ticket != null) {
+            request.put("ticket", ticket);
+        }
+        JSONObject response = sendRequest(request);
+        if (response != null && response.getBoolean("approved")) {
+            service_id = response.getInt("service_id");
+            protocol = response.has("protocol") ? response.getInt("protocol") : NetworkConstants.PROTOCOL_JSON;
+            compression = response.optInt("compression", NetworkConstants.COMPRESSION_NONE)
+                    == NetworkConstants.COMPRESSION_DEFLATE;
+            return true;
+        } else {
+            return false;
+        }
+    }
+
+    public void close() {
+        connected = false;
+        if (client != null) {
+            client.stop();
+        }
+    }
+
+    private void onReceive(Object object) {
+        try {
+            if (object instanceof String) {
+                onReceivePacket(new JSONObject((String) object));
+            } else if (object instanceof BinaryPacket) {
+                onReceivePacket(((BinaryPacket) object).toJson());
+            } else if (object instanceof PacketBundle) {
+                for (BinaryPacket packet : ((PacketBundle) object).getPackets()) {
+                    onReceivePacket(packet.toJson());
+                }
+            }
+        } catch (JSONException ex) {
+            report.onError("packet_format");
+        }
+    }
+
+    private void onReceivePacket(JSONObject packet) {
+        switch (packet.getInt("type")) {
+            case NetworkConstants.RESPONSE:
+                //whatever the previous room sent before the server handled the leave is stale once a room is entered
+                if (pending_operation == NetworkConstants.CREATE_ROOM || pending_operation == NetworkConstants.JOIN_ROOM) {
+                    notifications.clear();
+                }
+                synchronized (RESPONSE_LOCK) {
+                    response = packet;
+                    RESPONSE_LOCK.notifyAll();
+                }
+                break;
+            case NetworkConstants.NOTIFICATION:
+                onReceiveNotification(packet);
+                break;
+        }
+    }
+
+    private void onReceiveNotification(JSONObject notification) {
+        switch (notification.getInt("operation")) {
+            case NetworkConstants.MESSAGE:
+                report.onMessageReceived(notification.getString("username"), notification.getString("message"));
+                break;
+            case NetworkConstants.LOBBY_UPDATE:
+                report.count("lobby.updates");
+                break;
+            case NetworkConstants.PLAYER_JOINING:
+            case NetworkConstants.PLAYER_LEAVING:
+            case NetworkConstants.ALLOCATION_UPDATING:
+            case NetworkConstants.GAME_STARTING:
+            case NetworkConstants.GAME_EVENT:
+                notifications.add(notification);
+                break;
+            default:
+                //do nothing
+        }
+    }
+
+    private Object encode(JSONObject packet) {
+        if (protocol == NetworkConstants.PROTOCOL_BINARY) {
+            BinaryPacket binary_packet = BinaryPacket.create(packet);
+            if (compression && compressor.isCompressible(binary_packet.size())) {
+                CompressedPacket compressed = compressor.compress(binary_packet);
+                if (compressed != null) {
+                    return compressed;
+                }
+            }
+            return binary_packet;
+        } else {
+            String content = packet.toString();
+            if (compression && compressor.isCompressible(content.length())) {
+                CompressedPacket compressed = compressor.compress(content);
+                if (compressed != null) {
+                    return compressed;
+                }
+            }
+            return content;
+        }
+    }
+
+    private void send(JSONObject packet) {
+        if (connected) {
+            Object wire_packet = encode(packet);
+            if (PacketChunk.isOversized(wire_packet)) {
+                //paced by the write buffer like the NetworkManager
+                for (PacketChunk chunk : PacketChunk.split(wire_packet, next_transfer_id++)) {
+                    while (connected && client.getTcpWriteBufferSize() > ServerContext.WRITE_BUFFER_SIZE / 2) {
+                        sleep(TICK);
+                    }
+                    client.sendTCP(chunk);
+                }
+            } else {
+                client.sendTCP(wire_packet);
+            }
+        }
+    }
+
+    /**
+     * Sends a request and waits for its response. The protocol carries no request ids, so a bot
+     * that misses a response closes its connection rather than mistaking it for a later one.
+     *
+     * @return the response, or null if the request timed out or the connection was lost
+     */
+    private JSONObject sendRequest(JSONObject request) {
+        JSONObject response = doSendRequest(request);
+        if (response != null && response.optInt("code", NetworkConstants.CODE_OK) == NetworkConstants.CODE_REDIRECT) {
+            report.count("handoffs");
+            try {
+                if (!open(response.getString("address"), response.getInt("port"), response.getString("ticket"))) {
+                    report.onError("handoff");
+                    close();
+                    return null;
+                }
+            } catch (IOException ex) {
+                report.onError("handoff");
+                close();
+                return null;
+            }
+            return doSendRequest(request);
+        }
+        return response;
+    }
+
+    private JSONObject doSendRequest(JSONObject request) {
+        int operation = request.getInt("operation");
+        long start = System.nanoTime();
+        JSONObject result;
+        synchronized (RESPONSE_LOCK) {
+            response = null;
+            pending_operation = operation;
+            send(request);
+            long deadline = System.currentTimeMillis() + RESPONSE_TIMEOUT;
+            long remaining = RESPONSE_TIMEOUT;
+            while (response == null && connected && remaining > 0) {
+                try {
+                    RESPONSE_LOCK.wait(remaining);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+                remaining = deadline - System.currentTimeMillis();
+            }
+            result = response;
+            response = null;
+        }
+        if (result != null && result.optInt("code", NetworkConstants.CODE_OK) == NetworkConstants.CODE_SERVER_BUSY) {
+            report.onError("busy");
+            return null;
+        }
+        if (result == null) {
+            if (connected) {
+                report.onTimeout(operation);
+                close();
+            } else {
+                report.onError("disconnected");
+            }
+        } else {
+            report.onResponse(operation, System.nanoTime() - start);
+        }
+        return result;
+    }
+
+    private boolean isApproved(JSONObject response, int operation) {
+        if (response == null) {
+            return false;
+        }
+        if (response.getBoolean("approved")) {
+            return true;
+        } else {
+            report.onRejected(operation);
+            return false;
+        }
+    }
+
+    public boolean requestLobbySubscription() {
+        return sendRequest(PacketBuilder.create(NetworkConstants.REQUEST, NetworkConstants.LOBBY_SUBSCRIBE)) != null;
+    }
+
+    /**
+     * @return the rooms in the lobby, or null if the request failed
+     */
+    public JSONArray requestRoomList() {
+        JSONObject response = sendRequest(PacketBuilder.create(NetworkConstants.REQUEST, NetworkConstants.LIST_ROOMS));
+        return response == null ? null : response.getJSONArray("rooms");
+    }
+
+    /**
+     * @param map the map in json, which is shared by the bots since encoding a map is not thread-safe
+     */
+    public RoomSetting requestCreateRoom(String map_name, JSONObject map, int capacity, int unit_capacity, int start_gold) {
+        JSONObject request = PacketBuilder.create(NetworkConstants.REQUEST, NetworkConstants.CREATE_ROOM);
+        request.put("new_game", true);
+        request.put("map_name", map_name);
+        request.put("map", map);
+        request.put("player_capacity", capacity);
+        request.put("unit_capacity", unit_capacity);
+        request.put("start_gold", start_gold);
+        JSONObject response = sendRequest(request);
+        return isApproved(response, NetworkConstants.CREATE_ROOM) ?
+                new RoomSetting(response.getJSONObject("room_setting")) : null;
+    }
+
+    public RoomSetting requestJoinRoom(long room_id) {
+        JSONObject request = PacketBuilder.create(NetworkConstants.REQUEST, NetworkConstants.JOIN_ROOM);
+        request.put("room_id", room_id);
+        request.put("password", "");
+        JSONObject response = sendRequest(request);
+        return isApproved(response, NetworkConstants.JOIN_ROOM) ?
+                new RoomSetting(response.getJSONObject("room_setting")) : null;
+    }
+
+    public boolean requestStartGame() {
+        JSONObject response = sendRequest(PacketBuilder.create(NetworkConstants.REQUEST, NetworkConstants.START_GAME));
+        return isApproved(response, NetworkConstants.START_GAME);
+    }
+
+    /**
+     * Leaves the room, and goes back to the lobby server if the room was on one of its shards.
+     */
+    public void leaveRoom() {
+        send(PacketBuilder.create(NetworkConstants.REQUEST, NetworkConstants.PLAYER_LEAVING));
+        manager = null;
+        if (handoff_ticket != null && connected) {
+            try {
+                if (!open(lobby_host, lobby_port, null)) {
+                    close();
+                }
+            } catch (IOException ex) {
+                report.onError("connection");
+                close();
+            }
+        }
+    }
+
+    public void sendMessage(String message) {
+        JSONObject notification = PacketBuilder.create(NetworkConstants.NOTIFICATION, NetworkConstants.MESSAGE);
+        notification.put("message", message);
+        send(notification);
+        report.count("messages.sent");
+    }
+
+    public void updateAllocation(int[] types, int[] alliance, int[] allocation) {
+        JSONObject notification =
+                PacketBuilder.create(NetworkConstants.NOTIFICATION, NetworkConstants.ALLOCATION_UPDATING);
+        notification.put("types", new JSONArray(types));
+        notification.put("alliance", new JSONArray(alliance));
+        notification.put("allocation", new JSONArray(allocation));
+        send(notification);
+    }
+
+    /**
+     * @return the next room or game notification, or null if none arrives in time
+     */
+    public JSONObject pollNotification(long timeout) {
+        try {
+            return notifications.poll(timeout, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    /**
+     * Builds the started game the way the server and the real clients do, with the teams allocated
+     * to this bot played by the robot.
+     */
+    public void prepareGame(GameCore game, int[] types, int[] alliance, int[] allocation) {
+        for (int team = 0; team < 4; team++) {
+            Player player = game.getPlayer(team);
+            if (game.getMap().hasTeamAccess(team)) {
+                player.setType(types[team]);
+            }
+            player.setAlliance(alliance[team]);
+        }
+        for (int team = 0; team < 4; team++) {
+            if (game.getPlayer(team).getType() != Player.NONE) {
+                game.getPlayer(team).setType(Player.REMOTE);
+            }
+        }
+        if (!game.initialized()) {
+            game.initialize();
+            game.gainIncome(game.getCurrentTeam());
+        }
+        for (int team = 0; team < 4; team++) {
+            if (allocation[team] == service_id) {
+                game.getPlayer(team).setType(Player.ROBOT);
+            }
+        }
+        event_queue = new JSONArray();
+        manager = new GameManager();
+        manager.setGameEventListener(this);
+        synchronized (GameContext.RENDER_LOCK) {
+            manager.setGame(game);
+        }
+    }
+
+    /**
+     * Plays the prepared game until it is over, reaches the turn limit, stops making progress or loses a player.
+     *
+     * @return true if the game ended or reached the turn limit
+     */
+    public boolean playGame(long deadline, int max_turns) {
+        last_progress = System.currentTimeMillis();
+        long last_update = System.nanoTime();
+        boolean player_left = false;
+        while (connected && System.currentTimeMillis() < deadline) {
+            JSONObject notification;
+            while ((notification = notifications.poll()) != null) {
+                switch (notification.getInt("operation")) {
+                    case NetworkConstants.GAME_EVENT:
+                        GameEvent event = PacketEntities.getGameEvent(notification, "game_event");
+                        synchronized (GameContext.RENDER_LOCK) {
+                            manager.getGameEventExecutor().submitGameEvent(event);
+                        }
+                        report.count("events.received");
+                        last_progress = System.currentTimeMillis();
+                        break;
+                    case NetworkConstants.PLAYER_LEAVING:
+                        player_left = true;
+                        break;
+                    default:
+                        //do nothing
+                }
+            }
+            long now = System.nanoTime();
+            try {
+                synchronized (GameContext.RENDER_LOCK) {
+                    manager.update((now - last_update) / 1000000000f);
+                }
+            } catch (CheatingException ex) {
+                Log.error(TAG, String.format("%s went out of sync with the server", username), ex);
+                report.count("games.desynced");
+                return false;
+            }
+            last_update = now;
+            GameCore game = manager.getGame();
+            if (game.isGameOver() || game.getCurrentTurn() > max_turns) {
+                //the last events may not have been synced yet when the game ends in the middle of an update
+                synchronized (GameContext.RENDER_LOCK) {
+                    onGameEventSync(manager.getState());
+                }
+                return true;
+            }
+            //the room broadcasts events from its mailbox, so the last events of a leaving player may come after its leave
+            if (player_left && !manager.isProcessing()
+                    && System.currentTimeMillis() - last_progress > LEAVE_GRACE_PERIOD) {
+                report.count("games.abandoned");
+                return false;
+            }
+            if (System.currentTimeMillis() - last_progress > STALL_TIMEOUT) {
+                report.count("games.stalled");
+                return false;
+            }
+            sleep(TICK);
+        }
+        return false;
+    }
+
+    @Override
+    public void onGameEventExecuted(GameEvent event) {
+        if (!event.isRemote()) {
+            event_queue.put(new EncodedObject(event));
+        }
+        last_progress = System.currentTimeMillis();
+    }
+
+    @Override
+    public void onGameEventSync(int manager_state) {
+        if (event_queue.length() > 0) {
+            report.count("events.sent", event_queue.length());
+            event_queue.put(new EncodedObject(GameEvent.create(GameEvent.MANAGER_STATE_SYNC, manager_state)));
+            JSONObject notification = PacketBuilder.create(NetworkConstants.NOTIFICATION, NetworkConstants.GAME_EVENT);
+            notification.put("events", event_queue);
+            send(notification);
+            event_queue = new JSONArray();
+        }
+    }
+
+    public static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
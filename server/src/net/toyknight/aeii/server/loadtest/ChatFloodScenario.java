@@ -0,0 +1,32 @@
+package net.toyknight.aeii.server.loadtest;
+
+/**
+ * Every bot stays in the lobby and sends chat messages at a fixed rate, so each message is
+ * delivered to every other bot. A room list request every few messages measures how requests
+ * fare behind the flood.
+ *
+ * @author toyknight 10/17/2026.
+ */
+public class ChatFloodScenario implements Scenario {
+
+    private static final int MESSAGES_PER_REQUEST = 10;
+
+    private final int rate;
+
+    public ChatFloodScenario(int rate) {
+        this.rate = Math.max(1, rate);
+    }
+
+    @Override
+    public void run(BotClient bot, int index, long deadline) {
+        int sent = 0;
+        while (bot.isConnected() && System.currentTimeMillis() < deadline) {
+            bot.sendMessage(LoadReport.createChatMessage());
+            if (++sent % MESSAGES_PER_REQUEST == 0 && bot.requestRoomList() == null) {
+                return;
+            }
+            BotClient.sleep(1000 / rate);
+        }
+    }
+
+}
@@ -0,0 +1,235 @@
+package net.toyknight.aeii.server.loadtest;
+
+import com.badlogic.gdx.utils.IntArray;
+import com.badlogic.gdx.utils.ObjectMap;
+import net.toyknight.aeii.entity.Map;
+import net.toyknight.aeii.entity.Player;
+import net.toyknight.aeii.network.NetworkConstants;
+import net.toyknight.aeii.network.entity.RoomSetting;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.Arrays;
+
+/**
+ * Bots sit at tables of up to four. The first bot of a table hosts a room, waits for the others to
+ * join, allocates one team to each and starts the game, then every bot plays its teams with the
+ * robot on a headless game manager. Each game ends at game over or at the turn limit, and the
+ * table starts another one until the deadline.
+ *
+ * @author toyknight 10/17/2026.
+ */
+public class GameScenario implements Scenario {
+
+    public static final long JOIN_TIMEOUT = 10000;
+
+    public static final long START_TIMEOUT = 30000;
+
+    private final Object TABLE_LOCK = new Object();
+
+    private final ObjectMap<Integer, Table> tables = new ObjectMap<Integer, Table>();
+
+    private final LoadReport report;
+
+    private final Map map;
+
+    private final JSONObject map_json;
+
+    private final String map_name;
+
+    private final int table_size;
+
+    private final int max_turns;
+
+    public GameScenario(LoadReport report, Map map, String map_name, int max_turns) {
+        this.report = report;
+        this.map = map;
+        this.map_json = map.toJson();
+        this.map_name = map_name;
+        this.table_size = Math.min(4, map.getPlayerCount());
+        this.max_turns = max_turns;
+    }
+
+    @Override
+    public void run(BotClient bot, int index, long deadline) {
+        Table table = getTable(index / table_size);
+        boolean host = index % table_size == 0;
+        int round = 0;
+        while (bot.isConnected() && System.currentTimeMillis() < deadline) {
+            boolean finished = false;
+            if (host) {
+                finished = host(bot, table, deadline);
+            } else {
+                int next_round = table.await(round, JOIN_TIMEOUT);
+                if (next_round > 0) {
+                    round = next_round;
+                    finished = join(bot, table.getRoomID(), deadline);
+                }
+            }
+            bot.leaveRoom();
+            if (!finished) {
+                BotClient.sleep(1000);
+            }
+        }
+    }
+
+    private Table getTable(int number) {
+        synchronized (TABLE_LOCK) {
+            Table table = tables.get(number);
+            if (table == null) {
+                table = new Table();
+                tables.put(number, table);
+            }
+            return table;
+        }
+    }
+
+    private boolean host(BotClient bot, Table table, long deadline) {
+        RoomSetting setting = bot.requestCreateRoom(map_name, map_json, table_size, 20, 1000);
+        if (setting == null) {
+            return false;
+        }
+        IntArray players = new IntArray();
+        players.add(bot.getServiceID());
+        table.open(setting.room_id);
+        long join_deadline = System.currentTimeMillis() + JOIN_TIMEOUT;
+        while (players.size < table_size && System.currentTimeMillis() < join_deadline) {
+            JSONObject notification = bot.pollNotification(join_deadline - System.currentTimeMillis());
+            if (notification != null) {
+                int operation = notification.getInt("operation");
+                if (operation == NetworkConstants.PLAYER_JOINING) {
+                    players.add(notification.getInt("player_id"));
+                }
+                if (operation == NetworkConstants.PLAYER_LEAVING) {
+                    players.removeValue(notification.getInt("player_id"));
+                }
+            }
+        }
+        table.close();
+        if (players.size < 2) {
+            return false;
+        }
+        int[] types = new int[4];
+        int[] alliance = new int[4];
+        int[] allocation = new int[4];
+        Arrays.fill(allocation, -1);
+        int seat = 0;
+        for (int team = 0; team < 4; team++) {
+            alliance[team] = team + 1;
+            if (map.hasTeamAccess(team) && seat < players.size) {
+                types[team] = Player.REMOTE;
+                allocation[team] = players.get(seat++);
+            } else {
+                types[team] = Player.NONE;
+            }
+        }
+        bot.updateAllocation(types, alliance, allocation);
+        if (!bot.requestStartGame()) {
+            return false;
+        }
+        report.count("games.started");
+        bot.prepareGame(setting.game, types, alliance, allocation);
+        if (bot.playGame(deadline, max_turns)) {
+            report.count("games.finished");
+            return true;
+        } else {
+            return false;
+        }
+    }
+
+    private boolean join(BotClient bot, long room_id, long deadline) {
+        RoomSetting setting = bot.requestJoinRoom(room_id);
+        if (setting == null) {
+            return false;
+        }
+        JSONObject allocation_update = null;
+        boolean started = false;
+        long start_deadline = System.currentTimeMillis() + START_TIMEOUT;
+        while (System.currentTimeMillis() < start_deadline) {
+            JSONObject notification = bot.pollNotification(start_deadline - System.currentTimeMillis());
+            if (notification != null) {
+                int operation = notification.getInt("operation");
+                if (operation == NetworkConstants.ALLOCATION_UPDATING) {
+                    allocation_update = notification;
+                }
+                if (operation == NetworkConstants.GAME_STARTING) {
+                    started = true;
+                    break;
+                }
+                if (operation == NetworkConstants.PLAYER_LEAVING && notification.getInt("player_id") == setting.host) {
+                    return false;
+                }
+            }
+        }
+        if (!started || allocation_update == null) {
+            return false;
+        }
+        bot.prepareGame(setting.game,
+                toArray(allocation_update.getJSONArray("types")),
+                toArray(allocation_update.getJSONArray("alliance")),
+                toArray(allocation_update.getJSONArray("allocation")));
+        return bot.playGame(deadline, max_turns);
+    }
+
+    private int[] toArray(JSONArray json) {
+        int[] array = new int[4];
+        for (int team = 0; team < 4; team++) {
+            array[team] = json.getInt(team);
+        }
+        return array;
+    }
+
+    /**
+     * Hands the room of the current round from the host of a table to the other bots at it.
+     */
+    private static class Table {
+
+        private final Object ROUND_LOCK = new Object();
+
+        private int round = 0;
+
+        private long room_id = -1;
+
+        public void open(long room_id) {
+            synchronized (ROUND_LOCK) {
+                this.room_id = room_id;
+                this.round++;
+                ROUND_LOCK.notifyAll();
+            }
+        }
+
+        public void close() {
+            synchronized (ROUND_LOCK) {
+                this.room_id = -1;
+            }
+        }
+
+        public long getRoomID() {
+            synchronized (ROUND_LOCK) {
+                return room_id;
+            }
+        }
+
+        /**
+         * @return the round opened after the given one, or 0 if none opens in time
+         */
+        public int await(int last_round, long timeout) {
+            long deadline = System.currentTimeMillis() + timeout;
+            synchronized (ROUND_LOCK) {
+                long remaining = timeout;
+                while ((round <= last_round || room_id < 0) && remaining > 0) {
+                    try {
+                        ROUND_LOCK.wait(remaining);
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                        return 0;
+                    }
+                    remaining = deadline - System.currentTimeMillis();
+                }
+                return round > last_round && room_id >= 0 ? round : 0;
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,131 @@
+package net.toyknight.aeii.server.loadtest;
+
+import com.badlogic.gdx.utils.ObjectMap;
+import com.esotericsoftware.minlog.Log;
+import net.toyknight.aeii.entity.Map;
+import net.toyknight.aeii.entity.Player;
+import net.toyknight.aeii.manager.GameEvent;
+import net.toyknight.aeii.server.entities.Room;
+import net.toyknight.aeii.server.entities.RoomEventLog;
+import net.toyknight.aeii.server.journal.JournalCheckpoint;
+import net.toyknight.aeii.server.journal.RoomJournal;
+import net.toyknight.aeii.server.journal.SeatTable;
+import net.toyknight.aeii.utils.MapFactory;
+import net.toyknight.aeii.utils.TileFactory;
+import net.toyknight.aeii.utils.UnitFactory;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Measures what the room journal costs the event path: executes the same events in a room without and
+ * with a journal, which is group committed by a flusher thread like the journal manager does.
+ * <p>
+ * Usage: JournalBenchmark -map map_file [-events 200000] [-interval 50] [-directory journal-benchmark]
+ *
+ * @author toyknight 10/17/2026.
+ */
+public class JournalBenchmark {
+
+    private static final String TAG = "JOURNAL BENCHMARK";
+
+    public static void main(String[] args) {
+        ObjectMap<String, String> arguments = new ObjectMap<String, String>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            arguments.put(args[i].substring(1), args[i + 1]);
+        }
+        try {
+            UnitFactory.loadUnitData();
+            TileFactory.loadTileData();
+            Map map = loadMap(new File(arguments.get("map")));
+            int events = Integer.parseInt(arguments.get("events", "200000"));
+            long interval = Long.parseLong(arguments.get("interval", "50"));
+            File directory = new File(arguments.get("directory", "journal-benchmark"));
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                throw new IOException("Cannot create " + directory.getAbsolutePath());
+            }
+            //the first run only warms up the event path
+            run(map, events, interval, null);
+            double plain = run(map, events, interval, null);
+            double journaled = run(map, events, interval, new File(directory, "benchmark.journal"));
+            Log.info(TAG, String.format("without journal: %.0f events/s", plain));
+            Log.info(TAG, String.format("with journal: %.0f events/s (%.1f%%)", journaled, journaled * 100 / plain));
+        } catch (Exception ex) {
+            Log.error(TAG, "Failed running the benchmark", ex);
+            System.exit(-1);
+        }
+    }
+
+    private static Map loadMap(File map_file) throws Exception {
+        DataInputStream input = new DataInputStream(new FileInputStream(map_file));
+        try {
+            return MapFactory.createMap(input);
+        } finally {
+            input.close();
+        }
+    }
+
+    /**
+     * @return the events executed per second
+     */
+    private static double run(Map map, int events, final long interval, File file) throws Exception {
+        Room room = new Room(1, "benchmark", map, 1000);
+        room.setEventLog(new RoomEventLog(4096));
+        room.setPlayerType(0, Player.REMOTE);
+        room.setPlayerType(1, Player.REMOTE);
+        room.startGame();
+        final RoomJournal journal = file == null ? null : new RoomJournal(file,
+                new JournalCheckpoint(room.getRoomID(), room.getRoomName(), "benchmark", null, 4, room.getState()),
+                new SeatTable(new String[4], new String[4], -1));
+        final AtomicBoolean running = new AtomicBoolean(true);
+        final long[] flush_stats = new long[3];
+        Thread flusher = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (running.get()) {
+                    BotClient.sleep(interval);
+                    flush(journal, flush_stats);
+                }
+                flush(journal, flush_stats);
+            }
+        }, "journal-flusher");
+        if (journal != null) {
+            flusher.start();
+        }
+        long start_time = System.nanoTime();
+        for (int i = 0; i < events; i++) {
+            GameEvent event = GameEvent.create(GameEvent.MANAGER_STATE_SYNC, i & 1);
+            room.replayGameEvent(event);
+            if (journal != null) {
+                journal.append(event);
+            }
+        }
+        long elapsed = System.nanoTime() - start_time;
+        if (journal != null) {
+            running.set(false);
+            flusher.join();
+            Log.info(TAG, String.format("%d flushes, %d bytes, %.2f ms per flush",
+                    flush_stats[0], flush_stats[1], flush_stats[0] == 0 ? 0 : flush_stats[2] / 1e6 / flush_stats[0]));
+            journal.delete();
+        }
+        return events * 1e9 / elapsed;
+    }
+
+    private static void flush(RoomJournal journal, long[] flush_stats) {
+        try {
+            long start_time = System.nanoTime();
+            int bytes = journal.flush();
+            if (bytes > 0) {
+                flush_stats[0]++;
+                flush_stats[1] += bytes;
+                flush_stats[2] += System.nanoTime() - start_time;
+            }
+        } catch (IOException ex) {
+            Log.error(TAG, "Exception occurred while flushing", ex);
+        }
+    }
+
+}
@@ -0,0 +1,204 @@
+package net.toyknight.aeii.server.loadtest;
+
+import com.badlogic.gdx.utils.ObjectMap;
+import com.esotericsoftware.minlog.Log;
+import net.toyknight.aeii.AEIIException;
+import net.toyknight.aeii.GameContext;
+import net.toyknight.aeii.entity.Map;
+import net.toyknight.aeii.utils.MD5Converter;
+import net.toyknight.aeii.utils.MapFactory;
+import net.toyknight.aeii.utils.TileFactory;
+import net.toyknight.aeii.utils.UnitFactory;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Drives a running server with headless bot clients and reports what they observe.
+ * <p>
+ * Usage: LoadGenerator [-host 127.0.0.1] [-port 5438] [-clients 50] [-scenario lobby|chat|game]
+ * [-duration 60] [-ramp 10] [-map map_file] [-think 500] [-rate 2] [-turns 20] [-compression true]
+ * [-output loadtest.json]
+ * <p>
+ * Durations are in seconds, the think time is in milliseconds and the rate is in chat messages
+ * per second per bot. The lobby and game scenarios need a map file. Only servers on the loopback
+ * interface can be targeted.
+ *
+ * @author toyknight 10/17/2026.
+ */
+public class LoadGenerator {
+
+    private static final String TAG = "LOAD GENERATOR";
+
+    public static final long PROGRESS_INTERVAL = 5000;
+
+    private final ObjectMap<String, String> arguments;
+
+    private final LoadReport report = new LoadReport();
+
+    private final AtomicInteger active_bots = new AtomicInteger(0);
+
+    private String host;
+
+    private String verification_string;
+
+    private Scenario scenario;
+
+    public LoadGenerator(ObjectMap<String, String> arguments) {
+        this.arguments = arguments;
+    }
+
+    public static void main(String[] args) {
+        try {
+            new LoadGenerator(parseArguments(args)).run();
+        } catch (Exception ex) {
+            Log.error(TAG, "Failed running the load test", ex);
+            System.exit(-1);
+        }
+    }
+
+    private static ObjectMap<String, String> parseArguments(String[] args) {
+        ObjectMap<String, String> arguments = new ObjectMap<String, String>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (args[i].startsWith("-")) {
+                arguments.put(args[i].substring(1), args[i + 1]);
+            } else {
+                throw new IllegalArgumentException("Illegal argument: " + args[i]);
+            }
+        }
+        return arguments;
+    }
+
+    private String getString(String name, String default_value) {
+        return arguments.get(name, default_value);
+    }
+
+    private int getInt(String name, int default_value) {
+        return arguments.containsKey(name) ? Integer.parseInt(arguments.get(name)) : default_value;
+    }
+
+    public void initialize() throws AEIIException, IOException {
+        host = getString("host", "127.0.0.1");
+        //the bots flood whatever they connect to, so they never leave this machine
+        if (!InetAddress.getByName(host).isLoopbackAddress()) {
+            throw new IllegalArgumentException("Not a loopback host: " + host);
+        }
+        UnitFactory.loadUnitData();
+        TileFactory.loadTileData();
+        verification_string = new MD5Converter().toMD5(
+                TileFactory.getVerificationString() + UnitFactory.getVerificationString() + GameContext.INTERNAL_VERSION);
+        String scenario_name = getString("scenario", "lobby");
+        if ("chat".equals(scenario_name)) {
+            scenario = new ChatFloodScenario(getInt("rate", 2));
+        } else {
+            String map_path = getString("map", null);
+            if (map_path == null) {
+                throw new IllegalArgumentException("The " + scenario_name + " scenario needs a map file");
+            }
+            File map_file = new File(map_path);
+            Map map = loadMap(map_file);
+            String map_name = map_file.getName().replaceAll("\\.aem$", "");
+            if ("lobby".equals(scenario_name)) {
+                scenario = new LobbyChurnScenario(map, map_name, getInt("think", 500));
+            } else if ("game".equals(scenario_name)) {
+                scenario = new GameScenario(report, map, map_name, getInt("turns", 20));
+            } else {
+                throw new IllegalArgumentException("Undefined scenario: " + scenario_name);
+            }
+        }
+    }
+
+    private Map loadMap(File map_file) throws AEIIException, IOException {
+        DataInputStream input = new DataInputStream(new FileInputStream(map_file));
+        try {
+            return MapFactory.createMap(input);
+        } finally {
+            input.close();
+        }
+    }
+
+    public void run() throws AEIIException, IOException {
+        initialize();
+        int clients = getInt("clients", 50);
+        long duration = getInt("duration", 60) * 1000L;
+        long ramp = getInt("ramp", 10) * 1000L;
+        long deadline = System.currentTimeMillis() + duration;
+        Log.info(TAG, String.format("Starting %d bots against %s:%d",
+                clients, host, getInt("port", 5438)));
+        Thread[] threads = new Thread[clients];
+        for (int index = 0; index < clients; index++) {
+            threads[index] = new Thread(new BotTask(index, deadline), "bot-" + index);
+            threads[index].setDaemon(true);
+            threads[index].start();
+            if (clients > 1) {
+                BotClient.sleep(ramp / clients);
+            }
+        }
+        while (System.currentTimeMillis() < deadline) {
+            BotClient.sleep(Math.min(PROGRESS_INTERVAL, Math.max(1, deadline - System.currentTimeMillis())));
+            report.printProgress(active_bots.get());
+        }
+        for (Thread thread : threads) {
+            try {
+                thread.join(BotClient.RESPONSE_TIMEOUT);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        report.printSummary();
+        report.dump(new File(getString("output", "loadtest.json")));
+    }
+
+    private class BotTask implements Runnable {
+
+        private final int index;
+
+        private final long deadline;
+
+        public BotTask(int index, long deadline) {
+            this.index = index;
+            this.deadline = deadline;
+        }
+
+        @Override
+        public void run() {
+            int connections = 0;
+            while (System.currentTimeMillis() < deadline) {
+                BotClient bot = new BotClient("bot-" + index, report);
+                bot.setCompression(Boolean.parseBoolean(getString("compression", "true")));
+                try {
+                    if (connections++ > 0) {
+                        report.count("bots.reconnects");
+                    }
+                    if (bot.connect(host, getInt("port", 5438), verification_string)) {
+                        active_bots.incrementAndGet();
+                        try {
+                            scenario.run(bot, index, deadline);
+                        } finally {
+                            active_bots.decrementAndGet();
+                        }
+                    } else {
+                        report.onError("authentication");
+                        BotClient.sleep(1000);
+                    }
+                } catch (IOException ex) {
+                    report.onError("connection");
+                    BotClient.sleep(1000);
+                } catch (Exception ex) {
+                    Log.error(TAG, String.format("Exception occurred in bot-%d", index), ex);
+                    report.onError("exception");
+                    BotClient.sleep(1000);
+                } finally {
+                    bot.close();
+                }
+            }
+        }
+
+    }
+
+}
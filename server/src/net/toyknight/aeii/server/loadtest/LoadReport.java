@@ -0,0 +1,145 @@
+package net.toyknight.aeii.server.loadtest;
+
+import com.badlogic.gdx.utils.Array;
+import com.esotericsoftware.minlog.Log;
+import net.toyknight.aeii.server.RequestHandler;
+import net.toyknight.aeii.server.metrics.Histogram;
+import net.toyknight.aeii.server.metrics.MetricsRegistry;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+
+/**
+ * Collects what the bot clients of a load test observe: request latency by operation, chat delivery
+ * latency, timeouts, errors and the cheating reports sent by the server.
+ *
+ * @author toyknight 10/17/2026.
+ */
+public class LoadReport {
+
+    private static final String TAG = "LOAD REPORT";
+
+    public static final String CHAT_PREFIX = "load:";
+
+    private final MetricsRegistry metrics = new MetricsRegistry();
+
+    private final long start_time = System.currentTimeMillis();
+
+    private long last_report_time = start_time;
+
+    private long last_request_count = 0;
+
+    public MetricsRegistry getMetrics() {
+        return metrics;
+    }
+
+    public void count(String name) {
+        metrics.getCounter(name).increment();
+    }
+
+    public void count(String name, long delta) {
+        metrics.getCounter(name).add(delta);
+    }
+
+    public long get(String name) {
+        return metrics.getCounter(name).get();
+    }
+
+    public void onResponse(int operation, long nanos) {
+        metrics.getHistogram("request." + RequestHandler.getOperationName(operation)).record(nanos);
+        count("requests");
+    }
+
+    public void onTimeout(int operation) {
+        count("requests.timeouts");
+        count("requests.timeouts." + RequestHandler.getOperationName(operation));
+    }
+
+    public void onRejected(int operation) {
+        count("requests.rejected");
+        count("requests.rejected." + RequestHandler.getOperationName(operation));
+    }
+
+    public void onError(String error) {
+        count("errors");
+        count("errors." + error);
+    }
+
+    public void onMessageReceived(String username, String message) {
+        count("messages.received");
+        if ("Server".equals(username) && "/cheating".equals(message)) {
+            count("cheating");
+        } else if (message.startsWith(CHAT_PREFIX)) {
+            try {
+                long sent = Long.parseLong(message.substring(CHAT_PREFIX.length()));
+                metrics.getHistogram("message.delivery").record(System.nanoTime() - sent);
+            } catch (NumberFormatException ignored) {
+            }
+        }
+    }
+
+    /**
+     * @return a chat message that carries its sending time, so its receivers can tell the delivery latency
+     */
+    public static String createChatMessage() {
+        return CHAT_PREFIX + System.nanoTime();
+    }
+
+    public long getElapsedTime() {
+        return System.currentTimeMillis() - start_time;
+    }
+
+    public void printProgress(int bots) {
+        long now = System.currentTimeMillis();
+        long requests = get("requests");
+        double rate = (requests - last_request_count) * 1000.0 / Math.max(1, now - last_report_time);
+        last_report_time = now;
+        last_request_count = requests;
+        Log.info(TAG, String.format(
+                "%ds: %d bots, %.1f req/s, %d timeouts, %d errors, %d games finished, %d cheating",
+                getElapsedTime() / 1000, bots, rate,
+                get("requests.timeouts"), get("errors"), get("games.finished"), get("cheating")));
+    }
+
+    public void printSummary() {
+        double seconds = Math.max(1, getElapsedTime()) / 1000.0;
+        JSONObject snapshot = metrics.createSnapshot();
+        Log.info(TAG, String.format("Finished in %.1fs", seconds));
+        Log.info(TAG, String.format("Throughput: %.1f requests/s, %.1f messages received/s, %.1f game events sent/s",
+                get("requests") / seconds, get("messages.received") / seconds, get("events.sent") / seconds));
+        JSONObject histograms = snapshot.getJSONObject("histograms");
+        for (String name : sort(histograms)) {
+            Histogram histogram = metrics.getHistogram(name);
+            Log.info(TAG, String.format("%-32s count=%d p50=%.3fms p99=%.3fms max=%.3fms",
+                    name, histogram.getCount(),
+                    histogram.getPercentileNanos(0.5) / 1000000.0,
+                    histogram.getPercentileNanos(0.99) / 1000000.0,
+                    histogram.getMaxNanos() / 1000000.0));
+        }
+        JSONObject counters = snapshot.getJSONObject("counters");
+        for (String name : sort(counters)) {
+            Log.info(TAG, String.format("%-32s %d", name, counters.getLong(name)));
+        }
+    }
+
+    public void dump(File file) {
+        try {
+            metrics.dump(file);
+        } catch (IOException ex) {
+            Log.error(TAG, "Exception occurred while writing the report", ex);
+        }
+    }
+
+    private Array<String> sort(JSONObject json) {
+        Array<String> names = new Array<String>();
+        Iterator<?> iterator = json.keys();
+        while (iterator.hasNext()) {
+            names.add((String) iterator.next());
+        }
+        names.sort();
+        return names;
+    }
+
+}
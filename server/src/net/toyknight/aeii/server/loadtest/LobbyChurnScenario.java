@@ -0,0 +1,74 @@
+package net.toyknight.aeii.server.loadtest;
+
+import net.toyknight.aeii.entity.Map;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.Random;
+
+/**
+ * Every bot subscribes to the lobby, lists the rooms, then either joins an open room or creates
+ * one of its own and leaves it again, over and over. Each round trip changes the room list, so
+ * the subscribers see a steady stream of lobby updates.
+ *
+ * @author toyknight 10/17/2026.
+ */
+public class LobbyChurnScenario implements Scenario {
+
+    private final Map map;
+
+    private final JSONObject map_json;
+
+    private final String map_name;
+
+    private final long think_time;
+
+    public LobbyChurnScenario(Map map, String map_name, long think_time) {
+        this.map = map;
+        this.map_json = map.toJson();
+        this.map_name = map_name;
+        this.think_time = think_time;
+    }
+
+    @Override
+    public void run(BotClient bot, int index, long deadline) {
+        Random random = new Random(index);
+        while (bot.isConnected() && System.currentTimeMillis() < deadline) {
+            //leaving the lobby drops the subscription, so subscribe again on every return like the lobby screen
+            if (!bot.requestLobbySubscription()) {
+                return;
+            }
+            JSONArray rooms = bot.requestRoomList();
+            if (rooms == null) {
+                return;
+            }
+            long room_id = findOpenRoom(rooms, random);
+            if (room_id >= 0 && random.nextBoolean()) {
+                if (bot.requestJoinRoom(room_id) != null) {
+                    bot.leaveRoom();
+                }
+            } else {
+                if (bot.requestCreateRoom(map_name, map_json, map.getPlayerCount(), 20, 1000) != null) {
+                    BotClient.sleep(think_time);
+                    bot.leaveRoom();
+                }
+            }
+            BotClient.sleep(think_time);
+        }
+    }
+
+    private long findOpenRoom(JSONArray rooms, Random random) {
+        int count = rooms.length();
+        if (count > 0) {
+            int start = random.nextInt(count);
+            for (int i = 0; i < count; i++) {
+                JSONObject room = rooms.getJSONObject((start + i) % count);
+                if (room.getBoolean("open") && !room.getBoolean("requires_password") && room.getInt("remaining") > 0) {
+                    return room.getLong("room_id");
+                }
+            }
+        }
+        return -1;
+    }
+
+}
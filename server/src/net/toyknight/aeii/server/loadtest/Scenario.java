@@ -0,0 +1,15 @@
+package net.toyknight.aeii.server.loadtest;
+
+/**
+ * @author toyknight 10/17/2026.
+ */
+public interface Scenario {
+
+    /**
+     * Drives an authenticated bot until the deadline or until its connection is lost.
+     *
+     * @param index the index of the bot, which stays the same when the bot reconnects
+     */
+    void run(BotClient bot, int index, long deadline);
+
+}
@@ -1,7 +1,9 @@
 package net.toyknight.aeii.server.managers;
 
-import com.badlogic.gdx.utils.ObjectSet;
+import com.badlogic.gdx.utils.Array;
 import net.toyknight.aeii.network.entity.MapSnapshot;
+import net.toyknight.aeii.server.database.ConnectionPool;
+import net.toyknight.aeii.server.database.PooledConnection;
 
 import java.sql.*;
 
@@ -10,93 +12,200 @@ import java.sql.*;
  */
 public class DatabaseManager {
 
-    private Connection connection;
+    private ConnectionPool pool;
 
-    public void connect(String host, String name, String username, String password)
-            throws SQLException, ClassNotFoundException {
-        connection = DriverManager.getConnection(String.format(
+    public static String createMySQLUrl(String host, String name, String username, String password) {
+        return String.format(
                 "jdbc:mysql://%s/%s?user=%s&password=%s&useUnicode=true&characterEncoding=UTF-8",
-                host, name, username, password));
+                host, name, username, password);
     }
 
-    private Connection getConnection() {
-        return connection;
+    public void connect(String url, int pool_size) throws SQLException {
+        pool = new ConnectionPool(url, pool_size);
+        pool.initialize();
     }
 
-    public int addMap(int capacity, String filename, String author, boolean symmetric) throws SQLException {
-        PreparedStatement statement = getConnection().prepareStatement(
-                "INSERT INTO maps (capacity, filename, author, symmetric) VALUES (?, ?, ?, ?)");
-        statement.setInt(1, capacity);
-        statement.setString(2, filename);
-        statement.setString(3, author);
-        statement.setInt(4, symmetric ? 1 : 0);
-        statement.executeUpdate();
+    public ConnectionPool getConnectionPool() {
+        return pool;
+    }
 
-        statement = getConnection().prepareStatement("SELECT map_id FROM maps WHERE filename = ? AND author = ?");
-        statement.setString(1, filename);
-        statement.setString(2, author);
-        ResultSet result = statement.executeQuery();
-        return result.next() ? result.getInt("map_id") : -1;
+    private <T> T execute(Operation<T> operation) throws SQLException {
+        PooledConnection connection = pool.acquire();
+        try {
+            return operation.execute(connection);
+        } catch (SQLException ex) {
+            if (!connection.isValid(ConnectionPool.VALIDATION_TIMEOUT)) {
+                connection.invalidate();
+            }
+            throw ex;
+        } finally {
+            pool.release(connection);
+        }
     }
 
-    public boolean removeMap(int map_id) throws SQLException {
-        PreparedStatement statement = getConnection().prepareStatement("DELETE FROM maps WHERE map_id = ?");
-        statement.setInt(1, map_id);
-        return statement.executeUpdate() > 0;
+    private <T> T executeTransaction(Operation<T> operation) throws SQLException {
+        PooledConnection connection = pool.acquire();
+        try {
+            connection.getConnection().setAutoCommit(false);
+            try {
+                T result = operation.execute(connection);
+                connection.getConnection().commit();
+                return result;
+            } catch (SQLException ex) {
+                connection.getConnection().rollback();
+                throw ex;
+            } catch (RuntimeException ex) {
+                connection.getConnection().rollback();
+                throw ex;
+            } finally {
+                connection.getConnection().setAutoCommit(true);
+            }
+        } catch (SQLException ex) {
+            if (!connection.isValid(ConnectionPool.VALIDATION_TIMEOUT)) {
+                connection.invalidate();
+            }
+            throw ex;
+        } finally {
+            pool.release(connection);
+        }
     }
 
-    public boolean changeMapAuthor(int map_id, String author) throws SQLException {
-        PreparedStatement statement = getConnection().prepareStatement("UPDATE maps SET author = ? WHERE map_id = ?");
-        statement.setString(1, author);
-        statement.setInt(2, map_id);
-        return statement.executeUpdate() > 0;
+    public int addMap(final int capacity, final String filename, final String author, final boolean symmetric)
+            throws SQLException {
+        return execute(new Operation<Integer>() {
+            @Override
+            public Integer execute(PooledConnection connection) throws SQLException {
+                return insertMap(connection, capacity, filename, author, symmetric);
+            }
+        });
     }
 
-    public boolean changeMapFilename(int map_id, String filename) throws SQLException {
-        PreparedStatement statement = getConnection().prepareStatement("UPDATE maps SET filename = ? WHERE map_id = ?");
-        statement.setString(1, filename);
-        statement.setInt(2, map_id);
-        return statement.executeUpdate() > 0;
+    /**
+     * Adds the map unless a map with the same filename and author exists, in one transaction.
+     *
+     * @return the id of the new map, or -1 if the map exists
+     */
+    public int addMapIfAbsent(final int capacity, final String filename, final String author, final boolean symmetric)
+            throws SQLException {
+        return executeTransaction(new Operation<Integer>() {
+            @Override
+            public Integer execute(PooledConnection connection) throws SQLException {
+                if (countMaps(connection, filename, author) > 0) {
+                    return -1;
+                } else {
+                    return insertMap(connection, capacity, filename, author, symmetric);
+                }
+            }
+        });
     }
 
-    public ObjectSet<MapSnapshot> getMapSnapshots(String author, boolean symmetric) throws SQLException {
-        String sql = symmetric ?
-                "SELECT * FROM maps WHERE author = ? AND symmetric = 1" :
-                "SELECT * FROM maps WHERE author = ?";
-        PreparedStatement statement = getConnection().prepareStatement(sql);
-        statement.setString(1, author);
-        ResultSet result = statement.executeQuery();
-        ObjectSet<MapSnapshot> snapshots = new ObjectSet<MapSnapshot>();
-        while (result.next()) {
-            snapshots.add(new MapSnapshot(
-                    result.getInt("map_id"),
-                    result.getInt("capacity"),
-                    result.getString("filename"),
-                    result.getString("author")));
-        }
-        return snapshots;
+    public boolean removeMap(final int map_id) throws SQLException {
+        return execute(new Operation<Boolean>() {
+            @Override
+            public Boolean execute(PooledConnection connection) throws SQLException {
+                PreparedStatement statement = connection.prepare("DELETE FROM maps WHERE map_id = ?");
+                statement.setInt(1, map_id);
+                return statement.executeUpdate() > 0;
+            }
+        });
     }
 
-    public ObjectSet<String> getAuthors(boolean symmetric) throws SQLException {
-        String sql = symmetric ?
-                "SELECT DISTINCT author FROM (SELECT * FROM maps WHERE symmetric = 1) AS symmetric_maps" :
-                "SELECT DISTINCT author FROM maps";
-        PreparedStatement statement = getConnection().prepareStatement(sql);
-        ResultSet result = statement.executeQuery();
-        ObjectSet<String> authors = new ObjectSet<String>();
-        while (result.next()) {
-            authors.add(result.getString("author"));
+    /**
+     * Changes the author and the filename of a map in one transaction. A null value is left unchanged.
+     */
+    public boolean updateMap(final int map_id, final String author, final String filename) throws SQLException {
+        return executeTransaction(new Operation<Boolean>() {
+            @Override
+            public Boolean execute(PooledConnection connection) throws SQLException {
+                boolean updated = true;
+                if (author != null) {
+                    PreparedStatement statement = connection.prepare("UPDATE maps SET author = ? WHERE map_id = ?");
+                    statement.setString(1, author);
+                    statement.setInt(2, map_id);
+                    updated = statement.executeUpdate() > 0;
+                }
+                if (filename != null) {
+                    PreparedStatement statement = connection.prepare("UPDATE maps SET filename = ? WHERE map_id = ?");
+                    statement.setString(1, filename);
+                    statement.setInt(2, map_id);
+                    updated &= statement.executeUpdate() > 0;
+                }
+                return updated;
+            }
+        });
+    }
+
+    /**
+     * @return every map in the catalog, or only the symmetric maps
+     */
+    public Array<MapSnapshot> getMapSnapshots(final boolean symmetric) throws SQLException {
+        return execute(new Operation<Array<MapSnapshot>>() {
+            @Override
+            public Array<MapSnapshot> execute(PooledConnection connection) throws SQLException {
+                String sql = symmetric ?
+                        "SELECT map_id, capacity, filename, author FROM maps WHERE symmetric = 1" :
+                        "SELECT map_id, capacity, filename, author FROM maps";
+                ResultSet result = connection.prepare(sql).executeQuery();
+                try {
+                    Array<MapSnapshot> snapshots = new Array<MapSnapshot>();
+                    while (result.next()) {
+                        snapshots.add(new MapSnapshot(
+                                result.getInt("map_id"),
+                                result.getInt("capacity"),
+                                result.getString("filename"),
+                                result.getString("author")));
+                    }
+                    return snapshots;
+                } finally {
+                    result.close();
+                }
+            }
+        });
+    }
+
+    public boolean isMapExisting(final String filename, final String author) throws SQLException {
+        return execute(new Operation<Boolean>() {
+            @Override
+            public Boolean execute(PooledConnection connection) throws SQLException {
+                return countMaps(connection, filename, author) == 1;
+            }
+        });
+    }
+
+    private int insertMap(PooledConnection connection, int capacity, String filename, String author, boolean symmetric)
+            throws SQLException {
+        PreparedStatement statement = connection.prepareWithKeys(
+                "INSERT INTO maps (capacity, filename, author, symmetric) VALUES (?, ?, ?, ?)");
+        statement.setInt(1, capacity);
+        statement.setString(2, filename);
+        statement.setString(3, author);
+        statement.setInt(4, symmetric ? 1 : 0);
+        statement.executeUpdate();
+        ResultSet keys = statement.getGeneratedKeys();
+        try {
+            return keys.next() ? keys.getInt(1) : -1;
+        } finally {
+            keys.close();
         }
-        return authors;
     }
 
-    public boolean isMapExisting(String filename, String author) throws SQLException {
-        PreparedStatement statement = getConnection().prepareStatement(
+    private int countMaps(PooledConnection connection, String filename, String author) throws SQLException {
+        PreparedStatement statement = connection.prepare(
                 "SELECT count(map_id) FROM maps WHERE filename = ? AND author = ?");
         statement.setString(1, filename);
         statement.setString(2, author);
         ResultSet result = statement.executeQuery();
-        return result.next() && result.getInt(1) == 1;
+        try {
+            return result.next() ? result.getInt(1) : 0;
+        } finally {
+            result.close();
+        }
+    }
+
+    private interface Operation<T> {
+
+        T execute(PooledConnection connection) throws SQLException;
+
     }
 
 }
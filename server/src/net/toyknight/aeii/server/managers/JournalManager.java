@@ -0,0 +1,214 @@
+package net.toyknight.aeii.server.managers;
+
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.ObjectMap;
+import com.esotericsoftware.minlog.Log;
+import net.toyknight.aeii.server.ServerContext;
+import net.toyknight.aeii.server.entities.Room;
+import net.toyknight.aeii.server.journal.JournalCheckpoint;
+import net.toyknight.aeii.server.journal.RoomJournal;
+import net.toyknight.aeii.server.journal.SeatTable;
+import net.toyknight.aeii.server.metrics.Counter;
+import net.toyknight.aeii.server.metrics.Histogram;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps a journal of every running game and syncs them all to disk at a fixed interval on its own thread,
+ * so that neither the rooms nor the shared scheduler ever wait for the disk.
+ *
+ * @author toyknight 10/17/2026.
+ */
+public class JournalManager {
+
+    private static final String TAG = "JOURNAL MANAGER";
+
+    private static final String EXTENSION = ".journal";
+
+    private final Object JOURNAL_LOCK = new Object();
+
+    private final ObjectMap<Long, RoomJournal> journals = new ObjectMap<Long, RoomJournal>();
+
+    private final ServerContext context;
+
+    private final File directory;
+
+    private final Counter flushes;
+
+    private final Counter flushed_bytes;
+
+    private final Histogram flush_time;
+
+    private ScheduledExecutorService flusher;
+
+    public JournalManager(ServerContext context) {
+        this.context = context;
+        this.directory = new File(context.getConfiguration().getJournalDirectory());
+        this.flushes = context.getMetrics().getCounter("journal.flushes");
+        this.flushed_bytes = context.getMetrics().getCounter("journal.bytes");
+        this.flush_time = context.getMetrics().getHistogram("journal.flush_time");
+    }
+
+    public ServerContext getContext() {
+        return context;
+    }
+
+    public boolean isEnabled() {
+        return getContext().getConfiguration().isJournalEnabled();
+    }
+
+    public void start() throws IOException {
+        if (isEnabled()) {
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                throw new IOException("Cannot create journal directory " + directory.getAbsolutePath());
+            }
+            flusher = Executors.newSingleThreadScheduledExecutor();
+            long interval = Math.max(1, getContext().getConfiguration().getJournalSyncInterval());
+            flusher.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    flush();
+                }
+            }, interval, interval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public int getJournalCount() {
+        synchronized (JOURNAL_LOCK) {
+            return journals.size;
+        }
+    }
+
+    /**
+     * Starts the journal of a game from its current state, replacing any journal the room had.
+     */
+    public void openJournal(Room room, JournalCheckpoint checkpoint, SeatTable seats) {
+        if (isEnabled()) {
+            RoomJournal journal = new RoomJournal(getJournalFile(room.getRoomID()), checkpoint, seats);
+            RoomJournal previous;
+            synchronized (JOURNAL_LOCK) {
+                previous = journals.put(room.getRoomID(), journal);
+            }
+            room.setJournal(journal);
+            if (previous != null && previous != journal) {
+                previous.delete();
+            }
+        }
+    }
+
+    /**
+     * @return whether the journal of the room has grown enough to be compacted into a new checkpoint
+     */
+    public boolean needsCheckpoint(Room room) {
+        RoomJournal journal = room.getJournal();
+        return journal != null && (journal.isDetached()
+                || journal.getEventsSinceCheckpoint() >= getContext().getConfiguration().getJournalCheckpointEvents());
+    }
+
+    public void deleteJournal(Room room) {
+        RoomJournal journal;
+        synchronized (JOURNAL_LOCK) {
+            journal = journals.remove(room.getRoomID());
+        }
+        room.setJournal(null);
+        if (journal != null) {
+            journal.delete();
+        }
+    }
+
+    /**
+     * Writes out and syncs every journal, the group commit of all the events since the last flush.
+     */
+    public void flush() {
+        Array<RoomJournal> candidates = new Array<RoomJournal>();
+        synchronized (JOURNAL_LOCK) {
+            for (RoomJournal journal : journals.values()) {
+                candidates.add(journal);
+            }
+        }
+        for (RoomJournal journal : candidates) {
+            try {
+                long start_time = System.nanoTime();
+                int bytes = journal.flush();
+                if (bytes > 0) {
+                    flushes.increment();
+                    flushed_bytes.add(bytes);
+                    flush_time.record(System.nanoTime() - start_time);
+                }
+            } catch (IOException ex) {
+                Log.error(TAG, "Exception occurred while flushing " + journal.getFile().getName(), ex);
+            } catch (RuntimeException ex) {
+                //one broken journal must not stop the others from being synced
+                Log.error(TAG, "Exception occurred while flushing " + journal.getFile().getName(), ex);
+            }
+        }
+    }
+
+    /**
+     * Stops the periodic flush after a last one.
+     */
+    public void close() {
+        if (flusher != null) {
+            flusher.shutdown();
+            try {
+                flusher.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException ignored) {
+            }
+            flush();
+        }
+    }
+
+    /**
+     * Reads the journals left by the last run. Journals that cannot be read are removed, the others stay
+     * until the recovered room opens its new journal, which atomically replaces the old one.
+     */
+    public Array<RoomJournal.Recovery> readJournals() {
+        Array<RoomJournal.Recovery> recoveries = new Array<RoomJournal.Recovery>();
+        if (!isEnabled()) {
+            return recoveries;
+        }
+        File[] files = directory.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.endsWith(EXTENSION);
+            }
+        });
+        if (files == null) {
+            return recoveries;
+        }
+        for (File file : files) {
+            RoomJournal.Recovery recovery = null;
+            try {
+                recovery = RoomJournal.read(file);
+            } catch (IOException ex) {
+                Log.error(TAG, "Exception occurred while reading " + file.getName(), ex);
+            } catch (RuntimeException ex) {
+                Log.error(TAG, "Exception occurred while reading " + file.getName(), ex);
+            }
+            if (recovery == null) {
+                Log.info(TAG, String.format("Discarding unreadable journal %s", file.getName()));
+                file.delete();
+            } else {
+                recoveries.add(recovery);
+            }
+        }
+        return recoveries;
+    }
+
+    /**
+     * Removes the journal of a room that is not recovered.
+     */
+    public void discardJournal(long room_id) {
+        getJournalFile(room_id).delete();
+    }
+
+    private File getJournalFile(long room_id) {
+        return new File(directory, room_id + EXTENSION);
+    }
+
+}
@@ -0,0 +1,167 @@
+package net.toyknight.aeii.server.managers;
+
+import static net.toyknight.aeii.network.NetworkConstants.*;
+
+import com.badlogic.gdx.utils.ObjectMap;
+import com.badlogic.gdx.utils.ObjectSet;
+import net.toyknight.aeii.server.ServerContext;
+import net.toyknight.aeii.server.entities.Player;
+import net.toyknight.aeii.server.utils.OutboundPacket;
+import net.toyknight.aeii.server.utils.PacketBuilder;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Pushes lobby changes to the players subscribed to the lobby. Changes are collected and
+ * sent at most once per flush interval, so a burst of room and player changes turns into
+ * a single LOBBY_UPDATE notification that is encoded once for every subscriber.
+ * <p>
+ * It also keeps the index of the authenticated players in the lobby, so lobby messages and the
+ * idle player list never go through every connected player.
+ *
+ * @author toyknight 10/17/2026.
+ */
+public class LobbyManager {
+
+    public static final long FLUSH_INTERVAL = 500;
+
+    private final Object LOBBY_LOCK = new Object();
+
+    private final ServerContext context;
+
+    private final ObjectMap<Integer, Player> subscribers = new ObjectMap<Integer, Player>();
+
+    private final ConcurrentHashMap<Integer, Player> lobby_players = new ConcurrentHashMap<Integer, Player>();
+
+    private OutboundPacket idle_player_list;
+
+    private final ObjectMap<Integer, JSONObject> joined_players = new ObjectMap<Integer, JSONObject>();
+
+    private final ObjectSet<Integer> left_players = new ObjectSet<Integer>();
+
+    private long published_version = 0;
+
+    public LobbyManager(ServerContext context) {
+        this.context = context;
+    }
+
+    public ServerContext getContext() {
+        return context;
+    }
+
+    /**
+     * @return the full room list the subscriber starts from
+     */
+    public OutboundPacket subscribe(Player player) {
+        synchronized (LOBBY_LOCK) {
+            subscribers.put(player.getID(), player);
+        }
+        return getContext().getRoomManager().getDirectory().getRoomList();
+    }
+
+    public void unsubscribe(Player player) {
+        synchronized (LOBBY_LOCK) {
+            subscribers.remove(player.getID());
+        }
+    }
+
+    public int getSubscriberCount() {
+        synchronized (LOBBY_LOCK) {
+            return subscribers.size;
+        }
+    }
+
+    /**
+     * @return a live view of the authenticated players in the lobby, not a copy
+     */
+    public Collection<Player> getLobbyPlayers() {
+        return lobby_players.values();
+    }
+
+    public int getLobbyPlayerCount() {
+        return lobby_players.size();
+    }
+
+    public void onPlayerEnterLobby(Player player) {
+        synchronized (LOBBY_LOCK) {
+            lobby_players.put(player.getID(), player);
+            idle_player_list = null;
+            left_players.remove(player.getID());
+            joined_players.put(player.getID(), player.createSnapshot().toJson());
+        }
+        //the player may have disconnected meanwhile, after the disconnection took it out of the lobby
+        if (!getContext().getPlayerManager().isRegistered(player)) {
+            onPlayerLeaveLobby(player);
+        }
+    }
+
+    public void onPlayerLeaveLobby(Player player) {
+        synchronized (LOBBY_LOCK) {
+            subscribers.remove(player.getID());
+            if (lobby_players.remove(player.getID()) == null) {
+                return;
+            }
+            idle_player_list = null;
+            if (joined_players.remove(player.getID()) == null) {
+                left_players.add(player.getID());
+            }
+        }
+    }
+
+    /**
+     * @return the response listing the players in the lobby, encoded once and shared until the lobby changes
+     */
+    public OutboundPacket getIdlePlayerList() {
+        synchronized (LOBBY_LOCK) {
+            if (idle_player_list == null) {
+                JSONObject response = PacketBuilder.create(RESPONSE);
+                JSONArray players = new JSONArray();
+                for (Player player : lobby_players.values()) {
+                    players.put(player.createSnapshot().toJson());
+                }
+                response.put("players", players);
+                idle_player_list = new OutboundPacket(response);
+            }
+            return idle_player_list;
+        }
+    }
+
+    public void flush() {
+        RoomDirectory directory = getContext().getRoomManager().getDirectory();
+        JSONObject notification;
+        Player[] recipients;
+        synchronized (LOBBY_LOCK) {
+            boolean rooms_changed = directory.getVersion() != published_version;
+            if (subscribers.size == 0) {
+                published_version = directory.getVersion();
+                joined_players.clear();
+                left_players.clear();
+                return;
+            }
+            if (!rooms_changed && joined_players.size == 0 && left_players.size == 0) {
+                return;
+            }
+            notification = PacketBuilder.create(NOTIFICATION, LOBBY_UPDATE);
+            notification.put("since", published_version);
+            published_version = directory.writeChanges(notification, published_version);
+            JSONArray joined = new JSONArray();
+            for (JSONObject snapshot : joined_players.values()) {
+                joined.put(snapshot);
+            }
+            JSONArray left = new JSONArray();
+            for (int player_id : left_players) {
+                left.put(player_id);
+            }
+            notification.put("players_joined", joined);
+            notification.put("players_left", left);
+            joined_players.clear();
+            left_players.clear();
+            recipients = subscribers.values().toArray().toArray(Player.class);
+        }
+        getContext().getNotificationSender().broadcast(recipients, notification);
+    }
+
+}
@@ -1,12 +1,20 @@
 package net.toyknight.aeii.server.managers;
 
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.ObjectMap;
+import com.badlogic.gdx.utils.ObjectSet;
 import com.esotericsoftware.minlog.Log;
 import net.toyknight.aeii.AEIIException;
 import net.toyknight.aeii.entity.Map;
+import net.toyknight.aeii.network.NetworkConstants;
 import net.toyknight.aeii.network.entity.MapSnapshot;
+import net.toyknight.aeii.network.protocol.EncodedObject;
 import net.toyknight.aeii.server.ServerContext;
+import net.toyknight.aeii.server.utils.OutboundPacket;
+import net.toyknight.aeii.server.utils.PacketBuilder;
 import net.toyknight.aeii.utils.MapFactory;
 import org.json.JSONArray;
+import org.json.JSONObject;
 
 import java.io.*;
 import java.sql.SQLException;
@@ -22,14 +30,144 @@ public class MapManager {
 
     private final Object CHANGE_LOCK = new Object();
 
+    private final Object CATALOG_LOCK = new Object();
+
+    private final ObjectMap<Integer, CatalogEntry> catalog = new ObjectMap<Integer, CatalogEntry>();
+
+    private volatile CatalogView catalog_view;
+
+    private final MapPayloadCache payload_cache;
+
     public MapManager(ServerContext context) {
         this.context = context;
+        this.payload_cache = new MapPayloadCache(context.getConfiguration().getMapCacheSize());
     }
 
     public ServerContext getContext() {
         return context;
     }
 
+    /**
+     * Loads the maps table into memory. LIST_MAPS is served from this index afterwards.
+     */
+    public void loadCatalog() throws SQLException {
+        ObjectSet<Integer> symmetric_maps = new ObjectSet<Integer>();
+        for (MapSnapshot snapshot : getContext().getDatabaseManager().getMapSnapshots(true)) {
+            symmetric_maps.add(snapshot.getID());
+        }
+        Array<MapSnapshot> snapshots = getContext().getDatabaseManager().getMapSnapshots(false);
+        synchronized (CATALOG_LOCK) {
+            catalog.clear();
+            for (MapSnapshot snapshot : snapshots) {
+                catalog.put(snapshot.getID(), new CatalogEntry(snapshot, symmetric_maps.contains(snapshot.getID())));
+            }
+            catalog_view = null;
+        }
+        Log.info(TAG, String.format("Loaded %d maps into the catalog", snapshots.size));
+    }
+
+    private void putCatalogEntry(MapSnapshot snapshot, boolean symmetric) {
+        synchronized (CATALOG_LOCK) {
+            catalog.put(snapshot.getID(), new CatalogEntry(snapshot, symmetric));
+            catalog_view = null;
+        }
+    }
+
+    private CatalogEntry removeCatalogEntry(int map_id) {
+        synchronized (CATALOG_LOCK) {
+            catalog_view = null;
+            return catalog.remove(map_id);
+        }
+    }
+
+    private CatalogEntry getCatalogEntry(int map_id) {
+        synchronized (CATALOG_LOCK) {
+            return catalog.get(map_id);
+        }
+    }
+
+    /**
+     * @return the LIST_MAPS response listing the authors that have maps
+     */
+    public OutboundPacket getAuthorList(boolean symmetric) {
+        CatalogView view = getCatalogView();
+        return symmetric ? view.symmetric_author_list : view.author_list;
+    }
+
+    /**
+     * @return the LIST_MAPS response listing the maps of an author
+     */
+    public OutboundPacket getMapList(String author, boolean symmetric) {
+        CatalogView view = getCatalogView();
+        ObjectMap<String, OutboundPacket> map_lists = symmetric ? view.symmetric_map_lists : view.map_lists;
+        return map_lists.get(author.toLowerCase(), view.empty_list);
+    }
+
+    private CatalogView getCatalogView() {
+        CatalogView view = catalog_view;
+        if (view == null) {
+            synchronized (CATALOG_LOCK) {
+                if (catalog_view == null) {
+                    catalog_view = createCatalogView();
+                }
+                view = catalog_view;
+            }
+        }
+        return view;
+    }
+
+    private CatalogView createCatalogView() {
+        ObjectMap<String, JSONArray> maps = new ObjectMap<String, JSONArray>();
+        ObjectMap<String, JSONArray> symmetric_maps = new ObjectMap<String, JSONArray>();
+        for (CatalogEntry entry : catalog.values()) {
+            JSONObject json = entry.snapshot.toJson();
+            addToList(maps, entry.snapshot.getAuthor(), json);
+            if (entry.symmetric) {
+                addToList(symmetric_maps, entry.snapshot.getAuthor(), json);
+            }
+        }
+        return new CatalogView(
+                createMapListResponse(createAuthorList(maps)),
+                createMapListResponse(createAuthorList(symmetric_maps)),
+                createMapListResponses(maps),
+                createMapListResponses(symmetric_maps),
+                createMapListResponse(new JSONArray()));
+    }
+
+    private void addToList(ObjectMap<String, JSONArray> lists, String author, JSONObject json) {
+        String key = author.toLowerCase();
+        JSONArray list = lists.get(key);
+        if (list == null) {
+            list = new JSONArray();
+            lists.put(key, list);
+        }
+        list.put(json);
+    }
+
+    private JSONArray createAuthorList(ObjectMap<String, JSONArray> lists) {
+        JSONArray list = new JSONArray();
+        for (JSONArray maps : lists.values()) {
+            MapSnapshot snapshot = new MapSnapshot(0, "null", maps.getJSONObject(0).getString("author"));
+            snapshot.setDirectory(true);
+            list.put(snapshot.toJson());
+        }
+        return list;
+    }
+
+    private ObjectMap<String, OutboundPacket> createMapListResponses(ObjectMap<String, JSONArray> lists) {
+        ObjectMap<String, OutboundPacket> responses = new ObjectMap<String, OutboundPacket>();
+        for (ObjectMap.Entry<String, JSONArray> entry : lists.entries()) {
+            responses.put(entry.key, createMapListResponse(entry.value));
+        }
+        return responses;
+    }
+
+    private OutboundPacket createMapListResponse(JSONArray maps) {
+        JSONObject response = PacketBuilder.create(NetworkConstants.RESPONSE);
+        response.put("maps", maps);
+        return new OutboundPacket(response);
+    }
+
     public void index() {
         File map_dir = new File("maps");
         File[] map_files = map_dir.listFiles(new MapFileFilter());
@@ -42,8 +180,10 @@ public class MapManager {
                 dis.close();
                 fis.close();
 
-                int id = getContext().getDatabaseManager().addMap(
-                        getCapacity(map), map_file.getName(), map.getAuthor().trim().toLowerCase(), MapFactory.isSymmetric(map));
+                String author = map.getAuthor().trim().toLowerCase();
+                boolean symmetric = MapFactory.isSymmetric(map);
+                int id = getContext().getDatabaseManager().addMap(getCapacity(map), map_file.getName(), author, symmetric);
+                putCatalogEntry(new MapSnapshot(id, getCapacity(map), map_file.getName(), author), symmetric);
                 boolean success = map_file.renameTo(new File("maps-temp/m" + id));
                 if (!success) {
                     Log.error(TAG, "Failed renaming map file: " + map_file.getName());
@@ -55,39 +195,59 @@ public class MapManager {
     }
 
     private void writeMap(File map_file, Map map) throws IOException {
-        FileOutputStream fos = new FileOutputStream(map_file);
+        //map files are read without holding the change lock, so replace them instead of writing in place
+        File temp_file = new File(map_file.getPath() + ".tmp");
+        FileOutputStream fos = new FileOutputStream(temp_file);
         DataOutputStream dos = new DataOutputStream(fos);
         MapFactory.writeMap(map, dos);
         dos.close();
         fos.close();
+        if (!temp_file.renameTo(map_file) && !(map_file.delete() && temp_file.renameTo(map_file))) {
+            throw new IOException("Failed replacing map file: " + map_file.getName());
+        }
     }
 
     private Map readMap(File map_file) throws IOException, AEIIException {
         FileInputStream fis = new FileInputStream(map_file);
-        DataInputStream dis = new DataInputStream(fis);
+        DataInputStream dis = new DataInputStream(new BufferedInputStream(fis));
         Map map = MapFactory.createMap(dis);
         dis.close();
         fis.close();
         return map;
     }
 
-    public Map getMap(int map_id) throws IOException, AEIIException {
-        synchronized (CHANGE_LOCK) {
-            File map_file = new File("maps/m" + map_id);
-            return readMap(map_file);
+    public MapPayloadCache getPayloadCache() {
+        return payload_cache;
+    }
+
+    /**
+     * @return the DOWNLOAD_MAP response carrying the map
+     */
+    public OutboundPacket getMapPayload(int map_id) throws IOException, AEIIException {
+        OutboundPacket payload = payload_cache.get(map_id);
+        if (payload == null) {
+            int generation = payload_cache.getGeneration(map_id);
+            JSONObject response = PacketBuilder.create(NetworkConstants.RESPONSE);
+            response.put("map", new EncodedObject(readMap(new File("maps/m" + map_id))));
+            response.put("approved", true);
+            payload = new OutboundPacket(response);
+            payload_cache.put(map_id, generation, payload);
         }
+        return payload;
     }
 
     public void addMap(Map map, String map_name) throws IOException, SQLException, MapExistingException {
         synchronized (CHANGE_LOCK) {
             String filename = map_name + ".aem";
-            if (getContext().getDatabaseManager().isMapExisting(filename, map.getAuthor())) {
+            String author = map.getAuthor().trim().toLowerCase();
+            boolean symmetric = MapFactory.isSymmetric(map);
+            int map_id = getContext().getDatabaseManager().addMapIfAbsent(getCapacity(map), filename, author, symmetric);
+            if (map_id < 0) {
                 throw new MapExistingException();
             } else {
-                int map_id = getContext().getDatabaseManager().addMap(
-                        getCapacity(map), filename, map.getAuthor().trim().toLowerCase(), MapFactory.isSymmetric(map));
                 File map_file = new File("maps/m" + map_id);
                 writeMap(map_file, map);
+                putCatalogEntry(new MapSnapshot(map_id, getCapacity(map), filename, author), symmetric);
             }
         }
     }
@@ -95,7 +255,13 @@ public class MapManager {
     public boolean removeMap(int map_id) throws SQLException {
         synchronized (CHANGE_LOCK) {
             File map_file = new File("maps/m" + map_id);
-            return getContext().getDatabaseManager().removeMap(map_id) && map_file.delete();
+            if (getContext().getDatabaseManager().removeMap(map_id)) {
+                removeCatalogEntry(map_id);
+                payload_cache.invalidate(map_id);
+                return map_file.delete();
+            } else {
+                return false;
+            }
         }
     }
 
@@ -107,11 +273,18 @@ public class MapManager {
                     Map map = readMap(map_file);
                     map.setAuthor(author);
                     writeMap(map_file, map);
+                    payload_cache.invalidate(map_id);
                     author = author.trim().toLowerCase();
-                    getContext().getDatabaseManager().changeMapAuthor(map_id, author);
                 }
-                if (filename != null) {
-                    getContext().getDatabaseManager().changeMapFilename(map_id, filename);
+                getContext().getDatabaseManager().updateMap(map_id, author, filename);
+                CatalogEntry entry = getCatalogEntry(map_id);
+                if (entry != null) {
+                    MapSnapshot snapshot = new MapSnapshot(
+                            map_id,
+                            entry.snapshot.getCapacity(),
+                            filename == null ? entry.snapshot.getFilename() : filename,
+                            author == null ? entry.snapshot.getAuthor() : author);
+                    putCatalogEntry(snapshot, entry.symmetric);
                 }
                 return true;
             } catch (SQLException ex) {
@@ -120,30 +293,6 @@ public class MapManager {
         }
     }
 
-    public JSONArray getSerializedAuthorList(boolean symmetric) {
-        JSONArray list = new JSONArray();
-        try {
-            for (String author : getContext().getDatabaseManager().getAuthors(symmetric)) {
-                MapSnapshot snapshot = new MapSnapshot(0, "null", author);
-                snapshot.setDirectory(true);
-                list.put(snapshot.toJson());
-            }
-        } catch (SQLException ignored) {
-        }
-        return list;
-    }
-
-    public JSONArray getSerializedMapList(String author, boolean symmetric) {
-        JSONArray list = new JSONArray();
-        try {
-            for (MapSnapshot snapshot : getContext().getDatabaseManager().getMapSnapshots(author, symmetric)) {
-                list.put(snapshot.toJson());
-            }
-        } catch (SQLException ignored) {
-        }
-        return list;
-    }
-
     private int getCapacity(Map map) {
         int player_count = 0;
         for (int team = 0; team < 4; team++) {
@@ -166,4 +315,37 @@ public class MapManager {
     public class MapExistingException extends Exception {
     }
 
+    private static class CatalogEntry {
+
+        private final MapSnapshot snapshot;
+        private final boolean symmetric;
+
+        public CatalogEntry(MapSnapshot snapshot, boolean symmetric) {
+            this.snapshot = snapshot;
+            this.symmetric = symmetric;
+        }
+
+    }
+
+    private static class CatalogView {
+
+        private final OutboundPacket author_list;
+        private final OutboundPacket symmetric_author_list;
+        private final ObjectMap<String, OutboundPacket> map_lists;
+        private final ObjectMap<String, OutboundPacket> symmetric_map_lists;
+        private final OutboundPacket empty_list;
+
+        public CatalogView(OutboundPacket author_list, OutboundPacket symmetric_author_list,
+                           ObjectMap<String, OutboundPacket> map_lists,
+                           ObjectMap<String, OutboundPacket> symmetric_map_lists,
+                           OutboundPacket empty_list) {
+            this.author_list = author_list;
+            this.symmetric_author_list = symmetric_author_list;
+            this.map_lists = map_lists;
+            this.symmetric_map_lists = symmetric_map_lists;
+            this.empty_list = empty_list;
+        }
+
+    }
+
 }
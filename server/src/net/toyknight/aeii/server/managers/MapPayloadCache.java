@@ -0,0 +1,141 @@
+package net.toyknight.aeii.server.managers;
+
+import static net.toyknight.aeii.network.NetworkConstants.*;
+
+import com.badlogic.gdx.utils.ObjectIntMap;
+import net.toyknight.aeii.server.utils.OutboundPacket;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the DOWNLOAD_MAP responses of recently downloaded maps, already encoded for both protocols.
+ * The least recently used maps are evicted once the encoded bytes exceed the capacity.
+ *
+ * @author toyknight 10/17/2026.
+ */
+public class MapPayloadCache {
+
+    private final Object CACHE_LOCK = new Object();
+
+    private final LinkedHashMap<Integer, Entry> entries = new LinkedHashMap<Integer, Entry>(64, 0.75f, true);
+
+    private final ObjectIntMap<Integer> generations = new ObjectIntMap<Integer>();
+
+    private final long capacity;
+
+    private long size;
+
+    private final AtomicLong hits = new AtomicLong(0);
+
+    private final AtomicLong misses = new AtomicLong(0);
+
+    private final AtomicLong evictions = new AtomicLong(0);
+
+    public MapPayloadCache(long capacity) {
+        this.capacity = capacity;
+        this.size = 0;
+    }
+
+    public OutboundPacket get(int map_id) {
+        synchronized (CACHE_LOCK) {
+            Entry entry = entries.get(map_id);
+            if (entry == null) {
+                misses.incrementAndGet();
+                return null;
+            } else {
+                hits.incrementAndGet();
+                return entry.payload;
+            }
+        }
+    }
+
+    /**
+     * @return the generation to pass to {@link #put} after loading the payload of a map
+     */
+    public int getGeneration(int map_id) {
+        synchronized (CACHE_LOCK) {
+            return generations.get(map_id, 0);
+        }
+    }
+
+    /**
+     * Caches a payload unless the map was invalidated while the payload was being loaded.
+     */
+    public void put(int map_id, int generation, OutboundPacket payload) {
+        //encode outside the lock, readers only ever see finished payloads
+        int weight = payload.getEncodedSize(PROTOCOL_JSON) * 2 + payload.getEncodedSize(PROTOCOL_BINARY);
+        if (weight > capacity) {
+            return;
+        }
+        synchronized (CACHE_LOCK) {
+            if (generations.get(map_id, 0) != generation) {
+                return;
+            }
+            Entry previous = entries.put(map_id, new Entry(payload, weight));
+            if (previous != null) {
+                size -= previous.weight;
+            }
+            size += weight;
+            Iterator<Map.Entry<Integer, Entry>> iterator = entries.entrySet().iterator();
+            while (size > capacity && iterator.hasNext()) {
+                size -= iterator.next().getValue().weight;
+                iterator.remove();
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    public void invalidate(int map_id) {
+        synchronized (CACHE_LOCK) {
+            generations.getAndIncrement(map_id, 0, 1);
+            Entry entry = entries.remove(map_id);
+            if (entry != null) {
+                size -= entry.weight;
+            }
+        }
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    public int getEntryCount() {
+        synchronized (CACHE_LOCK) {
+            return entries.size();
+        }
+    }
+
+    public long getSize() {
+        synchronized (CACHE_LOCK) {
+            return size;
+        }
+    }
+
+    public long getCapacity() {
+        return capacity;
+    }
+
+    private static class Entry {
+
+        private final OutboundPacket payload;
+        private final int weight;
+
+        public Entry(OutboundPacket payload, int weight) {
+            this.payload = payload;
+            this.weight = weight;
+        }
+
+    }
+
+}
@@ -2,20 +2,34 @@ package net.toyknight.aeii.server.managers;
 
 import static net.toyknight.aeii.network.NetworkConstants.*;
 
+import com.esotericsoftware.minlog.Log;
+import net.toyknight.aeii.manager.GameEvent;
+import net.toyknight.aeii.network.protocol.EncodedObject;
 import net.toyknight.aeii.server.ServerContext;
 import net.toyknight.aeii.server.entities.Player;
 import net.toyknight.aeii.server.entities.Room;
+import net.toyknight.aeii.server.utils.OutboundPacket;
 import net.toyknight.aeii.server.utils.PacketBuilder;
 import org.json.JSONArray;
 import org.json.JSONObject;
 
+import java.util.concurrent.atomic.AtomicLong;
+
 /**
  * @author toyknight 8/17/2016.
  */
 public class NotificationSender {
 
+    private static final String TAG = "NOTIFICATION SENDER";
+
     private final ServerContext context;
 
+    private final AtomicLong broadcasts = new AtomicLong(0);
+
+    private final AtomicLong saved_encodes = new AtomicLong(0);
+
+    private final AtomicLong saved_bytes = new AtomicLong(0);
+
     public NotificationSender(ServerContext context) {
         this.context = context;
     }
@@ -24,6 +38,18 @@ public class NotificationSender {
         return context;
     }
 
+    public long getBroadcastCount() {
+        return broadcasts.get();
+    }
+
+    public long getSavedEncodeCount() {
+        return saved_encodes.get();
+    }
+
+    public long getSavedBytes() {
+        return saved_bytes.get();
+    }
+
     public void notifyAllocationUpdating(Room room, int updater) {
         JSONArray types = new JSONArray();
         JSONArray alliance = new JSONArray();
@@ -38,79 +64,97 @@ public class NotificationSender {
 
     public void notifyAllocationUpdating(
             Room room, int updater, JSONArray alliance, JSONArray allocation, JSONArray types) {
-        for (int player_id : room.getPlayers()) {
-            if (player_id != updater) {
-                JSONObject notification = PacketBuilder.create(NOTIFICATION, ALLOCATION_UPDATING);
-                notification.put("types", types);
-                notification.put("alliance", alliance);
-                notification.put("allocation", allocation);
-                submitNotification(player_id, notification);
-            }
-        }
+        JSONObject notification = PacketBuilder.create(NOTIFICATION, ALLOCATION_UPDATING);
+        notification.put("types", types);
+        notification.put("alliance", alliance);
+        notification.put("allocation", allocation);
+        broadcast(room, notification, updater);
     }
 
     public void notifyPlayerJoining(Room room, int joiner, String username) {
-        for (int player_id : room.getPlayers()) {
-            if (player_id != joiner) {
-                JSONObject notification = PacketBuilder.create(NOTIFICATION, PLAYER_JOINING);
-                notification.put("player_id", joiner);
-                notification.put("username", username);
-                submitNotification(player_id, notification);
-            }
-        }
+        JSONObject notification = PacketBuilder.create(NOTIFICATION, PLAYER_JOINING);
+        notification.put("player_id", joiner);
+        notification.put("username", username);
+        broadcast(room, notification, joiner);
     }
 
     public void notifyPlayerLeaving(Room room, int leaver, String username, int host_id) {
-        for (int player_id : room.getPlayers()) {
-            if (player_id != leaver) {
-                JSONObject notification = PacketBuilder.create(NOTIFICATION, PLAYER_LEAVING);
-                notification.put("player_id", leaver);
-                notification.put("username", username);
-                notification.put("host_id", host_id);
-                submitNotification(player_id, notification);
-            }
-        }
+        JSONObject notification = PacketBuilder.create(NOTIFICATION, PLAYER_LEAVING);
+        notification.put("player_id", leaver);
+        notification.put("username", username);
+        notification.put("host_id", host_id);
+        broadcast(room, notification, leaver);
+    }
+
+    /**
+     * Tells everyone in the room, the returning player included, that the player's old connection was
+     * replaced by a new one.
+     */
+    public void notifySessionResumed(Room room, int previous_id, int id, String username) {
+        JSONObject leaving = PacketBuilder.create(NOTIFICATION, PLAYER_LEAVING);
+        leaving.put("player_id", previous_id);
+        leaving.put("username", username);
+        leaving.put("host_id", room.getHostID());
+        broadcast(room, leaving, -1);
+        JSONObject joining = PacketBuilder.create(NOTIFICATION, PLAYER_JOINING);
+        joining.put("player_id", id);
+        joining.put("username", username);
+        broadcast(room, joining, -1);
+        notifyAllocationUpdating(room, -1);
+    }
+
+    /**
+     * Tells the players and spectators of a room that the server is closing it.
+     */
+    public void notifyRoomClosed(Room room, Player[] recipients) {
+        JSONObject notification = PacketBuilder.create(NOTIFICATION, ROOM_CLOSED);
+        notification.put("room_id", room.getRoomID());
+        broadcast(recipients, notification);
     }
 
     public void notifyGameStarting(Room room) {
-        int host_id = room.getHostID();
-        for (int player_id : room.getPlayers()) {
-            if (player_id != host_id) {
-                JSONObject notification = PacketBuilder.create(NOTIFICATION, GAME_STARTING);
-                submitNotification(player_id, notification);
-            }
-        }
+        JSONObject notification = PacketBuilder.create(NOTIFICATION, GAME_STARTING);
+        broadcast(room, notification, room.getHostID());
     }
 
     public void notifyRoomMessage(Room room, String username, String message) {
-        for (int player_id : room.getPlayers()) {
-            JSONObject notification = PacketBuilder.create(NOTIFICATION, MESSAGE);
-            notification.put("username", username);
-            notification.put("message", message);
-            submitNotification(player_id, notification);
-        }
+        JSONObject notification = PacketBuilder.create(NOTIFICATION, MESSAGE);
+        notification.put("username", username);
+        notification.put("message", message);
+        broadcast(room, notification, -1);
     }
 
     public void notifyLobbyMessage(String username, String message) {
-        for (Player player : getContext().getPlayerManager().getPlayers()) {
-            if (player.isAuthenticated() && player.getRoomID() < 0) {
-                JSONObject notification = PacketBuilder.create(NOTIFICATION, MESSAGE);
-                notification.put("username", username);
-                notification.put("message", message);
-                submitNotification(player, notification);
-            }
+        JSONObject notification = PacketBuilder.create(NOTIFICATION, MESSAGE);
+        notification.put("username", username);
+        notification.put("message", message);
+        OutboundPacket packet = new OutboundPacket(notification);
+        int recipients = 0;
+        for (Player player : getContext().getLobbyManager().getLobbyPlayers()) {
+            recipients += send(player, packet);
         }
+        onBroadcast(packet, recipients);
     }
 
     public void notifyGlobalMessage(String message) {
+        JSONObject notification = PacketBuilder.create(NOTIFICATION, MESSAGE);
+        notification.put("username", "System");
+        notification.put("message", message);
+        OutboundPacket packet = new OutboundPacket(notification);
+        int recipients = 0;
         for (Player player : getContext().getPlayerManager().getPlayers()) {
             if (player.isAuthenticated()) {
-                JSONObject notification = PacketBuilder.create(NOTIFICATION, MESSAGE);
-                notification.put("username", "System");
-                notification.put("message", message);
-                submitNotification(player, notification);
+                recipients += send(player, packet);
             }
         }
+        onBroadcast(packet, recipients);
+    }
+
+    public void syncGameEvent(Room room, GameEvent event, long sequence, int submitter) {
+        JSONObject notification = PacketBuilder.create(NOTIFICATION, GAME_EVENT);
+        notification.put("game_event", new EncodedObject(event));
+        notification.put("sequence", sequence);
+        broadcast(room, notification, submitter);
     }
 
     public void submitNotification(int player_id, JSONObject notification) {
@@ -119,34 +163,65 @@ public class NotificationSender {
 
     public void submitNotification(Player player, JSONObject notification) {
         if (player != null) {
-            getContext().submitTask(new NotificationTask(player, notification));
+            player.sendPacket(notification);
         }
     }
 
-    public void syncGameEvent(int player_id, JSONObject event) {
-        Player player = getContext().getPlayerManager().getPlayer(player_id);
-        if (player != null) {
-            JSONObject notification = PacketBuilder.create(NOTIFICATION, GAME_EVENT);
-            notification.put("game_event", event);
-            player.sendTCP(notification.toString());
+    /**
+     * Encodes the notification once and shares the encoded packet among the room's players and spectators.
+     *
+     * @param excluded the player who does not need the notification, or -1
+     */
+    public void broadcast(Room room, JSONObject notification, int excluded) {
+        OutboundPacket packet = new OutboundPacket(notification);
+        int recipients = 0;
+        for (int player_id : room.getPlayers()) {
+            if (player_id != excluded) {
+                recipients += send(getContext().getPlayerManager().getPlayer(player_id), packet);
+            }
         }
+        //the spectators get the same packet later from the feed, never on this thread
+        room.getSpectatorFeed().publish(packet);
+        onBroadcast(packet, recipients);
     }
 
-    private class NotificationTask implements Runnable {
-
-        private final Player player;
-        private final JSONObject notification;
-
-        public NotificationTask(Player player, JSONObject notification) {
-            this.player = player;
-            this.notification = notification;
+    public void broadcast(Player[] recipients, JSONObject notification) {
+        OutboundPacket packet = new OutboundPacket(notification);
+        int count = 0;
+        for (Player player : recipients) {
+            count += send(player, packet);
         }
+        onBroadcast(packet, count);
+    }
 
-        @Override
-        public void run() {
-            player.sendTCP(notification.toString());
+    private int send(Player player, OutboundPacket packet) {
+        if (player == null) {
+            return 0;
+        } else {
+            //encode on the broadcasting thread so that the writers only copy the shared bytes
+            packet.encode(player.getProtocol());
+            player.sendPacket(packet);
+            return 1;
         }
+    }
 
+    private void onBroadcast(OutboundPacket packet, int recipients) {
+        int encodes = packet.getEncodeCount();
+        if (recipients > encodes) {
+            //without sharing, every recipient would have encoded and buffered its own copy
+            long bytes = 0;
+            for (int protocol = PROTOCOL_JSON; protocol <= PROTOCOL_BINARY; protocol++) {
+                int uses = packet.getUseCount(protocol);
+                if (uses > 1) {
+                    bytes += (long) packet.getEncodedSize(protocol) * (uses - 1);
+                }
+            }
+            broadcasts.incrementAndGet();
+            saved_encodes.addAndGet(recipients - encodes);
+            saved_bytes.addAndGet(bytes);
+            Log.debug(TAG, String.format(
+                    "Broadcast to %d players saved %d encodes and %d bytes", recipients, recipients - encodes, bytes));
+        }
     }
 
 }
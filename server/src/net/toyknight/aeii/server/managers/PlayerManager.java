@@ -1,16 +1,24 @@
 package net.toyknight.aeii.server.managers;
 
-import com.badlogic.gdx.utils.ObjectMap;
-import com.badlogic.gdx.utils.ObjectSet;
 import com.esotericsoftware.kryonet.Connection;
+import com.esotericsoftware.kryonet.Listener;
 import com.esotericsoftware.minlog.Log;
 import net.toyknight.aeii.network.NetworkConstants;
+import net.toyknight.aeii.server.RequestHandler;
 import net.toyknight.aeii.server.ServerContext;
 import net.toyknight.aeii.server.entities.Player;
+import net.toyknight.aeii.server.metrics.Gauge;
+import net.toyknight.aeii.server.metrics.MetricsRegistry;
 import net.toyknight.aeii.server.utils.PacketBuilder;
 import org.json.JSONObject;
 
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+
 /**
+ * The registry of connected players. Lookups and iterations never lock, iterating sees the players
+ * connected at some point during the iteration.
+ *
  * @author toyknight 8/16/2016.
  */
 public class PlayerManager {
@@ -19,9 +27,10 @@ public class PlayerManager {
 
     private final ServerContext context;
 
-    private final Object PLAYER_LOCK = new Object();
+    //only adding and removing players lock, so that the metrics of a player come and go together with it
+    private final Object REGISTRY_LOCK = new Object();
 
-    private final ObjectMap<Integer, Player> players = new ObjectMap<Integer, Player>();
+    private final ConcurrentHashMap<Integer, Player> players = new ConcurrentHashMap<Integer, Player>();
 
     public PlayerManager(ServerContext context) {
         this.context = context;
@@ -32,37 +41,95 @@ public class PlayerManager {
     }
 
     public void addPlayer(Connection connection) {
-        synchronized (PLAYER_LOCK) {
-            players.put(connection.getID(), new Player(connection));
+        RequestHandler request_handler = getContext().getRequestHandler();
+        Player player = new Player(
+                connection,
+                request_handler.getRequestExecutor(),
+                request_handler.getIORequestExecutor(),
+                getContext().getWriterExecutor(),
+                getContext().getMetrics());
+        //the listener holds the player so the idle callback resumes its queue without a lookup
+        connection.addListener(new IdleListener(player));
+        synchronized (REGISTRY_LOCK) {
+            registerMetrics(player);
+            players.put(connection.getID(), player);
+        }
+        long authentication_timeout = getContext().getConfiguration().getAuthenticationTimeout();
+        if (authentication_timeout > 0) {
+            getContext().schedule(new AuthenticationTimeoutTask(player), authentication_timeout);
         }
     }
 
     public Player removePlayer(int id) {
-        synchronized (PLAYER_LOCK) {
-            return players.remove(id);
+        synchronized (REGISTRY_LOCK) {
+            Player player = players.remove(id);
+            getContext().getMetrics().remove("connection." + id);
+            return player;
         }
     }
 
-    public Player getPlayer(int id) {
-        synchronized (PLAYER_LOCK) {
-            return players.get(id, null);
-        }
+    public int getPlayerCount() {
+        return players.size();
     }
 
-    public ObjectSet<Player> getPlayers() {
-        synchronized (PLAYER_LOCK) {
-            ObjectSet<Player> player_set = new ObjectSet<Player>();
-            for (Player player : players.values()) {
-                player_set.add(player);
+    private void registerMetrics(final Player player) {
+        String prefix = "connection." + player.getID();
+        MetricsRegistry metrics = getContext().getMetrics();
+        metrics.registerGauge(prefix + ".packets_sent", new Gauge() {
+            @Override
+            public long getValue() {
+                return player.getOutboundQueue().getPacketsSent();
             }
-            return player_set;
-        }
+        });
+        metrics.registerGauge(prefix + ".bytes_sent", new Gauge() {
+            @Override
+            public long getValue() {
+                return player.getOutboundQueue().getBytesSent();
+            }
+        });
+        metrics.registerGauge(prefix + ".outbound_queue", new Gauge() {
+            @Override
+            public long getValue() {
+                return player.getOutboundQueue().size();
+            }
+        });
+        metrics.registerGauge(prefix + ".request_queue", new Gauge() {
+            @Override
+            public long getValue() {
+                return player.getRequestQueue().size() + player.getIORequestQueue().size();
+            }
+        });
+    }
+
+    public Player getPlayer(int id) {
+        return players.get(id);
+    }
+
+    /**
+     * @return a live view of the connected players, not a copy
+     */
+    public Collection<Player> getPlayers() {
+        return players.values();
+    }
+
+    /**
+     * @return whether the player is still connected and registered
+     */
+    public boolean isRegistered(Player player) {
+        return players.get(player.getID()) == player;
     }
 
     public void disconnectPlayer(int player_id, String message, long delay) {
         Player player = getPlayer(player_id);
         if (player != null) {
-            getContext().submitTask(new DisconnectingTask(player, message, delay));
+            //a player thrown out may not take its slot back
+            player.setSessionToken(null);
+            JSONObject notification = PacketBuilder.create(NetworkConstants.NOTIFICATION, NetworkConstants.MESSAGE);
+            notification.put("username", "Server");
+            notification.put("message", message);
+            player.sendPacket(notification);
+            //the message gets the delay to reach the player before the connection is closed
+            getContext().schedule(new DisconnectingTask(player), delay);
         }
     }
 
@@ -72,37 +139,66 @@ public class PlayerManager {
 
     public void onPlayerDisconnected(Connection connection) {
         Player player = removePlayer(connection.getID());
+        if (player != null && player.getCompressor() != null) {
+            player.getCompressor().dispose();
+        }
+        if (player != null && player.isAuthenticated()) {
+            getContext().getLobbyManager().onPlayerLeaveLobby(player);
+        }
         if (player != null && player.getRoomID() >= 0) {
             Log.info(TAG, String.format("%s disconnected", player.toString()));
-            getContext().getRoomManager().onPlayerLeaveRoom(player);
+            if (!getContext().getRoomManager().reserveSlot(player)) {
+                getContext().getRoomManager().onPlayerLeaveRoom(player);
+            }
         }
     }
 
-    private class DisconnectingTask implements Runnable {
+    private static class IdleListener extends Listener {
 
         private final Player player;
-        private final String message;
-        private final long delay;
 
-        public DisconnectingTask(Player player, String message, long delay) {
+        IdleListener(Player player) {
+            this.player = player;
+        }
+
+        @Override
+        public void idle(Connection connection) {
+            player.getOutboundQueue().resume();
+        }
+
+    }
+
+    private static class DisconnectingTask implements Runnable {
+
+        private final Player player;
+
+        public DisconnectingTask(Player player) {
             this.player = player;
-            this.message = message;
-            this.delay = delay;
         }
 
         @Override
         public void run() {
-            JSONObject notification = PacketBuilder.create(NetworkConstants.NOTIFICATION, NetworkConstants.MESSAGE);
-            notification.put("username", "Server");
-            notification.put("message", message);
-            player.sendTCP(notification.toString());
-            try {
-                Thread.sleep(delay);
-            } catch (InterruptedException ignored) {
-            }
             player.getConnection().close();
         }
 
     }
 
+    private class AuthenticationTimeoutTask implements Runnable {
+
+        private final Player player;
+
+        public AuthenticationTimeoutTask(Player player) {
+            this.player = player;
+        }
+
+        @Override
+        public void run() {
+            if (!player.isAuthenticated() && isRegistered(player)) {
+                Log.info(TAG, String.format("%s did not authenticate in time", player.toString()));
+                player.getConnection().close();
+            }
+        }
+
+    }
+
 }
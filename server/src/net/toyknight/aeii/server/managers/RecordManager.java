@@ -0,0 +1,281 @@
+package net.toyknight.aeii.server.managers;
+
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.ObjectMap;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.minlog.Log;
+import net.toyknight.aeii.record.GameRecordCodec;
+import net.toyknight.aeii.server.ServerContext;
+import net.toyknight.aeii.server.entities.Room;
+import net.toyknight.aeii.server.entities.RoomState;
+import net.toyknight.aeii.server.journal.SeatTable;
+import net.toyknight.aeii.server.metrics.Counter;
+import net.toyknight.aeii.server.metrics.Histogram;
+import net.toyknight.aeii.server.record.MatchRecorder;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Archives every online match as a compact record, see {@link GameRecordCodec}. The records are compressed and
+ * written on a thread of their own once the matches end. Only the headers of the latest records, and of the latest
+ * records of every player, are kept in memory, the records themselves are found by room id.
+ *
+ * @author toyknight 10/17/2026.
+ */
+public class RecordManager {
+
+    private static final String TAG = "RECORD MANAGER";
+
+    private static final String EXTENSION = ".record";
+
+    public static final int MAX_LISTED_RECORDS = 50;
+
+    private final Object RECORD_LOCK = new Object();
+
+    private final Array<JSONObject> latest_records = new Array<JSONObject>();
+
+    private final ObjectMap<String, Array<JSONObject>> player_records = new ObjectMap<String, Array<JSONObject>>();
+
+    private int record_count;
+
+    private final ServerContext context;
+
+    private final File directory;
+
+    private final Counter written_records;
+
+    private final Counter written_bytes;
+
+    private final Histogram write_time;
+
+    private ExecutorService writer;
+
+    public RecordManager(ServerContext context) {
+        this.context = context;
+        this.directory = new File(context.getConfiguration().getRecordDirectory());
+        this.written_records = context.getMetrics().getCounter("records.written");
+        this.written_bytes = context.getMetrics().getCounter("records.bytes");
+        this.write_time = context.getMetrics().getHistogram("records.write_time");
+    }
+
+    public ServerContext getContext() {
+        return context;
+    }
+
+    /**
+     * @return whether matches are recorded, a router hosts none
+     */
+    public boolean isEnabled() {
+        return getContext().getConfiguration().isRecordEnabled() && !getContext().getConfiguration().isRouter();
+    }
+
+    /**
+     * Indexes the records already archived. Room ids are not used again for new rooms, so every record keeps
+     * its own room id.
+     */
+    public void start() throws IOException {
+        if (isEnabled()) {
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                throw new IOException("Cannot create record directory " + directory.getAbsolutePath());
+            }
+            File[] files = directory.listFiles(new FilenameFilter() {
+                @Override
+                public boolean accept(File dir, String name) {
+                    return name.endsWith(EXTENSION);
+                }
+            });
+            if (files == null) {
+                files = new File[0];
+            }
+            for (File file : files) {
+                try {
+                    JSONObject header = readHeader(file);
+                    index(header);
+                    getContext().getRoomManager().skipRoomID(header.getLong("room_id"));
+                } catch (IOException ex) {
+                    Log.error(TAG, String.format("Cannot read record %s", file.getName()), ex);
+                } catch (JSONException ex) {
+                    Log.error(TAG, String.format("Broken record %s", file.getName()), ex);
+                }
+            }
+            writer = Executors.newSingleThreadExecutor();
+            Log.info(TAG, String.format("%d records are archived", getRecordCount()));
+        }
+    }
+
+    /**
+     * Starts recording the game of the room from its current state.
+     *
+     * @param usernames the players of the teams, null for the teams nobody plays
+     * @param recovered whether the game was recovered from its journal
+     */
+    public void startRecord(Room room, String[] usernames, boolean recovered) {
+        if (isEnabled()) {
+            RoomState state = room.getState();
+            MatchRecorder recorder = new MatchRecorder(room.getRoomID(), room.getRoomName(), room.getMapName(),
+                    usernames, getContext().getVerificationString(), state.getEncodedGame().toJSONString(), recovered);
+            synchronized (room.GAME_LOCK) {
+                room.setRecorder(recorder);
+            }
+        }
+    }
+
+    /**
+     * Ends the record of the room, if it has one, and archives it.
+     *
+     * @param complete whether the match was played to the end
+     */
+    public void finishRecord(Room room, boolean complete) {
+        MatchRecorder recorder;
+        synchronized (room.GAME_LOCK) {
+            recorder = room.getRecorder();
+            room.setRecorder(null);
+        }
+        if (recorder != null) {
+            final MatchRecorder.Record record = recorder.finish(complete);
+            if (record.getHeader().getInt("event_count") == 0) {
+                //nothing was played
+                return;
+            }
+            writer.submit(new Runnable() {
+                @Override
+                public void run() {
+                    write(record);
+                }
+            });
+        }
+    }
+
+    private void write(MatchRecorder.Record record) {
+        long start = System.nanoTime();
+        long room_id = record.getHeader().getLong("room_id");
+        File file = getRecordFile(room_id);
+        File temp_file = new File(file.getPath() + ".tmp");
+        try {
+            byte[] content = record.encode();
+            FileOutputStream fos = new FileOutputStream(temp_file);
+            try {
+                fos.write(content);
+                fos.getFD().sync();
+            } finally {
+                fos.close();
+            }
+            if (!temp_file.renameTo(file) && !(file.delete() && temp_file.renameTo(file))) {
+                throw new IOException("Failed replacing record file: " + file.getName());
+            }
+            index(record.getHeader());
+            written_records.increment();
+            written_bytes.add(content.length);
+            write_time.record(System.nanoTime() - start);
+            Log.info(TAG, String.format("Room [%d] is recorded with %d events in %d bytes",
+                    room_id, record.getHeader().getInt("event_count"), content.length));
+        } catch (IOException ex) {
+            Log.error(TAG, String.format("Exception occurred while writing record of room [%d]", room_id), ex);
+        }
+    }
+
+    private void index(JSONObject header) {
+        synchronized (RECORD_LOCK) {
+            record_count++;
+            insert(latest_records, header);
+            JSONArray players = header.getJSONArray("players");
+            for (int team = 0; team < players.length(); team++) {
+                String username = players.getString(team);
+                if (username.length() > 0 && !username.equals(SeatTable.ROBOT)) {
+                    Array<JSONObject> records = player_records.get(username);
+                    if (records == null) {
+                        records = new Array<JSONObject>();
+                        player_records.put(username, records);
+                    }
+                    insert(records, header);
+                }
+            }
+        }
+    }
+
+    /**
+     * Keeps the list sorted by start time, the latest first, and no longer than {@link #MAX_LISTED_RECORDS}.
+     */
+    private static void insert(Array<JSONObject> records, JSONObject header) {
+        long room_id = header.getLong("room_id");
+        long start_time = header.getLong("start_time");
+        int index = 0;
+        while (index < records.size && records.get(index).getLong("start_time") >= start_time) {
+            if (records.get(index).getLong("room_id") == room_id) {
+                return;
+            }
+            index++;
+        }
+        if (index < MAX_LISTED_RECORDS) {
+            records.insert(index, header);
+            if (records.size > MAX_LISTED_RECORDS) {
+                records.pop();
+            }
+        }
+    }
+
+    public int getRecordCount() {
+        synchronized (RECORD_LOCK) {
+            return record_count;
+        }
+    }
+
+    /**
+     * @param username the player whose matches are listed, or null to list every match
+     * @return the headers of the latest records, the latest first
+     */
+    public JSONArray listRecords(String username) {
+        JSONArray list = new JSONArray();
+        synchronized (RECORD_LOCK) {
+            Array<JSONObject> records = username == null ? latest_records : player_records.get(username);
+            if (records != null) {
+                for (JSONObject header : records) {
+                    list.put(header);
+                }
+            }
+        }
+        return list;
+    }
+
+    /**
+     * @return the archived record of the room, or null if the room has no record
+     */
+    public byte[] readRecord(long room_id) throws IOException {
+        //a record file only appears once it is written in full
+        if (!getRecordFile(room_id).isFile()) {
+            return null;
+        }
+        RandomAccessFile file = new RandomAccessFile(getRecordFile(room_id), "r");
+        try {
+            byte[] content = new byte[(int) file.length()];
+            file.readFully(content);
+            return content;
+        } finally {
+            file.close();
+        }
+    }
+
+    private JSONObject readHeader(File file) throws IOException, JSONException {
+        Input input = new Input(new FileInputStream(file), 4096);
+        try {
+            return GameRecordCodec.readHeader(input);
+        } finally {
+            input.close();
+        }
+    }
+
+    private File getRecordFile(long room_id) {
+        return new File(directory, room_id + EXTENSION);
+    }
+
+}
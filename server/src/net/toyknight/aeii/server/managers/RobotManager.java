@@ -0,0 +1,217 @@
+package net.toyknight.aeii.server.managers;
+
+import com.esotericsoftware.minlog.Log;
+import net.toyknight.aeii.server.ServerContext;
+import net.toyknight.aeii.server.entities.Room;
+import net.toyknight.aeii.server.metrics.Counter;
+import net.toyknight.aeii.server.metrics.Histogram;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Plays the teams the hosts give to server robots. A robot's turn alternates between thinking on a small pool
+ * of low priority threads of its own and carrying out the decided operations in the room's mailbox, so a
+ * thinking robot holds up neither the network threads nor the other rooms.
+ *
+ * @author toyknight 10/17/2026.
+ */
+public class RobotManager {
+
+    private static final String TAG = "ROBOT MANAGER";
+
+    public static final int QUEUE_CAPACITY = 256;
+
+    //a turn never takes more decisions than this, in case a robot keeps deciding on nothing
+    public static final int MAX_STEPS_PER_TURN = 2000;
+
+    private final ServerContext context;
+
+    private final ThreadPoolExecutor executor;
+
+    private final ThreadMXBean thread_bean;
+
+    private final Counter steps;
+
+    private final Counter cpu_time;
+
+    private final Counter over_budget;
+
+    private final Counter rejected;
+
+    private final Histogram think_time;
+
+    public RobotManager(ServerContext context) {
+        this.context = context;
+        int threads = Math.max(1, context.getConfiguration().getRobotThreads());
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(QUEUE_CAPACITY), new RobotThreadFactory());
+        this.thread_bean = ManagementFactory.getThreadMXBean();
+        this.steps = context.getMetrics().getCounter("robots.steps");
+        this.cpu_time = context.getMetrics().getCounter("robots.cpu_time");
+        this.over_budget = context.getMetrics().getCounter("robots.over_budget");
+        this.rejected = context.getMetrics().getCounter("robots.rejected");
+        this.think_time = context.getMetrics().getHistogram("robots.think_time");
+    }
+
+    public ServerContext getContext() {
+        return context;
+    }
+
+    public ExecutorService getExecutor() {
+        return executor;
+    }
+
+    public boolean isEnabled() {
+        return getContext().getConfiguration().isRobotEnabled();
+    }
+
+    /**
+     * Lets the robot play the current turn of the room if its team is played by one. Does nothing otherwise.
+     */
+    public void startRobotTurn(final Room room) {
+        if (!isEnabled()) {
+            return;
+        }
+        room.getMailbox().execute(new Runnable() {
+            @Override
+            public void run() {
+                int turn;
+                int team;
+                synchronized (room.GAME_LOCK) {
+                    turn = room.getGame().getCurrentTurn();
+                    team = room.getGame().getCurrentTeam();
+                }
+                if (room.isRobotTurn(turn, team)) {
+                    think(new RobotTurn(room, turn, team, room.getMailbox().getCounter("robot_cpu_time")));
+                }
+            }
+        });
+    }
+
+    private void think(final RobotTurn robot_turn) {
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    doThink(robot_turn);
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            //all robot threads are busy, the robot waits instead of the room
+            rejected.increment();
+            getContext().schedule(new Runnable() {
+                @Override
+                public void run() {
+                    think(robot_turn);
+                }
+            }, getContext().getConfiguration().getRobotMoveDelay());
+        }
+    }
+
+    private void doThink(final RobotTurn robot_turn) {
+        final Room room = robot_turn.room;
+        long start_cpu_time = getCurrentThreadCpuTime();
+        long start_time = System.nanoTime();
+        boolean thinking;
+        try {
+            thinking = room.thinkRobotMove(robot_turn.turn, robot_turn.team);
+        } catch (Exception ex) {
+            Log.error(TAG, String.format("Exception occurred while robot of room [%d] is thinking", room.getRoomID()), ex);
+            thinking = false;
+            robot_turn.ending = true;
+        }
+        long elapsed = System.nanoTime() - start_time;
+        long used_cpu_time = getCurrentThreadCpuTime() - start_cpu_time;
+        think_time.record(elapsed);
+        steps.increment();
+        cpu_time.add(used_cpu_time);
+        robot_turn.room_cpu_time.add(used_cpu_time);
+        if (!thinking && !robot_turn.ending) {
+            return;
+        }
+        if (TimeUnit.NANOSECONDS.toMillis(elapsed) > getContext().getConfiguration().getRobotMoveBudget()) {
+            over_budget.increment();
+            Log.info(TAG, String.format("Robot of room [%d] is over budget with %d ms", room.getRoomID(),
+                    TimeUnit.NANOSECONDS.toMillis(elapsed)));
+            robot_turn.ending = true;
+        }
+        if (++robot_turn.steps >= MAX_STEPS_PER_TURN) {
+            robot_turn.ending = true;
+        }
+        room.getMailbox().execute(new Runnable() {
+            @Override
+            public void run() {
+                execute(robot_turn);
+            }
+        });
+    }
+
+    private void execute(final RobotTurn robot_turn) {
+        Room room = robot_turn.room;
+        if (robot_turn.ending) {
+            room.endRobotTurn(robot_turn.turn, robot_turn.team);
+            return;
+        }
+        int executed = room.executeRobotOperations(robot_turn.turn, robot_turn.team);
+        if (executed > 0) {
+            //paced like a player so the other players can follow the moves
+            getContext().schedule(new Runnable() {
+                @Override
+                public void run() {
+                    think(robot_turn);
+                }
+            }, getContext().getConfiguration().getRobotMoveDelay());
+        } else if (executed == 0) {
+            think(robot_turn);
+        }
+    }
+
+    private long getCurrentThreadCpuTime() {
+        return thread_bean.isCurrentThreadCpuTimeSupported() ? thread_bean.getCurrentThreadCpuTime() : 0;
+    }
+
+    private static class RobotTurn {
+
+        private final Room room;
+        private final int turn;
+        private final int team;
+
+        //unregistered with the other metrics of the room when it is disposed
+        private final Counter room_cpu_time;
+
+        private int steps;
+
+        private boolean ending;
+
+        public RobotTurn(Room room, int turn, int team, Counter room_cpu_time) {
+            this.room = room;
+            this.turn = turn;
+            this.team = team;
+            this.room_cpu_time = room_cpu_time;
+        }
+
+    }
+
+    private static class RobotThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable task) {
+            Thread thread = new Thread(task, "robot-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        }
+
+    }
+
+}
@@ -0,0 +1,226 @@
+package net.toyknight.aeii.server.managers;
+
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.ObjectMap;
+import net.toyknight.aeii.network.NetworkConstants;
+import net.toyknight.aeii.server.entities.Room;
+import net.toyknight.aeii.server.utils.OutboundPacket;
+import net.toyknight.aeii.server.utils.PacketBuilder;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedList;
+
+/**
+ * The versioned list of rooms shown in the lobby. Every change to a room bumps the version,
+ * and readers get an immutable publication with the LIST_ROOMS response already built,
+ * so listing rooms never takes the room lock.
+ *
+ * @author toyknight 10/17/2026.
+ */
+public class RoomDirectory {
+
+    public static final int MAX_REMOVAL_HISTORY = 256;
+
+    private final Object DIRECTORY_LOCK = new Object();
+
+    private final ObjectMap<Long, Entry> entries = new ObjectMap<Long, Entry>();
+
+    private final LinkedList<Removal> removals = new LinkedList<Removal>();
+
+    private long version = 0;
+
+    private long removal_horizon = 0;
+
+    private volatile Publication publication;
+
+    public long getVersion() {
+        synchronized (DIRECTORY_LOCK) {
+            return version;
+        }
+    }
+
+    public void update(Room room) {
+        synchronized (DIRECTORY_LOCK) {
+            //a room is disposed before it is removed, so a late update must not list it again
+            if (room.isDisposed()) {
+                return;
+            }
+            //snapshot under the lock so that a stale snapshot never overwrites a newer one
+            update(room.getRoomID(), room.createSnapshot().toJson());
+        }
+    }
+
+    /**
+     * Lists a room hosted elsewhere, from the snapshot its shard reported.
+     */
+    public void update(long room_id, JSONObject json) {
+        synchronized (DIRECTORY_LOCK) {
+            Entry entry = entries.get(room_id, null);
+            if (entry == null || !entry.json.similar(json)) {
+                entries.put(room_id, new Entry(json, ++version));
+                publication = null;
+            }
+        }
+    }
+
+    public void remove(long room_id) {
+        synchronized (DIRECTORY_LOCK) {
+            if (entries.remove(room_id) != null) {
+                removals.add(new Removal(room_id, ++version));
+                if (removals.size() > MAX_REMOVAL_HISTORY) {
+                    removal_horizon = removals.removeFirst().version;
+                }
+                publication = null;
+            }
+        }
+    }
+
+    /**
+     * @return the LIST_ROOMS response listing every room
+     */
+    public OutboundPacket getRoomList() {
+        return getPublication().room_list;
+    }
+
+    /**
+     * @return the LIST_ROOMS response listing the rooms changed or removed after the given version,
+     * or every room if the removal history no longer reaches back that far
+     */
+    public OutboundPacket getRoomListChanges(long since) {
+        Publication publication = getPublication();
+        if (since < publication.removal_horizon || since > publication.version) {
+            return publication.room_list;
+        }
+        if (since == publication.version) {
+            return publication.empty_changes;
+        }
+        JSONObject response = PacketBuilder.create(NetworkConstants.RESPONSE);
+        writeChanges(response, publication, since);
+        return new OutboundPacket(response);
+    }
+
+    /**
+     * Writes the rooms changed or removed after the given version into the packet.
+     *
+     * @return the version the written changes lead to
+     */
+    public long writeChanges(JSONObject packet, long since) {
+        Publication publication = getPublication();
+        writeChanges(packet, publication, since);
+        return publication.version;
+    }
+
+    private void writeChanges(JSONObject packet, Publication publication, long since) {
+        boolean delta = since >= publication.removal_horizon && since <= publication.version;
+        JSONArray rooms = new JSONArray();
+        JSONArray removed = new JSONArray();
+        for (int i = publication.entries.length - 1; i >= 0; i--) {
+            if (delta && publication.entries[i].version <= since) {
+                break;
+            }
+            rooms.put(publication.entries[i].json);
+        }
+        if (delta) {
+            for (int i = publication.removals.length - 1; i >= 0 && publication.removals[i].version > since; i--) {
+                removed.put(publication.removals[i].room_id);
+            }
+        }
+        packet.put("version", publication.version);
+        packet.put("delta", delta);
+        packet.put("rooms", rooms);
+        packet.put("removed", removed);
+    }
+
+    private Publication getPublication() {
+        Publication publication = this.publication;
+        if (publication == null) {
+            synchronized (DIRECTORY_LOCK) {
+                if (this.publication == null) {
+                    this.publication = publish();
+                }
+                publication = this.publication;
+            }
+        }
+        return publication;
+    }
+
+    private Publication publish() {
+        Array<Entry> entry_list = entries.values().toArray();
+        Entry[] sorted_entries = entry_list.toArray(Entry.class);
+        Arrays.sort(sorted_entries, new Comparator<Entry>() {
+            @Override
+            public int compare(Entry a, Entry b) {
+                return a.version < b.version ? -1 : (a.version == b.version ? 0 : 1);
+            }
+        });
+        JSONArray rooms = new JSONArray();
+        for (Entry entry : sorted_entries) {
+            rooms.put(entry.json);
+        }
+        return new Publication(
+                version,
+                removal_horizon,
+                sorted_entries,
+                removals.toArray(new Removal[removals.size()]),
+                new OutboundPacket(createResponse(version, false, rooms)),
+                new OutboundPacket(createResponse(version, true, new JSONArray())));
+    }
+
+    private JSONObject createResponse(long version, boolean delta, JSONArray rooms) {
+        JSONObject response = PacketBuilder.create(NetworkConstants.RESPONSE);
+        response.put("version", version);
+        response.put("delta", delta);
+        response.put("rooms", rooms);
+        response.put("removed", new JSONArray());
+        return response;
+    }
+
+    private static class Entry {
+
+        private final JSONObject json;
+        private final long version;
+
+        public Entry(JSONObject json, long version) {
+            this.json = json;
+            this.version = version;
+        }
+
+    }
+
+    private static class Removal {
+
+        private final long room_id;
+        private final long version;
+
+        public Removal(long room_id, long version) {
+            this.room_id = room_id;
+            this.version = version;
+        }
+
+    }
+
+    private static class Publication {
+
+        private final long version;
+        private final long removal_horizon;
+        private final Entry[] entries;
+        private final Removal[] removals;
+        private final OutboundPacket room_list;
+        private final OutboundPacket empty_changes;
+
+        public Publication(long version, long removal_horizon, Entry[] entries, Removal[] removals,
+                           OutboundPacket room_list, OutboundPacket empty_changes) {
+            this.version = version;
+            this.removal_horizon = removal_horizon;
+            this.entries = entries;
+            this.removals = removals;
+            this.room_list = room_list;
+            this.empty_changes = empty_changes;
+        }
+
+    }
+
+}
@@ -6,14 +6,26 @@ import com.badlogic.gdx.utils.ObjectSet;
 import com.esotericsoftware.minlog.Log;
 import net.toyknight.aeii.entity.GameCore;
 import net.toyknight.aeii.entity.Map;
-import net.toyknight.aeii.entity.Unit;
+import net.toyknight.aeii.manager.CheatingException;
+import net.toyknight.aeii.manager.GameEvent;
+import net.toyknight.aeii.network.NetworkConstants;
 import net.toyknight.aeii.network.entity.PlayerSnapshot;
 import net.toyknight.aeii.network.entity.RoomSetting;
-import net.toyknight.aeii.network.entity.RoomSnapshot;
+import net.toyknight.aeii.network.protocol.PacketEntities;
 import net.toyknight.aeii.server.ServerContext;
 import net.toyknight.aeii.server.entities.Player;
 import net.toyknight.aeii.server.entities.Room;
+import net.toyknight.aeii.server.entities.RoomEventLog;
+import net.toyknight.aeii.server.entities.RoomState;
+import net.toyknight.aeii.server.entities.SpectatorFeed;
 import net.toyknight.aeii.server.RoomListener;
+import net.toyknight.aeii.server.cluster.ShardConstants;
+import net.toyknight.aeii.server.concurrent.RoomScheduler;
+import net.toyknight.aeii.server.journal.JournalCheckpoint;
+import net.toyknight.aeii.server.journal.RoomJournal;
+import net.toyknight.aeii.server.journal.SeatTable;
+import net.toyknight.aeii.server.utils.OutboundPacket;
+import net.toyknight.aeii.server.utils.PacketBuilder;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -25,30 +37,88 @@ public class RoomManager implements RoomListener {
 
     public static final String TAG = "ROOM MANAGER";
 
+    public static final long REAP_INTERVAL = 60 * 1000;
+
+    public static final long GAME_OVER_TIMEOUT = 5 * 60 * 1000;
+
+    public static final long IDLE_TIMEOUT = 30 * 60 * 1000;
+
+    public static final long RESERVATION_CHECK_INTERVAL = 5 * 1000;
+
+    public static final long SPECTATOR_TICK_INTERVAL = 100;
+
     private final Object ROOM_LOCK = new Object();
 
     private final ObjectMap<Long, Room> rooms = new ObjectMap<Long, Room>();
 
+    private final Object RESERVATION_LOCK = new Object();
+
+    private final ObjectMap<String, Reservation> reservations = new ObjectMap<String, Reservation>();
+
+    private final RoomDirectory directory = new RoomDirectory();
+
+    private final RoomScheduler scheduler;
+
     private final ServerContext context;
 
     private long current_room_id = 0;
 
     public RoomManager(ServerContext context) {
         this.context = context;
+        this.scheduler = new RoomScheduler(Runtime.getRuntime().availableProcessors(), context.getMetrics());
     }
 
     public ServerContext getContext() {
         return context;
     }
 
+    public RoomDirectory getDirectory() {
+        return directory;
+    }
+
+    public RoomScheduler getScheduler() {
+        return scheduler;
+    }
+
+    public int getRoomCount() {
+        synchronized (ROOM_LOCK) {
+            return rooms.size;
+        }
+    }
+
     public boolean canJoin(Room room) {
-        return room != null && !room.isGameOver() && room.getRemaining() > 0 && room.getHostID() != -1;
+        return room != null && !room.isDisposed() && !room.isGameOver() && room.getRemaining() > 0 && room.getHostID() != -1;
     }
 
     public boolean canStart(Room room, int player_id) {
         return room != null && room.isOpen() && room.isReadyForStart() && player_id == room.getHostID();
     }
 
+    /**
+     * Called under the room lock. The rooms of a shard carry the shard in their ids.
+     */
+    private long createRoomID() {
+        current_room_id++;
+        if (getContext().getConfiguration().isShard()) {
+            return ShardConstants.createRoomID(current_room_id, getContext().getConfiguration().getShardID());
+        } else {
+            return current_room_id;
+        }
+    }
+
+    /**
+     * Keeps the room id, and every id before it, from being given to a new room. Ids of other shards are ignored.
+     */
+    public void skipRoomID(long room_id) {
+        boolean shard = getContext().getConfiguration().isShard();
+        if (shard && ShardConstants.getShardID(room_id) != getContext().getConfiguration().getShardID()) {
+            return;
+        }
+        synchronized (ROOM_LOCK) {
+            current_room_id = Math.max(current_room_id, shard ? ShardConstants.getSequence(room_id) : room_id);
+        }
+    }
+
     public Room getRoom(long room_id) {
         synchronized (ROOM_LOCK) {
             return rooms.get(room_id, null);
@@ -56,9 +126,16 @@ public class RoomManager implements RoomListener {
     }
 
     public void removeRoom(long room_id) {
+        Room room;
         synchronized (ROOM_LOCK) {
-            rooms.remove(room_id);
+            room = rooms.remove(room_id);
+        }
+        if (room != null) {
+            room.setTurnClock(null);
+            getContext().getJournalManager().deleteJournal(room);
+            getContext().getRecordManager().finishRecord(room, room.isGameOver());
         }
+        getDirectory().remove(room_id);
         Log.info(TAG, String.format("Room [%d] is disposed", room_id));
     }
 
@@ -73,8 +150,11 @@ public class RoomManager implements RoomListener {
             Player host) {
         synchronized (ROOM_LOCK) {
             if (host.getRoomID() < 0) {
-                Room room = new Room(++current_room_id, username + "'s game", map, start_gold);
+                Room room = new Room(createRoomID(), username + "'s game", map, start_gold);
                 room.setListener(this);
+                room.setMailbox(getScheduler().createMailbox(room.getRoomID()));
+                room.setEventLog(new RoomEventLog(getContext().getConfiguration().getEventLogCapacity()));
+                room.setSpectatorFeed(createSpectatorFeed());
                 room.setPassword(password);
                 room.setMapName(map_name);
                 room.setPlayerCapacity(player_capacity);
@@ -83,6 +163,7 @@ public class RoomManager implements RoomListener {
                 room.addPlayer(host.getID());
                 host.setRoomID(room.getRoomID());
                 rooms.put(room.getRoomID(), room);
+                getDirectory().update(room);
                 return createRoomSetting(room);
             } else {
                 return null;
@@ -94,8 +175,11 @@ public class RoomManager implements RoomListener {
             GameCore game, String username, String map_name, String password, int player_capacity, Player host) {
         synchronized (ROOM_LOCK) {
             if (host.getRoomID() < 0) {
-                Room room = new Room(++current_room_id, username + "'s game", game);
+                Room room = new Room(createRoomID(), username + "'s game", game);
                 room.setListener(this);
+                room.setMailbox(getScheduler().createMailbox(room.getRoomID()));
+                room.setEventLog(new RoomEventLog(getContext().getConfiguration().getEventLogCapacity()));
+                room.setSpectatorFeed(createSpectatorFeed());
                 room.setPassword(password);
                 room.setMapName(map_name);
                 room.setPlayerCapacity(player_capacity);
@@ -103,6 +187,7 @@ public class RoomManager implements RoomListener {
                 room.addPlayer(host.getID());
                 host.setRoomID(room.getRoomID());
                 rooms.put(room.getRoomID(), room);
+                getDirectory().update(room);
                 return createRoomSetting(room);
             } else {
                 return null;
@@ -110,13 +195,23 @@ public class RoomManager implements RoomListener {
         }
     }
 
+    private SpectatorFeed createSpectatorFeed() {
+        return new SpectatorFeed(getContext().getWriterExecutor(), getContext().getConfiguration().getSpectatorDelay());
+    }
+
     public boolean tryStartGame(Player player) {
         long room_id = player.getRoomID();
         if (room_id >= 0) {
             Room room = getRoom(room_id);
             if (canStart(room, player.getID())) {
                 room.startGame();
+                SeatTable seats = createSeatTable(room);
+                getContext().getJournalManager().openJournal(room, createCheckpoint(room), seats);
+                getContext().getRecordManager().startRecord(room, seats.getUsernames(), false);
+                startTurnClock(room);
+                getDirectory().update(room);
                 getContext().getNotificationSender().notifyGameStarting(room);
+                getContext().getRobotManager().startRobotTurn(room);
                 return true;
             } else {
                 return false;
@@ -128,23 +223,54 @@ public class RoomManager implements RoomListener {
 
     public void submitGameEvents(Player player, JSONArray events) throws JSONException {
         Room room = getRoom(player.getRoomID());
-        if (room != null && player.getID() == room.getCurrentPlayerID()) {
+        if (room == null || room.isOpen() || player.isSpectator()) {
+            return;
+        }
+        if (player.getID() == room.getCurrentPlayerID()) {
+            //a binary batch carries the events already decoded, a json batch is parsed here before any is executed
+            GameEvent[] game_events = new GameEvent[events.length()];
+            try {
+                for (int i = 0; i < game_events.length; i++) {
+                    game_events[i] = PacketEntities.getGameEvent(events, i);
+                }
+            } catch (JSONException ex) {
+                onCheatingDetected(room, player.getID(), ex);
+                return;
+            }
             synchronized (room.GAME_LOCK) {
-                for (int i = 0; i < events.length(); i++) {
-                    JSONObject event = events.getJSONObject(i);
+                for (GameEvent event : game_events) {
                     room.submitGameEvent(event, player.getID());
                 }
             }
+        } else {
+            //the client executed these events on its own, typically after its turn timed out
+            submitResync(room, player);
         }
     }
 
-    public Array<RoomSnapshot> getRoomSnapshots() {
-        synchronized (ROOM_LOCK) {
-            Array<RoomSnapshot> snapshots = new Array<RoomSnapshot>();
-            for (Room room : rooms.values()) {
-                snapshots.add(room.createSnapshot());
+    /**
+     * Sends the player the whole game in the room's mailbox, after the events already executed were broadcast.
+     */
+    public void submitResync(final Room room, final Player player) {
+        room.getMailbox().execute(new Runnable() {
+            @Override
+            public void run() {
+                resync(room, player);
             }
-            return snapshots;
+        });
+    }
+
+    private void resync(Room room, Player player) {
+        if (player == null || player.getRoomID() != room.getRoomID() || room.isDisposed()) {
+            return;
+        }
+        //a client sending several late batches is sent the game once until it changes again
+        if (room.markResync(player.getID(), room.getEventLog().getLastSequence())) {
+            JSONObject notification =
+                    PacketBuilder.create(NetworkConstants.NOTIFICATION, NetworkConstants.GAME_SNAPSHOT);
+            notification.put("room_setting", createRoomSetting(room).toJson());
+            player.sendPacket(notification);
+            Log.info(TAG, String.format("%s is resynchronized with room [%d]", player.toString(), room.getRoomID()));
         }
     }
 
@@ -158,13 +284,13 @@ public class RoomManager implements RoomListener {
         room_setting.max_population = room.getUnitCapacity();
         ObjectSet<Integer> players = room.getPlayers();
         room_setting.players = new Array<PlayerSnapshot>();
-        room_setting.game = room.getGameCopy();
-        synchronized (room.GAME_LOCK) {
-            room_setting.manager_state = room.getManager().getState();
-            Unit selected_unit = room.getManager().getSelectedUnit();
-            room_setting.selected_unit_x = selected_unit == null ? -1 : selected_unit.getX();
-            room_setting.selected_unit_y = selected_unit == null ? -1 : selected_unit.getY();
-        }
+        RoomState state = room.getState();
+        room_setting.game = state.getGame();
+        room_setting.encoded_game = state.getEncodedGame();
+        room_setting.manager_state = state.getManagerState();
+        room_setting.selected_unit_x = state.getSelectedUnitX();
+        room_setting.selected_unit_y = state.getSelectedUnitY();
+        room_setting.sequence = state.getSequence();
         for (int id : players) {
             Player player = getContext().getPlayerManager().getPlayer(id);
             if (player != null) {
@@ -183,6 +309,13 @@ public class RoomManager implements RoomListener {
                 room.setPlayerType(team, types.getInt(team));
                 room.setAlliance(team, alliance.getInt(team));
                 room.setAllocation(team, allocation.getInt(team));
+                if (allocation.getInt(team) == NetworkConstants.SERVER_ROBOT
+                        && !getContext().getConfiguration().isRobotEnabled()) {
+                    //nobody would play the team
+                    room.clearAllocation(team);
+                    types.put(team, room.getPlayerType(team));
+                    allocation.put(team, -1);
+                }
             }
             getContext().getNotificationSender().
                     notifyAllocationUpdating(room, updater.getID(), alliance, allocation, types);
@@ -191,14 +324,52 @@ public class RoomManager implements RoomListener {
 
     public RoomSetting onPlayerJoinRoom(Player player, long room_id, String password) {
         Room room = getRoom(room_id);
-        if (canJoin(room) && player.getRoomID() < 0 && room.checkPassword(password)) {
-            room.addPlayer(player.getID());
-            player.setRoomID(room_id);
-            getContext().getNotificationSender().notifyPlayerJoining(room, player.getID(), player.getUsername());
-            return createRoomSetting(room);
-        } else {
+        if (room == null) {
             return null;
         }
+        synchronized (room.PLAYER_LOCK) {
+            if (canJoin(room) && player.getRoomID() < 0 && room.checkPassword(password)) {
+                room.addPlayer(player.getID());
+                player.setRoomID(room_id);
+            } else {
+                return null;
+            }
+        }
+        getDirectory().update(room);
+        getContext().getLobbyManager().onPlayerLeaveLobby(player);
+        getContext().getNotificationSender().notifyPlayerJoining(room, player.getID(), player.getUsername());
+        return createRoomSetting(room);
+    }
+
+    /**
+     * Lets the player watch the room without taking a slot. The snapshot is taken in the room's mailbox and
+     * sent through the spectator feed, followed by every notification of the room after it.
+     */
+    public boolean onSpectatorJoinRoom(final Player player, long room_id, String password) {
+        final Room room = getRoom(room_id);
+        if (room == null) {
+            return false;
+        }
+        synchronized (room.PLAYER_LOCK) {
+            if (room.isDisposed() || player.getRoomID() >= 0 || !room.checkPassword(password)
+                    || room.getSpectatorCount() >= getContext().getConfiguration().getMaxSpectators()) {
+                return false;
+            }
+            player.setSpectator(true);
+            player.setRoomID(room_id);
+        }
+        getContext().getLobbyManager().onPlayerLeaveLobby(player);
+        room.getMailbox().execute(new Runnable() {
+            @Override
+            public void run() {
+                JSONObject notification =
+                        PacketBuilder.create(NetworkConstants.NOTIFICATION, NetworkConstants.GAME_SNAPSHOT);
+                notification.put("room_setting", createRoomSetting(room).toJson());
+                room.getSpectatorFeed().join(player, new OutboundPacket(notification));
+            }
+        });
+        Log.info(TAG, String.format("%s spectates room [%d]", player.toString(), room_id));
+        return true;
     }
 
     public void onPlayerLeaveRoom(Player player) {
@@ -206,34 +377,486 @@ public class RoomManager implements RoomListener {
         if (room_id >= 0) {
             Room room = getRoom(room_id);
             if (room != null) {
-                room.removePlayer(player.getID());
                 player.setRoomID(-1);
-                Log.info(TAG, String.format("%s leaves room [%d]", player.toString(), room_id));
-                if (room.getPlayerCapacity() == room.getRemaining()) {
-                    room.dispose();
-                    removeRoom(room_id);
+                if (player.isSpectator()) {
+                    player.setSpectator(false);
+                    room.getSpectatorFeed().leave(player);
                 } else {
-                    getContext().getNotificationSender().
-                            notifyPlayerLeaving(room, player.getID(), player.getUsername(), room.getHostID());
-                    getContext().getNotificationSender().notifyAllocationUpdating(room, -1);
+                    removePlayer(room, player.getID(), player.getUsername());
+                }
+                if (player.getConnection().isConnected()) {
+                    getContext().getLobbyManager().onPlayerEnterLobby(player);
+                }
+                Log.info(TAG, String.format("%s leaves room [%d]", player.toString(), room_id));
+            }
+        }
+    }
+
+    private void removePlayer(Room room, int id, String username) {
+        boolean empty;
+        synchronized (room.PLAYER_LOCK) {
+            room.removePlayer(id);
+            empty = room.getPlayerCapacity() == room.getRemaining();
+        }
+        if (empty) {
+            room.dispose();
+            releaseSpectators(room);
+            removeRoom(room.getRoomID());
+        } else {
+            updateJournalSeats(room);
+            getDirectory().update(room);
+            getContext().getNotificationSender().notifyPlayerLeaving(room, id, username, room.getHostID());
+            getContext().getNotificationSender().notifyAllocationUpdating(room, -1);
+        }
+    }
+
+    /**
+     * Keeps the slot of a player who lost the connection in a running game for the reconnect grace period,
+     * so that the player can come back with its session token.
+     *
+     * @return whether the slot is kept, if not the player must leave the room
+     */
+    public boolean reserveSlot(Player player) {
+        long grace_period = getContext().getConfiguration().getReconnectGracePeriod();
+        String session_token = player.getSessionToken();
+        Room room = getRoom(player.getRoomID());
+        if (grace_period <= 0 || session_token == null || room == null
+                || room.isOpen() || room.isGameOver() || !room.isAllocated(player.getID())) {
+            return false;
+        }
+        Reservation reservation = new Reservation(room.getRoomID(),
+                player.getID(), player.getUsername(), session_token, System.currentTimeMillis() + grace_period);
+        synchronized (RESERVATION_LOCK) {
+            reservations.put(session_token, reservation);
+        }
+        Log.info(TAG, String.format("Slot of %s in room [%d] is reserved", player.toString(), room.getRoomID()));
+        return true;
+    }
+
+    private boolean isReserved(long room_id, int id) {
+        synchronized (RESERVATION_LOCK) {
+            for (Reservation reservation : reservations.values()) {
+                if (reservation.room_id == room_id && reservation.player_id == id) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Frees the slots whose players did not come back within the grace period.
+     */
+    public void expireReservations() {
+        Array<Reservation> expired = new Array<Reservation>();
+        long current_time = System.currentTimeMillis();
+        synchronized (RESERVATION_LOCK) {
+            Array<String> tokens = new Array<String>();
+            for (ObjectMap.Entry<String, Reservation> entry : reservations.entries()) {
+                if (entry.value.deadline < current_time) {
+                    tokens.add(entry.key);
+                }
+            }
+            for (String token : tokens) {
+                expired.add(reservations.remove(token));
+            }
+        }
+        for (Reservation reservation : expired) {
+            Room room = getRoom(reservation.room_id);
+            if (room != null) {
+                removePlayer(room, reservation.player_id, reservation.username);
+                Log.info(TAG, String.format(
+                        "Reserved slot of %s in room [%d] expires", reservation.username, reservation.room_id));
+            }
+        }
+    }
+
+    /**
+     * Gives the player its reserved slot back. The slot is handed over in the room's mailbox, after the
+     * events already executed were broadcast, so the player gets every event exactly once: the ones after
+     * the given sequence number from the event log, or the whole game if the log no longer has them all.
+     */
+    public void onSessionResume(final Player player, String session_token, final long sequence) {
+        Reservation reservation = null;
+        synchronized (RESERVATION_LOCK) {
+            Reservation candidate = reservations.get(session_token);
+            if (candidate != null && candidate.username.equals(player.getUsername()) && player.getRoomID() < 0) {
+                reservation = reservations.remove(session_token);
+            }
+        }
+        final Room room = reservation == null ? null : getRoom(reservation.room_id);
+        if (room == null || room.isDisposed()) {
+            rejectSessionResume(player);
+        } else {
+            final int previous_id = reservation.player_id;
+            room.getMailbox().execute(new Runnable() {
+                @Override
+                public void run() {
+                    resumeSession(room, player, previous_id, sequence);
                 }
+            });
+        }
+    }
+
+    private void resumeSession(Room room, Player player, int previous_id, long sequence) {
+        synchronized (room.PLAYER_LOCK) {
+            if (room.isDisposed() || !player.getConnection().isConnected()) {
+                rejectSessionResume(player);
+                return;
             }
+            room.replacePlayer(previous_id, player.getID());
+            player.setRoomID(room.getRoomID());
+        }
+        updateJournalSeats(room);
+        getContext().getLobbyManager().onPlayerLeaveLobby(player);
+        JSONObject response = PacketBuilder.create(NetworkConstants.RESPONSE, NetworkConstants.RESUME_SESSION);
+        response.put("approved", true);
+        JSONArray events = room.getEventLog().getEventsSince(sequence);
+        if (events == null) {
+            response.put("room_setting", createRoomSetting(room).toJson());
+        } else {
+            response.put("events", events);
+        }
+        player.sendPacket(response);
+        Log.info(TAG, String.format("%s resumes room [%d] with %s", player.toString(), room.getRoomID(),
+                events == null ? "the whole game" : events.length() + " missed events"));
+        getContext().getNotificationSender().
+                notifySessionResumed(room, previous_id, player.getID(), player.getUsername());
+    }
+
+    private void rejectSessionResume(Player player) {
+        JSONObject response = PacketBuilder.create(NetworkConstants.RESPONSE, NetworkConstants.RESUME_SESSION);
+        response.put("approved", false);
+        player.sendPacket(response);
+    }
+
+    private JournalCheckpoint createCheckpoint(Room room) {
+        return new JournalCheckpoint(room.getRoomID(), room.getRoomName(),
+                room.getMapName(), room.getPassword(), room.getPlayerCapacity(), room.getState());
+    }
+
+    /**
+     * @return the username and session token of the player of every team, the players who lost the
+     * connection included while their slots are reserved
+     */
+    private SeatTable createSeatTable(Room room) {
+        ObjectMap<Integer, Reservation> reserved = new ObjectMap<Integer, Reservation>();
+        synchronized (RESERVATION_LOCK) {
+            for (Reservation reservation : reservations.values()) {
+                if (reservation.room_id == room.getRoomID()) {
+                    reserved.put(reservation.player_id, reservation);
+                }
+            }
+        }
+        String[] usernames = new String[4];
+        String[] session_tokens = new String[4];
+        int host_team = -1;
+        for (int team = 0; team < 4; team++) {
+            int id = room.getAllocation(team);
+            if (id == -1) {
+                continue;
+            }
+            if (id == NetworkConstants.SERVER_ROBOT) {
+                usernames[team] = SeatTable.ROBOT;
+                continue;
+            }
+            Player player = getContext().getPlayerManager().getPlayer(id);
+            if (player != null && player.getRoomID() == room.getRoomID()) {
+                usernames[team] = player.getUsername();
+                session_tokens[team] = player.getSessionToken();
+            } else if (reserved.containsKey(id)) {
+                usernames[team] = reserved.get(id).username;
+                session_tokens[team] = reserved.get(id).session_token;
+            }
+            if (id == room.getHostID() && host_team == -1) {
+                host_team = team;
+            }
+        }
+        return new SeatTable(usernames, session_tokens, host_team);
+    }
+
+    private void updateJournalSeats(Room room) {
+        RoomJournal journal = room.getJournal();
+        if (journal != null) {
+            journal.updateSeats(createSeatTable(room));
+        }
+    }
+
+    /**
+     * Brings back the games journaled by the last run. Every seat is reserved for its player as if the
+     * player had just lost the connection, so the players take their teams back by resuming their sessions.
+     */
+    public void recoverRooms() {
+        for (RoomJournal.Recovery recovery : getContext().getJournalManager().readJournals()) {
+            long room_id = recovery.getCheckpoint().getRoomID();
+            if (getContext().getConfiguration().isShard()
+                    && ShardConstants.getShardID(room_id) != getContext().getConfiguration().getShardID()) {
+                //left for the shard it belongs to, in case the shards share a journal directory
+                continue;
+            }
+            Room room = null;
+            try {
+                room = recoverRoom(recovery);
+            } catch (CheatingException ex) {
+                Log.error(TAG, String.format("Exception occurred while replaying room [%d]", room_id), ex);
+            }
+            if (room == null) {
+                getContext().getJournalManager().discardJournal(room_id);
+                Log.info(TAG, String.format("Room [%d] is not recovered", room_id));
+            } else {
+                Log.info(TAG, String.format("Room [%d] is recovered at event %d with %d replayed events",
+                        room_id, room.getEventLog().getLastSequence(), recovery.getEvents().size));
+            }
+        }
+    }
+
+    private Room recoverRoom(RoomJournal.Recovery recovery) throws CheatingException {
+        JournalCheckpoint checkpoint = recovery.getCheckpoint();
+        SeatTable seats = recovery.getSeats();
+        RoomState state = checkpoint.getState();
+        Room room = new Room(checkpoint.getRoomID(), checkpoint.getRoomName(), state.getGame());
+        room.setListener(this);
+        room.setMailbox(getScheduler().createMailbox(room.getRoomID()));
+        room.setEventLog(new RoomEventLog(getContext().getConfiguration().getEventLogCapacity()));
+        room.setSpectatorFeed(createSpectatorFeed());
+        room.setPassword(checkpoint.getPassword());
+        room.setMapName(checkpoint.getMapName());
+        room.setPlayerCapacity(checkpoint.getPlayerCapacity());
+        room.startGame();
+        try {
+            room.restoreState(state.getManagerState(),
+                    state.getSelectedUnitX(), state.getSelectedUnitY(), state.getSequence());
+            for (GameEvent event : recovery.getEvents()) {
+                room.replayGameEvent(event);
+            }
+        } catch (CheatingException ex) {
+            room.dispose();
+            throw ex;
+        }
+        //the players get placeholder ids until they resume, one for each session
+        long deadline = System.currentTimeMillis() + getContext().getConfiguration().getReconnectGracePeriod();
+        ObjectMap<String, Integer> placeholders = new ObjectMap<String, Integer>();
+        Array<Reservation> recovered = new Array<Reservation>();
+        for (int team = 0; team < 4; team++) {
+            if (seats.isRobot(team)) {
+                room.setAllocation(team, NetworkConstants.SERVER_ROBOT);
+                continue;
+            }
+            String session_token = seats.getSessionToken(team);
+            if (session_token == null) {
+                continue;
+            }
+            Integer id = placeholders.get(session_token);
+            if (id == null) {
+                id = -2 - team;
+                placeholders.put(session_token, id);
+                room.addPlayer(id);
+                recovered.add(new Reservation(room.getRoomID(), id, seats.getUsername(team), session_token, deadline));
+            }
+            room.setAllocation(team, id);
+            if (team == seats.getHostTeam()) {
+                room.setHostPlayer(id);
+            }
+        }
+        if (recovered.size == 0 || room.isGameOver()) {
+            room.dispose();
+            return null;
+        }
+        if (room.getHostID() == -1) {
+            room.setHostPlayer(recovered.first().player_id);
+        }
+        synchronized (RESERVATION_LOCK) {
+            for (Reservation reservation : recovered) {
+                reservations.put(reservation.session_token, reservation);
+            }
+        }
+        synchronized (ROOM_LOCK) {
+            rooms.put(room.getRoomID(), room);
+        }
+        skipRoomID(room.getRoomID());
+        getDirectory().update(room);
+        //the new journal starts from the recovered game, which also compacts the old one away
+        getContext().getJournalManager().openJournal(room, createCheckpoint(room), createSeatTable(room));
+        getContext().getRecordManager().startRecord(room, seats.getUsernames(), true);
+        startTurnClock(room);
+        getContext().getRobotManager().startRobotTurn(room);
+        return room;
+    }
+
+    /**
+     * Gives the current turn of the room the configured time, after which the server ends it.
+     */
+    private void startTurnClock(final Room room) {
+        long turn_timeout = getContext().getConfiguration().getTurnTimeout();
+        if (turn_timeout > 0) {
+            final int turn;
+            final int team;
+            synchronized (room.GAME_LOCK) {
+                turn = room.getGame().getCurrentTurn();
+                team = room.getGame().getCurrentTeam();
+            }
+            room.setTurnClock(getContext().schedule(new Runnable() {
+                @Override
+                public void run() {
+                    Log.info(TAG, String.format("Turn %d of room [%d] times out", turn, room.getRoomID()));
+                    room.submitTurnTimeout(turn, team);
+                }
+            }, turn_timeout));
+        }
+    }
+
+    /**
+     * Disposes the rooms nobody can use anymore: rooms whose players are all gone, finished games and
+     * rooms without any activity for too long. Players still inside a reaped room are told it is closed
+     * and sent back to the lobby.
+     */
+    public void reapRooms() {
+        Array<Room> candidates = new Array<Room>();
+        synchronized (ROOM_LOCK) {
+            for (Room room : rooms.values()) {
+                candidates.add(room);
+            }
+        }
+        long current_time = System.currentTimeMillis();
+        for (Room room : candidates) {
+            long idle_time = current_time - room.getLastActiveTime();
+            if (isAbandoned(room)) {
+                reapRoom(room, "abandoned");
+            } else if (room.isGameOver() && idle_time > GAME_OVER_TIMEOUT) {
+                reapRoom(room, "game over");
+            } else if (idle_time > IDLE_TIMEOUT) {
+                reapRoom(room, "idle");
+            }
+        }
+    }
+
+    /**
+     * Any request from a member, chat included, counts as activity in the member's room.
+     */
+    public void onMemberActivity(Player player) {
+        if (player.getRoomID() >= 0 && !player.isSpectator()) {
+            Room room = getRoom(player.getRoomID());
+            if (room != null) {
+                room.touch();
+            }
+        }
+    }
+
+    private boolean isAbandoned(Room room) {
+        for (int id : room.getPlayers()) {
+            Player player = getContext().getPlayerManager().getPlayer(id);
+            if ((player != null && player.getRoomID() == room.getRoomID()) || isReserved(room.getRoomID(), id)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void reapRoom(Room room, String reason) {
+        Array<Player> members = new Array<Player>();
+        synchronized (room.PLAYER_LOCK) {
+            if (room.isDisposed()) {
+                return;
+            }
+            for (int id : room.getPlayers()) {
+                Player player = getContext().getPlayerManager().getPlayer(id);
+                if (player != null && player.getRoomID() == room.getRoomID()) {
+                    player.setRoomID(-1);
+                    members.add(player);
+                }
+            }
+            Player[] recipients = members.toArray(Player.class);
+            getContext().getNotificationSender().notifyRoomClosed(room, recipients);
+            room.dispose();
+        }
+        releaseSpectators(room);
+        for (Player player : members) {
+            if (player.getConnection().isConnected()) {
+                getContext().getLobbyManager().onPlayerEnterLobby(player);
+            }
+        }
+        Log.info(TAG, String.format("Reaping %s room [%d]", reason, room.getRoomID()));
+        removeRoom(room.getRoomID());
+    }
+
+    /**
+     * Tells the spectators of a disposed room that it is closed and sends them back to the lobby.
+     */
+    private void releaseSpectators(Room room) {
+        Array<Player> spectators = room.getSpectatorFeed().close();
+        Player[] recipients = spectators.toArray(Player.class);
+        getContext().getNotificationSender().notifyRoomClosed(room, recipients);
+        for (Player spectator : spectators) {
+            if (spectator.getRoomID() == room.getRoomID()) {
+                spectator.setRoomID(-1);
+                spectator.setSpectator(false);
+                if (spectator.getConnection().isConnected()) {
+                    getContext().getLobbyManager().onPlayerEnterLobby(spectator);
+                }
+            }
+        }
+    }
+
+    public void tickSpectatorFeeds() {
+        Array<Room> candidates = new Array<Room>();
+        synchronized (ROOM_LOCK) {
+            for (Room room : rooms.values()) {
+                candidates.add(room);
+            }
+        }
+        for (Room room : candidates) {
+            room.getSpectatorFeed().tick();
         }
     }
 
     @Override
-    public void onGameEventExecuted(Room room, JSONObject event, int submitter) {
-        for (int player_id : room.getPlayers()) {
-            if (player_id != submitter) {
-                getContext().getNotificationSender().syncGameEvent(player_id, event);
+    public void onGameEventExecuted(Room room, GameEvent event, long sequence, int submitter) {
+        getContext().getNotificationSender().syncGameEvent(room, event, sequence, submitter);
+        if (room.isGameOver()) {
+            room.setTurnClock(null);
+            getContext().getRecordManager().finishRecord(room, true);
+        } else if (event.getType() == GameEvent.NEXT_TURN) {
+            startTurnClock(room);
+            getContext().getRobotManager().startRobotTurn(room);
+        }
+        //called in the room's mailbox, so the journal has every event up to the checkpoint
+        if (room.getJournal() != null) {
+            if (room.isGameOver()) {
+                getContext().getJournalManager().deleteJournal(room);
+            } else if (getContext().getJournalManager().needsCheckpoint(room)) {
+                room.getJournal().checkpoint(createCheckpoint(room));
             }
         }
     }
 
+    @Override
+    public void onTurnForced(Room room, int team) {
+        //the player may still have moves the server never accepted, the whole game brings the client back in line
+        resync(room, getContext().getPlayerManager().getPlayer(room.getAllocation(team)));
+    }
+
     @Override
     public void onCheatingDetected(Room room, int player_id, Throwable cause) {
         getContext().getPlayerManager().disconnectPlayer(player_id, "/cheating", 5000);
         Log.info(TAG, String.format("Cheating detected in room [%d] by player [%d]", room.getRoomID(), player_id));
     }
 
+    private static class Reservation {
+
+        private final long room_id;
+        private final int player_id;
+        private final String username;
+        private final String session_token;
+        private final long deadline;
+
+        public Reservation(long room_id, int player_id, String username, String session_token, long deadline) {
+            this.room_id = room_id;
+            this.player_id = player_id;
+            this.username = username;
+            this.session_token = session_token;
+            this.deadline = deadline;
+        }
+
+    }
+
 }
@@ -0,0 +1,295 @@
+package net.toyknight.aeii.server.managers;
+
+import com.badlogic.gdx.utils.IntIntMap;
+import com.badlogic.gdx.utils.IntMap;
+import com.badlogic.gdx.utils.ObjectSet;
+import com.esotericsoftware.kryonet.Connection;
+import com.esotericsoftware.kryonet.Listener;
+import com.esotericsoftware.kryonet.Server;
+import com.esotericsoftware.minlog.Log;
+import net.toyknight.aeii.network.NetworkConstants;
+import net.toyknight.aeii.server.ServerConfiguration;
+import net.toyknight.aeii.server.ServerContext;
+import net.toyknight.aeii.server.cluster.HandoffTicket;
+import net.toyknight.aeii.server.cluster.ShardConstants;
+import net.toyknight.aeii.server.cluster.ShardInfo;
+import net.toyknight.aeii.server.cluster.ShardLink;
+import net.toyknight.aeii.server.cluster.ShardReport;
+import net.toyknight.aeii.server.entities.Player;
+import net.toyknight.aeii.server.utils.PacketBuilder;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+
+/**
+ * Keeps track of the shards of a router. Shards connect to the cluster port and report their load and room
+ * directory changes every heartbeat, which are merged into the directory of the router. Reports must be signed
+ * with the cluster secret, and a connection speaks for one shard only: the first shard id it reports, if no
+ * other connection reports as that shard already. Requests for rooms
+ * are answered with a redirect to the shard: the least loaded healthy shard for a new room, the shard in the
+ * room id for an existing one. A shard missing its heartbeats gets no new rooms, and the rooms of a shard
+ * that lost its connection are removed from the lobby until it reports them again.
+ *
+ * @author toyknight 10/17/2026.
+ */
+public class ShardManager {
+
+    private static final String TAG = "SHARD MANAGER";
+
+    private final Object SHARD_LOCK = new Object();
+
+    private final IntMap<ShardInfo> shards = new IntMap<ShardInfo>();
+
+    //the shard each cluster connection reported as, a connection may never speak for another shard
+    private final IntIntMap connection_shards = new IntIntMap();
+
+    private final ServerContext context;
+
+    private Server server;
+
+    public ShardManager(ServerContext context) {
+        this.context = context;
+    }
+
+    public ServerContext getContext() {
+        return context;
+    }
+
+    public void start() throws IOException {
+        server = new Server(ShardLink.BUFFER_SIZE, ShardLink.BUFFER_SIZE);
+        server.addListener(new Listener() {
+            @Override
+            public void disconnected(Connection connection) {
+                onShardDisconnected(connection.getID());
+            }
+
+            @Override
+            public void received(Connection connection, Object object) {
+                if (object instanceof String) {
+                    try {
+                        onShardReport(connection, (String) object);
+                    } catch (JSONException ex) {
+                        Log.error(TAG, "Illegal shard report [report format error]", ex);
+                        connection.close();
+                    }
+                }
+            }
+        });
+        server.start();
+        ServerConfiguration configuration = getContext().getConfiguration();
+        server.bind(new InetSocketAddress(configuration.getClusterAddress(), configuration.getClusterPort()), null);
+        getContext().scheduleTask(new Runnable() {
+            @Override
+            public void run() {
+                checkShards();
+            }
+        }, getContext().getConfiguration().getShardHeartbeatInterval());
+    }
+
+    public void stop() {
+        if (server != null) {
+            server.stop();
+        }
+    }
+
+    public int getShardCount() {
+        synchronized (SHARD_LOCK) {
+            return shards.size;
+        }
+    }
+
+    public int getHealthyShardCount() {
+        long now = System.currentTimeMillis();
+        long timeout = getContext().getConfiguration().getShardTimeout();
+        int count = 0;
+        synchronized (SHARD_LOCK) {
+            for (ShardInfo shard : shards.values()) {
+                if (shard.isHealthy(now, timeout)) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    private void onShardReport(Connection connection, String envelope) {
+        JSONObject report = ShardReport.open(getContext().getConfiguration().getClusterSecret(), envelope);
+        if (report == null) {
+            rejectShard(connection, "bad signature");
+            return;
+        }
+        if (report.getInt("operation") != ShardConstants.SHARD_STATUS) {
+            return;
+        }
+        int connection_id = connection.getID();
+        int shard_id = report.getInt("shard_id");
+        RoomDirectory directory = getContext().getRoomManager().getDirectory();
+        synchronized (SHARD_LOCK) {
+            ShardInfo shard = getShard(connection_id, shard_id);
+            if (shard == null) {
+                report = null;
+            } else {
+                if (shard.getLastReport() == 0) {
+                    Log.info(TAG, String.format("Shard %d joins at %s:%d",
+                            shard_id, report.getString("address"), report.getInt("port")));
+                }
+                shard.update(connection_id, report.getString("address"), report.getInt("port"),
+                        report.getInt("player_count"), report.getInt("room_count"), report.getInt("queue_depth"),
+                        System.currentTimeMillis());
+                ObjectSet<Long> room_ids = shard.getRoomIDs();
+                if (!report.getBoolean("delta")) {
+                    for (long room_id : room_ids) {
+                        directory.remove(room_id);
+                    }
+                    room_ids.clear();
+                }
+                JSONArray rooms = report.getJSONArray("rooms");
+                for (int i = 0; i < rooms.length(); i++) {
+                    JSONObject room = rooms.getJSONObject(i);
+                    long room_id = room.getLong("room_id");
+                    //a shard only speaks for its own rooms
+                    if (ShardConstants.getShardID(room_id) == shard_id) {
+                        room_ids.add(room_id);
+                        directory.update(room_id, room);
+                    }
+                }
+                JSONArray removed = report.getJSONArray("removed");
+                for (int i = 0; i < removed.length(); i++) {
+                    long room_id = removed.getLong(i);
+                    if (room_ids.remove(room_id)) {
+                        directory.remove(room_id);
+                    }
+                }
+            }
+        }
+        if (report == null) {
+            rejectShard(connection, "shard " + shard_id + " is taken");
+        }
+    }
+
+    /**
+     * Registers the shard on its first report. Must be called with the shard lock held.
+     *
+     * @return the shard, or null if the connection reported as another shard before, or another connection
+     * already reports as this one
+     */
+    private ShardInfo getShard(int connection_id, int shard_id) {
+        int reported_id = connection_shards.get(connection_id, -1);
+        if (reported_id >= 0) {
+            return reported_id == shard_id ? shards.get(shard_id) : null;
+        }
+        if (shards.containsKey(shard_id)) {
+            return null;
+        }
+        ShardInfo shard = new ShardInfo(shard_id);
+        shards.put(shard_id, shard);
+        connection_shards.put(connection_id, shard_id);
+        return shard;
+    }
+
+    private void rejectShard(Connection connection, String reason) {
+        Log.info(TAG, String.format("Rejected cluster connection %d from %s [%s]",
+                connection.getID(), connection.getRemoteAddressTCP(), reason));
+        connection.close();
+    }
+
+    private void onShardDisconnected(int connection_id) {
+        RoomDirectory directory = getContext().getRoomManager().getDirectory();
+        synchronized (SHARD_LOCK) {
+            connection_shards.remove(connection_id, -1);
+            for (IntMap.Entry<ShardInfo> entry : shards.entries()) {
+                ShardInfo shard = entry.value;
+                if (shard.getConnectionID() == connection_id) {
+                    for (long room_id : shard.getRoomIDs()) {
+                        directory.remove(room_id);
+                    }
+                    shards.remove(entry.key);
+                    Log.info(TAG, String.format("Shard %d is lost with %d rooms", shard.getShardID(), shard.getRoomIDs().size));
+                    return;
+                }
+            }
+        }
+    }
+
+    private void checkShards() {
+        long now = System.currentTimeMillis();
+        long timeout = getContext().getConfiguration().getShardTimeout();
+        synchronized (SHARD_LOCK) {
+            for (ShardInfo shard : shards.values()) {
+                if (!shard.isHealthy(now, timeout)) {
+                    Log.info(TAG, String.format("Shard %d has not reported for %d ms",
+                            shard.getShardID(), now - shard.getLastReport()));
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the least loaded healthy shard, or null if no shard is available
+     */
+    private ShardInfo selectShard(long now, long timeout) {
+        ShardInfo selected = null;
+        for (ShardInfo shard : shards.values()) {
+            if (shard.isHealthy(now, timeout) && (selected == null || shard.getLoad() < selected.getLoad())) {
+                selected = shard;
+            }
+        }
+        return selected;
+    }
+
+    public boolean isRoutedOperation(int operation) {
+        switch (operation) {
+            case NetworkConstants.CREATE_ROOM:
+            case NetworkConstants.CREATE_ROOM_SAVED:
+            case NetworkConstants.JOIN_ROOM:
+            case NetworkConstants.SPECTATE_ROOM:
+            case NetworkConstants.DOWNLOAD_RECORD:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Answers a room request with the shard the player has to send it to, and a ticket the shard takes
+     * instead of authenticating the player again.
+     */
+    public void onRoomRequestRouted(Player player, JSONObject request, int operation) {
+        if (!player.isAuthenticated()) {
+            return;
+        }
+        ServerConfiguration configuration = getContext().getConfiguration();
+        long now = System.currentTimeMillis();
+        ShardInfo shard;
+        synchronized (SHARD_LOCK) {
+            if (operation == NetworkConstants.CREATE_ROOM || operation == NetworkConstants.CREATE_ROOM_SAVED) {
+                shard = selectShard(now, configuration.getShardTimeout());
+                if (shard != null) {
+                    shard.onRoomAssigned();
+                }
+            } else {
+                shard = shards.get(ShardConstants.getShardID(request.getLong("room_id")));
+                if (shard != null && !shard.isHealthy(now, configuration.getShardTimeout())) {
+                    shard = null;
+                }
+            }
+        }
+        JSONObject response = PacketBuilder.create(NetworkConstants.RESPONSE, operation);
+        response.put("approved", false);
+        if (shard == null) {
+            Log.info(TAG, String.format("No shard available for %s", player.toString()));
+        } else {
+            String ticket = HandoffTicket.create(configuration.getClusterSecret(),
+                    player.getUsername(), shard.getShardID(), now + configuration.getHandoffTicketLifetime());
+            response.put("code", NetworkConstants.CODE_REDIRECT);
+            response.put("address", shard.getAddress());
+            response.put("port", shard.getPort());
+            response.put("ticket", ticket);
+        }
+        player.sendPacket(response);
+    }
+
+}
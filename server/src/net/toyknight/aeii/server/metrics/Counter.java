@@ -0,0 +1,24 @@
+package net.toyknight.aeii.server.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @author toyknight 10/17/2026.
+ */
+public class Counter {
+
+    private final AtomicLong value = new AtomicLong(0);
+
+    public void increment() {
+        value.incrementAndGet();
+    }
+
+    public void add(long delta) {
+        value.addAndGet(delta);
+    }
+
+    public long get() {
+        return value.get();
+    }
+
+}
@@ -0,0 +1,12 @@
+package net.toyknight.aeii.server.metrics;
+
+/**
+ * A value that is read when a metrics snapshot is taken.
+ *
+ * @author toyknight 10/17/2026.
+ */
+public interface Gauge {
+
+    long getValue();
+
+}
@@ -0,0 +1,97 @@
+package net.toyknight.aeii.server.metrics;
+
+import org.json.JSONObject;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A latency histogram with power-of-two microsecond buckets. Recording is lock-free and
+ * percentiles are reported as the upper bound of the bucket they fall into.
+ *
+ * @author toyknight 10/17/2026.
+ */
+public class Histogram {
+
+    private static final int BUCKET_COUNT = 32;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+
+    private final AtomicLong count = new AtomicLong(0);
+
+    private final AtomicLong total_nanos = new AtomicLong(0);
+
+    private final AtomicLong max_nanos = new AtomicLong(0);
+
+    public void record(long nanos) {
+        nanos = Math.max(0, nanos);
+        long micros = nanos / 1000;
+        int bucket = Math.min(BUCKET_COUNT - 1, 64 - Long.numberOfLeadingZeros(micros));
+        buckets.incrementAndGet(bucket);
+        count.incrementAndGet();
+        total_nanos.addAndGet(nanos);
+        long max = max_nanos.get();
+        while (nanos > max && !max_nanos.compareAndSet(max, nanos)) {
+            max = max_nanos.get();
+        }
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getTotalNanos() {
+        return total_nanos.get();
+    }
+
+    public long getMaxNanos() {
+        return max_nanos.get();
+    }
+
+    public long getAverageNanos() {
+        long count = getCount();
+        return count == 0 ? 0 : getTotalNanos() / count;
+    }
+
+    /**
+     * @param percentile a value between 0 and 1
+     * @return the upper bound of the bucket holding the percentile in nanoseconds
+     */
+    public long getPercentileNanos(double percentile) {
+        long[] snapshot = new long[BUCKET_COUNT];
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            snapshot[i] = buckets.get(i);
+            total += snapshot[i];
+        }
+        long rank = (long) Math.ceil(total * percentile);
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += snapshot[i];
+            if (seen >= rank && seen > 0) {
+                return Math.min((1L << i) * 1000, getMaxNanos());
+            }
+        }
+        return 0;
+    }
+
+    public JSONObject toJson() {
+        JSONObject json = new JSONObject();
+        json.put("count", getCount());
+        json.put("avg_ms", getAverageNanos() / 1000000.0);
+        json.put("p50_ms", getPercentileNanos(0.5) / 1000000.0);
+        json.put("p99_ms", getPercentileNanos(0.99) / 1000000.0);
+        json.put("max_ms", getMaxNanos() / 1000000.0);
+        return json;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("count=%d avg=%.3fms p99=%.3fms max=%.3fms",
+                getCount(),
+                getAverageNanos() / 1000000.0,
+                getPercentileNanos(0.99) / 1000000.0,
+                getMaxNanos() / 1000000.0);
+    }
+
+}
@@ -0,0 +1,150 @@
+package net.toyknight.aeii.server.metrics;
+
+import com.esotericsoftware.minlog.Log;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * The counters, gauges and latency histograms of the server, by name. Names are dotted paths
+ * such as "request.LIST_ROOMS" or "room.12.task", so everything about one room or one
+ * connection can be dropped with {@link #remove(String)} once it is gone.
+ *
+ * @author toyknight 10/17/2026.
+ */
+public class MetricsRegistry {
+
+    private static final String TAG = "METRICS";
+
+    private final ConcurrentHashMap<String, Counter> counters = new ConcurrentHashMap<String, Counter>();
+
+    private final ConcurrentHashMap<String, Gauge> gauges = new ConcurrentHashMap<String, Gauge>();
+
+    private final ConcurrentHashMap<String, Histogram> histograms = new ConcurrentHashMap<String, Histogram>();
+
+    public Counter getCounter(String name) {
+        Counter counter = counters.get(name);
+        if (counter == null) {
+            Counter created = new Counter();
+            counter = counters.putIfAbsent(name, created);
+            if (counter == null) {
+                counter = created;
+            }
+        }
+        return counter;
+    }
+
+    public Histogram getHistogram(String name) {
+        Histogram histogram = histograms.get(name);
+        if (histogram == null) {
+            Histogram created = new Histogram();
+            histogram = histograms.putIfAbsent(name, created);
+            if (histogram == null) {
+                histogram = created;
+            }
+        }
+        return histogram;
+    }
+
+    public void registerGauge(String name, Gauge gauge) {
+        gauges.put(name, gauge);
+    }
+
+    public void registerExecutor(String name, final ExecutorService executor) {
+        if (executor instanceof ThreadPoolExecutor) {
+            final ThreadPoolExecutor pool = (ThreadPoolExecutor) executor;
+            registerGauge(name + ".threads", new Gauge() {
+                @Override
+                public long getValue() {
+                    return pool.getPoolSize();
+                }
+            });
+            registerGauge(name + ".active", new Gauge() {
+                @Override
+                public long getValue() {
+                    return pool.getActiveCount();
+                }
+            });
+            registerGauge(name + ".queued", new Gauge() {
+                @Override
+                public long getValue() {
+                    return pool.getQueue().size();
+                }
+            });
+            registerGauge(name + ".completed", new Gauge() {
+                @Override
+                public long getValue() {
+                    return pool.getCompletedTaskCount();
+                }
+            });
+        }
+    }
+
+    /**
+     * Removes every metric under the given prefix, e.g. "room.12".
+     */
+    public void remove(String prefix) {
+        String path = prefix + ".";
+        removeAll(counters, path);
+        removeAll(gauges, path);
+        removeAll(histograms, path);
+    }
+
+    private void removeAll(ConcurrentHashMap<String, ?> metrics, String path) {
+        for (String name : metrics.keySet()) {
+            if (name.startsWith(path)) {
+                metrics.remove(name);
+            }
+        }
+    }
+
+    public JSONObject createSnapshot() {
+        JSONObject snapshot = new JSONObject();
+        snapshot.put("time", System.currentTimeMillis());
+        JSONObject counters = new JSONObject();
+        for (Map.Entry<String, Counter> entry : this.counters.entrySet()) {
+            counters.put(entry.getKey(), entry.getValue().get());
+        }
+        snapshot.put("counters", counters);
+        JSONObject gauges = new JSONObject();
+        for (Map.Entry<String, Gauge> entry : this.gauges.entrySet()) {
+            try {
+                gauges.put(entry.getKey(), entry.getValue().getValue());
+            } catch (RuntimeException ex) {
+                Log.error(TAG, String.format("Exception occurred while reading gauge %s", entry.getKey()), ex);
+            }
+        }
+        snapshot.put("gauges", gauges);
+        JSONObject histograms = new JSONObject();
+        for (Map.Entry<String, Histogram> entry : this.histograms.entrySet()) {
+            histograms.put(entry.getKey(), entry.getValue().toJson());
+        }
+        snapshot.put("histograms", histograms);
+        return snapshot;
+    }
+
+    /**
+     * Writes a snapshot to the file, replacing the previous one.
+     */
+    public void dump(File file) throws IOException {
+        File temp_file = new File(file.getPath() + ".tmp");
+        Writer writer = new OutputStreamWriter(new FileOutputStream(temp_file), "UTF-8");
+        try {
+            writer.write(createSnapshot().toString(2));
+        } finally {
+            writer.close();
+        }
+        if (!temp_file.renameTo(file) && !(file.delete() && temp_file.renameTo(file))) {
+            throw new IOException("Failed replacing metrics file: " + file.getName());
+        }
+    }
+
+}
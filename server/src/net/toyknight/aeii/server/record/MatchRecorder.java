@@ -0,0 +1,126 @@
+package net.toyknight.aeii.server.record;
+
+import com.esotericsoftware.kryo.io.Output;
+import net.toyknight.aeii.manager.GameEvent;
+import net.toyknight.aeii.record.GameRecordCodec;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Records a running match: the game at the start and every event accepted after it. Appending only encodes the
+ * event into memory, the record is compressed and written once the match ends.
+ *
+ * @author toyknight 10/17/2026.
+ */
+public class MatchRecorder {
+
+    private final long room_id;
+
+    private final String room_name;
+
+    private final String map_name;
+
+    private final String[] usernames;
+
+    private final long start_time;
+
+    private final boolean recovered;
+
+    private final Output body;
+
+    private GameEvent previous;
+
+    private int event_count;
+
+    private boolean finished;
+
+    /**
+     * @param usernames the players of the teams, null for the teams nobody plays
+     * @param game      the json string of the game at the start
+     * @param recovered whether the record starts from a game recovered from its journal, so the match is
+     *                  recorded from the recovery on
+     */
+    public MatchRecorder(long room_id, String room_name, String map_name, String[] usernames,
+                         String v_string, String game, boolean recovered) {
+        this.room_id = room_id;
+        this.room_name = room_name;
+        this.map_name = map_name;
+        this.usernames = usernames;
+        this.recovered = recovered;
+        this.start_time = System.currentTimeMillis();
+        this.body = GameRecordCodec.createBody(v_string, game);
+    }
+
+    public long getRoomID() {
+        return room_id;
+    }
+
+    public String getUsername(int team) {
+        return usernames[team];
+    }
+
+    /**
+     * Called under the game lock of the room right after the event is executed, so the events are in order.
+     */
+    public synchronized void append(GameEvent event) {
+        //manager states only matter to the players at the time, a replay keeps its own
+        if (!finished && event.getType() != GameEvent.MANAGER_STATE_SYNC) {
+            event.write(body, previous);
+            previous = event;
+            event_count++;
+        }
+    }
+
+    /**
+     * Ends the record, later events are not recorded anymore.
+     *
+     * @param complete whether the match was played to the end
+     * @return the header and the encoded record
+     */
+    public synchronized Record finish(boolean complete) {
+        finished = true;
+        JSONObject header = new JSONObject();
+        header.put("room_id", room_id);
+        header.put("room_name", room_name);
+        header.put("map_name", map_name);
+        JSONArray players = new JSONArray();
+        for (String username : usernames) {
+            players.put(username == null ? "" : username);
+        }
+        header.put("players", players);
+        header.put("start_time", start_time);
+        header.put("end_time", System.currentTimeMillis());
+        header.put("event_count", event_count);
+        header.put("complete", complete);
+        header.put("recovered", recovered);
+        return new Record(header, event_count, body.toBytes());
+    }
+
+    /**
+     * A finished record, not compressed yet.
+     */
+    public static final class Record {
+
+        private final JSONObject header;
+
+        private final int event_count;
+
+        private final byte[] body;
+
+        private Record(JSONObject header, int event_count, byte[] body) {
+            this.header = header;
+            this.event_count = event_count;
+            this.body = body;
+        }
+
+        public JSONObject getHeader() {
+            return header;
+        }
+
+        public byte[] encode() {
+            return GameRecordCodec.encode(header, event_count, body, body.length);
+        }
+
+    }
+
+}
@@ -0,0 +1,65 @@
+package net.toyknight.aeii.server.utils;
+
+import net.toyknight.aeii.network.NetworkConstants;
+import net.toyknight.aeii.network.protocol.BinaryPacket;
+import org.json.JSONObject;
+
+/**
+ * A packet on its way to one or more connections. Each wire form is encoded at most once
+ * and then shared by every recipient, so the packet must not be changed after creation.
+ *
+ * @author toyknight 10/17/2026.
+ */
+public final class OutboundPacket {
+
+    private final JSONObject packet;
+
+    private String json_string;
+
+    private BinaryPacket binary_packet;
+
+    private final int[] uses = new int[2];
+
+    public OutboundPacket(JSONObject packet) {
+        this.packet = packet;
+    }
+
+    public JSONObject getPacket() {
+        return packet;
+    }
+
+    public synchronized String toJsonString() {
+        if (json_string == null) {
+            json_string = packet.toString();
+        }
+        return json_string;
+    }
+
+    public synchronized BinaryPacket toBinaryPacket() {
+        if (binary_packet == null) {
+            binary_packet = BinaryPacket.create(packet);
+        }
+        return binary_packet;
+    }
+
+    /**
+     * Returns the wire form for a recipient speaking the given protocol, encoding it on first use.
+     */
+    public synchronized Object encode(int protocol) {
+        uses[protocol]++;
+        return protocol == NetworkConstants.PROTOCOL_BINARY ? toBinaryPacket() : toJsonString();
+    }
+
+    public synchronized int getUseCount(int protocol) {
+        return uses[protocol];
+    }
+
+    public int getEncodedSize(int protocol) {
+        return protocol == NetworkConstants.PROTOCOL_BINARY ? toBinaryPacket().size() : toJsonString().length();
+    }
+
+    public synchronized int getEncodeCount() {
+        return (json_string == null ? 0 : 1) + (binary_packet == null ? 0 : 1);
+    }
+
+}
@@ -0,0 +1,45 @@
+package net.toyknight.aeii.server.utils;
+
+/**
+ * A token bucket: holds up to a burst of tokens, refilled at a steady rate, and every admitted request
+ * takes one. A client may send a burst at once but no more than the rate in the long run.
+ *
+ * @author toyknight 10/17/2026.
+ */
+public class TokenBucket {
+
+    private final double rate;
+
+    private final double burst;
+
+    private double tokens;
+
+    private long last_refill;
+
+    /**
+     * @param rate  the tokens added per second
+     * @param burst the most tokens the bucket holds
+     */
+    public TokenBucket(double rate, double burst) {
+        this.rate = rate;
+        this.burst = Math.max(1, burst);
+        this.tokens = this.burst;
+        this.last_refill = System.nanoTime();
+    }
+
+    /**
+     * @return whether a token was taken, if not the request is over the limit
+     */
+    public synchronized boolean tryAcquire() {
+        long current_time = System.nanoTime();
+        tokens = Math.min(burst, tokens + (current_time - last_refill) * rate / 1e9);
+        last_refill = current_time;
+        if (tokens >= 1) {
+            tokens -= 1;
+            return true;
+        } else {
+            return false;
+        }
+    }
+
+}
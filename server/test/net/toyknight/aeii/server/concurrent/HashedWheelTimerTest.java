@@ -0,0 +1,114 @@
+package net.toyknight.aeii.server.concurrent;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author toyknight 10/17/2026.
+ */
+public class HashedWheelTimerTest {
+
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private HashedWheelTimer timer;
+
+    @Before
+    public void setUp() {
+        //4 buckets of 10 milliseconds, a delay longer than 40 milliseconds takes more than one round
+        timer = new HashedWheelTimer(DIRECT, 10, 3);
+        timer.start();
+    }
+
+    @After
+    public void tearDown() {
+        timer.stop();
+    }
+
+    private static Runnable countDown(final CountDownLatch latch) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                latch.countDown();
+            }
+        };
+    }
+
+    @Test
+    public void testFiresNotBeforeTheDelay() throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(1);
+        long start = System.nanoTime();
+        timer.schedule(countDown(latch), 60);
+        assertTrue(latch.await(2, TimeUnit.SECONDS));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(60));
+        assertEquals(0, timer.getPendingCount());
+    }
+
+    @Test
+    public void testDelayOfSeveralRoundsIsNotCutShort() throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(1);
+        long start = System.nanoTime();
+        timer.schedule(countDown(latch), 150);
+        assertTrue(latch.await(2, TimeUnit.SECONDS));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(150));
+    }
+
+    @Test
+    public void testZeroDelayFiresOnTheNextTick() throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(1);
+        timer.schedule(countDown(latch), 0);
+        assertTrue(latch.await(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testCancelledTimeoutNeverFires() throws InterruptedException {
+        final AtomicInteger fired = new AtomicInteger(0);
+        HashedWheelTimer.Timeout timeout = timer.schedule(new Runnable() {
+            @Override
+            public void run() {
+                fired.incrementAndGet();
+            }
+        }, 30);
+        assertEquals(1, timer.getPendingCount());
+        assertTrue(timeout.cancel());
+        assertFalse(timeout.cancel());
+        assertEquals(0, timer.getPendingCount());
+        //a timeout scheduled after the cancelled one fires, so the cancelled one had its chance
+        CountDownLatch latch = new CountDownLatch(1);
+        timer.schedule(countDown(latch), 60);
+        assertTrue(latch.await(2, TimeUnit.SECONDS));
+        assertEquals(0, fired.get());
+    }
+
+    @Test
+    public void testFiredTimeoutCannotBeCancelled() throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(1);
+        HashedWheelTimer.Timeout timeout = timer.schedule(countDown(latch), 10);
+        assertTrue(latch.await(2, TimeUnit.SECONDS));
+        assertFalse(timeout.cancel());
+        assertFalse(timeout.isCancelled());
+    }
+
+    @Test
+    public void testManyTimeoutsAllFire() throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(1000);
+        for (int i = 0; i < 1000; i++) {
+            timer.schedule(countDown(latch), i % 100);
+        }
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertEquals(0, timer.getPendingCount());
+    }
+
+}
@@ -0,0 +1,50 @@
+package net.toyknight.aeii.server.utils;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author toyknight 10/17/2026.
+ */
+public class TokenBucketTest {
+
+    @Test
+    public void testBurstIsAdmittedAtOnce() {
+        //one token every 1000 seconds, nothing is refilled while the test runs
+        TokenBucket bucket = new TokenBucket(0.001, 5);
+        for (int i = 0; i < 5; i++) {
+            assertTrue(bucket.tryAcquire());
+        }
+        assertFalse(bucket.tryAcquire());
+        assertFalse(bucket.tryAcquire());
+    }
+
+    @Test
+    public void testBurstIsAtLeastOne() {
+        TokenBucket bucket = new TokenBucket(0.001, 0);
+        assertTrue(bucket.tryAcquire());
+        assertFalse(bucket.tryAcquire());
+    }
+
+    @Test
+    public void testTokensAreRefilledAtTheRate() throws InterruptedException {
+        //one token every 50 milliseconds
+        TokenBucket bucket = new TokenBucket(20, 1);
+        assertTrue(bucket.tryAcquire());
+        assertFalse(bucket.tryAcquire());
+        Thread.sleep(100);
+        assertTrue(bucket.tryAcquire());
+    }
+
+    @Test
+    public void testRefillStopsAtTheBurst() throws InterruptedException {
+        TokenBucket bucket = new TokenBucket(20, 2);
+        Thread.sleep(200);
+        //4 tokens worth of time went by, but the bucket holds no more than 2
+        assertTrue(bucket.tryAcquire());
+        assertTrue(bucket.tryAcquire());
+        assertFalse(bucket.tryAcquire());
+    }
+
+}